@@ -20,7 +20,6 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
-import org.apache.commons.dbcp.BasicDataSource;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang.StringUtils;
@@ -45,6 +44,7 @@ import org.molgenis.fieldtypes.MrefField;
 import org.molgenis.fieldtypes.StringField;
 import org.molgenis.fieldtypes.TextField;
 import org.molgenis.fieldtypes.XrefField;
+import org.molgenis.framework.db.jdbc.PooledDataSourceWrapper;
 import org.molgenis.generators.DataTypeGen;
 import org.molgenis.generators.Generator;
 import org.molgenis.generators.R.RApiGen;
@@ -730,18 +730,11 @@ public class Molgenis
 		}
 
 		// start loading
-		BasicDataSource data_src = new BasicDataSource();
 		Statement stmt = null;
 		Connection conn = null;
 		try
 		{
-			data_src = new BasicDataSource();
-			data_src.setDriverClassName(options.db_driver);
-			data_src.setUsername(options.db_user);
-			data_src.setPassword(options.db_password);
-			data_src.setUrl(options.db_uri);
-
-			conn = data_src.getConnection();
+			conn = PooledDataSourceWrapper.get(options).getDataSource().getConnection();
 			String create_tables_file_str = options.output_sql + File.separator + "create_tables.sql";
 
 			// READ THE FILE
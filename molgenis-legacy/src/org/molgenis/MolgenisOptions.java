@@ -133,6 +133,50 @@ public class MolgenisOptions implements Serializable
 	@Option(name = "db_filepath", param = Option.Param.DIRPATH, type = Option.Type.REQUIRED_ARGUMENT, usage = "Path where the database should store file attachements. Default: 'data'")
 	public String db_filepath = "data";
 
+	/** Seconds that entity counts are reused, 0 disables the count cache */
+	@Option(name = "db_count_cache_ttl", param = Option.Param.INTEGER, type = Option.Type.OPTIONAL_ARGUMENT, usage = "Seconds that counts of pagers and grids are cached, 0 disables the cache. Default: 10")
+	public int db_count_cache_ttl = 10;
+
+	/** Number of entities to stop counting at, 0 counts exactly */
+	@Option(name = "db_count_estimate_cap", param = Option.Param.INTEGER, type = Option.Type.OPTIONAL_ARGUMENT, usage = "Expert option: stop counting at this number of entities to speed up paging of very large tables, 0 counts exactly. Default: 0")
+	public int db_count_estimate_cap = 0;
+
+	/** Number of statements per JDBC batch of the prepared statement mappers */
+	@Option(name = "db_jdbc_batch_size", param = Option.Param.INTEGER, type = Option.Type.OPTIONAL_ARGUMENT, usage = "Number of inserts, updates or deletes that are sent to the database in one JDBC batch. Default: 500")
+	public int db_jdbc_batch_size = 500;
+
+	/** Number of databases the FrontController keeps for reuse by requests */
+	@Option(name = "db_database_pool_size", param = Option.Param.INTEGER, type = Option.Type.OPTIONAL_ARGUMENT, usage = "Expert option: number of databases, with their mappers, that the FrontController keeps for reuse by later requests. Plugins must not keep a reference to the database of a request. Default: 0 (a new database per request)")
+	public int db_database_pool_size = 0;
+
+	/** Maximum number of connections of the connection pool */
+	@Option(name = "db_pool_max_active", param = Option.Param.INTEGER, type = Option.Type.OPTIONAL_ARGUMENT, usage = "Maximum number of connections that the connection pool opens to the database. Default: 8")
+	public int db_pool_max_active = 8;
+
+	/** Maximum number of idle connections of the connection pool */
+	@Option(name = "db_pool_max_idle", param = Option.Param.INTEGER, type = Option.Type.OPTIONAL_ARGUMENT, usage = "Maximum number of connections that the connection pool keeps open when they are not used. Default: 8")
+	public int db_pool_max_idle = 8;
+
+	/** Milliseconds to wait for a connection when all are in use */
+	@Option(name = "db_pool_max_wait", param = Option.Param.INTEGER, type = Option.Type.OPTIONAL_ARGUMENT, usage = "Milliseconds to wait for a free connection before failing, -1 waits indefinitely. Default: 30000")
+	public int db_pool_max_wait = 30000;
+
+	/** Number of prepared statements cached per connection */
+	@Option(name = "db_pool_statement_cache_size", param = Option.Param.INTEGER, type = Option.Type.OPTIONAL_ARGUMENT, usage = "Number of prepared statements that are cached per pooled connection, 0 disables the cache. Default: 100")
+	public int db_pool_statement_cache_size = 100;
+
+	/** Seconds after which a connection that was not returned is reclaimed */
+	@Option(name = "db_pool_leak_timeout", param = Option.Param.INTEGER, type = Option.Type.OPTIONAL_ARGUMENT, usage = "Expert option: seconds after which a connection that was not returned to the pool is logged as a leak and reclaimed, 0 disables leak detection. Default: 0")
+	public int db_pool_leak_timeout = 0;
+
+	/** Query to validate idle connections */
+	@Option(name = "db_pool_validation_query", param = Option.Param.STRING, type = Option.Type.OPTIONAL_ARGUMENT, usage = "Query to check that idle connections of the pool are still alive, e.g. 'SELECT 1'. Empty disables validation. Default: ''")
+	public String db_pool_validation_query = "";
+
+	/** Seconds between validations of idle connections */
+	@Option(name = "db_pool_validation_interval", param = Option.Param.INTEGER, type = Option.Type.OPTIONAL_ARGUMENT, usage = "Seconds between checks of the idle connections of the pool with db_pool_validation_query. Default: 60")
+	public int db_pool_validation_interval = 60;
+
 	/** TEST Database user */
 	@Option(name = "db_test_user", param = Option.Param.STRING, type = Option.Type.OPTIONAL_ARGUMENT, usage = "Username for the database. Default: ''")
 	public String db_test_user = "molgenis";
@@ -304,6 +348,10 @@ public class MolgenisOptions implements Serializable
 	@Option(name = "hibernate_search_index_base", param = Option.Param.STRING, type = Type.OPTIONAL_ARGUMENT, usage = "Directory where the full text index is created. Default: /tmp/lucene")
 	public String hibernate_search_index_base = "/tmp/lucene";
 
+	/** Use a full text index in hibernate_search_index_base for searches of the JDBC mappers */
+	@Option(name = "db_search_index", param = Option.Param.BOOLEAN, type = Option.Type.OPTIONAL_ARGUMENT, usage = "Expert option: answer searches of the JDBC mappers from a full text index in hibernate_search_index_base instead of scanning the tables. Changes made by other applications are not seen, so only use it when they don't change these tables. Default: false")
+	public boolean db_search_index = false;
+
 	@Option(name = "block_webspiders", param = Option.Param.BOOLEAN, type = Option.Type.OPTIONAL_ARGUMENT, usage = "Expert option: Block webcrawler user agents in FrontController")
 	public boolean block_webspiders = false;
 
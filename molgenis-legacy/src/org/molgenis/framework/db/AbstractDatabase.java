@@ -7,27 +7,31 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.molgenis.MolgenisFieldTypes;
 import org.molgenis.MolgenisOptions;
 import org.molgenis.framework.db.QueryRule.Operator;
 import org.molgenis.framework.db.jdbc.JDBCQueryGernatorUtil;
+import org.molgenis.framework.db.jdbc.SearchIndex;
 import org.molgenis.framework.security.Login;
+import org.molgenis.framework.security.RowLevelSecurityCache;
 import org.molgenis.framework.security.SimpleLogin;
 import org.molgenis.io.TupleReader;
 import org.molgenis.io.TupleWriter;
 import org.molgenis.model.elements.Field;
 import org.molgenis.model.elements.Model;
+import org.molgenis.util.CloseableIterator;
 import org.molgenis.util.Entity;
-import org.molgenis.util.tuple.CaseInsensitiveKeyValueTuple;
+import org.molgenis.util.tuple.CaseInsensitiveValueIndexTuple;
 import org.molgenis.util.tuple.EntityTuple;
 import org.molgenis.util.tuple.Tuple;
-import org.molgenis.util.tuple.WritableTuple;
 
 public abstract class AbstractDatabase implements Database
 {
@@ -35,9 +39,6 @@ public abstract class AbstractDatabase implements Database
 	/** Logger */
 	protected final Log logger = LogFactory.getLog(AbstractDatabase.class);
 
-	/** batch size */
-	protected static final int BATCH_SIZE = 500;
-
 	/** List of mappers, mapping entities backend */
 	protected Map<String, Mapper<? extends Entity>> mappers = new LinkedHashMap<String, Mapper<? extends Entity>>();
 
@@ -53,12 +54,30 @@ public abstract class AbstractDatabase implements Database
 	/** The security login used */
 	protected Login login;
 
+	/** Resolves foreign keys by label, caching them during a transaction */
+	protected final ForeignKeyResolver foreignKeyResolver = new ForeignKeyResolver(this);
+
+	/** entity classes that were added, updated or removed in this transaction */
+	private final Set<Class<? extends Entity>> changedEntityClasses = new LinkedHashSet<Class<? extends Entity>>();
+
+	/** whether users, groups or permissions were changed in this transaction */
+	private boolean securityChanged = false;
+
 	/** Default constructor */
 	public AbstractDatabase()
 	{
 		this.login = new SimpleLogin();
 	}
 
+	/**
+	 * @return the uri of the database, or null if it is unknown. Databases with
+	 *         the same uri share their cached counts.
+	 */
+	public String getUri()
+	{
+		return options != null ? options.db_uri : null;
+	}
+
 	@Override
 	public Model getMetaData() throws DatabaseException
 	{
@@ -77,6 +96,13 @@ public abstract class AbstractDatabase implements Database
 		return getMapperFor(klazz).find(rules);
 	}
 
+	@Override
+	public <E extends Entity> CloseableIterator<E> iterate(Class<E> entityClass, QueryRule... rules)
+			throws DatabaseException
+	{
+		return getMapperFor(entityClass).iterate(rules);
+	}
+
 	@Override
 	public <E extends Entity> void find(Class<E> entityClass, TupleWriter writer, QueryRule... rules)
 			throws DatabaseException
@@ -88,24 +114,7 @@ public abstract class AbstractDatabase implements Database
 	public <E extends Entity> void find(Class<E> entityClass, TupleWriter writer, List<String> fieldsToExport,
 			QueryRule... rules) throws DatabaseException
 	{
-		try
-		{
-			writer.writeColNames(fieldsToExport);
-			int count = 0;
-			for (Entity e : find(entityClass, rules))
-			{
-				writer.write(new EntityTuple(e));
-
-				count++;
-			}
-			if (logger.isDebugEnabled()) if (logger.isDebugEnabled()) logger.debug(String.format(
-					"find(%s, writer) wrote %s lines", entityClass.getSimpleName(), count));
-			writer.close();
-		}
-		catch (Exception ex)
-		{
-			throw new DatabaseException(ex);
-		}
+		this.getMapperFor(entityClass).find(writer, fieldsToExport, rules);
 	}
 
 	// @Override
@@ -151,6 +160,9 @@ public abstract class AbstractDatabase implements Database
 			stmt = conn.createStatement();
 			stmt.execute(sql);
 			success = true;
+			// the statement may have changed any table
+			CountCache.clear();
+			SearchIndex.invalidateAll();
 		}
 		catch (Exception e)
 		{
@@ -201,6 +213,8 @@ public abstract class AbstractDatabase implements Database
 		{
 			stmt = con.createStatement();
 			stmt.executeUpdate(sql);
+			CountCache.clear();
+			SearchIndex.invalidateAll();
 		}
 		catch (Exception e)
 		{
@@ -248,10 +262,6 @@ public abstract class AbstractDatabase implements Database
 		boolean keysMissing = false;
 		for (E entity : entities)
 		{
-			// get all the value of all keys (composite key)
-			// use an index to hash the entities
-			StringBuilder combinedKeyBuilder = new StringBuilder();
-
 			// extract its key values and put in map
 			Map<String, Object> keyValues = new LinkedHashMap<String, Object>();
 			boolean incompleteKey = true;
@@ -260,12 +270,8 @@ public abstract class AbstractDatabase implements Database
 			// least one key value.
 			for (String key : keyNames)
 			{
-				// create a hash that concats all key values into one string
-				combinedKeyBuilder.append(';');
-
 				if (entity.get(key) != null)
 				{
-					combinedKeyBuilder.append(entity.get(key));
 					incompleteKey = false;
 					keyValues.put(key, entity.get(key));
 				}
@@ -277,8 +283,8 @@ public abstract class AbstractDatabase implements Database
 			if (!keysMissing)
 			{
 				keyIndex.add(keyValues);
-				// create the entity index using the hash
-				entityIndex.put(combinedKeyBuilder.toString(), entity);
+				// create the entity index using the hash of all key values
+				entityIndex.put(createCompositeKey(entity, keyNames), entity);
 			}
 			else
 			{
@@ -302,46 +308,20 @@ public abstract class AbstractDatabase implements Database
 		List<E> existingEntities = new ArrayList<E>();
 		if (!keysMissing && keyIndex.size() > 0)
 		{
-			newEntities = new ArrayList<E>();
-			Query<E> q = this.query(getClassForEntity(entities.get(0)));
-
-			// in case of one field key, simply query
-			if (keyNames.length == 1)
+			// select existing entities in chunks, so the queries stay small
+			List<E> selectForUpdate = new ArrayList<E>();
+			for (int i = 0; i < keyIndex.size(); i += QueryRule.IN_CHUNK_SIZE)
 			{
-				List<Object> values = new ArrayList<Object>();
-				for (Map<String, Object> keyValues : keyIndex)
-				{
-					values.add(keyValues.get(keyNames[0]));
-				}
-				q.in(keyNames[0], values);
+				List<Map<String, Object>> chunk = keyIndex.subList(i,
+						Math.min(i + QueryRule.IN_CHUNK_SIZE, keyIndex.size()));
+				selectForUpdate.addAll(find(entityClass, createKeyRules(keyNames, chunk)));
 			}
-			// in case of composite key make massive 'OR' query
-			// form (key1 = x AND key2 = X) OR (key1=y AND key2=y)
-			else
-			{
-				// very expensive!
-				for (Map<String, Object> keyValues : keyIndex)
-				{
-					for (int i = 0; i < keyNames.length; i++)
-					{
-						if (i > 0) q.or();
-						q.equals(keyNames[i], keyValues.get(keyNames[i]));
-					}
-				}
-			}
-			List<E> selectForUpdate = q.find();
 
 			// separate existing from new entities
 			for (E p : selectForUpdate)
 			{
-				// reconstruct composite key so we can use the entityIndex
-				StringBuilder combinedKeyBuilder = new StringBuilder();
-				for (String key : keyNames)
-				{
-					combinedKeyBuilder.append(';').append(p.get(key));
-				}
 				// copy existing from entityIndex to existingEntities
-				entityIndex.remove(combinedKeyBuilder.toString());
+				entityIndex.remove(createCompositeKey(p, keyNames));
 				existingEntities.add(p);
 			}
 			// copy remaining to newEntities
@@ -451,49 +431,117 @@ public abstract class AbstractDatabase implements Database
 		}
 	}
 
+	/**
+	 * Creates a key of the values of the key fields of an entity, null values
+	 * are left empty
+	 */
+	private static String createCompositeKey(Entity entity, String[] keyNames)
+	{
+		StringBuilder combinedKeyBuilder = new StringBuilder();
+		for (String key : keyNames)
+		{
+			combinedKeyBuilder.append(';');
+			Object value = entity.get(key);
+			if (value != null) combinedKeyBuilder.append(value);
+		}
+		return combinedKeyBuilder.toString();
+	}
+
+	/**
+	 * Creates rules that select the entities with the given keys: an 'IN' for
+	 * a single field key, otherwise (key1 = x AND key2 = x) OR (key1 = y AND
+	 * key2 = y)
+	 */
+	private static QueryRule[] createKeyRules(String[] keyNames, List<Map<String, Object>> keyIndex)
+	{
+		if (keyNames.length == 1)
+		{
+			List<Object> values = new ArrayList<Object>(keyIndex.size());
+			for (Map<String, Object> keyValues : keyIndex)
+			{
+				values.add(keyValues.get(keyNames[0]));
+			}
+			return new QueryRule[]
+			{ new QueryRule(keyNames[0], Operator.IN, values) };
+		}
+
+		List<QueryRule> rules = new ArrayList<QueryRule>(keyIndex.size() * 2);
+		for (Map<String, Object> keyValues : keyIndex)
+		{
+			if (!rules.isEmpty()) rules.add(new QueryRule(Operator.OR));
+			List<QueryRule> keyRules = new ArrayList<QueryRule>(keyNames.length);
+			for (String keyName : keyNames)
+			{
+				keyRules.add(new QueryRule(keyName, Operator.EQUALS, keyValues.get(keyName)));
+			}
+			rules.add(new QueryRule(keyRules));
+		}
+		return rules.toArray(new QueryRule[rules.size()]);
+	}
+
+	/**
+	 * Copies the fields of the entities to the existing entities with the
+	 * same values for their label fields. The entities are indexed on their
+	 * label fields, so this takes time proportional to the size of both lists.
+	 */
 	public <E extends Entity> void matchByNameAndUpdateFields(List<E> existingEntities, List<E> entities)
 			throws DatabaseException
 	{
-		// List<E> updatedDbEntities = new ArrayList<E>();
+		// index of entities by label values, for each list of label fields
+		Map<List<String>, Map<List<Object>, List<E>>> indices = new HashMap<List<String>, Map<List<Object>, List<E>>>();
 		for (E entityInDb : existingEntities)
 		{
-			for (E newEntity : entities)
+			// FIXME very wrong! this assumes every data model has 'name' as
+			// secondary key.
+			List<String> labelFields = entityInDb.getLabelFields();
+			// check if there are any label fields otherwise check
+			// impossible
+			if (labelFields.size() == 0) continue;
+
+			Map<List<Object>, List<E>> index = indices.get(labelFields);
+			if (index == null)
 			{
-				// FIXME very wrong! this assumes every data model has 'name' as
-				// secondary key.
-				boolean match = false;
-				// check if there are any label fields otherwise check
-				// impossible
-				if (entityInDb.getLabelFields().size() > 0)
-				{
-					match = true;
-				}
-				for (String labelField : entityInDb.getLabelFields())
+				index = new HashMap<List<Object>, List<E>>();
+				for (E newEntity : entities)
 				{
-					Object x1 = entityInDb.get(labelField);
-					Object x2 = newEntity.get(labelField);
-
-					if (!x1.equals(x2))
+					List<Object> labelValues = getValues(newEntity, labelFields);
+					List<E> matches = index.get(labelValues);
+					if (matches == null)
 					{
-						match = false;
-						break;
+						matches = new ArrayList<E>(1);
+						index.put(labelValues, matches);
 					}
+					matches.add(newEntity);
+				}
+				indices.put(labelFields, index);
+			}
+
+			List<E> matches = index.get(getValues(entityInDb, labelFields));
+			if (matches == null) continue;
+			for (E newEntity : matches)
+			{
+				try
+				{
+					entityInDb.set(new EntityTuple(newEntity), false);
 				}
-				if (match)
+				catch (Exception ex)
 				{
-					try
-					{
-						entityInDb.set(new EntityTuple(newEntity), false);
-					}
-					catch (Exception ex)
-					{
-						throw new DatabaseException(ex);
-					}
+					throw new DatabaseException(ex);
 				}
 			}
 		}
 	}
 
+	private static List<Object> getValues(Entity entity, List<String> fields)
+	{
+		List<Object> values = new ArrayList<Object>(fields.size());
+		for (String field : fields)
+		{
+			values.add(entity.get(field));
+		}
+		return values;
+	}
+
 	@Override
 	public <E extends Entity> int add(E entity) throws DatabaseException
 	{
@@ -657,6 +705,65 @@ public abstract class AbstractDatabase implements Database
 		return fileSource;
 	}
 
+	/**
+	 * Resolver used by the mappers to resolve foreign keys by label, see
+	 * {@link Mapper#resolveForeignKeys(List)}
+	 */
+	public ForeignKeyResolver getForeignKeyResolver()
+	{
+		return foreignKeyResolver;
+	}
+
+	/**
+	 * Invalidate the cached counts of an entity class that was added, updated
+	 * or removed. Inside a transaction other requests can cache the old counts
+	 * until it is committed, so the counts are invalidated again when the
+	 * transaction ends, see {@link #invalidateChangedEntities()}.
+	 */
+	public void entitiesChanged(Class<? extends Entity> entityClass)
+	{
+		CountCache.invalidate(entityClass);
+		if (inTx()) changedEntityClasses.add(entityClass);
+	}
+
+	/**
+	 * Invalidate the cached row level security of all logins, because users,
+	 * groups or permissions were changed. Inside a transaction they are
+	 * invalidated again when it ends, like the counts of
+	 * {@link #entitiesChanged(Class)}.
+	 */
+	public void securityChanged()
+	{
+		RowLevelSecurityCache.invalidateAll();
+		if (inTx()) securityChanged = true;
+	}
+
+	/**
+	 * Invalidate the cached counts of the entity classes that were changed in
+	 * the transaction, and the row level security if it was changed. Called
+	 * by implementations when the transaction is committed or rolled back,
+	 * and when the database is closed.
+	 */
+	protected void invalidateChangedEntities()
+	{
+		for (Class<? extends Entity> entityClass : changedEntityClasses)
+			CountCache.invalidate(entityClass);
+		changedEntityClasses.clear();
+		if (securityChanged) RowLevelSecurityCache.invalidateAll();
+		securityChanged = false;
+	}
+
+	/**
+	 * Close the iterators of {@link #iterate(Class, QueryRule...)} that were
+	 * not read to the end or closed. Called by implementations that hold
+	 * resources for them when the database is closed, and by
+	 * {@link DatabasePool#release(Database)}.
+	 */
+	protected void closeIterators()
+	{
+		// no open iterators by default
+	}
+
 	@Override
 	public Login getLogin()
 	{
@@ -707,7 +814,7 @@ public abstract class AbstractDatabase implements Database
 	 * @throws DatabaseException
 	 */
 	@Override
-	public synchronized List<Tuple> sql(String sql, QueryRule... rules) throws DatabaseException
+	public List<Tuple> sql(String sql, QueryRule... rules) throws DatabaseException
 	{
 		ResultSet rs = null;
 		Statement stmt = null;
@@ -726,36 +833,14 @@ public abstract class AbstractDatabase implements Database
 			}
 			rs = stmt.executeQuery(allSql);
 
-			// get field types
-			java.sql.ResultSetMetaData metadata = rs.getMetaData();
-			int colcount = metadata.getColumnCount();
-
-			List<Field> fieldTypes = new ArrayList<Field>();
-			for (int i = 1; i <= colcount; i++)
-			{
-				if (metadata.getColumnName(i) == null)
-				{
-					System.out.println("column name for column " + i + " unknown,sql=" + sql);
-				}
-				Field f = new Field(metadata.getColumnLabel(i));
-				f.setType(MolgenisFieldTypes.getTypeBySqlTypesCode(metadata.getColumnType(i)));
-				fieldTypes.add(f);
-			}
+			// resolve column labels once, all rows share the same index
+			int colcount = rs.getMetaData().getColumnCount();
+			Map<String, Integer> colNamesIndex = CaseInsensitiveValueIndexTuple.createColNamesIndex(rs.getMetaData());
 
 			// transform result set in entity list
 			List<Tuple> tuples = new ArrayList<Tuple>();
-			if (rs != null)
-			{
-				while (rs.next())
-				{
-					WritableTuple tuple = new CaseInsensitiveKeyValueTuple();
-					for (int i = 1; i <= colcount; i++)
-					{
-						tuple.set(rs.getMetaData().getColumnLabel(i), rs.getObject(i));
-					}
-					tuples.add(tuple);
-				}
-			}
+			while (rs.next())
+				tuples.add(CaseInsensitiveValueIndexTuple.fromResultSet(rs, colNamesIndex, colcount));
 			rs.close();
 			rs = null;
 			stmt.close();
@@ -797,30 +882,67 @@ public abstract class AbstractDatabase implements Database
 		return find(entityClass, new QueryRule(Operator.SEARCH, searchString));
 	}
 
+	/**
+	 * {@inheritDoc}. The entities of each subclass are requeried together, in
+	 * chunks of {@link QueryRule#IN_CHUNK_SIZE} ids, instead of one by one.
+	 */
 	@Override
 	public <E extends Entity> List<? extends Entity> load(Class<E> superClass, List<E> entities)
 			throws DatabaseException
 	{
-		List<E> result = new ArrayList<E>();
+		// collect the ids of the entities of subclass type, by subclass
+		Map<String, List<Object>> idsBySubclass = new LinkedHashMap<String, List<Object>>();
+		String idField = null;
 		for (E e : entities)
 		{
-			if (e.get(Field.TYPE_FIELD).equals(superClass.getSimpleName()))
+			Object type = e.get(Field.TYPE_FIELD);
+			if (!type.equals(superClass.getSimpleName()) && superClass.isInstance(e))
 			{
-				// Entity is already of superclass type, ignore and add to
-				// results
-				result.add(e);
+				List<Object> ids = idsBySubclass.get(type.toString());
+				if (ids == null)
+				{
+					ids = new ArrayList<Object>();
+					idsBySubclass.put(type.toString(), ids);
+				}
+				ids.add(e.get(e.getIdField()));
+				// subclasses share the id field of their superclass
+				idField = e.getIdField();
+			}
+		}
+
+		// requery them, one query per subclass and chunk
+		Map<String, Map<Object, Entity>> subclassEntities = new HashMap<String, Map<Object, Entity>>();
+		for (Map.Entry<String, List<Object>> entry : idsBySubclass.entrySet())
+		{
+			@SuppressWarnings("unchecked")
+			Class<E> klazz = (Class<E>) this.getClassForName(entry.getKey());
+			Map<Object, Entity> byId = new HashMap<Object, Entity>();
+			List<Object> ids = entry.getValue();
+			for (int i = 0; i < ids.size(); i += QueryRule.IN_CHUNK_SIZE)
+			{
+				List<Object> chunk = ids.subList(i, Math.min(i + QueryRule.IN_CHUNK_SIZE, ids.size()));
+				for (E r : find(klazz, new QueryRule(idField, Operator.IN, chunk)))
+				{
+					byId.put(r.get(idField), r);
+				}
 			}
-			else if (superClass.isInstance(e))
+			subclassEntities.put(entry.getKey(), byId);
+		}
+
+		List<E> result = new ArrayList<E>();
+		for (E e : entities)
+		{
+			Map<Object, Entity> byId = subclassEntities.get(e.get(Field.TYPE_FIELD).toString());
+			if (byId != null && superClass.isInstance(e))
 			{
-				// Entity is of subclass type, requery and add to results
+				// Entity is of subclass type, add the requeried one
 				@SuppressWarnings("unchecked")
-				Class<E> klazz = (Class<E>) this.getClassForName(e.get(Field.TYPE_FIELD).toString());
-				E r = this.findById(klazz, e.get(e.getIdField()));
+				E r = (E) byId.get(e.get(e.getIdField()));
 				result.add(r);
 			}
 			else
 			{
-				// Entity is not a subclass or the superclass itself, ignore and
+				// Entity is already of superclass type or not a subclass of it,
 				// add to results
 				result.add(e);
 			}
@@ -4,6 +4,7 @@ import java.io.File;
 import java.io.IOException;
 import java.sql.SQLException;
 import java.text.ParseException;
+import java.util.Iterator;
 import java.util.List;
 
 import org.apache.log4j.Logger;
@@ -91,6 +92,16 @@ public abstract class AbstractMapper<E extends Entity> implements Mapper<E>
 	@Override
 	public abstract int executeRemove(List<? extends E> entities) throws DatabaseException;
 
+	/**
+	 * Counts the entities matching the rules in the database. The rules don't
+	 * contain sorting, limit or offset, see {@link CountCache#normalize}.
+	 * 
+	 * @param rules
+	 * @return count
+	 * @throws DatabaseException
+	 */
+	protected abstract int executeCount(QueryRule... rules) throws DatabaseException;
+
 	/**
 	 * Foreign key values may be only given via the 'label'. This function
 	 * allows resolves the underlying references for a list of entities.
@@ -127,6 +138,51 @@ public abstract class AbstractMapper<E extends Entity> implements Mapper<E>
 	public abstract void removeMrefs(List<E> entities) throws SQLException, IOException, DatabaseException,
 			ParseException;
 
+	/**
+	 * {@inheritDoc}. Counts are reused from the {@link CountCache} until they
+	 * expire or entities of this class are changed. Inside a transaction the
+	 * cache is bypassed because the count may include uncommitted changes.
+	 */
+	@Override
+	public int count(QueryRule... rules) throws DatabaseException
+	{
+		boolean cacheable = !getDatabase().inTx();
+		Class<? extends Entity> entityClass = create().getClass();
+		if (cacheable)
+		{
+			Integer count = CountCache.get(getDatabase(), entityClass, rules);
+			if (count != null) return count;
+		}
+
+		int count = executeCount(CountCache.normalize(rules));
+		if (cacheable) CountCache.put(getDatabase(), entityClass, count, rules);
+		return count;
+	}
+
+	/**
+	 * Invalidate the cached counts of this entity after a change. When the
+	 * change is part of a transaction of an {@link AbstractDatabase}, they are
+	 * invalidated again when that transaction ends.
+	 */
+	private void invalidateCounts()
+	{
+		Class<? extends Entity> entityClass = create().getClass();
+		Database db = getDatabase();
+		if (db instanceof AbstractDatabase) ((AbstractDatabase) db).entitiesChanged(entityClass);
+		else
+			CountCache.invalidate(entityClass);
+	}
+
+	/**
+	 * Resolver for {@link #resolveForeignKeys(List)}. The resolver of an
+	 * {@link AbstractDatabase} caches resolved labels during a transaction.
+	 */
+	protected ForeignKeyResolver getForeignKeyResolver()
+	{
+		if (database instanceof AbstractDatabase) return ((AbstractDatabase) database).getForeignKeyResolver();
+		return new ForeignKeyResolver(database);
+	}
+
 	@Override
 	public void find(TupleWriter writer, QueryRule... rules) throws DatabaseException
 	{
@@ -159,11 +215,12 @@ public abstract class AbstractMapper<E extends Entity> implements Mapper<E>
 			// insert this class in batches
 			for (int i = 0; i < entities.size(); i += BATCH_SIZE)
 			{
-				// attempt to resolve foreign keys by label (ie. 'name')
-				this.resolveForeignKeys(entities);
-
 				int endindex = Math.min(i + BATCH_SIZE, entities.size());
 				List<E> sublist = entities.subList(i, endindex);
+
+				// attempt to resolve foreign keys by label (ie. 'name')
+				this.resolveForeignKeys(sublist);
+
 				updatedRows += this.executeAdd(sublist);
 			}
 
@@ -189,6 +246,11 @@ public abstract class AbstractMapper<E extends Entity> implements Mapper<E>
 			logger.error("ADD failed on " + this.create().getClass().getSimpleName() + ": " + sqle.getMessage());
 			throw new DatabaseException(sqle);
 		}
+		finally
+		{
+			// counts of this entity may have changed
+			invalidateCounts();
+		}
 	}
 
 	@Override
@@ -204,23 +266,23 @@ public abstract class AbstractMapper<E extends Entity> implements Mapper<E>
 		{
 			if (privateTx) getDatabase().beginTx();
 
-			List<E> entities = toList(reader, BATCH_SIZE);
+			// parse, add and write one batch at a time
+			Iterator<Tuple> tuples = reader.iterator();
+			List<E> entities = toList(tuples, BATCH_SIZE);
 
-			if (writer != null) writer.writeColNames(new EntityTuple(entities.get(0)).getColNames());
+			if (writer != null && entities.size() > 0) writer.writeColNames(new EntityTuple(entities.get(0))
+					.getColNames());
 
 			while (entities.size() > 0)
 			{
-				// resolve foreign keys
-				this.resolveForeignKeys(entities);
-
-				// add to the database
+				// add to the database, this also resolves the foreign keys
 				rowsAffected += getDatabase().add(entities);
 				if (writer != null)
 				{
 					for (E entity : entities)
 						writer.write(new EntityTuple(entity));
 				}
-				entities = toList(reader, BATCH_SIZE);
+				entities = toList(tuples, BATCH_SIZE);
 			}
 
 			if (privateTx) getDatabase().commitTx();
@@ -230,6 +292,11 @@ public abstract class AbstractMapper<E extends Entity> implements Mapper<E>
 			if (privateTx) getDatabase().rollbackTx();
 			throw new DatabaseException("add(" + create().getClass().getSimpleName() + ") failed: " + e.getMessage(), e);
 		}
+		finally
+		{
+			// counts of this entity may have changed
+			invalidateCounts();
+		}
 		return rowsAffected;
 	}
 
@@ -286,6 +353,12 @@ public abstract class AbstractMapper<E extends Entity> implements Mapper<E>
 			throw new DatabaseException("Update(" + create().getClass().getSimpleName() + ") failed: "
 					+ sqle.getMessage(), sqle);
 		}
+		finally
+		{
+			// counts and labels of this entity may have changed
+			invalidateCounts();
+			getForeignKeyResolver().invalidate(create().getClass());
+		}
 	}
 
 	@Override
@@ -301,15 +374,14 @@ public abstract class AbstractMapper<E extends Entity> implements Mapper<E>
 		{
 			if (privateTx) getDatabase().beginTx();
 
-			List<E> entities = toList(reader, BATCH_SIZE);
+			// parse and update one batch at a time
+			Iterator<Tuple> tuples = reader.iterator();
+			List<E> entities = toList(tuples, BATCH_SIZE);
 			while (entities.size() > 0)
 			{
-				// resolve foreign keys
-				this.resolveForeignKeys(entities);
-
-				// update to the database
+				// update to the database, this also resolves the foreign keys
 				rowsAffected += getDatabase().update(entities);
-				entities = toList(reader, BATCH_SIZE);
+				entities = toList(tuples, BATCH_SIZE);
 			}
 
 			if (privateTx) getDatabase().commitTx();
@@ -320,6 +392,11 @@ public abstract class AbstractMapper<E extends Entity> implements Mapper<E>
 			throw new DatabaseException(
 					"update(" + create().getClass().getSimpleName() + ") failed: " + e.getMessage(), e);
 		}
+		finally
+		{
+			// counts of this entity may have changed
+			invalidateCounts();
+		}
 		return rowsAffected;
 	}
 
@@ -372,6 +449,12 @@ public abstract class AbstractMapper<E extends Entity> implements Mapper<E>
 			throw new DatabaseException("remove(" + create().getClass().getSimpleName() + ") failed: "
 					+ sqle.getMessage(), sqle);
 		}
+		finally
+		{
+			// counts and labels of this entity may have changed
+			invalidateCounts();
+			getForeignKeyResolver().invalidate(create().getClass());
+		}
 	}
 
 	@Override
@@ -383,15 +466,14 @@ public abstract class AbstractMapper<E extends Entity> implements Mapper<E>
 		{
 			if (privateTx) getDatabase().beginTx();
 
-			List<E> entities = toList(reader, BATCH_SIZE);
+			// parse and remove one batch at a time
+			Iterator<Tuple> tuples = reader.iterator();
+			List<E> entities = toList(tuples, BATCH_SIZE);
 			while (entities.size() > 0)
 			{
-				// resolve foreign keys
-				this.resolveForeignKeys(entities);
-
-				// update to the database
+				// remove from the database, this also resolves the foreign keys
 				rowsAffected += getDatabase().remove(entities);
-				entities = toList(reader, BATCH_SIZE);
+				entities = toList(tuples, BATCH_SIZE);
 			}
 
 			if (privateTx) getDatabase().commitTx();
@@ -402,22 +484,42 @@ public abstract class AbstractMapper<E extends Entity> implements Mapper<E>
 			throw new DatabaseException(
 					"remove(" + create().getClass().getSimpleName() + ") failed: " + e.getMessage(), e);
 		}
+		finally
+		{
+			// counts of this entity may have changed
+			invalidateCounts();
+		}
 		return rowsAffected;
 	}
 
 	@Override
-	// FIXME: limit argument is never used?
 	public List<E> toList(TupleReader reader, int limit) throws DatabaseException
 	{
-		// note to self: removed close-check hack, does this have side effects?
+		return toList(reader.iterator(), limit);
+	}
 
-		final List<E> entities = createList(10); // TODO why 10?
+	/**
+	 * Parses at most <code>limit</code> tuples into entities. The iterator is
+	 * left at the next tuple, so calling this method again returns the next
+	 * batch. This matters because some readers restart at the first row for
+	 * each {@link TupleReader#iterator()}.
+	 * 
+	 * @param tuples
+	 * @param limit
+	 *            maximum number of entities, 0 or less for all
+	 * @return entities, empty when the iterator is exhausted
+	 * @throws DatabaseException
+	 */
+	protected List<E> toList(Iterator<Tuple> tuples, int limit) throws DatabaseException
+	{
+		final List<E> entities = createList(limit > 0 ? limit : 10);
 		try
 		{
-			for (Tuple row : reader) // TODO should limit not be used somehow?
+			// check the limit before hasNext(), which may read ahead
+			while ((limit <= 0 || entities.size() < limit) && tuples.hasNext())
 			{
 				E e = create();
-				e.set(row, false); // parse the tuple
+				e.set(tuples.next(), false); // parse the tuple
 				entities.add(e);
 			}
 		}
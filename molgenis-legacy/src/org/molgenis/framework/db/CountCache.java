@@ -0,0 +1,261 @@
+package org.molgenis.framework.db;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.molgenis.framework.db.QueryRule.Operator;
+import org.molgenis.util.Entity;
+
+/**
+ * Cache of entity counts, keyed by database, entity class and filter rules.
+ * <p>
+ * Pagers and grids count the entities matching their filters on every page
+ * that is shown, which on large tables costs more than retrieving the page
+ * itself. {@link AbstractMapper#count(QueryRule...)} therefore remembers each
+ * count for {@link #getTimeToLive()} milliseconds. Counts of an entity are
+ * invalidated when entities of that class, a superclass or a subclass are
+ * added, updated or removed through {@link AbstractMapper}, and again when the
+ * transaction of such a change ends, see
+ * {@link AbstractDatabase#entitiesChanged(Class)}. Changes made by plain SQL or
+ * by other applications become visible when the count expires.
+ * <p>
+ * Sorting, limit and offset rules do not change the number of matching
+ * entities, so they are ignored, see {@link #normalize(QueryRule...)}.
+ * <p>
+ * Optionally, counts can be estimated by stopping to count at
+ * {@link #getEstimateCap()} entities. Mappers that support this then return
+ * the cap instead of the exact count for larger results.
+ */
+public class CountCache
+{
+	private static final Logger logger = Logger.getLogger(CountCache.class);
+
+	/** default time to live of a count in milliseconds */
+	public static final long DEFAULT_TIME_TO_LIVE = 10000;
+
+	/** maximum number of cached counts, over all entities */
+	public static final int MAX_COUNTS = 1000;
+
+	/** time to live of a count in milliseconds, 0 disables the cache */
+	private static volatile long timeToLive = DEFAULT_TIME_TO_LIVE;
+
+	/** number of entities to stop counting at, 0 means exact counts */
+	private static volatile int estimateCap = 0;
+
+	/** cached counts, least recently used first */
+	private static final Map<String, CachedCount> counts = new LinkedHashMap<String, CachedCount>(16, 0.75f, true)
+	{
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, CachedCount> eldest)
+		{
+			return size() > MAX_COUNTS;
+		}
+	};
+
+	private CountCache()
+	{
+	}
+
+	public static long getTimeToLive()
+	{
+		return timeToLive;
+	}
+
+	/**
+	 * @param timeToLive
+	 *            time in milliseconds a count is reused, 0 disables the cache
+	 */
+	public static void setTimeToLive(long timeToLive)
+	{
+		CountCache.timeToLive = Math.max(timeToLive, 0);
+		if (timeToLive <= 0) clear();
+	}
+
+	public static int getEstimateCap()
+	{
+		return estimateCap;
+	}
+
+	/**
+	 * Counts that were computed with another cap are not reused.
+	 * 
+	 * @param estimateCap
+	 *            number of entities to stop counting at, 0 for exact counts
+	 */
+	public static void setEstimateCap(int estimateCap)
+	{
+		CountCache.estimateCap = Math.max(estimateCap, 0);
+	}
+
+	/**
+	 * Get a cached count
+	 *
+	 * @return the count or null if not cached or expired
+	 */
+	public static Integer get(Database db, Class<? extends Entity> entityClass, QueryRule... rules)
+	{
+		if (timeToLive <= 0) return null;
+		String key = createKey(db, entityClass, rules);
+		synchronized (counts)
+		{
+			CachedCount cached = counts.get(key);
+			if (cached == null) return null;
+			if (System.currentTimeMillis() - cached.created > timeToLive)
+			{
+				counts.remove(key);
+				return null;
+			}
+			logger.debug("count cache hit: " + key);
+			return cached.count;
+		}
+	}
+
+	/**
+	 * Put a count in the cache
+	 */
+	public static void put(Database db, Class<? extends Entity> entityClass, int count, QueryRule... rules)
+	{
+		if (timeToLive <= 0) return;
+		String key = createKey(db, entityClass, rules);
+		synchronized (counts)
+		{
+			counts.put(key, new CachedCount(entityClass, count));
+		}
+	}
+
+	/**
+	 * Remove the counts of the entity class and of its super- and subclasses,
+	 * because changing an entity changes the tables of all of them.
+	 */
+	public static void invalidate(Class<? extends Entity> entityClass)
+	{
+		synchronized (counts)
+		{
+			for (Iterator<CachedCount> it = counts.values().iterator(); it.hasNext();)
+			{
+				Class<? extends Entity> cachedClass = it.next().entityClass;
+				if (cachedClass.isAssignableFrom(entityClass) || entityClass.isAssignableFrom(cachedClass)) it.remove();
+			}
+		}
+	}
+
+	/** Remove all counts */
+	public static void clear()
+	{
+		synchronized (counts)
+		{
+			counts.clear();
+		}
+	}
+
+	/**
+	 * Remove the rules that don't change the number of matching entities:
+	 * sorting, limit, offset and last.
+	 */
+	public static QueryRule[] normalize(QueryRule... rules)
+	{
+		if (rules == null) return new QueryRule[0];
+		List<QueryRule> result = new ArrayList<QueryRule>(rules.length);
+		for (QueryRule rule : rules)
+		{
+			if (rule == null) continue;
+			Operator operator = rule.getOperator();
+			if (operator == Operator.SORTASC || operator == Operator.SORTDESC || operator == Operator.LIMIT
+					|| operator == Operator.OFFSET || operator == Operator.LAST) continue;
+			result.add(rule);
+		}
+		return result.toArray(new QueryRule[result.size()]);
+	}
+
+	/**
+	 * The key is a string so later changes to the rules don't affect the cache.
+	 * It contains the uri of the database, or the identity of the database if
+	 * its uri is unknown, the estimate cap, the entity class and a canonical
+	 * form of the rules.
+	 */
+	static String createKey(Database db, Class<? extends Entity> entityClass, QueryRule... rules)
+	{
+		String uri = db instanceof AbstractDatabase ? ((AbstractDatabase) db).getUri() : null;
+		StringBuilder key = new StringBuilder();
+		if (uri != null) appendValue(key, uri);
+		else
+			key.append(db == null ? "null" : db.getClass().getName() + '@' + System.identityHashCode(db));
+		key.append('|').append(estimateCap).append('|').append(entityClass.getName());
+		for (QueryRule rule : normalize(rules))
+		{
+			key.append('|');
+			appendRule(key, rule);
+		}
+		return key.toString();
+	}
+
+	/** operator(field,value[nested rules]) */
+	private static void appendRule(StringBuilder key, QueryRule rule)
+	{
+		key.append(rule.getOperator().name()).append('(');
+		appendValue(key, rule.getField());
+		key.append(',');
+		appendValue(key, rule.getValue());
+		QueryRule[] nestedRules = rule.getNestedRules();
+		if (nestedRules != null)
+		{
+			key.append('[');
+			for (QueryRule nestedRule : nestedRules)
+			{
+				if (nestedRule != null) appendRule(key, nestedRule);
+				key.append(';');
+			}
+			key.append(']');
+		}
+		key.append(')');
+	}
+
+	/**
+	 * Appends the elements of arrays and collections, and other values as
+	 * their type and length prefixed string, so no two values collide.
+	 */
+	private static void appendValue(StringBuilder key, Object value)
+	{
+		if (value == null)
+		{
+			key.append('-');
+		}
+		else if (value instanceof Object[] || value instanceof Collection<?>)
+		{
+			key.append('{');
+			for (Object element : value instanceof Object[] ? Arrays.asList((Object[]) value) : (Collection<?>) value)
+			{
+				appendValue(key, element);
+				key.append(';');
+			}
+			key.append('}');
+		}
+		else
+		{
+			String str = value instanceof Date ? String.valueOf(((Date) value).getTime()) : value.toString();
+			key.append(value.getClass().getSimpleName()).append(':').append(str.length()).append(':').append(str);
+		}
+	}
+
+	private static class CachedCount
+	{
+		final Class<? extends Entity> entityClass;
+		final int count;
+		final long created = System.currentTimeMillis();
+
+		CachedCount(Class<? extends Entity> entityClass, int count)
+		{
+			this.entityClass = entityClass;
+			this.count = count;
+		}
+	}
+}
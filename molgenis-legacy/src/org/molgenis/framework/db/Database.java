@@ -28,6 +28,7 @@ import org.molgenis.framework.security.Login;
 import org.molgenis.io.TupleReader;
 import org.molgenis.io.TupleWriter;
 import org.molgenis.model.elements.Model;
+import org.molgenis.util.CloseableIterator;
 import org.molgenis.util.Entity;
 import org.molgenis.util.tuple.Tuple;
 
@@ -149,6 +150,26 @@ public interface Database extends Closeable
 	 */
 	public <E extends Entity> List<E> find(Class<E> klazz, QueryRule... rules) throws DatabaseException;
 
+	/**
+	 * Execute the query on a database, lazily.
+	 * 
+	 * Unlike {@link #find(Class, QueryRule...)} the entities are not loaded in
+	 * one go but read from the database while iterating, so arbitrarily large
+	 * results can be processed in constant memory. The returned iterator holds
+	 * database resources and must be closed after use.
+	 * 
+	 * @param <E>
+	 *            type of entity to be retrieved
+	 * @param entityClass
+	 *            type of entity to be retrieved
+	 * @param rules
+	 *            to filter or otherwise change result
+	 * @return iterator over the entity objects
+	 * @throws DatabaseException
+	 */
+	public <E extends Entity> CloseableIterator<E> iterate(Class<E> entityClass, QueryRule... rules)
+			throws DatabaseException;
+
 	/**
 	 * Find all entities of type entityClass and write them to a csv file.
 	 * 
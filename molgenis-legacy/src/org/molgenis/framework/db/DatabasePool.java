@@ -0,0 +1,168 @@
+package org.molgenis.framework.db;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.molgenis.framework.security.SimpleLogin;
+
+/**
+ * Pool of {@link Database} instances, used by the front controllers to give
+ * each request a database.
+ * <p>
+ * Creating a database also creates a mapper (and decorators) for every entity
+ * of the model. The pool keeps up to {@link #getMaxIdle()} released databases,
+ * with their mappers, to hand out to the next requests. Databases should
+ * therefore be created on a DataSource, so they borrow a connection when they
+ * first need one and return it when they are released, see
+ * {@link #release(Database)}. A pool with a maximum of 0 idle databases
+ * creates a new database for each request.
+ * <p>
+ * A database may only be used by the request that borrowed it: references to
+ * it must not be kept after it is released.
+ */
+public class DatabasePool
+{
+	private static final Logger logger = Logger.getLogger(DatabasePool.class);
+
+	/** Creates the databases of a pool */
+	public interface Factory
+	{
+		public Database create() throws DatabaseException;
+	}
+
+	private final Factory factory;
+	private final int maxIdle;
+	private final BlockingQueue<Database> idle;
+
+	/** number of databases borrowed and not released */
+	private final AtomicInteger active = new AtomicInteger();
+	private final AtomicLong created = new AtomicLong();
+	private final AtomicLong borrowed = new AtomicLong();
+
+	/**
+	 * @param factory
+	 *            creates the databases
+	 * @param maxIdle
+	 *            maximum number of released databases to keep for reuse
+	 */
+	public DatabasePool(Factory factory, int maxIdle)
+	{
+		if (factory == null) throw new IllegalArgumentException("factory cannot be null");
+		this.factory = factory;
+		this.maxIdle = Math.max(maxIdle, 0);
+		this.idle = new LinkedBlockingQueue<Database>(Math.max(this.maxIdle, 1));
+	}
+
+	/**
+	 * Get an idle database, or create one if there is none. The login of a
+	 * reused database is reset to a {@link SimpleLogin}, like that of a new
+	 * database, so it must be set for the request.
+	 */
+	public Database borrow() throws DatabaseException
+	{
+		Database db = idle.poll();
+		if (db == null)
+		{
+			db = factory.create();
+			created.incrementAndGet();
+		}
+		borrowed.incrementAndGet();
+		active.incrementAndGet();
+		return db;
+	}
+
+	/**
+	 * Return a database to the pool. Its iterators and connection are closed,
+	 * and a transaction that is still open is rolled back and the database is
+	 * not reused. The login and the cached foreign keys of a database that is
+	 * reused are reset, so the next request does not see them.
+	 */
+	public void release(Database db)
+	{
+		if (db == null) return;
+		active.decrementAndGet();
+		boolean reusable = maxIdle > 0;
+		try
+		{
+			// ends the transactions of cursors that were not read to the end
+			if (db instanceof AbstractDatabase) ((AbstractDatabase) db).closeIterators();
+			if (db.inTx())
+			{
+				logger.warn("rolling back transaction that was left open by the request");
+				reusable = false;
+				db.rollbackTx();
+			}
+		}
+		catch (Exception e)
+		{
+			logger.error("rollback of released database failed: " + e.getMessage());
+		}
+		try
+		{
+			db.close();
+		}
+		catch (Exception e)
+		{
+			logger.error("closing released database failed: " + e.getMessage());
+			reusable = false;
+		}
+		if (reusable && idle.size() < maxIdle)
+		{
+			reset(db);
+			idle.offer(db);
+		}
+	}
+
+	private void reset(Database db)
+	{
+		db.setLogin(new SimpleLogin());
+		if (db instanceof AbstractDatabase) ((AbstractDatabase) db).getForeignKeyResolver().clear();
+	}
+
+	public int getMaxIdle()
+	{
+		return maxIdle;
+	}
+
+	/**
+	 * @return number of databases that are borrowed and not released
+	 */
+	public int getNumActive()
+	{
+		return active.get();
+	}
+
+	/**
+	 * @return number of released databases that are kept for reuse
+	 */
+	public int getNumIdle()
+	{
+		return idle.size();
+	}
+
+	/**
+	 * @return number of databases created by this pool
+	 */
+	public long getCreatedCount()
+	{
+		return created.get();
+	}
+
+	/**
+	 * @return number of times a database was borrowed from this pool
+	 */
+	public long getBorrowedCount()
+	{
+		return borrowed.get();
+	}
+
+	@Override
+	public String toString()
+	{
+		return "DatabasePool(active=" + getNumActive() + ", idle=" + getNumIdle() + "/" + maxIdle + ", created="
+				+ getCreatedCount() + ", borrowed=" + getBorrowedCount() + ")";
+	}
+}
@@ -0,0 +1,194 @@
+package org.molgenis.framework.db;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.molgenis.framework.db.QueryRule.Operator;
+import org.molgenis.util.Entity;
+
+/**
+ * Resolves foreign keys from labels (e.g. 'name') to ids, used by the
+ * generated {@link Mapper#resolveForeignKeys(List)}.
+ * <p>
+ * The labels of a batch are looked up with IN queries of at most
+ * {@link QueryRule#IN_CHUNK_SIZE} values, so that the queries stay below the
+ * parameter limits of the JDBC drivers. Within a transaction the resolved ids
+ * are kept in a least recently used cache of at most {@link #MAX_CACHED_KEYS}
+ * labels per referenced entity, so that labels used by many entities and
+ * batches are queried only once. The cache is cleared when the transaction
+ * ends and when entities of a referenced class are updated or removed.
+ */
+public class ForeignKeyResolver
+{
+	private static final Logger logger = Logger.getLogger(ForeignKeyResolver.class);
+
+	/** maximum number of cached labels per referenced entity */
+	public static final int MAX_CACHED_KEYS = 50000;
+
+	private final Database database;
+
+	/** ids by label key, by referenced entity, xref field and label fields */
+	private final Map<Class<? extends Entity>, Map<String, Object>> cache = new HashMap<Class<? extends Entity>, Map<String, Object>>();
+
+	public ForeignKeyResolver(Database database)
+	{
+		this.database = database;
+	}
+
+	/**
+	 * Resolve labels to ids.
+	 *
+	 * @param xrefEntityClass
+	 *            referenced entity
+	 * @param xrefField
+	 *            field of the referenced entity that is referred to (usually
+	 *            the id)
+	 * @param labelFields
+	 *            fields of the referenced entity that together identify it
+	 * @param labels
+	 *            values of the label fields, one array for each reference
+	 * @return ids by label key, see {@link #createKey(Object[])}. Unknown
+	 *         labels are left out.
+	 * @throws DatabaseException
+	 */
+	public <X extends Entity> Map<String, Object> resolve(Class<X> xrefEntityClass, String xrefField,
+			String[] labelFields, Collection<Object[]> labels) throws DatabaseException
+	{
+		Map<String, Object> result = new HashMap<String, Object>();
+		String cachePrefix = createCachePrefix(xrefField, labelFields);
+		// only cache within a transaction, so changes can be tracked
+		Map<String, Object> cachedIds = database.inTx() ? getCache(xrefEntityClass) : null;
+
+		// unique labels that are not cached
+		Map<String, Object[]> missing = new LinkedHashMap<String, Object[]>();
+		for (Object[] label : labels)
+		{
+			String key = createKey(label);
+			if ("".equals(key) || result.containsKey(key) || missing.containsKey(key)) continue;
+			Object id = cachedIds != null ? cachedIds.get(cachePrefix + key) : null;
+			if (id != null) result.put(key, id);
+			else
+				missing.put(key, label);
+		}
+		if (missing.isEmpty()) return result;
+
+		// query the others in chunks
+		List<Object[]> chunk = new ArrayList<Object[]>(Math.min(missing.size(), QueryRule.IN_CHUNK_SIZE));
+		for (Iterator<Object[]> it = missing.values().iterator(); it.hasNext();)
+		{
+			chunk.add(it.next());
+			if (chunk.size() == QueryRule.IN_CHUNK_SIZE || !it.hasNext())
+			{
+				for (X xref : database.find(xrefEntityClass, createRules(labelFields, chunk)))
+				{
+					Object[] label = new Object[labelFields.length];
+					for (int i = 0; i < labelFields.length; i++)
+						label[i] = xref.get(labelFields[i]);
+					String key = createKey(label);
+					Object id = xref.get(xrefField);
+					result.put(key, id);
+					if (cachedIds != null) cachedIds.put(cachePrefix + key, id);
+				}
+				chunk.clear();
+			}
+		}
+
+		if (logger.isDebugEnabled()) logger.debug("resolved " + missing.size() + " "
+				+ xrefEntityClass.getSimpleName() + " labels with "
+				+ ((missing.size() - 1) / QueryRule.IN_CHUNK_SIZE + 1) + " queries");
+		return result;
+	}
+
+	/**
+	 * The key of a label is the concatenation of its non-null values.
+	 */
+	public static String createKey(Object... label)
+	{
+		StringBuilder key = new StringBuilder();
+		for (Object value : label)
+		{
+			if (value != null) key.append(value);
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Remove the cached ids of the entity class and of its super- and
+	 * subclasses, e.g. because their labels were changed.
+	 */
+	public void invalidate(Class<? extends Entity> entityClass)
+	{
+		for (Iterator<Class<? extends Entity>> it = cache.keySet().iterator(); it.hasNext();)
+		{
+			Class<? extends Entity> cachedClass = it.next();
+			if (cachedClass.isAssignableFrom(entityClass) || entityClass.isAssignableFrom(cachedClass)) it.remove();
+		}
+	}
+
+	/** Remove all cached ids, e.g. because a transaction ended */
+	public void clear()
+	{
+		cache.clear();
+	}
+
+	private Map<String, Object> getCache(Class<? extends Entity> xrefEntityClass)
+	{
+		Map<String, Object> cachedIds = cache.get(xrefEntityClass);
+		if (cachedIds == null)
+		{
+			cachedIds = new LinkedHashMap<String, Object>(16, 0.75f, true)
+			{
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, Object> eldest)
+				{
+					return size() > MAX_CACHED_KEYS;
+				}
+			};
+			cache.put(xrefEntityClass, cachedIds);
+		}
+		return cachedIds;
+	}
+
+	private static String createCachePrefix(String xrefField, String[] labelFields)
+	{
+		StringBuilder prefix = new StringBuilder(xrefField);
+		for (String labelField : labelFields)
+			prefix.append(',').append(labelField);
+		return prefix.append('|').toString();
+	}
+
+	/**
+	 * Create rules that select the referenced entities with the labels, using
+	 * IN for a single label field and a disjunction of conjunctions otherwise.
+	 */
+	private static QueryRule[] createRules(String[] labelFields, List<Object[]> labels)
+	{
+		if (labelFields.length == 1)
+		{
+			List<Object> values = new ArrayList<Object>(labels.size());
+			for (Object[] label : labels)
+				values.add(label[0]);
+			return new QueryRule[]
+			{ new QueryRule(labelFields[0], Operator.IN, values) };
+		}
+
+		List<QueryRule> rules = new ArrayList<QueryRule>(labels.size() * 2);
+		for (Object[] label : labels)
+		{
+			if (!rules.isEmpty()) rules.add(new QueryRule(Operator.OR));
+			List<QueryRule> labelRules = new ArrayList<QueryRule>(labelFields.length);
+			for (int i = 0; i < labelFields.length; i++)
+				labelRules.add(new QueryRule(labelFields[i], Operator.EQUALS, label[i]));
+			rules.add(new QueryRule(labelRules));
+		}
+		return rules.toArray(new QueryRule[rules.size()]);
+	}
+}
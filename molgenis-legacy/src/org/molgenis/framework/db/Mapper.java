@@ -6,6 +6,7 @@ import java.util.List;
 import org.molgenis.fieldtypes.FieldType;
 import org.molgenis.io.TupleReader;
 import org.molgenis.io.TupleWriter;
+import org.molgenis.util.CloseableIterator;
 import org.molgenis.util.Entity;
 
 /**
@@ -29,6 +30,9 @@ public interface Mapper<E extends Entity>
 	/** Implementation of {@link Database#find(Class, QueryRule...)} */
 	public List<E> find(QueryRule... rules) throws DatabaseException;
 
+	/** Implementation of {@link Database#iterate(Class, QueryRule...)} */
+	public CloseableIterator<E> iterate(QueryRule... rules) throws DatabaseException;
+
 	/** Implementation of {@link Database#find(Class, TupleWriter, QueryRule...)} */
 	public void find(TupleWriter writer, QueryRule... rules) throws DatabaseException;
 
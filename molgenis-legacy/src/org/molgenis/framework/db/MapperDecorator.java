@@ -6,6 +6,7 @@ import java.util.List;
 import org.molgenis.fieldtypes.FieldType;
 import org.molgenis.io.TupleReader;
 import org.molgenis.io.TupleWriter;
+import org.molgenis.util.CloseableIterator;
 import org.molgenis.util.Entity;
 
 public class MapperDecorator<E extends Entity> implements Mapper<E>
@@ -53,6 +54,12 @@ public class MapperDecorator<E extends Entity> implements Mapper<E>
 		return mapper.find(rules);
 	}
 
+	@Override
+	public CloseableIterator<E> iterate(QueryRule... rules) throws DatabaseException
+	{
+		return mapper.iterate(rules);
+	}
+
 	@Override
 	public void find(TupleWriter writer, QueryRule... rules) throws DatabaseException
 	{
@@ -4,6 +4,7 @@ import java.text.ParseException;
 import java.util.List;
 
 import org.molgenis.io.TupleWriter;
+import org.molgenis.util.CloseableIterator;
 import org.molgenis.util.Entity;
 
 /**
@@ -203,6 +204,18 @@ public interface Query<E extends Entity>
 	 */
 	public List<E> find() throws DatabaseException;
 
+	/**
+	 * Execute the query on a database, lazily.
+	 * 
+	 * Will return an iterator over E that reads the entities while iterating
+	 * (see {@link Database#iterate(Class, QueryRule...)}). The iterator must be
+	 * closed after use. Throws an UnsupportedOperationException if the Query
+	 * does not know the Database and Class<E extends Entity> to use.
+	 * 
+	 * @throws DatabaseException
+	 */
+	public CloseableIterator<E> iterate() throws DatabaseException;
+
 	/** Finder for csv data */
 	public void find(TupleWriter writer) throws DatabaseException, ParseException;
 
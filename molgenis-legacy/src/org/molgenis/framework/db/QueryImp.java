@@ -6,6 +6,7 @@ import java.util.Vector;
 
 import org.molgenis.framework.db.QueryRule.Operator;
 import org.molgenis.io.TupleWriter;
+import org.molgenis.util.CloseableIterator;
 import org.molgenis.util.Entity;
 
 /**
@@ -229,6 +230,17 @@ public class QueryImp<E extends Entity> implements Query<E>
 				"Cannot execute this find query because no database and entity is provided. Use find(Database,Class)");
 	}
 
+	@Override
+	public CloseableIterator<E> iterate() throws DatabaseException
+	{
+		if (this.klazz != null && this.database != null)
+		{
+			return this.database.iterate(this.klazz, this.getRules());
+		}
+		throw new UnsupportedOperationException(
+				"Cannot execute this iterate query because no database and entity is provided.");
+	}
+
 	@Override
 	public List<E> find(Database db, Class<E> klazz) throws DatabaseException
 	{
@@ -33,6 +33,14 @@ import org.apache.commons.lang.StringUtils;
  */
 public class QueryRule
 {
+	/**
+	 * Maximum number of values in the IN rules that the framework creates for
+	 * lists of ids or labels, longer lists are queried in chunks. This stays
+	 * below the IN list limit of Oracle (1000) and the parameter limit of SQL
+	 * Server (2100).
+	 */
+	public static final int IN_CHUNK_SIZE = 500;
+
 	/** The operator being applied to the field and value */
 	protected Operator operator;
 
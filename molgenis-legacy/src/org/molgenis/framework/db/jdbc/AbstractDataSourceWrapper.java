@@ -2,6 +2,7 @@ package org.molgenis.framework.db.jdbc;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.naming.NamingException;
 import javax.sql.DataSource;
@@ -13,10 +14,63 @@ public abstract class AbstractDataSourceWrapper implements DataSourceWrapper
 {
 	private static final Logger logger = Logger.getLogger(AbstractDataSourceWrapper.class);
 
+	/** number of connections handed out */
+	private final AtomicLong connectionCount = new AtomicLong();
+	/** total and maximum time in nanoseconds spent waiting for a connection */
+	private final AtomicLong totalWaitNanos = new AtomicLong();
+	private final AtomicLong maxWaitNanos = new AtomicLong();
+
 	@Override
 	public Connection getConnection() throws NamingException, SQLException
 	{
-		return this.getDataSource().getConnection();
+		long start = System.nanoTime();
+		Connection conn = this.getDataSource().getConnection();
+		long wait = System.nanoTime() - start;
+		connectionCount.incrementAndGet();
+		totalWaitNanos.addAndGet(wait);
+		long max = maxWaitNanos.get();
+		while (wait > max && !maxWaitNanos.compareAndSet(max, wait))
+			max = maxWaitNanos.get();
+		return conn;
+	}
+
+	/**
+	 * @return number of connections handed out by this wrapper
+	 */
+	public long getConnectionCount()
+	{
+		return connectionCount.get();
+	}
+
+	/**
+	 * @return mean time in milliseconds spent waiting for a connection from
+	 *         the pool
+	 */
+	public double getMeanWaitMillis()
+	{
+		long count = connectionCount.get();
+		return count > 0 ? totalWaitNanos.get() / 1000000.0 / count : 0;
+	}
+
+	/**
+	 * @return longest time in milliseconds spent waiting for a connection
+	 *         from the pool
+	 */
+	public double getMaxWaitMillis()
+	{
+		return maxWaitNanos.get() / 1000000.0;
+	}
+
+	/**
+	 * @return number of idle connections in the pool, 0 if unknown
+	 */
+	public int countIdleConnections() throws NamingException
+	{
+		if (this.getDataSource() instanceof org.apache.commons.dbcp.BasicDataSource)
+		{
+			return ((org.apache.commons.dbcp.BasicDataSource) this.getDataSource()).getNumIdle();
+		}
+		return 0;
 	}
 
 	@Override
@@ -40,6 +94,23 @@ public abstract class AbstractDataSourceWrapper implements DataSourceWrapper
 		return "UNKNOWN";
 	}
 
+	/**
+	 * @return the uri of the database, or null if it is unknown
+	 */
+	public String getUri()
+	{
+		try
+		{
+			DataSource ds = getDataSource();
+			if (ds instanceof BasicDataSource) return ((BasicDataSource) ds).getUrl();
+		}
+		catch (NamingException e)
+		{
+			logger.warn("getUri(): " + e.getMessage());
+		}
+		return null;
+	}
+
 	@Override
 	public int countOpenConnections() throws NamingException
 	{
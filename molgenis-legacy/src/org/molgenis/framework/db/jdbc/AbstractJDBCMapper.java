@@ -1,11 +1,13 @@
 package org.molgenis.framework.db.jdbc;
 
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.lang.StringEscapeUtils;
 import org.apache.log4j.Logger;
@@ -16,6 +18,7 @@ import org.molgenis.fieldtypes.LongField;
 import org.molgenis.fieldtypes.StringField;
 import org.molgenis.fieldtypes.TextField;
 import org.molgenis.framework.db.AbstractMapper;
+import org.molgenis.framework.db.CountCache;
 import org.molgenis.framework.db.Database;
 import org.molgenis.framework.db.DatabaseException;
 import org.molgenis.framework.db.Query;
@@ -24,7 +27,9 @@ import org.molgenis.framework.db.QueryRule.Operator;
 import org.molgenis.io.TupleWriter;
 import org.molgenis.model.MolgenisModelException;
 import org.molgenis.model.elements.Field;
+import org.molgenis.util.CloseableIterator;
 import org.molgenis.util.Entity;
+import org.molgenis.util.tuple.CaseInsensitiveValueIndexTuple;
 import org.molgenis.util.tuple.EntityTuple;
 import org.molgenis.util.tuple.Tuple;
 
@@ -39,6 +44,12 @@ public abstract class AbstractJDBCMapper<E extends Entity> extends AbstractMappe
 	/** log messages */
 	private static final Logger logger = Logger.getLogger(AbstractJDBCMapper.class);
 
+	/** number of rows fetched per round-trip when streaming a result set */
+	public static final int FETCH_SIZE = BATCH_SIZE;
+
+	/** translates rules into parameterized sql */
+	private final PreparedQueryGenerator queryGenerator = new PreparedQueryGenerator(this);
+
 	public AbstractJDBCMapper(Database database)
 	{
 		super(database);
@@ -49,37 +60,34 @@ public abstract class AbstractJDBCMapper<E extends Entity> extends AbstractMappe
 	{
 		try
 		{
-			// streaming result!!!!
-			List<Tuple> rsList = executeSelect(rules);
+			if (fieldsToExport != null) writer.writeColNames(fieldsToExport);
+			else
+				writer.writeColNames(new EntityTuple(create()).getColNames());
 
-			// transform result set in writer
-			E entity = create();
-			if (writer != null) writer.writeColNames(new EntityTuple(entity).getColNames());
-			writer.writeColNames(fieldsToExport);
-			int i = 0;
-			List<E> entityBatch = new ArrayList<E>();
-			for (Tuple row : rsList)
+			// stream the result, memory use is bounded by the batch size
+			// instead of by the size of the table
+			int count = 0;
+			CloseableIterator<E> it = iterate(rules);
+			try
 			{
-				entity = create();
-				entity.set(row);
-				entityBatch.add(entity);
-				i++;
-
+				while (it.hasNext())
+				{
+					writer.write(new EntityTuple(it.next()));
+					count++;
+				}
 			}
-			// write remaining
-			// load mrefs
-			logger.debug("*** mapMrefs -> LEFTOVERS"); // program does NOT crash
-														// after this
-			mapMrefs(entityBatch);
-			for (E e : entityBatch)
+			finally
 			{
-				writer.write(new EntityTuple(e));
+				it.close();
 			}
-			entityBatch.clear();
 			writer.close();
 
-			logger.debug("find(" + create().getClass().getSimpleName() + ", TupleWriter, " + Arrays.asList(rules)
-					+ "): wrote " + i + " lines.");
+			logger.debug("find(" + create().getClass().getSimpleName() + ", TupleWriter, "
+					+ (rules != null ? Arrays.asList(rules) : "[]") + "): wrote " + count + " lines.");
+		}
+		catch (DatabaseException e)
+		{
+			throw e;
 		}
 		catch (Exception e)
 		{
@@ -87,6 +95,76 @@ public abstract class AbstractJDBCMapper<E extends Entity> extends AbstractMappe
 		}
 	}
 
+	@Override
+	public CloseableIterator<E> iterate(QueryRule... rules) throws DatabaseException
+	{
+		return new JDBCEntityIterator<E>(this, createSelectQuery(rules));
+	}
+
+	/**
+	 * @return number of insert, update or delete statements that the
+	 *         generated mappers send to the database in one JDBC batch, see
+	 *         {@link JDBCDatabase#getJdbcBatchSize()}
+	 */
+	protected int getJdbcBatchSize()
+	{
+		Database db = getDatabase();
+		return db instanceof JDBCDatabase ? ((JDBCDatabase) db).getJdbcBatchSize() : BATCH_SIZE;
+	}
+
+	/**
+	 * Execute the statements added to a prepared statement with
+	 * {@link PreparedStatement#addBatch()}.
+	 * 
+	 * @return number of updated rows. Drivers that don't report the count per
+	 *         statement (e.g. MySQL with rewriteBatchedStatements) are assumed
+	 *         to have updated one row per statement.
+	 * @throws SQLException
+	 */
+	protected static int executeBatch(PreparedStatement pstmt) throws SQLException
+	{
+		int updatedRows = 0;
+		for (int count : pstmt.executeBatch())
+		{
+			if (count == Statement.SUCCESS_NO_INFO) updatedRows++;
+			else if (count > 0) updatedRows += count;
+		}
+		return updatedRows;
+	}
+
+	@Override
+	public int add(List<E> entities) throws DatabaseException
+	{
+		int updatedRows = super.add(entities);
+		if (SearchIndex.getDirectory() != null) searchIndexChanged(SearchIndex.update(create().getClass(), entities));
+		return updatedRows;
+	}
+
+	@Override
+	public int update(List<E> entities) throws DatabaseException
+	{
+		int updatedRows = super.update(entities);
+		if (SearchIndex.getDirectory() != null) searchIndexChanged(SearchIndex.update(create().getClass(), entities));
+		return updatedRows;
+	}
+
+	@Override
+	public int remove(List<E> entities) throws DatabaseException
+	{
+		int updatedRows = super.remove(entities);
+		if (SearchIndex.getDirectory() != null) searchIndexChanged(SearchIndex.remove(create().getClass(), entities));
+		return updatedRows;
+	}
+
+	/** changes made in a transaction are applied to the index after the commit */
+	private void searchIndexChanged(SearchIndex.Change change) throws DatabaseException
+	{
+		if (getDatabase() instanceof JDBCDatabase) ((JDBCDatabase) getDatabase()).searchIndexChanged(change);
+		else if (getDatabase().inTx()) change.invalidate();
+		else
+			change.apply();
+	}
+
 	/**
 	 * Helper method for retrieving keys.
 	 * 
@@ -189,14 +267,20 @@ public abstract class AbstractJDBCMapper<E extends Entity> extends AbstractMappe
 	 */
 	protected abstract QueryRule rewriteMrefRule(Database db, QueryRule user_rule) throws DatabaseException;
 
+	/**
+	 * {@inheritDoc}. If an estimate cap is set in the {@link CountCache},
+	 * counting stops at that number of rows.
+	 */
 	@Override
-	public int count(QueryRule... rules) throws DatabaseException
+	protected int executeCount(QueryRule... rules) throws DatabaseException
 	{
 		try
 		{
-			String sql = createCountSql(rules) + createWhereSql(false, true, this.rewriteRules(getDatabase(), rules));
-			// + createWhereSql(getMapperFor(klazz), false, true, rules);
-			List<Tuple> rsList = getDatabase().sql(sql);
+			QueryRule[] rewrittenRules = this.rewriteRules(getDatabase(), rules);
+			int cap = CountCache.getEstimateCap();
+			PreparedQuery query = cap > 0 ? queryGenerator.createCappedCountQuery(cap, rewrittenRules) : queryGenerator
+					.createCountQuery(rewrittenRules);
+			List<Tuple> rsList = executeQuery(query);
 			int result = rsList.get(0).getInt("num_rows");
 			logger.debug("counted " + result + " " + this.create().getClass().getSimpleName() + " objects");
 			return result;
@@ -247,22 +331,64 @@ public abstract class AbstractJDBCMapper<E extends Entity> extends AbstractMappe
 	 */
 	private List<Tuple> executeSelect(QueryRule... rules) throws DatabaseException, SQLException
 	{
-		String sql = createFindSqlInclRules(rules);
-		if (rules != null)
+		// execute the query
+		return executeQuery(createSelectQuery(rules));
+	}
+
+	/**
+	 * Helper function that creates the parameterized select query for the
+	 * given rules, including the reverse sorting needed by
+	 * {@link Operator#LAST}.
+	 * 
+	 * @param rules
+	 * @return query
+	 * @throws DatabaseException
+	 */
+	private PreparedQuery createSelectQuery(QueryRule... rules) throws DatabaseException
+	{
+		return queryGenerator.createFindQuery(this.rewriteRules(getDatabase(), rules));
+	}
+
+	/**
+	 * Helper function that executes a parameterized query and returns the rows
+	 * as tuples.
+	 * 
+	 * @param query
+	 * @return rows
+	 * @throws DatabaseException
+	 * @throws SQLException
+	 */
+	private List<Tuple> executeQuery(PreparedQuery query) throws DatabaseException, SQLException
+	{
+		if (logger.isDebugEnabled()) logger.debug("executeQuery: " + query);
+
+		PreparedStatement stmt = getDatabase().getConnection().prepareStatement(query.getSql());
+		try
 		{
-			// FIXME too complicated
-			for (QueryRule rule : rules)
+			query.bind(stmt);
+			ResultSet rs = stmt.executeQuery();
+			try
 			{
-				if (rule.getOperator() == Operator.LAST)
-				{
-					sql = "select * from (" + sql + ") as " + this.getClass().getSimpleName().toLowerCase() + " "
-							+ createSortSql(true, rules);
-					break;
-				}
+				// resolve column labels once, all rows share the same index
+				int colcount = rs.getMetaData().getColumnCount();
+				Map<String, Integer> colNamesIndex = CaseInsensitiveValueIndexTuple.createColNamesIndex(rs
+						.getMetaData());
+
+				List<Tuple> tuples = new ArrayList<Tuple>();
+				while (rs.next())
+					tuples.add(CaseInsensitiveValueIndexTuple.fromResultSet(rs, colNamesIndex, colcount));
+				return tuples;
+			}
+			finally
+			{
+				rs.close();
 			}
 		}
-		// execute the query
-		return getDatabase().sql(sql);
+		finally
+		{
+			// returns the statement to the statement pool, if any
+			stmt.close();
+		}
 	}
 
 	/**
@@ -336,6 +462,10 @@ public abstract class AbstractJDBCMapper<E extends Entity> extends AbstractMappe
 				// rules.add(new QueryRule(Operator.AND));
 				rules.add(r);
 			}
+			else if (Operator.SEARCH.equals(rule.getOperator()))
+			{
+				rules.add(this.rewriteSearchRule(rule));
+			}
 			else
 			{
 				QueryRule r = this.rewriteMrefRule(db, rule);
@@ -347,6 +477,25 @@ public abstract class AbstractJDBCMapper<E extends Entity> extends AbstractMappe
 		return rules;
 	}
 
+	/**
+	 * Rewrite a search rule into a lookup of the ids found in the
+	 * {@link SearchIndex}, if enabled and able to answer the search. If the
+	 * index only found candidates the search itself is kept, so the results
+	 * are the same as without index.
+	 */
+	private QueryRule rewriteSearchRule(QueryRule rule) throws DatabaseException
+	{
+		SearchIndex index = SearchIndex.get(this);
+		if (index == null || rule.getValue() == null || rule.getValue().equals("")) return rule;
+		SearchIndex.Hits hits = index.search(this, rule.getValue().toString());
+		if (hits == null) return rule;
+		// no matches, ids are never null
+		if (hits.getIds().isEmpty()) return new QueryRule(create().getIdField(), Operator.EQUALS, null);
+		QueryRule idRule = new QueryRule(create().getIdField(), Operator.IN, hits.getIds());
+		if (hits.isExact()) return idRule;
+		return new QueryRule(idRule, rule);
+	}
+
 	/**
 	 * Helper method for creating a where clause from QueryRule...rules.
 	 * 
@@ -405,6 +554,10 @@ public abstract class AbstractJDBCMapper<E extends Entity> extends AbstractMappe
 						{
 							boolean addAND = false;
 
+							// create different query rule depending on type
+							List<Field> fields = getDatabase().getMetaData()
+									.getEntity(create().getClass().getSimpleName()).getAllFields();
+
 							// try create big OR filter for all fields and all
 							// search elements
 							// todo: enable string term concat using quotes
@@ -413,10 +566,6 @@ public abstract class AbstractJDBCMapper<E extends Entity> extends AbstractMappe
 							{
 								List<QueryRule> termRules = new ArrayList<QueryRule>();
 
-								// create different query rule depending on type
-								List<Field> fields = getDatabase().getMetaData()
-										.getEntity(create().getClass().getSimpleName()).getAllFields();
-
 								for (Field f : fields)
 								{
 									if (f.getType() instanceof StringField || f.getType() instanceof TextField)
@@ -11,18 +11,22 @@ import java.nio.charset.Charset;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 
 import javax.persistence.EntityManager;
 import javax.sql.DataSource;
 
-import org.apache.commons.dbcp.BasicDataSource;
 import org.apache.commons.io.IOUtils;
 import org.apache.log4j.Logger;
 import org.molgenis.MolgenisOptions;
 import org.molgenis.framework.db.AbstractDatabase;
+import org.molgenis.framework.db.AbstractMapper;
+import org.molgenis.framework.db.CountCache;
 import org.molgenis.framework.db.DatabaseException;
 import org.molgenis.framework.db.ExampleData;
+import org.molgenis.util.Entity;
 
 /**
  * JDBC implementation of Database to query relational databases.
@@ -51,6 +55,18 @@ public class JDBCDatabase extends AbstractDatabase
 	/** Logger for this database */
 	private static final Logger logger = Logger.getLogger(JDBCDatabase.class);
 
+	/** entities of which the search index was changed in this transaction */
+	private final List<SearchIndex.Change> searchIndexChanges = new ArrayList<SearchIndex.Change>();
+
+	/** iterators of which the cursor is open, see {@link #openCursor} */
+	private final List<JDBCEntityIterator<?>> openIterators = new ArrayList<JDBCEntityIterator<?>>();
+
+	/** whether the current transaction was begun for the cursors of iterators */
+	private boolean cursorTransaction = false;
+
+	/** number of statements sent per round-trip by the generated mappers */
+	private int jdbcBatchSize = AbstractMapper.BATCH_SIZE;
+
 	/**
 	 * Construct a JDBCDatabase using this connection alone. There is no
 	 * DataSource, which is used for checks in getConnection and
@@ -95,20 +111,32 @@ public class JDBCDatabase extends AbstractDatabase
 	{
 		this.options = options;
 
-		BasicDataSource dSource = new BasicDataSource();
-		dSource.setDriverClassName(options.db_driver);
-		dSource.setUsername(options.db_user);
-		dSource.setPassword(options.db_password);
-		dSource.setUrl(options.db_uri);
-
-		this.source = new SimpleDataSourceWrapper(dSource);
+		this.source = PooledDataSourceWrapper.get(options);
 
 		File file_source = new File(options.db_filepath);
 		this.fileSource = file_source;
+		setJdbcBatchSize(options.db_jdbc_batch_size);
 
 		logger.debug("JDBCDatabase(uri=" + options.db_uri + ") created");
 	}
 
+	/**
+	 * Applies the options that are shared by all JDBC databases of this JVM:
+	 * the count cache and the search index. These are not set by the
+	 * constructors, because a database is created for each request. Call this
+	 * once at startup, e.g. from the init of the FrontController.
+	 * 
+	 * @param options
+	 */
+	public static void configure(MolgenisOptions options)
+	{
+		CountCache.setTimeToLive(options.db_count_cache_ttl * 1000L);
+		CountCache.setEstimateCap(options.db_count_estimate_cap);
+		SearchIndex.setDirectory(options.db_search_index ? new File(options.hibernate_search_index_base, "jdbc") : null);
+		logger.info("configured count cache ttl=" + options.db_count_cache_ttl + "s, count estimate cap="
+				+ options.db_count_estimate_cap + ", search index=" + SearchIndex.getDirectory());
+	}
+
 	public JDBCDatabase(Properties p)
 	{
 		this(new MolgenisOptions(p));
@@ -127,17 +155,12 @@ public class JDBCDatabase extends AbstractDatabase
 		{
 			IOUtils.closeQuietly(is);
 		}
-		BasicDataSource dSource = new BasicDataSource();
-		dSource.setDriverClassName(p.getProperty("db_driver"));
-		dSource.setUsername(p.getProperty("db_user"));
-		dSource.setPassword(p.getProperty("db_password"));
-		dSource.setUrl(p.getProperty("db_uri"));
-
-		this.source = new SimpleDataSourceWrapper(dSource);
+		MolgenisOptions options = new MolgenisOptions(p);
+		this.source = PooledDataSourceWrapper.get(options);
 
 		File file_source = new File(p.getProperty("db_filepath"));
 		this.fileSource = file_source;
-
+		setJdbcBatchSize(options.db_jdbc_batch_size);
 	}
 
 	public JDBCDatabase(String propertiesFilePath) throws FileNotFoundException, IOException
@@ -167,13 +190,9 @@ public class JDBCDatabase extends AbstractDatabase
 			IOUtils.closeQuietly(is);
 		}
 
-		BasicDataSource dSource = new BasicDataSource();
-		dSource.setDriverClassName(p.getProperty("db_driver"));
-		dSource.setUsername(p.getProperty("db_user"));
-		dSource.setPassword(p.getProperty("db_password"));
-		dSource.setUrl(p.getProperty("db_uri"));
-
-		this.source = new SimpleDataSourceWrapper(dSource);
+		MolgenisOptions options = new MolgenisOptions(p);
+		this.source = PooledDataSourceWrapper.get(options);
+		setJdbcBatchSize(options.db_jdbc_batch_size);
 
 		if (p.getProperty("db_filepath") != null)
 		{
@@ -192,12 +211,20 @@ public class JDBCDatabase extends AbstractDatabase
 		getConnection();
 		try
 		{
+			if (inTransaction && cursorTransaction)
+			{
+				// the transaction of the open cursors becomes the caller's
+				cursorTransaction = false;
+				logger.debug("begin transaction, continuing the transaction of open cursors");
+				return;
+			}
 			if (inTransaction)
 			{
 				logger.error("BeginTx failed: transaction already begun");
 				throw new DatabaseException("BeginTx failed: transaction already begun");
 			}
 			connection.setAutoCommit(false);
+			autoCommitChanged = true;
 			inTransaction = true;
 			logger.debug("begin transaction");
 		}
@@ -208,6 +235,21 @@ public class JDBCDatabase extends AbstractDatabase
 		}
 	}
 
+	public int getJdbcBatchSize()
+	{
+		return jdbcBatchSize;
+	}
+
+	/**
+	 * @param jdbcBatchSize
+	 *            number of insert, update or delete statements that the
+	 *            mappers of this database send in one JDBC batch
+	 */
+	public void setJdbcBatchSize(int jdbcBatchSize)
+	{
+		this.jdbcBatchSize = Math.max(jdbcBatchSize, 1);
+	}
+
 	@Override
 	public boolean inTx()
 	{
@@ -217,11 +259,17 @@ public class JDBCDatabase extends AbstractDatabase
 	@Override
 	public void commitTx() throws DatabaseException
 	{
+		boolean committed = false;
 		try
 		{
 			if (!inTransaction) throw new DatabaseException("commitTx failed: no active transaction");
+			// the transaction ends here, not when the last cursor is closed
+			cursorTransaction = false;
+			closeIterators();
 			connection.commit();
+			committed = true;
 			connection.setAutoCommit(true);
+			autoCommitChanged = false;
 			inTransaction = false;
 			// FIXME in case of hsqldb we need to checkpoint
 			// if(this.source.getDriverClassName().contains("hsql"))
@@ -235,6 +283,9 @@ public class JDBCDatabase extends AbstractDatabase
 		}
 		finally
 		{
+			foreignKeyResolver.clear();
+			applySearchIndexChanges(committed);
+			invalidateChangedEntities();
 			closeConnection();
 		}
 	}
@@ -245,8 +296,12 @@ public class JDBCDatabase extends AbstractDatabase
 		try
 		{
 			if (!inTransaction) throw new DatabaseException("rollbackTx failed: no active transaction");
+			// the transaction ends here, not when the last cursor is closed
+			cursorTransaction = false;
+			closeIterators();
 			connection.rollback();
 			connection.setAutoCommit(true);
+			autoCommitChanged = false;
 			inTransaction = false;
 			logger.info("rolled back transaction on " + this.connection.getMetaData().getURL());
 		}
@@ -257,13 +312,124 @@ public class JDBCDatabase extends AbstractDatabase
 		}
 		finally
 		{
+			// the indexes never contained the rolled back changes
+			foreignKeyResolver.clear();
+			searchIndexChanges.clear();
+			// counts cached during the transaction may include its changes
+			invalidateChangedEntities();
 			closeConnection();
 		}
 	}
 
+	/**
+	 * Apply a change of the search index, or keep it until the current
+	 * transaction is committed so other requests don't find uncommitted data.
+	 */
+	void searchIndexChanged(SearchIndex.Change change) throws DatabaseException
+	{
+		if (inTransaction) searchIndexChanges.add(change);
+		else
+			change.apply();
+	}
+
+	/**
+	 * Whether the current transaction changed the search index of an entity,
+	 * the index does not contain these changes until they are committed
+	 */
+	boolean hasSearchIndexChanges(Class<? extends Entity> entityClass)
+	{
+		for (SearchIndex.Change change : searchIndexChanges)
+			if (change.affects(entityClass)) return true;
+		return false;
+	}
+
+	private void applySearchIndexChanges(boolean committed)
+	{
+		try
+		{
+			for (SearchIndex.Change change : searchIndexChanges)
+			{
+				if (committed) change.apply();
+				else
+					// the changes may or may not be in the database
+					change.invalidate();
+			}
+		}
+		catch (DatabaseException e)
+		{
+			logger.error("applying search index changes failed, rebuilding indexes: " + e.getMessage());
+			for (SearchIndex.Change change : searchIndexChanges)
+				change.invalidate();
+		}
+		finally
+		{
+			searchIndexChanges.clear();
+		}
+	}
+
+	/**
+	 * Open a cursor of an iterator on the connection of this database. Outside
+	 * a transaction a private transaction is begun, because several drivers,
+	 * e.g. postgresql, only use a cursor when autocommit is off. It is ended
+	 * when the last cursor is closed, see {@link #closeCursor}, unless the
+	 * caller begins a transaction of its own in the meantime.
+	 */
+	Connection openCursor(JDBCEntityIterator<?> iterator) throws DatabaseException
+	{
+		if (!inTransaction)
+		{
+			beginTx();
+			cursorTransaction = true;
+		}
+		openIterators.add(iterator);
+		return getConnection();
+	}
+
+	/**
+	 * Forget the cursor of an iterator, and end the private transaction if it
+	 * was the last
+	 * 
+	 * @param commit
+	 *            whether to commit (true) or roll back (false) the private
+	 *            transaction
+	 */
+	void closeCursor(JDBCEntityIterator<?> iterator, boolean commit)
+	{
+		openIterators.remove(iterator);
+		if (!cursorTransaction || !openIterators.isEmpty()) return;
+		cursorTransaction = false;
+		try
+		{
+			if (commit) commitTx();
+			else
+				rollbackTx();
+		}
+		catch (DatabaseException e)
+		{
+			logger.error("ending transaction of cursors failed: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Close the cursors that are still open, e.g. of a for-each loop that
+	 * stopped early. Cursors do not outlive the transaction they were opened
+	 * in, so this is also done when a transaction is committed or rolled back.
+	 */
+	@Override
+	protected void closeIterators()
+	{
+		// a private transaction is committed by the last iterator
+		for (JDBCEntityIterator<?> iterator : new ArrayList<JDBCEntityIterator<?>>(openIterators))
+			iterator.close();
+	}
+
 	@Override
 	public void close() throws IOException
 	{
+		closeIterators();
+		// changes of a failed commit or rollback must not be applied later
+		if (!inTransaction) searchIndexChanges.clear();
+		invalidateChangedEntities();
 		closeConnection();
 	}
 
@@ -282,6 +448,12 @@ public class JDBCDatabase extends AbstractDatabase
 	/** Flag to indicate whether the database is in a transaction */
 	boolean inTransaction = false;
 
+	/**
+	 * Flag to indicate that autocommit of the connection was switched off and
+	 * must be restored before it is returned to the pool
+	 */
+	boolean autoCommitChanged = false;
+
 	int openconnections = 0;
 
 	/** Ticket to indicate a private transaction */
@@ -312,9 +484,12 @@ public class JDBCDatabase extends AbstractDatabase
 			{
 				openconnections++;
 				connection = source.getConnection();
-				logger.debug(this + "opened database connection, connectioncount=" + openconnections
-						+ ", count in pool: " + this.source.countOpenConnections() + "/" + source.getMaxActive());
-				connection.setAutoCommit(true); // restore default
+				if (logger.isDebugEnabled()) logger.debug(this + "opened database connection, connectioncount="
+						+ openconnections + ", count in pool: " + this.source.countOpenConnections() + "/"
+						+ source.getMaxActive());
+				// restore default, only if the pool did not
+				if (!connection.getAutoCommit()) connection.setAutoCommit(true);
+				autoCommitChanged = false;
 			}
 			return connection;
 		}
@@ -330,6 +505,28 @@ public class JDBCDatabase extends AbstractDatabase
 		return source;
 	}
 
+	@Override
+	public String getUri()
+	{
+		if (source instanceof AbstractDataSourceWrapper)
+		{
+			String uri = ((AbstractDataSourceWrapper) source).getUri();
+			if (uri != null) return uri;
+		}
+		else if (source == null && connection != null)
+		{
+			try
+			{
+				return connection.getMetaData().getURL();
+			}
+			catch (SQLException e)
+			{
+				logger.warn("getUri(): " + e.getMessage());
+			}
+		}
+		return super.getUri();
+	}
+
 	/**
 	 * close the connection (if not in transaction)
 	 * 
@@ -358,12 +555,14 @@ public class JDBCDatabase extends AbstractDatabase
 			{
 				try
 				{
-					connection.setAutoCommit(true); // restore default
+					// restore default, only if it was changed
+					if (autoCommitChanged) connection.setAutoCommit(true);
+					autoCommitChanged = false;
 					if (!connection.isClosed()) connection.close();
 					connection = null;
 					openconnections--;
-					logger.debug(this + "closed connection back to pool, connectioncount=" + openconnections
-							+ ", open connections in pool: " + source.countOpenConnections() + "/"
+					if (logger.isDebugEnabled()) logger.debug(this + "closed connection back to pool, connectioncount="
+							+ openconnections + ", open connections in pool: " + source.countOpenConnections() + "/"
 							+ source.getMaxActive());
 				}
 				catch (Exception sqle)
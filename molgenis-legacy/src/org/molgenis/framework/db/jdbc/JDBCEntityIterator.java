@@ -0,0 +1,172 @@
+package org.molgenis.framework.db.jdbc;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.apache.log4j.Logger;
+import org.molgenis.framework.db.AbstractMapper;
+import org.molgenis.framework.db.Database;
+import org.molgenis.framework.db.DatabaseException;
+import org.molgenis.util.CloseableIterator;
+import org.molgenis.util.Entity;
+import org.molgenis.util.tuple.CaseInsensitiveValueIndexTuple;
+
+/**
+ * Iterator over the results of a select query that holds a single forward-only
+ * cursor. Rows are mapped to entities and their mrefs are loaded per chunk of
+ * {@link AbstractMapper#BATCH_SIZE} entities, so memory use does not depend on
+ * the size of the result.
+ * <p>
+ * The cursor uses the connection of the database, outside a transaction in a
+ * private transaction that ends when the last cursor is closed (see
+ * {@link JDBCDatabase#openCursor}). The iterator closes itself when all
+ * entities have been read. Iterators that are not closed are closed by the
+ * database when its transaction ends or when it is closed or released.
+ */
+class JDBCEntityIterator<E extends Entity> implements CloseableIterator<E>
+{
+	/** log messages */
+	private static final Logger logger = Logger.getLogger(JDBCEntityIterator.class);
+
+	private final AbstractJDBCMapper<E> mapper;
+
+	/** database of which the connection holds the cursor, if it is a JDBCDatabase */
+	private JDBCDatabase cursorDb;
+	private PreparedStatement stmt;
+	private ResultSet rs;
+	private Map<String, Integer> colNamesIndex;
+	private int colCount;
+
+	private List<E> chunk;
+	private int chunkIndex = 0;
+	private boolean closed = false;
+
+	JDBCEntityIterator(AbstractJDBCMapper<E> mapper, PreparedQuery query) throws DatabaseException
+	{
+		this.mapper = mapper;
+		Database db = mapper.getDatabase();
+		try
+		{
+			Connection conn;
+			if (db instanceof JDBCDatabase)
+			{
+				cursorDb = (JDBCDatabase) db;
+				conn = cursorDb.openCursor(this);
+			}
+			else
+			{
+				conn = db.getConnection();
+			}
+
+			stmt = conn.prepareStatement(query.getSql(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			query.bind(stmt);
+			stmt.setFetchSize(AbstractJDBCMapper.FETCH_SIZE);
+			rs = stmt.executeQuery();
+
+			// resolve column labels once instead of once per cell
+			colCount = rs.getMetaData().getColumnCount();
+			colNamesIndex = CaseInsensitiveValueIndexTuple.createColNamesIndex(rs.getMetaData());
+		}
+		catch (Exception e)
+		{
+			release(false);
+			throw new DatabaseException(e);
+		}
+	}
+
+	@Override
+	public boolean hasNext()
+	{
+		if (chunk != null && chunkIndex < chunk.size()) return true;
+		if (closed) return false;
+		try
+		{
+			loadChunk();
+		}
+		catch (Exception e)
+		{
+			release(false);
+			throw new RuntimeException(e);
+		}
+		return chunkIndex < chunk.size();
+	}
+
+	@Override
+	public E next()
+	{
+		if (!hasNext()) throw new NoSuchElementException();
+		E entity = chunk.get(chunkIndex);
+		chunk.set(chunkIndex++, null); // allow gc of consumed entities
+		return entity;
+	}
+
+	@Override
+	public void remove()
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void close()
+	{
+		release(true);
+	}
+
+	/**
+	 * Reads the next chunk of rows from the cursor and loads their mrefs. Closes
+	 * the cursor when the last row was read.
+	 */
+	private void loadChunk() throws Exception
+	{
+		chunk = new ArrayList<E>(AbstractMapper.BATCH_SIZE);
+		chunkIndex = 0;
+		while (chunk.size() < AbstractMapper.BATCH_SIZE && rs.next())
+		{
+			E entity = mapper.create();
+			entity.set(CaseInsensitiveValueIndexTuple.fromResultSet(rs, colNamesIndex, colCount));
+			chunk.add(entity);
+		}
+		boolean exhausted = chunk.size() < AbstractMapper.BATCH_SIZE;
+
+		if (chunk.size() > 0) mapper.mapMrefs(chunk);
+		if (exhausted) release(true);
+	}
+
+	/**
+	 * Closes the cursor and tells the database, which ends its private
+	 * transaction if this was the last cursor.
+	 * 
+	 * @param commit
+	 *            whether to commit (true) or roll back (false) the private
+	 *            transaction
+	 */
+	private void release(boolean commit)
+	{
+		if (closed) return;
+		closed = true;
+
+		if (rs != null) try
+		{
+			rs.close();
+		}
+		catch (SQLException e)
+		{
+			logger.warn("close(): " + e);
+		}
+		rs = null;
+		JDBCDatabase.closeStatement(stmt);
+		stmt = null;
+
+		if (cursorDb != null)
+		{
+			cursorDb.closeCursor(this, commit);
+			cursorDb = null;
+		}
+	}
+}
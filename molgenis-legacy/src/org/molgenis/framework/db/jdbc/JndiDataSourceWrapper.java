@@ -13,6 +13,13 @@ public class JndiDataSourceWrapper extends AbstractDataSourceWrapper
 		this.jndiPath = jndiPath;
 	}
 
+	/** the jndi path, without looking up the data source */
+	@Override
+	public String getUri()
+	{
+		return "jndi:" + jndiPath;
+	}
+
 	@Override
 	protected DataSource getDataSource() throws NamingException
 	{
@@ -0,0 +1,159 @@
+package org.molgenis.framework.db.jdbc;
+
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.dbcp.BasicDataSource;
+import org.apache.log4j.Logger;
+import org.molgenis.MolgenisOptions;
+
+/**
+ * DataSourceWrapper on a connection pool configured from the db_pool_*
+ * MolgenisOptions: the number of connections, the prepared statement cache,
+ * leak detection and validation of idle connections.
+ * <p>
+ * There is one pool per database uri and user in the JVM, see
+ * {@link #get(MolgenisOptions)}, so all databases and tools of an application
+ * share their connections and cached statements. The pool of a uri is
+ * configured by the options it is first requested with, requests with other
+ * db_pool_* options get the same pool and log a warning.
+ */
+public class PooledDataSourceWrapper extends AbstractDataSourceWrapper
+{
+	private static final Logger logger = Logger.getLogger(PooledDataSourceWrapper.class);
+
+	/** pools by driver, uri and user */
+	private static final ConcurrentMap<String, PooledDataSourceWrapper> pools = new ConcurrentHashMap<String, PooledDataSourceWrapper>();
+
+	private final BasicDataSource dataSource;
+	/** the db_pool_* options of the pool, see describe */
+	private final String configuration;
+	/** other configurations that were requested, to warn only once */
+	private final Set<String> ignoredConfigurations = Collections
+			.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	private PooledDataSourceWrapper(MolgenisOptions options)
+	{
+		BasicDataSource dSource = new BasicDataSource();
+		dSource.setDriverClassName(options.db_driver);
+		dSource.setUsername(options.db_user);
+		dSource.setPassword(options.db_password);
+		dSource.setUrl(options.db_uri);
+		dSource.setMaxActive(options.db_pool_max_active);
+		dSource.setMaxIdle(options.db_pool_max_idle);
+		dSource.setMaxWait(options.db_pool_max_wait);
+
+		// reuse the parameterized queries of the mappers across requests
+		if (options.db_pool_statement_cache_size > 0)
+		{
+			dSource.setPoolPreparedStatements(true);
+			dSource.setMaxOpenPreparedStatements(options.db_pool_statement_cache_size);
+		}
+
+		if (options.db_pool_leak_timeout > 0) removeAbandoned(dSource, options.db_pool_leak_timeout);
+
+		if (options.db_pool_validation_query != null && options.db_pool_validation_query.length() > 0)
+		{
+			dSource.setValidationQuery(options.db_pool_validation_query);
+			dSource.setTestWhileIdle(true);
+			dSource.setTimeBetweenEvictionRunsMillis(options.db_pool_validation_interval * 1000L);
+		}
+
+		// for MySQL the driver rewrites JDBC batches into multi-row statements
+		if (options.db_uri != null && options.db_uri.startsWith("jdbc:mysql:")) dSource.addConnectionProperty(
+				"rewriteBatchedStatements", "true");
+
+		this.dataSource = dSource;
+		this.configuration = describe(options);
+	}
+
+	/**
+	 * Close and log connections that were not returned to the pool within the
+	 * timeout
+	 */
+	// dbcp 1.4 deprecates these setters but has no other way to set them
+	@SuppressWarnings("deprecation")
+	private static void removeAbandoned(BasicDataSource dSource, int timeout)
+	{
+		dSource.setRemoveAbandoned(true);
+		dSource.setRemoveAbandonedTimeout(timeout);
+		dSource.setLogAbandoned(true);
+	}
+
+	/** the options that configure a pool */
+	private static String describe(MolgenisOptions options)
+	{
+		return "max_active=" + options.db_pool_max_active + ", max_idle=" + options.db_pool_max_idle + ", max_wait="
+				+ options.db_pool_max_wait + ", statement_cache_size=" + options.db_pool_statement_cache_size
+				+ ", leak_timeout=" + options.db_pool_leak_timeout + ", validation_query='"
+				+ options.db_pool_validation_query + "', validation_interval=" + options.db_pool_validation_interval;
+	}
+
+	/**
+	 * Get the pool of the database of these options, or create it if there is
+	 * none yet.
+	 */
+	public static PooledDataSourceWrapper get(MolgenisOptions options)
+	{
+		if (options.db_uri == null) throw new IllegalArgumentException("db_uri cannot be null");
+		String key = options.db_driver + '|' + options.db_uri + '|' + options.db_user;
+		PooledDataSourceWrapper pool = pools.get(key);
+		if (pool == null)
+		{
+			PooledDataSourceWrapper newPool = new PooledDataSourceWrapper(options);
+			pool = pools.putIfAbsent(key, newPool);
+			if (pool == null)
+			{
+				pool = newPool;
+				if (logger.isDebugEnabled()) logger.debug("created connection pool for " + options.db_uri);
+			}
+		}
+		String requested = describe(options);
+		if (!requested.equals(pool.configuration) && pool.ignoredConfigurations.add(requested))
+		{
+			logger.warn("connection pool for " + options.db_uri + " is configured with " + pool.configuration
+					+ ", ignoring " + requested);
+		}
+		return pool;
+	}
+
+	/**
+	 * Close the connections of all pools, e.g. when the application is
+	 * stopped. Pools requested afterwards are created again.
+	 */
+	public static void closeAll()
+	{
+		for (String key : pools.keySet())
+		{
+			PooledDataSourceWrapper pool = pools.remove(key);
+			if (pool == null) continue;
+			try
+			{
+				pool.dataSource.close();
+			}
+			catch (SQLException e)
+			{
+				logger.error("closing connection pool failed: " + e.getMessage());
+			}
+		}
+	}
+
+	@Override
+	public DataSource getDataSource()
+	{
+		return dataSource;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "PooledDataSourceWrapper(uri=" + dataSource.getUrl() + ", active=" + dataSource.getNumActive()
+				+ ", idle=" + dataSource.getNumIdle() + "/" + dataSource.getMaxIdle() + ", max=" + dataSource.getMaxActive()
+				+ ", meanWait=" + getMeanWaitMillis() + "ms)";
+	}
+}
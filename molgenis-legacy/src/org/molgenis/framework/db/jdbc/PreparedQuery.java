@@ -0,0 +1,104 @@
+package org.molgenis.framework.db.jdbc;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.List;
+
+/**
+ * Parameterized SQL together with the values for its parameters
+ */
+public class PreparedQuery
+{
+	private final String sql;
+	private final List<Object> parameters;
+
+	public PreparedQuery(String sql, List<Object> parameters)
+	{
+		if (sql == null) throw new IllegalArgumentException("sql is null");
+		if (parameters == null) throw new IllegalArgumentException("parameters is null");
+		this.sql = sql;
+		this.parameters = parameters;
+	}
+
+	/**
+	 * @return sql with a '?' placeholder for each parameter
+	 */
+	public String getSql()
+	{
+		return sql;
+	}
+
+	public List<Object> getParameters()
+	{
+		return parameters;
+	}
+
+	/**
+	 * Binds the parameters of this query to a statement that was prepared for
+	 * {@link #getSql()}, each with the setter of its java type. Values
+	 * compared with typed fields are converted to the type of the field when
+	 * the query is created.
+	 * 
+	 * @param stmt
+	 * @throws SQLException
+	 */
+	public void bind(PreparedStatement stmt) throws SQLException
+	{
+		for (int i = 0; i < parameters.size(); i++)
+		{
+			Object value = parameters.get(i);
+			if (value == null)
+			{
+				stmt.setNull(i + 1, Types.VARCHAR);
+			}
+			else if (value instanceof String)
+			{
+				stmt.setString(i + 1, (String) value);
+			}
+			else if (value instanceof Integer)
+			{
+				stmt.setInt(i + 1, (Integer) value);
+			}
+			else if (value instanceof Long)
+			{
+				stmt.setLong(i + 1, (Long) value);
+			}
+			else if (value instanceof Double)
+			{
+				stmt.setDouble(i + 1, (Double) value);
+			}
+			else if (value instanceof Boolean)
+			{
+				stmt.setBoolean(i + 1, (Boolean) value);
+			}
+			else if (value instanceof java.sql.Date)
+			{
+				stmt.setDate(i + 1, (java.sql.Date) value);
+			}
+			else if (value instanceof Timestamp)
+			{
+				stmt.setTimestamp(i + 1, (Timestamp) value);
+			}
+			else if (value instanceof java.util.Date && !(value instanceof java.sql.Time))
+			{
+				stmt.setTimestamp(i + 1, new Timestamp(((java.util.Date) value).getTime()));
+			}
+			else if (value instanceof Number || value instanceof java.util.Date)
+			{
+				stmt.setObject(i + 1, value);
+			}
+			else
+			{
+				stmt.setString(i + 1, value.toString());
+			}
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return sql + " " + parameters;
+	}
+}
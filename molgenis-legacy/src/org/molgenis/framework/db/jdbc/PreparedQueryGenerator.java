@@ -0,0 +1,606 @@
+package org.molgenis.framework.db.jdbc;
+
+import java.sql.Timestamp;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.molgenis.fieldtypes.BoolField;
+import org.molgenis.fieldtypes.DateField;
+import org.molgenis.fieldtypes.DatetimeField;
+import org.molgenis.fieldtypes.DecimalField;
+import org.molgenis.fieldtypes.FieldType;
+import org.molgenis.fieldtypes.IntField;
+import org.molgenis.fieldtypes.LongField;
+import org.molgenis.fieldtypes.StringField;
+import org.molgenis.fieldtypes.TextField;
+import org.molgenis.framework.db.DatabaseException;
+import org.molgenis.framework.db.QueryRule;
+import org.molgenis.framework.db.QueryRule.Operator;
+import org.molgenis.model.elements.Field;
+import org.molgenis.util.AbstractEntity;
+
+/**
+ * Translates query rules into parameterized SQL, see {@link PreparedQuery}.
+ * <p>
+ * The SQL only depends on the shape of the rules (fields, operators, number of
+ * values) and not on the values, so it is compiled once per mapper and rule
+ * shape and cached as a template. IN lists are padded to a few sizes, see
+ * {@link #getPaddedSize(int)}, so their length hardly adds shapes. Each following query with the same shape
+ * only needs one pass over the rules to collect its values. Because the SQL
+ * text stays the same the database can reuse its plan and the connection pool
+ * can reuse the prepared statement.
+ * <p>
+ * The generated SQL is equivalent to
+ * {@link AbstractJDBCMapper#createWhereSql(boolean, boolean, QueryRule...)},
+ * except that values are bound instead of inlined.
+ */
+class PreparedQueryGenerator
+{
+	/** maximum number of cached templates, over all mappers */
+	static final int MAX_TEMPLATES = 1000;
+
+	/** compiled templates by mapper, statement kind and rule shape */
+	private static final Map<String, Template> templates = Collections
+			.synchronizedMap(new LinkedHashMap<String, Template>(16, 0.75f, true)
+			{
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, Template> eldest)
+				{
+					return size() > MAX_TEMPLATES;
+				}
+			});
+
+	/** string fields used by Operator.SEARCH, by mapper */
+	private static final Map<String, List<String>> searchFields = Collections
+			.synchronizedMap(new LinkedHashMap<String, List<String>>());
+
+	/** select clause of {@link AbstractJDBCMapper#createCountSql(QueryRule...)} */
+	private static final Pattern COUNT_SELECT = Pattern.compile("^\\s*select\\s+count\\(\\*\\)\\s+as\\s+num_rows",
+			Pattern.CASE_INSENSITIVE);
+
+	private enum Kind
+	{
+		FIND, COUNT, CAPPED_COUNT
+	}
+
+	private final AbstractJDBCMapper<?> mapper;
+
+	PreparedQueryGenerator(AbstractJDBCMapper<?> mapper)
+	{
+		this.mapper = mapper;
+	}
+
+	/**
+	 * Creates the select query for the given (rewritten) rules, including the
+	 * reverse sorting needed by {@link Operator#LAST}
+	 */
+	PreparedQuery createFindQuery(QueryRule... rules) throws DatabaseException
+	{
+		return createQuery(Kind.FIND, 0, rules);
+	}
+
+	/**
+	 * Creates the count query for the given (rewritten) rules
+	 */
+	PreparedQuery createCountQuery(QueryRule... rules) throws DatabaseException
+	{
+		return createQuery(Kind.COUNT, 0, rules);
+	}
+
+	/**
+	 * Creates a count query for the given (rewritten) rules that stops
+	 * counting at <code>cap</code> rows
+	 */
+	PreparedQuery createCappedCountQuery(int cap, QueryRule... rules) throws DatabaseException
+	{
+		return createQuery(Kind.CAPPED_COUNT, cap, rules);
+	}
+
+	/** removes all compiled templates */
+	static void clearCache()
+	{
+		templates.clear();
+		searchFields.clear();
+	}
+
+	private PreparedQuery createQuery(Kind kind, int cap, QueryRule[] rules) throws DatabaseException
+	{
+		// collect values and rule shape
+		Compilation values = new Compilation(false);
+		createWhereSql(values, null, false, true, rules);
+
+		String key = mapper.getClass().getName() + '|' + kind + (cap > 0 ? String.valueOf(cap) : "") + '|'
+				+ values.shape;
+		Template template = templates.get(key);
+		if (template == null)
+		{
+			template = compile(kind, cap, rules);
+			templates.put(key, template);
+		}
+		return template.bind(values.values);
+	}
+
+	private Template compile(Kind kind, int cap, QueryRule[] rules) throws DatabaseException
+	{
+		Compilation compilation = new Compilation(true);
+		StringBuilder where = new StringBuilder();
+		createWhereSql(compilation, where, false, true, rules);
+
+		String sql;
+		if (kind == Kind.COUNT)
+		{
+			sql = mapper.createCountSql(rules) + where;
+		}
+		else if (kind == Kind.CAPPED_COUNT)
+		{
+			// count the rows of a subquery that selects at most 'cap' rows
+			sql = mapper.createCountSql(rules);
+			Matcher select = COUNT_SELECT.matcher(sql);
+			if (select.find())
+			{
+				sql = "select count(*) as num_rows from (" + select.replaceFirst("select 1") + where + " limit " + cap
+						+ ") as capped_count";
+			}
+			else
+			{
+				sql = sql + where;
+			}
+		}
+		else
+		{
+			sql = mapper.createFindSql(rules) + where;
+			if (rules != null)
+			{
+				for (QueryRule rule : rules)
+				{
+					if (rule.getOperator() == Operator.LAST)
+					{
+						sql = "select * from (" + sql + ") as " + mapper.getClass().getSimpleName().toLowerCase()
+								+ " " + mapper.createSortSql(true, rules);
+						break;
+					}
+				}
+			}
+		}
+
+		int[] valueIndices = new int[compilation.placeholders.size()];
+		boolean[] likes = new boolean[valueIndices.length];
+		FieldType[] types = new FieldType[valueIndices.length];
+		for (int i = 0; i < valueIndices.length; i++)
+		{
+			valueIndices[i] = compilation.placeholders.get(i).valueIndex;
+			likes[i] = compilation.placeholders.get(i).like;
+			types[i] = compilation.placeholders.get(i).type;
+		}
+		return new Template(sql, valueIndices, likes, types);
+	}
+
+	/**
+	 * Walks the rules, collecting their shape and values. When compiling, also
+	 * renders the where clause to <code>sql</code> with a placeholder for each
+	 * value.
+	 */
+	private void createWhereSql(Compilation c, StringBuilder sql, boolean isNested, boolean withOffset,
+			QueryRule[] rules) throws DatabaseException
+	{
+		StringBuilder where = c.compile ? new StringBuilder() : null;
+		Operator previousOperator = Operator.AND;
+		int limitIndex = -1;
+		int offsetIndex = -1;
+		if (rules != null)
+		{
+			for (QueryRule rule : rules)
+			{
+				Operator operator = rule.getOperator();
+				c.shape.append(operator.name()).append('(').append(rule.getField());
+
+				// skip OR and AND operators
+				if (operator == Operator.OR || operator == Operator.AND)
+				{
+					c.shape.append(')');
+					previousOperator = operator;
+					continue;
+				}
+
+				String field = c.compile ? mapper.getTableFieldName(rule.getField()) : null;
+
+				if (operator == Operator.LIMIT || operator == Operator.OFFSET)
+				{
+					if (operator == Operator.LIMIT) limitIndex = c.values.size();
+					else
+						offsetIndex = c.values.size();
+					c.addValue(Integer.valueOf(rule.getValue().toString()));
+				}
+				else if (operator == Operator.LAST || operator == Operator.SORTASC || operator == Operator.SORTDESC)
+				{
+					// sorting is part of the sql
+					c.shape.append(',').append(rule.getValue());
+				}
+				else if (operator == Operator.SEARCH)
+				{
+					String[] terms = rule.getValue() != null && !rule.getValue().equals("") ? rule.getValue()
+							.toString().split(" ") : new String[0];
+					c.shape.append(',').append(terms.length);
+					int firstValue = c.values.size();
+					for (String term : terms)
+						c.addValue(term.trim().toLowerCase());
+
+					if (c.compile && terms.length > 0)
+					{
+						// case insensitive match of each term on any string
+						// field, e.g. (lower(a) LIKE ? OR lower(b) LIKE ?)
+						appendConnector(where, previousOperator);
+						List<String> fields = getSearchFields();
+						where.append("(");
+						for (int i = 0; i < terms.length; i++)
+						{
+							if (i > 0) where.append(" AND ");
+							where.append("(");
+							if (fields.isEmpty()) where.append("1=0");
+							for (int j = 0; j < fields.size(); j++)
+							{
+								if (j > 0) where.append(" OR ");
+								where.append("lower(").append(fields.get(j)).append(") LIKE ?");
+								c.addPlaceholder(firstValue + i, true, null);
+							}
+							where.append(")");
+						}
+						where.append(")");
+					}
+				}
+				else if (operator == Operator.NESTED
+						|| (operator == Operator.NOT && rule.getNestedRules() != null && rule.getNestedRules().length > 0))
+				{
+					QueryRule[] nestedRules = rule.getNestedRules();
+					c.shape.append('[');
+					StringBuilder nestedSql = c.compile ? new StringBuilder() : null;
+					createWhereSql(c, nestedSql, true, false, nestedRules);
+					c.shape.append(']');
+
+					if (c.compile && nestedRules.length > 0)
+					{
+						appendConnector(where, previousOperator);
+						if (operator == Operator.NOT) where.append("NOT");
+						where.append("(").append(nestedSql).append(")");
+					}
+				}
+				// experimental: subqery
+				else if (operator == Operator.IN_SUBQUERY)
+				{
+					// subquery is part of the sql
+					c.shape.append(',').append(rule.getValue());
+					if (c.compile)
+					{
+						appendConnector(where, previousOperator);
+						where.append(field).append(" IN(").append(rule.getValue()).append(")");
+					}
+				}
+				else if (operator == Operator.IN)
+				{
+					Object[] values = null;
+					if (rule.getValue() instanceof List<?>) values = ((List<?>) rule.getValue()).toArray();
+					else if (rule.getValue() instanceof Object[]) values = (Object[]) rule.getValue();
+					if (values == null || values.length == 0) throw new DatabaseException(
+							"empty 'in' clause for rule " + rule);
+
+					// the last value is repeated up to a padded size
+					int size = getPaddedSize(values.length);
+					c.shape.append(',').append(size);
+					int firstValue = c.values.size();
+					for (int i = 0; i < size; i++)
+						c.addValue(values[Math.min(i, values.length - 1)]);
+
+					if (c.compile)
+					{
+						appendConnector(where, previousOperator);
+						FieldType type = mapper.getFieldType(field);
+						where.append(field).append(" IN(");
+						for (int i = 0; i < size; i++)
+						{
+							if (i > 0) where.append(",");
+							where.append("?");
+							c.addPlaceholder(firstValue + i, false, type);
+						}
+						where.append(") ");
+					}
+				}
+				else if (operator == Operator.JOIN)
+				{
+					// joined field is part of the sql
+					c.shape.append(',').append(rule.getValue());
+					if (c.compile)
+					{
+						appendConnector(where, previousOperator);
+						where.append(field).append(" = ").append(rule.getValue());
+					}
+				}
+				else
+				{
+					Object value = rule.getValue();
+					if (Boolean.TRUE.equals(value)) value = "1";
+					if (Boolean.FALSE.equals(value)) value = "0";
+					boolean isNull = value == null;
+					c.shape.append(isNull ? ",null" : "");
+
+					if ((operator == Operator.EQUALS || operator == Operator.NOT) && isNull)
+					{
+						if (c.compile)
+						{
+							appendConnector(where, previousOperator);
+							where.append(field).append(operator == Operator.EQUALS ? " IS NULL" : " IS NOT NULL");
+						}
+					}
+					else
+					{
+						int valueIndex = c.values.size();
+						c.addValue(isNull ? "NULL" : value);
+						if (c.compile)
+						{
+							appendConnector(where, previousOperator);
+							FieldType type = mapper.getFieldType(field);
+							where.append(field).append(' ').append(getSqlOperator(operator)).append(" ?");
+							// LIKE compares text, other operators compare typed values
+							boolean like = operator == Operator.LIKE;
+							c.addPlaceholder(valueIndex, like && !isNull && !omitQuotes(type), like || isNull ? null
+									: type);
+						}
+					}
+				}
+				c.shape.append(')');
+				previousOperator = null;
+			}
+		}
+
+		if (c.compile)
+		{
+			if (!isNested && where.length() > 0) sql.append(" WHERE ");
+			sql.append(where).append(mapper.createSortSql(false, rules));
+
+			// same semantics as AbstractJDBCMapper.createLimitSql
+			if (withOffset || offsetIndex == -1)
+			{
+				if (limitIndex != -1)
+				{
+					sql.append(" LIMIT ?");
+					c.addPlaceholder(limitIndex, false, null);
+				}
+				if (offsetIndex != -1)
+				{
+					sql.append(" OFFSET ?");
+					c.addPlaceholder(offsetIndex, false, null);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Number of placeholders of an IN list of <code>n</code> values: the next
+	 * power of two up to {@link QueryRule#IN_CHUNK_SIZE}, or the next multiple
+	 * of that chunk size. Lists of other lengths then share their template and
+	 * the plan of the database, instead of pushing each other out of the cache.
+	 */
+	static int getPaddedSize(int n)
+	{
+		if (n > QueryRule.IN_CHUNK_SIZE) return (n + QueryRule.IN_CHUNK_SIZE - 1) / QueryRule.IN_CHUNK_SIZE
+				* QueryRule.IN_CHUNK_SIZE;
+		int size = Integer.highestOneBit(n);
+		if (size < n) size <<= 1;
+		return Math.min(size, QueryRule.IN_CHUNK_SIZE);
+	}
+
+	private static void appendConnector(StringBuilder where, Operator previousOperator)
+	{
+		if (where.length() > 0)
+		{
+			where.append(previousOperator == Operator.OR ? " OR " : " AND ");
+		}
+	}
+
+	private static String getSqlOperator(Operator operator)
+	{
+		switch (operator)
+		{
+			case EQUALS:
+				return "=";
+			case NOT:
+				return "!=";
+			case LIKE:
+				return "LIKE";
+			case LESS:
+				return "<";
+			case GREATER:
+				return ">";
+			case LESS_EQUAL:
+				return "<=";
+			case GREATER_EQUAL:
+				return ">=";
+			default:
+				return "";
+		}
+	}
+
+	/**
+	 * Converts a rule value, often a String, to the java type of the compared
+	 * field, so that it is bound with the matching setter of
+	 * {@link PreparedQuery#bind(java.sql.PreparedStatement)}. Databases like
+	 * PostgreSQL do not compare typed columns with varchar parameters. Values
+	 * of other field types are bound unchanged.
+	 */
+	static Object toFieldType(Object value, FieldType type) throws DatabaseException
+	{
+		try
+		{
+			if (type instanceof IntField)
+			{
+				return value instanceof Integer ? value : Integer.valueOf(value.toString().trim());
+			}
+			if (type instanceof LongField)
+			{
+				return value instanceof Long ? value : Long.valueOf(value.toString().trim());
+			}
+			if (type instanceof DecimalField)
+			{
+				return value instanceof Double ? value : Double.valueOf(value.toString().trim());
+			}
+			if (type instanceof BoolField)
+			{
+				if (value instanceof Boolean) return value;
+				String str = value.toString().trim();
+				return "1".equals(str) || "true".equalsIgnoreCase(str);
+			}
+			if (type instanceof DatetimeField)
+			{
+				if (value instanceof java.util.Date) return new Timestamp(((java.util.Date) value).getTime());
+				String str = value.toString().trim();
+				return str.indexOf(':') != -1 ? Timestamp.valueOf(str) : new Timestamp(toDate(str).getTime());
+			}
+			if (type instanceof DateField)
+			{
+				if (value instanceof java.util.Date) return new java.sql.Date(((java.util.Date) value).getTime());
+				String str = value.toString().trim();
+				return str.indexOf(':') != -1 ? new java.sql.Date(Timestamp.valueOf(str).getTime()) : toDate(str);
+			}
+		}
+		catch (IllegalArgumentException e)
+		{
+			// includes NumberFormatException
+			throw new DatabaseException("value '" + value + "' is not a valid " + type);
+		}
+		catch (ParseException e)
+		{
+			throw new DatabaseException("value '" + value + "' is not a valid " + type);
+		}
+		return value;
+	}
+
+	/** parses yyyy-MM-dd and the date formats of {@link AbstractEntity} */
+	private static java.sql.Date toDate(String str) throws ParseException
+	{
+		try
+		{
+			return java.sql.Date.valueOf(str);
+		}
+		catch (IllegalArgumentException e)
+		{
+			return AbstractEntity.string2date(str);
+		}
+	}
+
+	private static boolean omitQuotes(FieldType t)
+	{
+		return t instanceof LongField || t instanceof IntField || t instanceof DecimalField;
+	}
+
+	/** table field names of the string fields of the mapped entity */
+	private List<String> getSearchFields() throws DatabaseException
+	{
+		String key = mapper.getClass().getName();
+		List<String> fields = searchFields.get(key);
+		if (fields == null)
+		{
+			fields = new ArrayList<String>();
+			try
+			{
+				for (Field f : mapper.getDatabase().getMetaData().getEntity(mapper.create().getClass().getSimpleName())
+						.getAllFields())
+				{
+					if (f.getType() instanceof StringField || f.getType() instanceof TextField)
+					{
+						fields.add(mapper.getTableFieldName(f.getName()));
+					}
+				}
+			}
+			catch (Exception e)
+			{
+				throw new DatabaseException(e);
+			}
+			searchFields.put(key, fields);
+		}
+		return fields;
+	}
+
+	/** state of one pass over the rules */
+	private static class Compilation
+	{
+		final boolean compile;
+		final StringBuilder shape = new StringBuilder();
+		final List<Object> values = new ArrayList<Object>();
+		final List<Placeholder> placeholders;
+
+		Compilation(boolean compile)
+		{
+			this.compile = compile;
+			this.placeholders = compile ? new ArrayList<Placeholder>() : null;
+		}
+
+		void addValue(Object value)
+		{
+			values.add(value);
+		}
+
+		void addPlaceholder(int valueIndex, boolean like, FieldType type)
+		{
+			placeholders.add(new Placeholder(valueIndex, like, type));
+		}
+	}
+
+	private static class Placeholder
+	{
+		final int valueIndex;
+		final boolean like;
+		/** type of the compared field, null if the value is bound as is */
+		final FieldType type;
+
+		Placeholder(int valueIndex, boolean like, FieldType type)
+		{
+			this.valueIndex = valueIndex;
+			this.like = like;
+			this.type = type;
+		}
+	}
+
+	/** compiled sql with for each placeholder the value it binds */
+	private static class Template
+	{
+		private final String sql;
+		private final int[] valueIndices;
+		private final boolean[] likes;
+		private final FieldType[] types;
+
+		Template(String sql, int[] valueIndices, boolean[] likes, FieldType[] types)
+		{
+			this.sql = sql;
+			this.valueIndices = valueIndices;
+			this.likes = likes;
+			this.types = types;
+		}
+
+		PreparedQuery bind(List<Object> values) throws DatabaseException
+		{
+			List<Object> parameters = new ArrayList<Object>(valueIndices.length);
+			for (int i = 0; i < valueIndices.length; i++)
+			{
+				Object value = values.get(valueIndices[i]);
+				if (likes[i])
+				{
+					String str = value.toString();
+					if (!str.trim().startsWith("%") && !str.trim().endsWith("%")) value = "%" + str + "%";
+				}
+				else if (types[i] != null)
+				{
+					value = toFieldType(value, types[i]);
+				}
+				parameters.add(value);
+			}
+			return new PreparedQuery(sql, parameters);
+		}
+	}
+}
@@ -0,0 +1,667 @@
+package org.molgenis.framework.db.jdbc;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.log4j.Logger;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.CharTokenizer;
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.TermAttribute;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Index;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.molgenis.fieldtypes.StringField;
+import org.molgenis.fieldtypes.TextField;
+import org.molgenis.framework.db.Database;
+import org.molgenis.framework.db.DatabaseException;
+import org.molgenis.framework.db.QueryRule.Operator;
+import org.molgenis.model.elements.Field;
+import org.molgenis.util.CloseableIterator;
+import org.molgenis.util.Entity;
+
+/**
+ * Full text index of the string and text fields of an entity, used by
+ * {@link AbstractJDBCMapper} to answer {@link Operator#SEARCH} rules with an
+ * index lookup instead of a <code>lower(field) LIKE '%term%'</code> scan of
+ * the whole table.
+ * <p>
+ * The index is a Lucene index in {@link #getDirectory()}/entity class name. It
+ * is built from the database once, by the first search after startup or after
+ * it was invalidated, and then kept up to date by the add, update and remove
+ * methods of the mappers. Other searches are left to SQL while it is built.
+ * Changes made in a transaction are applied to the index after the commit, see
+ * {@link Change}; until then searches in that transaction are left to SQL.
+ * Changes made by plain SQL through the database invalidate the index. Changes
+ * made by other applications are not seen.
+ * <p>
+ * Each word is indexed with all its suffixes, so a word that contains a search
+ * word has a term that starts with it and a search is a prefix lookup. The
+ * index finds the candidates of a search: the entities of which a word
+ * contains each word of each term. When every term is a single word these are
+ * exactly the matches of SQL, see {@link Hits#isExact()}. Otherwise the mapper
+ * filters the candidates with the LIKE query on their ids. A search is left to
+ * SQL when a term contains no words or when there are more than
+ * {@link #MAX_HITS} candidates.
+ */
+public class SearchIndex
+{
+	private static final Logger logger = Logger.getLogger(SearchIndex.class);
+
+	/** maximum number of ids a search is rewritten to */
+	public static final int MAX_HITS = 1000;
+
+	/** words are split in parts of this length by the tokenizer */
+	private static final int MAX_WORD_LENGTH = 255;
+
+	/** document fields */
+	private static final String ID = "__id";
+	private static final String TEXT = "__text";
+	/** set and stored on documents with words longer than MAX_WORD_LENGTH */
+	private static final String LONG_WORDS = "__long";
+
+	/** directory of the indexes, null disables indexing */
+	private static volatile File directory;
+
+	/** indexes by entity class */
+	private static final Map<Class<? extends Entity>, SearchIndex> indexes = new HashMap<Class<? extends Entity>, SearchIndex>();
+
+	/** words are the lowercased letters and digits between other characters */
+	private final Analyzer analyzer = new Analyzer()
+	{
+		@Override
+		public TokenStream tokenStream(String fieldName, Reader reader)
+		{
+			return new WordTokenizer(reader);
+		}
+	};
+
+	/** indexes the words with all their suffixes */
+	private final Analyzer suffixAnalyzer = new Analyzer()
+	{
+		@Override
+		public TokenStream tokenStream(String fieldName, Reader reader)
+		{
+			return new SuffixFilter(new WordTokenizer(reader));
+		}
+	};
+
+	private final Class<? extends Entity> entityClass;
+	private final List<String> fields;
+	private final Directory indexDirectory;
+
+	/** whether the index matches the database */
+	private volatile boolean built = false;
+
+	/** incremented when the index is invalidated, so a running build is not used */
+	private volatile int version = 0;
+
+	/**
+	 * searches read the index, the build and changes write it, see
+	 * {@link #search}
+	 */
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	/** type of the ids, to convert the indexed strings back */
+	private Class<?> idType;
+
+	private IndexSearcher searcher;
+
+	private SearchIndex(Class<? extends Entity> entityClass, List<String> fields, File dir) throws IOException
+	{
+		this.entityClass = entityClass;
+		this.fields = fields;
+		this.indexDirectory = FSDirectory.open(dir);
+	}
+
+	public static File getDirectory()
+	{
+		return directory;
+	}
+
+	/**
+	 * Sets the directory of the indexes. The open indexes are closed when the
+	 * directory changes.
+	 * 
+	 * @param directory
+	 *            directory to create the indexes in, null disables the indexes
+	 */
+	public static void setDirectory(File directory)
+	{
+		synchronized (indexes)
+		{
+			if (directory == null ? SearchIndex.directory == null : directory.equals(SearchIndex.directory)) return;
+			SearchIndex.directory = directory;
+			for (SearchIndex index : indexes.values())
+				index.close();
+			indexes.clear();
+		}
+	}
+
+	/**
+	 * Get the index of the entity of the mapper
+	 *
+	 * @return the index or null if indexing is disabled
+	 */
+	public static SearchIndex get(AbstractJDBCMapper<?> mapper) throws DatabaseException
+	{
+		File dir = directory;
+		if (dir == null) return null;
+		Class<? extends Entity> entityClass = mapper.create().getClass();
+		synchronized (indexes)
+		{
+			SearchIndex index = indexes.get(entityClass);
+			if (index == null)
+			{
+				try
+				{
+					List<String> fields = new ArrayList<String>();
+					for (Field f : mapper.getDatabase().getMetaData().getEntity(entityClass.getSimpleName())
+							.getAllFields())
+					{
+						if (f.getType() instanceof StringField || f.getType() instanceof TextField) fields.add(f
+								.getName());
+					}
+					index = new SearchIndex(entityClass, fields, new File(dir, entityClass.getName()));
+				}
+				catch (Exception e)
+				{
+					throw new DatabaseException(e);
+				}
+				indexes.put(entityClass, index);
+			}
+			return index;
+		}
+	}
+
+	/**
+	 * Prepare the update of the documents of the entities in the indexes of
+	 * their class and superclasses. Indexes of subclasses are rebuilt on their
+	 * next search. The documents are created now, the change is made when it
+	 * is applied.
+	 */
+	public static Change update(Class<? extends Entity> entityClass, Collection<? extends Entity> entities)
+	{
+		return new Change(entityClass, entities, false);
+	}
+
+	/**
+	 * Prepare the removal of the documents of the entities from the indexes of
+	 * their class and superclasses. Indexes of subclasses are rebuilt on their
+	 * next search.
+	 */
+	public static Change remove(Class<? extends Entity> entityClass, Collection<? extends Entity> entities)
+	{
+		return new Change(entityClass, entities, true);
+	}
+
+	/**
+	 * Rebuild the indexes of the entity class, its superclasses and
+	 * subclasses on their next search, e.g. because changes were rolled back.
+	 */
+	public static void invalidate(Class<? extends Entity> entityClass)
+	{
+		for (SearchIndex index : getRelated(entityClass))
+			index.invalidate();
+	}
+
+	/** Rebuild all indexes on their next search */
+	public static void invalidateAll()
+	{
+		synchronized (indexes)
+		{
+			for (SearchIndex index : indexes.values())
+				index.invalidate();
+		}
+	}
+
+	private static List<SearchIndex> getRelated(Class<? extends Entity> entityClass)
+	{
+		List<SearchIndex> result = new ArrayList<SearchIndex>();
+		synchronized (indexes)
+		{
+			for (SearchIndex index : indexes.values())
+			{
+				if (index.entityClass.isAssignableFrom(entityClass) || entityClass.isAssignableFrom(index.entityClass)) result
+						.add(index);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Find the ids of the candidates of a search: the entities of which a word
+	 * contains each word of each search term. This includes all entities that
+	 * match the search in SQL.
+	 * <p>
+	 * Searches run concurrently. If the index is not built the first search
+	 * builds it and the searches meanwhile are left to SQL.
+	 *
+	 * @param mapper
+	 *            mapper of the entity, used to build the index
+	 * @param terms
+	 *            search terms separated by spaces
+	 * @return the candidates or null if the search can not be answered by the
+	 *         index
+	 */
+	public Hits search(AbstractJDBCMapper<?> mapper, String terms) throws DatabaseException
+	{
+		try
+		{
+			// split terms like the LIKE query of the mappers does
+			BooleanQuery words = new BooleanQuery();
+			boolean exact = true;
+			for (String term : terms.split(" "))
+			{
+				List<String> termWords = analyze(term.trim());
+				if (termWords.isEmpty()) return null;
+				// a term of one word matches the same in LIKE and the index
+				if (termWords.size() > 1 || !termWords.get(0).equals(term.trim().toLowerCase())) exact = false;
+				for (String word : termWords)
+					words.add(new PrefixQuery(new Term(TEXT, word)), Occur.MUST);
+			}
+			if (words.clauses().isEmpty()) return null;
+			BooleanQuery query = new BooleanQuery();
+			query.add(words, Occur.SHOULD);
+			query.add(new TermQuery(new Term(LONG_WORDS, "true")), Occur.SHOULD);
+
+			// the index does not contain the changes of the current transaction
+			Database db = mapper.getDatabase();
+			if (db instanceof JDBCDatabase && ((JDBCDatabase) db).hasSearchIndexChanges(entityClass)) return null;
+			// don't index uncommitted changes
+			if (!built && (db.inTx() || !build(mapper))) return null;
+
+			lock.readLock().lock();
+			try
+			{
+				if (!built) return null;
+				IndexSearcher indexSearcher = getSearcher();
+				TopDocs hits = indexSearcher.search(query, MAX_HITS + 1);
+				if (hits.totalHits > MAX_HITS)
+				{
+					logger.debug("search '" + terms + "' has more than " + MAX_HITS + " candidate "
+							+ entityClass.getSimpleName() + ", not using index");
+					return null;
+				}
+
+				List<Object> ids = new ArrayList<Object>(hits.scoreDocs.length);
+				for (ScoreDoc hit : hits.scoreDocs)
+				{
+					Document doc = indexSearcher.doc(hit.doc);
+					ids.add(toId(doc.get(ID)));
+					// the parts of long words are candidates, not matches
+					if (doc.get(LONG_WORDS) != null) exact = false;
+				}
+				return new Hits(ids, exact);
+			}
+			finally
+			{
+				lock.readLock().unlock();
+			}
+		}
+		catch (IOException e)
+		{
+			throw new DatabaseException(e);
+		}
+	}
+
+	/** the searcher, only use it while holding the lock */
+	private synchronized IndexSearcher getSearcher() throws IOException
+	{
+		if (searcher == null) searcher = new IndexSearcher(IndexReader.open(indexDirectory, true));
+		return searcher;
+	}
+
+	/**
+	 * Build the index from the database, unless another search is already
+	 * building it or a change is being written. The index is not used if it
+	 * was invalidated meanwhile.
+	 * 
+	 * @return whether the index was built
+	 */
+	private boolean build(AbstractJDBCMapper<?> mapper) throws DatabaseException, IOException
+	{
+		if (!lock.writeLock().tryLock()) return false;
+		try
+		{
+			if (built) return true;
+			int buildVersion = version;
+			long start = System.currentTimeMillis();
+			int count = 0;
+			closeSearcher();
+			IndexWriter writer = new IndexWriter(indexDirectory, suffixAnalyzer, true,
+					IndexWriter.MaxFieldLength.UNLIMITED);
+			try
+			{
+				CloseableIterator<? extends Entity> it = mapper.iterate();
+				try
+				{
+					while (it.hasNext())
+					{
+						writer.addDocument(createDocument(it.next()));
+						count++;
+					}
+				}
+				finally
+				{
+					it.close();
+				}
+				writer.optimize();
+			}
+			finally
+			{
+				writer.close();
+			}
+			built = buildVersion == version;
+			logger.info("indexed " + count + " " + entityClass.getSimpleName() + " in "
+					+ (System.currentTimeMillis() - start) + " ms");
+			return built;
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Replace the documents of the ids by the given documents, or remove them
+	 * if the documents are null
+	 */
+	private void write(List<Object> ids, List<Document> documents) throws DatabaseException
+	{
+		// not built yet, it will be complete when it is
+		if (!built || ids.isEmpty()) return;
+		// waits for a build, so the change is not lost
+		lock.writeLock().lock();
+		try
+		{
+			if (!built) return;
+			closeSearcher();
+			IndexWriter writer = new IndexWriter(indexDirectory, suffixAnalyzer, false,
+					IndexWriter.MaxFieldLength.UNLIMITED);
+			try
+			{
+				for (int i = 0; i < ids.size(); i++)
+				{
+					writer.deleteDocuments(new Term(ID, ids.get(i).toString()));
+					if (documents != null) writer.addDocument(documents.get(i));
+				}
+			}
+			finally
+			{
+				writer.close();
+			}
+		}
+		catch (IOException e)
+		{
+			built = false;
+			throw new DatabaseException(e);
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+
+	private synchronized void invalidate()
+	{
+		version++;
+		built = false;
+	}
+
+	private Document createDocument(Entity entity)
+	{
+		Object id = entity.getIdValue();
+		idType = id.getClass();
+		StringBuilder text = new StringBuilder();
+		for (String field : fields)
+		{
+			Object value = entity.get(field);
+			if (value != null) text.append(value).append(' ');
+		}
+		Document doc = new Document();
+		doc.add(new org.apache.lucene.document.Field(ID, id.toString(), Store.YES, Index.NOT_ANALYZED));
+		doc.add(new org.apache.lucene.document.Field(TEXT, text.toString(), Store.NO, Index.ANALYZED));
+		// the parts of long words don't contain all their substrings
+		if (hasLongWords(text)) doc.add(new org.apache.lucene.document.Field(LONG_WORDS, "true", Store.YES,
+				Index.NOT_ANALYZED));
+		return doc;
+	}
+
+	private static boolean hasLongWords(CharSequence text)
+	{
+		int length = 0;
+		for (int i = 0; i < text.length(); i++)
+		{
+			length = Character.isLetterOrDigit(text.charAt(i)) ? length + 1 : 0;
+			if (length > MAX_WORD_LENGTH) return true;
+		}
+		return false;
+	}
+
+	private Object toId(String id)
+	{
+		if (Integer.class.equals(idType)) return Integer.valueOf(id);
+		if (Long.class.equals(idType)) return Long.valueOf(id);
+		return id;
+	}
+
+	/** split a term into words the same way as the indexed text */
+	private List<String> analyze(String term) throws IOException
+	{
+		List<String> words = new ArrayList<String>();
+		TokenStream tokens = analyzer.tokenStream(TEXT, new StringReader(term));
+		TermAttribute word = tokens.addAttribute(TermAttribute.class);
+		while (tokens.incrementToken())
+			words.add(word.term());
+		tokens.close();
+		return words;
+	}
+
+	/** close the searcher and directory of a removed index */
+	private void close()
+	{
+		lock.writeLock().lock();
+		try
+		{
+			built = false;
+			closeSearcher();
+			indexDirectory.close();
+		}
+		catch (IOException e)
+		{
+			logger.warn("could not close index of " + entityClass.getSimpleName() + ": " + e.getMessage());
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+
+	private synchronized void closeSearcher() throws IOException
+	{
+		if (searcher != null)
+		{
+			searcher.getIndexReader().close();
+			searcher = null;
+		}
+	}
+
+	/**
+	 * A change of the indexes by an add, update or remove of entities. The
+	 * documents are created when the change is made, so later changes to the
+	 * entities don't affect it. {@link JDBCDatabase} applies the changes of a
+	 * transaction after it is committed.
+	 */
+	public static class Change
+	{
+		private final Class<? extends Entity> entityClass;
+		private final List<SearchIndex> written = new ArrayList<SearchIndex>();
+		private final List<List<Object>> ids = new ArrayList<List<Object>>();
+		private final List<List<Document>> documents = new ArrayList<List<Document>>();
+		private final List<SearchIndex> invalidated = new ArrayList<SearchIndex>();
+
+		private Change(Class<? extends Entity> entityClass, Collection<? extends Entity> entities, boolean remove)
+		{
+			this.entityClass = entityClass;
+			for (SearchIndex index : getRelated(entityClass))
+			{
+				if (index.entityClass.isAssignableFrom(entityClass))
+				{
+					List<Object> indexIds = new ArrayList<Object>(entities.size());
+					List<Document> indexDocuments = remove ? null : new ArrayList<Document>(entities.size());
+					for (Entity entity : entities)
+					{
+						if (entity.getIdValue() == null) continue;
+						indexIds.add(entity.getIdValue());
+						if (!remove) indexDocuments.add(index.createDocument(entity));
+					}
+					written.add(index);
+					ids.add(indexIds);
+					documents.add(indexDocuments);
+				}
+				else
+				{
+					invalidated.add(index);
+				}
+			}
+		}
+
+		/**
+		 * Whether the change affects the index of an entity class: the class
+		 * of the changed entities, its superclasses and subclasses
+		 */
+		public boolean affects(Class<? extends Entity> entityClass)
+		{
+			return this.entityClass.isAssignableFrom(entityClass) || entityClass.isAssignableFrom(this.entityClass);
+		}
+
+		/**
+		 * Make the change in the indexes
+		 */
+		public void apply() throws DatabaseException
+		{
+			for (SearchIndex index : invalidated)
+				index.invalidate();
+			for (int i = 0; i < written.size(); i++)
+				written.get(i).write(ids.get(i), documents.get(i));
+		}
+
+		/**
+		 * Rebuild the affected indexes instead of applying the change, e.g.
+		 * when it is not known whether it was committed
+		 */
+		public void invalidate()
+		{
+			SearchIndex.invalidate(entityClass);
+		}
+	}
+
+	/** The ids found by a search */
+	public static class Hits
+	{
+		private final List<Object> ids;
+		private final boolean exact;
+
+		private Hits(List<Object> ids, boolean exact)
+		{
+			this.ids = ids;
+			this.exact = exact;
+		}
+
+		public List<Object> getIds()
+		{
+			return ids;
+		}
+
+		/**
+		 * Whether the ids are exactly the matches of the search in SQL, rather
+		 * than candidates that must be filtered by it
+		 */
+		public boolean isExact()
+		{
+			return exact;
+		}
+	}
+
+	/** splits text in words of lowercased letters and digits */
+	private static class WordTokenizer extends CharTokenizer
+	{
+		public WordTokenizer(Reader reader)
+		{
+			super(reader);
+		}
+
+		@Override
+		protected boolean isTokenChar(char c)
+		{
+			return Character.isLetterOrDigit(c);
+		}
+
+		@Override
+		protected char normalize(char c)
+		{
+			return Character.toLowerCase(c);
+		}
+	}
+
+	/** adds the suffixes of each word after it, e.g. script, cript, ript, ... */
+	private static class SuffixFilter extends TokenFilter
+	{
+		private final TermAttribute term = addAttribute(TermAttribute.class);
+		private char[] word = new char[0];
+		private int length = 0;
+		private int offset = 0;
+
+		public SuffixFilter(TokenStream input)
+		{
+			super(input);
+		}
+
+		@Override
+		public boolean incrementToken() throws IOException
+		{
+			if (++offset < length)
+			{
+				term.setTermBuffer(word, offset, length - offset);
+				return true;
+			}
+			if (!input.incrementToken()) return false;
+			length = term.termLength();
+			if (word.length < length) word = new char[length];
+			System.arraycopy(term.termBuffer(), 0, word, 0, length);
+			offset = 0;
+			return true;
+		}
+
+		@Override
+		public void reset() throws IOException
+		{
+			super.reset();
+			length = 0;
+			offset = 0;
+		}
+	}
+}
@@ -8,19 +8,25 @@ import java.util.List;
 import javax.persistence.EntityManager;
 import javax.persistence.TypedQuery;
 
+import org.apache.log4j.Logger;
 import org.molgenis.fieldtypes.FieldType;
 import org.molgenis.framework.db.AbstractMapper;
 import org.molgenis.framework.db.Database;
 import org.molgenis.framework.db.DatabaseException;
 import org.molgenis.framework.db.QueryRule;
 import org.molgenis.io.TupleWriter;
+import org.molgenis.util.CloseableIterator;
 import org.molgenis.util.Entity;
+import org.molgenis.util.tuple.EntityTuple;
 
 /**
  * JPA implementation of the Mapper interface.
  */
 public abstract class AbstractJpaMapper<E extends Entity> extends AbstractMapper<E>
 {
+	/** log messages */
+	private static final Logger logger = Logger.getLogger(AbstractJpaMapper.class);
+
 	public AbstractJpaMapper(Database database)
 	{
 		super(database);
@@ -48,7 +54,7 @@ public abstract class AbstractJpaMapper<E extends Entity> extends AbstractMapper
 	public abstract String createFindSqlInclRules(QueryRule[] rules) throws DatabaseException;
 
 	@Override
-	public int count(QueryRule... rules) throws DatabaseException
+	protected int executeCount(QueryRule... rules) throws DatabaseException
 	{
 		TypedQuery<Long> query = JPAQueryGeneratorUtil.createCount(getDatabase(), getEntityClass(), this, getDatabase()
 				.getEntityManager(), rules);
@@ -64,6 +70,14 @@ public abstract class AbstractJpaMapper<E extends Entity> extends AbstractMapper
 		return query.getResultList();
 	}
 
+	@Override
+	public CloseableIterator<E> iterate(QueryRule... rules) throws DatabaseException
+	{
+		TypedQuery<E> query = JPAQueryGeneratorUtil.createQuery(this.getDatabase(), getEntityClass(), this,
+				getDatabase().getEntityManager(), rules);
+		return JpaFrameworkFactory.createFramework().iterate(getEntityManager(), query, BATCH_SIZE);
+	}
+
 	@Override
 	public E findById(Object id)
 	{
@@ -96,7 +110,26 @@ public abstract class AbstractJpaMapper<E extends Entity> extends AbstractMapper
 	@Override
 	public void find(TupleWriter writer, List<String> fieldsToExport, QueryRule[] rules) throws DatabaseException
 	{
-		throw new UnsupportedOperationException("not implemented");
+		try
+		{
+			if (fieldsToExport != null) writer.writeColNames(fieldsToExport);
+			else
+				writer.writeColNames(new EntityTuple(create()).getColNames());
+
+			int count = 0;
+			for (E e : find(rules))
+			{
+				writer.write(new EntityTuple(e));
+				count++;
+			}
+			if (logger.isDebugEnabled()) logger.debug(String.format("find(%s, writer) wrote %s lines", getEntityClass()
+					.getSimpleName(), count));
+			writer.close();
+		}
+		catch (Exception ex)
+		{
+			throw new DatabaseException(ex);
+		}
 	}
 
 }
@@ -3,16 +3,22 @@ package org.molgenis.framework.db.jpa;
 import java.sql.Connection;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 
 import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
 
 import org.hibernate.Criteria;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
 import org.hibernate.criterion.Example;
 import org.hibernate.ejb.Ejb3Configuration;
 import org.hibernate.ejb.HibernateEntityManager;
+import org.hibernate.ejb.HibernateQuery;
 import org.hibernate.tool.hbm2ddl.SchemaExport;
 import org.hibernate.tool.hbm2ddl.SchemaUpdate;
+import org.molgenis.util.CloseableIterator;
 import org.molgenis.util.Entity;
 
 /**
@@ -32,6 +38,55 @@ class HibernateImp implements JpaFramework
 		return list;
 	}
 
+	@Override
+	public <E extends Entity> CloseableIterator<E> iterate(EntityManager em, TypedQuery<E> query, int fetchSize)
+	{
+		final Session session = (Session) em.getDelegate();
+		final ScrollableResults results = ((HibernateQuery) query).getHibernateQuery().setFetchSize(fetchSize)
+				.scroll(ScrollMode.FORWARD_ONLY);
+
+		return new CloseableIterator<E>()
+		{
+			private E previous;
+			private Boolean hasNext;
+
+			@Override
+			public boolean hasNext()
+			{
+				if (hasNext == null)
+				{
+					// keep the persistence context small
+					if (previous != null) session.evict(previous);
+					previous = null;
+					hasNext = results.next();
+				}
+				return hasNext;
+			}
+
+			@SuppressWarnings("unchecked")
+			@Override
+			public E next()
+			{
+				if (!hasNext()) throw new NoSuchElementException();
+				hasNext = null;
+				previous = (E) results.get(0);
+				return previous;
+			}
+
+			@Override
+			public void remove()
+			{
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public void close()
+			{
+				results.close();
+			}
+		};
+	}
+
 	@Override
 	public void createTables(final String persistenceUnitName, final Map<String, Object> configOverwrites)
 	{
@@ -160,6 +160,11 @@ public class JpaDatabase extends AbstractDatabase
 		{
 			throw new DatabaseException(e);
 		}
+		finally
+		{
+			foreignKeyResolver.clear();
+			invalidateChangedEntities();
+		}
 	}
 
 	@Override
@@ -176,11 +181,17 @@ public class JpaDatabase extends AbstractDatabase
 		{
 			throw new DatabaseException(e);
 		}
+		finally
+		{
+			foreignKeyResolver.clear();
+			invalidateChangedEntities();
+		}
 	}
 
 	@Override
 	public void close() throws IOException
 	{
+		invalidateChangedEntities();
 		try
 		{
 			em.close();
@@ -5,7 +5,9 @@ import java.util.List;
 import java.util.Map;
 
 import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
 
+import org.molgenis.util.CloseableIterator;
 import org.molgenis.util.Entity;
 
 /**
@@ -17,6 +19,18 @@ public interface JpaFramework
 
 	public <E extends Entity> List<E> findByExample(EntityManager em, E example);
 
+	/**
+	 * Iterate over the results of a query using a single forward-only cursor.
+	 * Entities are detached from the persistence context once the iterator
+	 * has moved past them.
+	 * 
+	 * @param em
+	 * @param query
+	 * @param fetchSize
+	 *            number of rows fetched per round-trip
+	 */
+	public <E extends Entity> CloseableIterator<E> iterate(EntityManager em, TypedQuery<E> query, int fetchSize);
+
 	/**
 	 * Create tables based on annotations.
 	 * 
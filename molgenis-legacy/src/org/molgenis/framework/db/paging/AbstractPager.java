@@ -6,8 +6,11 @@ import java.util.List;
 import org.apache.log4j.Logger;
 import org.molgenis.framework.db.Database;
 import org.molgenis.framework.db.DatabaseException;
+import org.molgenis.framework.db.Query;
+import org.molgenis.framework.db.QueryImp;
 import org.molgenis.framework.db.QueryRule;
 import org.molgenis.framework.db.QueryRule.Operator;
+import org.molgenis.model.elements.Field;
 import org.molgenis.util.Entity;
 
 /**
@@ -255,6 +258,35 @@ public abstract class AbstractPager<E extends Entity> implements DatabasePager<E
 	}
 
 	// PROTECTED HELPERS
+	/**
+	 * Retrieve the current filters plus, if the entity has a type field (i.e.
+	 * it has subclasses), a filter on the type of this pager.
+	 * 
+	 * @return filters including type filter
+	 */
+	protected QueryRule[] getFiltersInclType()
+	{
+		Query<E> q = new QueryImp<E>();
+		q.addRules(this.getFilters());
+		try
+		{
+			for (String fieldName : this.getEntityClass().newInstance().getFields())
+			{
+				if (fieldName.equals(Field.TYPE_FIELD)) q.equals(Field.TYPE_FIELD, this.getEntityClass()
+						.getSimpleName());
+			}
+		}
+		catch (InstantiationException e)
+		{
+			e.printStackTrace();
+		}
+		catch (IllegalAccessException e)
+		{
+			e.printStackTrace();
+		}
+		return q.getRules();
+	}
+
 	protected void reloadCount(Database db, QueryRule... rules) throws DatabaseException
 	{
 		count = db.count(entityClass, rules);
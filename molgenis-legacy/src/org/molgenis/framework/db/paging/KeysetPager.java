@@ -0,0 +1,335 @@
+package org.molgenis.framework.db.paging;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.molgenis.framework.db.Database;
+import org.molgenis.framework.db.DatabaseException;
+import org.molgenis.framework.db.QueryRule;
+import org.molgenis.framework.db.QueryRule.Operator;
+import org.molgenis.model.MolgenisModelException;
+import org.molgenis.model.elements.Field;
+import org.molgenis.model.elements.Index;
+import org.molgenis.model.elements.Model;
+import org.molgenis.model.elements.Unique;
+import org.molgenis.util.Entity;
+
+/**
+ * Page a database by seeking from the (orderByField, primary key) values of the
+ * current page instead of skipping 'offset' rows.
+ * <p>
+ * Next and previous pages are retrieved with a filter like
+ * <code>orderByField > x OR (orderByField = x AND primaryKey > y)</code>, so
+ * the cost of a page does not depend on how far one has paged. The previous
+ * and the last page are retrieved by reversing the sort order. The primary key
+ * is used as secondary sort field to make the order predictable when the order
+ * by field is not unique.
+ * <p>
+ * Seeking is only faster if the order by field is indexed, and only correct if
+ * the order by field cannot be null: the threshold filter skips rows with a
+ * null order by value, which databases sort first or last. If the order by
+ * field is nullable or not indexed, or if the position is not known from the
+ * current page (e.g. after
+ * {@link #setOffset(int)} or when filters changed), this pager falls back to
+ * limit and offset like {@link LimitOffsetPager}.
+ * 
+ * @param <E>
+ */
+public class KeysetPager<E extends Entity> extends AbstractPager<E>
+{
+	private static final long serialVersionUID = 4632316307427150532L;
+
+	private static final Logger logger = Logger.getLogger(KeysetPager.class);
+
+	/** primary key of the entity, used as secondary sort field */
+	private String primaryKeyField;
+
+	/** (orderByField, primary key) of the first and last entity of the page */
+	private Object firstOrderByThreshold;
+	private Object firstPKeyThreshold;
+	private Object lastOrderByThreshold;
+	private Object lastPKeyThreshold;
+
+	/** whether the thresholds match the current page */
+	private boolean hasThresholds = false;
+
+	/** order by field for which the index and nillable lookup was done */
+	private String seekableOrderByField;
+	private boolean orderByFieldSeekable;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param entityClass
+	 *            class of the entity to be paged
+	 * @param defaultOrderByField
+	 *            name of field that will be used to order database entities by
+	 * @param primaryKeyField
+	 *            the primary key of the entity (must be unique and indexed)
+	 * @throws DatabaseException
+	 */
+	public KeysetPager(Class<E> entityClass, String defaultOrderByField, String primaryKeyField)
+			throws DatabaseException
+	{
+		super(entityClass, defaultOrderByField);
+		if (primaryKeyField == null || primaryKeyField.equals("")) throw new DatabaseException(
+				"primaryKeyField cannot be null");
+		this.primaryKeyField = primaryKeyField;
+		// ensure it is loaded on first use
+		this.pagingState = State.REFRESH;
+	}
+
+	public String getPrimaryKeyField()
+	{
+		return primaryKeyField;
+	}
+
+	/**
+	 * {@inheritDoc}. Implemented using threshold QueryRules on the order by
+	 * field and primary key when possible, else using 'limit' and 'offset'
+	 * QueryRules.
+	 */
+	@Override
+	public void refresh(Database db) throws DatabaseException
+	{
+		// don't use getters and setters!!! these will call refresh resulting in
+		// endless loops
+		if (this.pagingState == State.UPTODATE) return;
+
+		QueryRule[] filters = this.getFiltersInclType();
+		reloadCount(db, filters);
+
+		List<QueryRule> rules = new ArrayList<QueryRule>(Arrays.asList(filters));
+		boolean seek = hasThresholds && isOrderByFieldSeekable(db);
+		boolean withOffset = false;
+		boolean reverse = false;
+		int pageSize = limit;
+
+		// correct current offset to be in line with limit (with limit > 0)
+		offset = (offset / limit) * limit;
+
+		// based on the pagingState we add additional filterings
+		switch (pagingState)
+		{
+			case NEXT:
+				if (offset + limit < count)
+				{
+					offset = offset + limit;
+					// get first after last threshold (exclusive)
+					if (seek) rules.add(createThresholdRule(lastOrderByThreshold, lastPKeyThreshold, false, false));
+					else
+						withOffset = true;
+					logger.debug("handled next, offset: " + offset + ", seek: " + seek);
+					break;
+				}
+				logger.debug("handled next, is already in 'last' range so refresh");
+			case REFRESH:
+				if (count > offset)
+				{
+					// get first from first threshold (inclusive)
+					if (seek) rules.add(createThresholdRule(firstOrderByThreshold, firstPKeyThreshold, false, true));
+					else
+						withOffset = true;
+					logger.debug("handled refresh, offset: " + offset + ", seek: " + seek);
+					break;
+				}
+				logger.debug("handled refresh, count was lower than offset so moving to show last");
+			case LAST:
+				// get last page by reversing the sort order
+				if (count > limit) offset = ((count - 1) / limit) * limit;
+				else
+					offset = 0;
+				pageSize = Math.max(count - offset, 1);
+				reverse = true;
+				logger.debug("handled last, offset: " + offset);
+				break;
+			case PREV:
+				if (offset - limit >= 0)
+				{
+					offset = offset - limit;
+					if (seek)
+					{
+						// get last before first threshold (exclusive)
+						rules.add(createThresholdRule(firstOrderByThreshold, firstPKeyThreshold, true, false));
+						reverse = true;
+					}
+					else
+						withOffset = true;
+					logger.debug("handled prev, offset: " + offset + ", seek: " + seek);
+					break;
+				}
+				logger.debug("handled prev, is already in 'first' range so go first");
+			case FIRST:
+				offset = 0;
+				logger.debug("handled first, offset: " + offset);
+				break;
+			default:
+				break;
+		}
+
+		// sort on order by field and primary key, reversed to find the entities
+		// before a threshold
+		Operator sort = getOrderByOperator();
+		if (reverse) sort = sort == Operator.SORTASC ? Operator.SORTDESC : Operator.SORTASC;
+		rules.add(new QueryRule(sort, getOrderByField()));
+		if (!getOrderByField().equalsIgnoreCase(primaryKeyField)) rules.add(new QueryRule(sort, primaryKeyField));
+
+		rules.add(new QueryRule(Operator.LIMIT, pageSize));
+		if (withOffset && offset > 0) rules.add(new QueryRule(Operator.OFFSET, offset));
+
+		// reload the page
+		if (count > 0)
+		{
+			reloadPage(db, rules.toArray(new QueryRule[rules.size()]));
+			if (reverse)
+			{
+				List<E> reversedPage = new ArrayList<E>(page);
+				Collections.reverse(reversedPage);
+				setPage(reversedPage);
+			}
+		}
+		else
+		{
+			setPage(new ArrayList<E>());
+		}
+
+		// remember thresholds for next time
+		hasThresholds = false;
+		if (page.size() > 0)
+		{
+			firstOrderByThreshold = page.get(0).get(getOrderByField());
+			firstPKeyThreshold = page.get(0).get(primaryKeyField);
+			lastOrderByThreshold = page.get(page.size() - 1).get(getOrderByField());
+			lastPKeyThreshold = page.get(page.size() - 1).get(primaryKeyField);
+			// null values cannot be compared
+			hasThresholds = firstOrderByThreshold != null && firstPKeyThreshold != null
+					&& lastOrderByThreshold != null && lastPKeyThreshold != null;
+		}
+
+		// don't forget!
+		pagingState = State.UPTODATE;
+	}
+
+	/**
+	 * Create a rule that selects the entities after (or before) the given
+	 * thresholds in the current sort order, e.g.
+	 * <code>orderByField > x OR (orderByField = x AND primaryKey > y)</code>
+	 * 
+	 * @param orderByThreshold
+	 *            value of the order by field
+	 * @param pKeyThreshold
+	 *            value of the primary key
+	 * @param before
+	 *            whether to select the entities before (true) or after (false)
+	 *            the thresholds
+	 * @param inclusive
+	 *            whether to include the entity at the thresholds
+	 */
+	private QueryRule createThresholdRule(Object orderByThreshold, Object pKeyThreshold, boolean before,
+			boolean inclusive)
+	{
+		boolean ascending = getOrderByOperator() == Operator.SORTASC;
+		Operator operator = ascending != before ? Operator.GREATER : Operator.LESS;
+		Operator pKeyOperator = operator;
+		if (inclusive) pKeyOperator = operator == Operator.GREATER ? Operator.GREATER_EQUAL : Operator.LESS_EQUAL;
+
+		if (getOrderByField().equalsIgnoreCase(primaryKeyField))
+		{
+			return new QueryRule(primaryKeyField, pKeyOperator, pKeyThreshold);
+		}
+		return new QueryRule(new QueryRule(getOrderByField(), operator, orderByThreshold), new QueryRule(Operator.OR),
+				new QueryRule(new QueryRule(getOrderByField(), Operator.EQUALS, orderByThreshold), new QueryRule(
+						primaryKeyField, pKeyOperator, pKeyThreshold)));
+	}
+
+	/**
+	 * Whether the order by field is the primary key, or a field that cannot be
+	 * null and is the first field of a unique key or index. That is, whether
+	 * seeking on it is fast and does not skip null values.
+	 */
+	private boolean isOrderByFieldSeekable(Database db) throws DatabaseException
+	{
+		String orderByField = getOrderByField();
+		if (orderByField.equals(seekableOrderByField)) return orderByFieldSeekable;
+
+		boolean primaryKey = orderByField.equalsIgnoreCase(primaryKeyField);
+		boolean indexed = primaryKey;
+		boolean nillable = !primaryKey;
+		try
+		{
+			Model model = db.getMetaData();
+			org.molgenis.model.elements.Entity entity = model != null ? model.getEntity(getEntityClass()
+					.getSimpleName()) : null;
+			if (!indexed && entity != null)
+			{
+				for (Unique key : entity.getAllKeys())
+				{
+					List<Field> fields = key.getFields();
+					if (fields.size() > 0 && fields.get(0).getName().equalsIgnoreCase(orderByField)) indexed = true;
+				}
+				for (Index index : entity.getAllIndices())
+				{
+					List<String> fields = index.getFields();
+					if (fields.size() > 0 && fields.get(0).equalsIgnoreCase(orderByField)) indexed = true;
+				}
+				Field field = entity.getAllField(orderByField);
+				nillable = field == null || field.isNillable();
+			}
+		}
+		catch (MolgenisModelException e)
+		{
+			throw new DatabaseException(e);
+		}
+
+		logger.debug("order by field '" + orderByField + "' is " + (indexed ? "" : "not ") + "indexed and "
+				+ (nillable ? "" : "not ") + "nillable");
+		seekableOrderByField = orderByField;
+		orderByFieldSeekable = indexed && !nillable;
+		return orderByFieldSeekable;
+	}
+
+	@Override
+	public void setOrderByField(String orderByField) throws DatabaseException
+	{
+		super.setOrderByField(orderByField);
+		hasThresholds = false;
+	}
+
+	@Override
+	public void setOrderByOperator(Operator orderByOperator) throws DatabaseException
+	{
+		super.setOrderByOperator(orderByOperator);
+		hasThresholds = false;
+	}
+
+	@Override
+	public void setOffset(int offset)
+	{
+		super.setOffset(offset);
+		hasThresholds = false;
+	}
+
+	@Override
+	public void addFilter(QueryRule filter) throws DatabaseException
+	{
+		super.addFilter(filter);
+		hasThresholds = false;
+	}
+
+	@Override
+	public void removeFilter(int index) throws DatabaseException
+	{
+		super.removeFilter(index);
+		hasThresholds = false;
+	}
+
+	@Override
+	public void resetFilters(List<QueryRule> filters)
+	{
+		super.resetFilters(filters);
+		hasThresholds = false;
+	}
+}
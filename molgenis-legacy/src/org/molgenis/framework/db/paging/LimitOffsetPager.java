@@ -10,7 +10,6 @@ import org.molgenis.framework.db.Query;
 import org.molgenis.framework.db.QueryImp;
 import org.molgenis.framework.db.QueryRule;
 import org.molgenis.framework.db.QueryRule.Operator;
-import org.molgenis.model.elements.Field;
 import org.molgenis.util.Entity;
 
 /**
@@ -51,28 +50,9 @@ public class LimitOffsetPager<E extends Entity> extends AbstractPager<E>
 		// practice not an issue).
 		if (this.pagingState == State.UPTODATE) return;
 
-		// get the rules
-		QueryRule[] rules = this.getFilters();
-
 		// reload the count
 		Query<E> q = new QueryImp<E>();
-		q.addRules(rules);
-		try
-		{
-			for (String fieldName : this.getEntityClass().newInstance().getFields())
-			{
-				if (fieldName.equals(Field.TYPE_FIELD)) q.equals(Field.TYPE_FIELD, this.getEntityClass()
-						.getSimpleName());
-			}
-		}
-		catch (InstantiationException e)
-		{
-			e.printStackTrace();
-		}
-		catch (IllegalAccessException e)
-		{
-			e.printStackTrace();
-		}
+		q.addRules(this.getFiltersInclType());
 		reloadCount(db, q.getRules());
 
 		// correct current offset to be in line with limit (with limit > 0)
@@ -0,0 +1,158 @@
+package org.molgenis.framework.security;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.molgenis.framework.db.AbstractDatabase;
+import org.molgenis.framework.db.Database;
+import org.molgenis.framework.db.QueryRule;
+import org.molgenis.util.Entity;
+
+/**
+ * Cache of the row level security lookups of a {@link Login}, used by the
+ * generated security decorators.
+ * <p>
+ * Without this cache each find or count on an authorizable entity queries the
+ * user and its groups before running the real query. The cache keeps the group
+ * ids of the logged in user and the row level filter rules per entity and
+ * permission. Because there is one cache per login, it is shared by all
+ * mappers and reused across the requests of a session. It is dropped together
+ * with the login.
+ * <p>
+ * All caches are invalidated when users, groups or permissions are changed
+ * through the security decorators, see {@link #invalidateAll(Database)}, and
+ * the cache of a login when it logs in or out, see {@link #invalidate(Login)}.
+ * Changes made in other ways become visible after {@link #TIME_TO_LIVE}
+ * milliseconds.
+ */
+public class RowLevelSecurityCache
+{
+	/** time in milliseconds that lookups are reused */
+	public static final long TIME_TO_LIVE = 60000;
+
+	/** caches by login */
+	private static final Map<Login, RowLevelSecurityCache> caches = new WeakHashMap<Login, RowLevelSecurityCache>();
+
+	/** increased when users, groups or permissions change */
+	private static final AtomicLong version = new AtomicLong();
+
+	/** user the lookups were done for */
+	private Integer userId;
+	private long created;
+	private long createdVersion;
+
+	/** groups of the user */
+	private List<Integer> groupIds;
+
+	/** filter rules, by entity class and permission */
+	private final Map<String, QueryRule> filters = new HashMap<String, QueryRule>();
+
+	private RowLevelSecurityCache()
+	{
+	}
+
+	/**
+	 * Get the cache of a login
+	 */
+	public static RowLevelSecurityCache get(Login login)
+	{
+		synchronized (caches)
+		{
+			RowLevelSecurityCache cache = caches.get(login);
+			if (cache == null)
+			{
+				cache = new RowLevelSecurityCache();
+				caches.put(login, cache);
+			}
+			return cache;
+		}
+	}
+
+	/**
+	 * Invalidate the caches of all logins, because users, groups or
+	 * permissions changed.
+	 */
+	public static void invalidateAll()
+	{
+		version.incrementAndGet();
+	}
+
+	/**
+	 * Invalidate the caches of all logins, because users, groups or
+	 * permissions were changed through a database. If the database is in a
+	 * transaction, they are invalidated again when it ends.
+	 */
+	public static void invalidateAll(Database db)
+	{
+		if (db instanceof AbstractDatabase) ((AbstractDatabase) db).securityChanged();
+		else
+			invalidateAll();
+	}
+
+	/**
+	 * Invalidate the cache of one login, because it logged in or out.
+	 */
+	public static void invalidate(Login login)
+	{
+		synchronized (caches)
+		{
+			caches.remove(login);
+		}
+	}
+
+	/**
+	 * @return the group ids of the user or null if not cached
+	 */
+	public synchronized List<Integer> getGroupIds(Integer userId)
+	{
+		return isValid(userId) ? groupIds : null;
+	}
+
+	public synchronized void putGroupIds(Integer userId, List<Integer> groupIds)
+	{
+		if (!isValid(userId)) reset(userId);
+		this.groupIds = Collections.unmodifiableList(groupIds);
+	}
+
+	/**
+	 * @return a copy of the filter rule of the user for the entity and
+	 *         permission or null if not cached
+	 */
+	public synchronized QueryRule getFilter(Integer userId, Class<? extends Entity> entityClass, String permission)
+	{
+		if (!isValid(userId)) return null;
+		QueryRule filter = filters.get(entityClass.getName() + '|' + permission);
+		// copy, so the cached rule cannot be changed by the caller
+		return filter != null ? new QueryRule(filter) : null;
+	}
+
+	public synchronized void putFilter(Integer userId, Class<? extends Entity> entityClass, String permission,
+			QueryRule filter)
+	{
+		if (!isValid(userId)) reset(userId);
+		filters.put(entityClass.getName() + '|' + permission, new QueryRule(filter));
+	}
+
+	/**
+	 * The lookups are valid if done for the same user, since the last change
+	 * of users, groups or permissions and within the time to live.
+	 */
+	private boolean isValid(Integer userId)
+	{
+		return this.userId != null && this.userId.equals(userId) && createdVersion == version.get()
+				&& System.currentTimeMillis() - created <= TIME_TO_LIVE;
+	}
+
+	private void reset(Integer userId)
+	{
+		this.userId = userId;
+		this.created = System.currentTimeMillis();
+		this.createdVersion = version.get();
+		this.groupIds = null;
+		this.filters.clear();
+	}
+}
@@ -0,0 +1,169 @@
+package org.molgenis.framework.server;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Access log of the front controllers, written to the log4j logger of this
+ * class so it can be enabled per level in the log4j configuration:
+ * <ul>
+ * <li>INFO: one line per request with the request path, the service path and
+ * class, the remote host, the user and the time taken, as key=value pairs.
+ * <li>DEBUG: also the request attributes and fields.
+ * </ul>
+ * Independent of the level, the time taken is counted in a latency histogram
+ * per service path, see {@link #getHistograms()}.
+ */
+public class AccessLog
+{
+	private static final Logger logger = Logger.getLogger(AccessLog.class);
+
+	/** histograms by service path */
+	private final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<String, Histogram>();
+
+	public boolean isEnabled()
+	{
+		return logger.isInfoEnabled();
+	}
+
+	public boolean isDebugEnabled()
+	{
+		return logger.isDebugEnabled();
+	}
+
+	/**
+	 * Log details of a request, only if debug logging is enabled
+	 */
+	public void debug(String message)
+	{
+		if (logger.isDebugEnabled()) logger.debug(message);
+	}
+
+	/**
+	 * Count and log a handled request
+	 * 
+	 * @param servicePath
+	 *            path of the service that handled the request
+	 * @param service
+	 *            the service
+	 * @param requestPath
+	 *            path of the request within the application
+	 * @param remoteHost
+	 *            host of the client
+	 * @param user
+	 *            name of the logged in user, null if not known or not
+	 *            authenticated
+	 * @param millis
+	 *            time taken to handle the request
+	 */
+	public void log(String servicePath, Object service, String requestPath, String remoteHost, String user,
+			long millis)
+	{
+		getHistogram(servicePath).add(millis);
+		if (logger.isInfoEnabled())
+		{
+			StringBuilder line = new StringBuilder(128);
+			line.append("path=").append(requestPath).append(" service=").append(servicePath).append(" class=")
+					.append(service.getClass().getSimpleName()).append(" remote=").append(remoteHost)
+					.append(" user=").append(user != null ? user : "-").append(" time=").append(millis).append("ms");
+			logger.info(line.toString());
+		}
+	}
+
+	/**
+	 * @return the latency histograms by service path, sorted by path
+	 */
+	public Map<String, Histogram> getHistograms()
+	{
+		return Collections.unmodifiableMap(new TreeMap<String, Histogram>(histograms));
+	}
+
+	private Histogram getHistogram(String servicePath)
+	{
+		Histogram histogram = histograms.get(servicePath);
+		if (histogram == null)
+		{
+			Histogram newHistogram = new Histogram();
+			histogram = histograms.putIfAbsent(servicePath, newHistogram);
+			if (histogram == null) histogram = newHistogram;
+		}
+		return histogram;
+	}
+
+	/**
+	 * Counts of requests per latency bucket. Bucket 0 counts requests that
+	 * took less than 1 ms, bucket i counts requests that took from 2^(i-1) up
+	 * to 2^i ms and the last bucket counts all slower requests.
+	 */
+	public static class Histogram
+	{
+		public static final int BUCKETS = 16;
+
+		private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+		private final AtomicLong total = new AtomicLong();
+
+		public void add(long millis)
+		{
+			int bucket = millis <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(millis);
+			counts.incrementAndGet(Math.min(bucket, BUCKETS - 1));
+			total.addAndGet(Math.max(millis, 0));
+		}
+
+		public long getCount()
+		{
+			long count = 0;
+			for (int i = 0; i < BUCKETS; i++)
+				count += counts.get(i);
+			return count;
+		}
+
+		/**
+		 * @return the number of requests in bucket i
+		 */
+		public long getCount(int i)
+		{
+			return counts.get(i);
+		}
+
+		/**
+		 * @return upper bound in ms of bucket i (exclusive), Long.MAX_VALUE for
+		 *         the last bucket
+		 */
+		public static long getUpperBound(int i)
+		{
+			return i < BUCKETS - 1 ? 1L << i : Long.MAX_VALUE;
+		}
+
+		public long getTotalMillis()
+		{
+			return total.get();
+		}
+
+		@Override
+		public String toString()
+		{
+			StringBuilder result = new StringBuilder();
+			long count = getCount();
+			result.append("count=").append(count).append(" mean=").append(count > 0 ? total.get() / count : 0)
+					.append("ms");
+			for (int i = 0; i < BUCKETS; i++)
+			{
+				long c = counts.get(i);
+				if (c == 0) continue;
+				result.append(' ');
+				if (i < BUCKETS - 1) result.append('<').append(getUpperBound(i)).append("ms=");
+				else
+					result.append(">=").append(getUpperBound(i - 1)).append("ms=");
+				result.append(c);
+			}
+			return result.toString();
+		}
+	}
+}
@@ -1,6 +1,7 @@
 package org.molgenis.framework.server;
 
 import org.molgenis.framework.db.Database;
+import org.molgenis.framework.security.RowLevelSecurityCache;
 
 public class FrontControllerAuthenticator
 {
@@ -36,6 +37,9 @@ public class FrontControllerAuthenticator
 
 			if (loggedIn)
 			{
+				// drop the row level security of the previous user
+				RowLevelSecurityCache.invalidate(db.getLogin());
+
 				// TODO: Missing redirect???
 				// Login login = new
 				// org.molgenis.auth.DatabaseLogin(request.getDatabase(),
@@ -73,6 +77,7 @@ public class FrontControllerAuthenticator
 			// logout from database
 			// FIXME: needed??
 			request.getDatabase().getLogin().logout(request.getDatabase());
+			RowLevelSecurityCache.invalidate(request.getDatabase().getLogin());
 
 			// set session login to null
 			request.getRequest().getSession().setAttribute("login", null);
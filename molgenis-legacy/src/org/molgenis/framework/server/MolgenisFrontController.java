@@ -5,10 +5,7 @@ import java.io.IOException;
 import java.net.URL;
 import java.sql.Connection;
 import java.sql.SQLException;
-import java.text.DateFormat;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
 import java.util.Enumeration;
 import java.util.Map;
 import java.util.UUID;
@@ -29,20 +26,29 @@ import org.apache.log4j.PropertyConfigurator;
 import org.apache.log4j.RollingFileAppender;
 import org.molgenis.MolgenisOptions;
 import org.molgenis.framework.db.DatabaseException;
+import org.molgenis.framework.db.DatabasePool;
 
 public abstract class MolgenisFrontController extends HttpServlet implements MolgenisService
 {
 	// helper vars
 	private static final long serialVersionUID = -2141508157810793106L;
 	protected Logger logger;
-	private DateFormat dateFormat = new SimpleDateFormat("HH:mm:ss 'on' dd MMMM yyyy");
+	// access log and latency histograms of the services
+	protected final AccessLog accessLog = new AccessLog();
 
 	// map of all services for this app
 	protected Map<String, MolgenisService> services;
 
+	// finds the service for a request, built from the services
+	private volatile ServiceRouter<MolgenisService> router;
+
 	// list of all connections
 	protected ConcurrentHashMap<UUID, Connection> connections;
 
+	// pool of databases for the requests, null if createDatabase does not use
+	// one
+	protected DatabasePool databasePool;
+
 	// the used molgenisoptions, set by generated MolgenisServlet
 	protected MolgenisOptions usedOptions = null;
 
@@ -61,6 +67,14 @@ public abstract class MolgenisFrontController extends HttpServlet implements Mol
 	// get login from session and set it to database, or create new login
 	public abstract void createLogin(MolgenisRequest request) throws Exception;
 
+	// stop the background threads of the application when it is undeployed
+	@Override
+	public void destroy()
+	{
+		TokenFactory.stopSweeper();
+		super.destroy();
+	}
+
 	// the one and only service() used in the molgenis app
 	@Override
 	public void service(HttpServletRequest request, HttpServletResponse response)
@@ -68,12 +82,15 @@ public abstract class MolgenisFrontController extends HttpServlet implements Mol
 		try
 		{
 
-			@SuppressWarnings("rawtypes")
-			Enumeration attributeNames = request.getAttributeNames();
-			while (attributeNames.hasMoreElements())
+			if (accessLog.isDebugEnabled())
 			{
-				String nextElement = (String) attributeNames.nextElement();
-				System.out.println(String.format("---> %s: %s", nextElement, request.getAttribute(nextElement)));
+				@SuppressWarnings("rawtypes")
+				Enumeration attributeNames = request.getAttributeNames();
+				while (attributeNames.hasMoreElements())
+				{
+					String nextElement = (String) attributeNames.nextElement();
+					accessLog.debug(String.format("---> %s: %s", nextElement, request.getAttribute(nextElement)));
+				}
 			}
 
 			// wrap request and response
@@ -140,57 +157,101 @@ public abstract class MolgenisFrontController extends HttpServlet implements Mol
 		// turns "http://localhost:8080/xqtl/api/R" into "/api/R"
 		String requestPath = requestURL.substring(requestURL.length() - (requestURI.length() - appName.length()));
 
-		for (String servicePath : services.keySet())
+		String servicePath = getRouter().getServicePath(requestPath);
+		if (servicePath == null) return;
+		MolgenisService service = services.get(servicePath);
+
+		long startTime = System.currentTimeMillis();
+
+		// if mapped to "/", we assume we are serving out a file, and do
+		// not manage security/connections
+		if (servicePath.equals("/"))
 		{
-			if (requestPath.startsWith(servicePath))
+			try
+			{
+				service.handleRequest(request, response);
+			}
+			finally
 			{
-				long startTime = System.currentTimeMillis();
-				Date date = new Date();
+				accessLog.log(servicePath, service, requestPath, req.getRemoteHost(), null,
+						System.currentTimeMillis() - startTime);
+			}
+		}
+		else
+		{
+			accessLog.debug("request fields: " + request.toString());
+
+			UUID connId = null;
+			try
+			{
+				connId = getSecuredDatabase(request);
 
-				// if mapped to "/", we assume we are serving out a file, and do
-				// not manage security/connections
-				if (servicePath.equals("/"))
+				// e.g. "http://localhost:8080/xqtl"
+				request.setAppLocation(appLocation);
+
+				// e.g. "/api/R/"
+				request.setServicePath(servicePath);
+
+				// e.g. "/api/R/source.R"
+				request.setRequestPath(requestPath);
+
+				service.handleRequest(request, response);
+			}
+			finally
+			{
+				String userName = getUserName(request);
+				try
 				{
-					System.out.println("> serving file: " + requestPath);
-					services.get(servicePath).handleRequest(request, response);
+					manageConnection(connId, startTime);
 				}
-				else
+				finally
 				{
-					System.out.println("> new request \"" + requestPath + "\" from "
-							+ request.getRequest().getRemoteHost() + " at " + dateFormat.format(date) + " handled by "
-							+ services.get(servicePath).getClass().getSimpleName() + " mapped on path " + servicePath);
-					System.out.println("request fields: " + request.toString());
-
-					UUID connId = getSecuredDatabase(request);
-
-					System.out.println("database status: "
-							+ (request.getDatabase().getLogin().isAuthenticated() ? "authenticated as "
-									+ request.getDatabase().getLogin().getUserName() : "not authenticated"));
-
-					// e.g. "http://localhost:8080/xqtl"
-					request.setAppLocation(appLocation);
-
-					// e.g. "/api/R/"
-					request.setServicePath(servicePath);
-
-					// e.g. "/api/R/source.R"
-					request.setRequestPath(requestPath);
-
-					try
-					{
-						services.get(servicePath).handleRequest(request, response);
-					}
-					finally
-					{
-						manageConnection(connId, startTime);
-					}
+					releaseDatabase(request);
+					accessLog.log(servicePath, service, requestPath, req.getRemoteHost(), userName,
+							System.currentTimeMillis() - startTime);
 				}
-
-				return;
 			}
 		}
 	}
 
+	/**
+	 * Get the router of the services, which is rebuilt when the services are
+	 * replaced.
+	 */
+	protected ServiceRouter<MolgenisService> getRouter()
+	{
+		ServiceRouter<MolgenisService> router = this.router;
+		if (router == null || router.getServices() != services)
+		{
+			router = new ServiceRouter<MolgenisService>(services);
+			this.router = router;
+		}
+		return router;
+	}
+
+	public AccessLog getAccessLog()
+	{
+		return accessLog;
+	}
+
+	/**
+	 * @return name of the authenticated user of the request, or null
+	 */
+	protected String getUserName(MolgenisRequest request)
+	{
+		if (!accessLog.isEnabled() || request.getDatabase() == null) return null;
+		try
+		{
+			if (request.getDatabase().getLogin() != null && request.getDatabase().getLogin().isAuthenticated()) return request
+					.getDatabase().getLogin().getUserName();
+		}
+		catch (Exception e)
+		{
+			// the user is only logged
+		}
+		return null;
+	}
+
 	protected UUID getSecuredDatabase(MolgenisRequest req) throws DatabaseException
 	{
 		try
@@ -214,13 +275,15 @@ public abstract class MolgenisFrontController extends HttpServlet implements Mol
 
 	protected void manageConnection(UUID connId, long startTime) throws DatabaseException
 	{
-		if (connections.containsKey(connId))
+		// databases from the pool manage their own connection
+		Connection connection = connId != null ? connections.remove(connId) : null;
+		if (connection != null)
 		{
 			try
 			{
 				// close the connection and check if it really was closed
-				connections.get(connId).close();
-				if (!connections.get(connId).isClosed())
+				connection.close();
+				if (!connection.isClosed())
 				{
 					throw new DatabaseException("ERROR: connection was not closed!");
 				}
@@ -230,14 +293,28 @@ public abstract class MolgenisFrontController extends HttpServlet implements Mol
 				throw new DatabaseException(sqle);
 			}
 
-			// remove from list (does not happen if Exception was thrown)
-			connections.remove(connId);
+			accessLog.debug("request was handled in " + (System.currentTimeMillis() - startTime)
+					+ "ms, active database connections: " + connections.size());
+		}
+	}
 
-			System.out.println("< request was handled in " + (System.currentTimeMillis() - startTime)
-					+ "ms , active database connections: " + connections.size());
+	/**
+	 * Return the database of the request to the pool, which also returns its
+	 * connection, if it came from the pool.
+	 */
+	protected void releaseDatabase(MolgenisRequest request)
+	{
+		if (databasePool != null && request.getDatabase() != null)
+		{
+			databasePool.release(request.getDatabase());
 		}
 	}
 
+	public DatabasePool getDatabasePool()
+	{
+		return databasePool;
+	}
+
 	protected void createLogger() throws ServletException
 	{
 		try
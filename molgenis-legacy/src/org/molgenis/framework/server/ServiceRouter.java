@@ -0,0 +1,94 @@
+package org.molgenis.framework.server;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Finds the service mapped on the longest prefix of a request path, used by
+ * the front controllers to dispatch requests.
+ * <p>
+ * The service paths are kept in a trie, built once from the map of services.
+ * A lookup walks the request path once, so it takes time proportional to the
+ * length of the path instead of the number of services. The map of services
+ * should not be changed after the router is built.
+ */
+public class ServiceRouter<S>
+{
+	private final Map<String, S> services;
+	private final Node<S> root = new Node<S>();
+
+	/**
+	 * @param services
+	 *            services by the path they are mapped on
+	 */
+	public ServiceRouter(Map<String, S> services)
+	{
+		this.services = services;
+		for (Map.Entry<String, S> entry : services.entrySet())
+		{
+			Node<S> node = root;
+			String path = entry.getKey();
+			for (int i = 0; i < path.length(); i++)
+			{
+				Node<S> child = node.children.get(path.charAt(i));
+				if (child == null)
+				{
+					child = new Node<S>();
+					node.children.put(path.charAt(i), child);
+				}
+				node = child;
+			}
+			node.path = path;
+			node.service = entry.getValue();
+		}
+	}
+
+	/**
+	 * @return the services this router was built from
+	 */
+	public Map<String, S> getServices()
+	{
+		return services;
+	}
+
+	/**
+	 * @return the path of the service mapped on the longest prefix of the
+	 *         request path, or null if there is none
+	 */
+	public String getServicePath(String requestPath)
+	{
+		Node<S> match = find(requestPath);
+		return match != null ? match.path : null;
+	}
+
+	/**
+	 * @return the service mapped on the longest prefix of the request path, or
+	 *         null if there is none
+	 */
+	public S getService(String requestPath)
+	{
+		Node<S> match = find(requestPath);
+		return match != null ? match.service : null;
+	}
+
+	private Node<S> find(String requestPath)
+	{
+		Node<S> match = root.path != null ? root : null;
+		Node<S> node = root;
+		for (int i = 0; i < requestPath.length(); i++)
+		{
+			node = node.children.get(requestPath.charAt(i));
+			if (node == null) break;
+			if (node.path != null) match = node;
+		}
+		return match;
+	}
+
+	private static class Node<S>
+	{
+		final Map<Character, Node<S>> children = new HashMap<Character, Node<S>>();
+		/** path of the service mapped on this node, null if none */
+		String path;
+		S service;
+	}
+}
@@ -1,21 +1,100 @@
 package org.molgenis.framework.server;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Store of the security tokens of a MOLGENIS application, shared by all
+ * requests via {@link MolgenisContext}.
+ * <p>
+ * The tokens are kept in concurrent maps by id and by user name. Their
+ * expiry times are kept in a queue ordered by time, so expired tokens are
+ * removed without looking at the valid ones. Expired tokens are removed when
+ * tokens are created or requested and every {@link #SWEEP_INTERVAL}
+ * milliseconds by a background thread. Stop this thread with
+ * {@link #stopSweeper()} when the application is stopped, so it does not keep
+ * the classes of a redeployed application alive.
+ */
 public class TokenFactory implements Serializable
 {
 	private static final long serialVersionUID = -1669938881359317765L;
-	private HashMap<String, Token> securityTokens;
+
+	/** interval in milliseconds of the removal of expired tokens */
+	public static final long SWEEP_INTERVAL = 60000;
+
+	/**
+	 * daemon thread that removes expired tokens of all factories, created
+	 * when the first factory is and stopped by {@link #stopSweeper()}
+	 */
+	private static ScheduledExecutorService sweeper;
+
+	/** tokens by id */
+	private final ConcurrentMap<String, Token> securityTokens;
+
+	/** token ids by user name */
+	private final ConcurrentMap<String, Set<String>> tokenIdsByUser;
+
+	/** expiry times of the tokens, the first to expire at the head */
+	private transient DelayQueue<Expiry> expiries;
 
 	public TokenFactory()
 	{
-		this.securityTokens = new HashMap<String, Token>();
+		this.securityTokens = new ConcurrentHashMap<String, Token>();
+		this.tokenIdsByUser = new ConcurrentHashMap<String, Set<String>>();
+		this.expiries = new DelayQueue<Expiry>();
+		Sweep.schedule(this);
+	}
+
+	/**
+	 * Stop the background removal of expired tokens of all factories, e.g.
+	 * when the application is stopped. Expired tokens are still removed when
+	 * tokens are created or requested. Factories that are created or
+	 * deserialized afterwards start a new thread.
+	 */
+	public static synchronized void stopSweeper()
+	{
+		if (sweeper != null)
+		{
+			sweeper.shutdownNow();
+			sweeper = null;
+		}
+	}
+
+	private static synchronized ScheduledExecutorService getSweeper()
+	{
+		if (sweeper == null)
+		{
+			sweeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+			{
+				@Override
+				public Thread newThread(Runnable r)
+				{
+					Thread thread = new Thread(r, "TokenFactory sweeper");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return sweeper;
 	}
 
 	/**
@@ -34,15 +113,15 @@ public class TokenFactory implements Serializable
 			return null;
 		}
 
+		// cleanup invalid tokens
+		invalidateTokens();
+
 		// create a new token and put it in the map under a uuid
 		String uuid = UUID.randomUUID().toString();
 
 		Date now = new Date();
 		Token newToken = new Token(userName, now, validUntil);
-		securityTokens.put(uuid, newToken);
-
-		// cleanup invalid tokens
-		invalidateTokens();
+		putToken(uuid, newToken);
 
 		return uuid;
 	}
@@ -55,11 +134,7 @@ public class TokenFactory implements Serializable
 	 */
 	public void removeToken(String uuid) throws Exception
 	{
-		if (securityTokens.containsKey(uuid))
-		{
-			securityTokens.remove(uuid);
-		}
-		else
+		if (!deleteToken(uuid))
 		{
 			throw new Exception("The token you requested is not available");
 		}
@@ -73,34 +148,24 @@ public class TokenFactory implements Serializable
 	 */
 	public List<String> getTokenIdsForUser(String userName)
 	{
-		List<String> res = new ArrayList<String>();
-
-		for (String uuid : securityTokens.keySet())
-		{
-			if (securityTokens.get(uuid).getUserName().equals(userName))
-			{
-				res.add(uuid);
-			}
-		}
-
-		return res;
+		invalidateTokens();
+		Set<String> uuids = tokenIdsByUser.get(userName);
+		if (uuids == null) return new ArrayList<String>();
+		return new ArrayList<String>(uuids);
 	}
 
 	/**
 	 * Remove tokens that are expired. Called automatically on 1) any 'token
-	 * login' attempt to prevent use of bad tokens 2) creation of new tokens.
+	 * login' attempt to prevent use of bad tokens 2) creation of new tokens
+	 * 3) lookups of tokens and 4) periodically in the background.
 	 */
 	public void invalidateTokens()
 	{
-		for (String uuid : securityTokens.keySet())
+		Expiry expiry;
+		while ((expiry = expiries.poll()) != null)
 		{
-			Date expiresAt = securityTokens.get(uuid).getExpiresAt();
-			Date now = new Date();
-
-			if (expiresAt.before(now))
-			{
-				securityTokens.remove(uuid);
-			}
+			// tokens that were removed before are skipped
+			deleteToken(expiry.uuid);
 		}
 	}
 
@@ -112,6 +177,7 @@ public class TokenFactory implements Serializable
 	 */
 	public boolean checkIfTokenExists(String uuid)
 	{
+		invalidateTokens();
 		if (securityTokens.containsKey(uuid))
 		{
 			return true;
@@ -128,12 +194,14 @@ public class TokenFactory implements Serializable
 	 */
 	public Token getToken(String uuid) throws Exception
 	{
-		if (!securityTokens.containsKey(uuid))
+		invalidateTokens();
+		Token token = securityTokens.get(uuid);
+		if (token == null)
 		{
 			throw new Exception("The token you requested is not available");
 		}
 
-		return securityTokens.get(uuid);
+		return token;
 
 	}
 
@@ -152,8 +220,9 @@ public class TokenFactory implements Serializable
 
 		for (String uuid : tokenIds)
 		{
-			Token t = this.getToken(uuid);
-			tokenMap.put(uuid, t);
+			// skip tokens that were removed meanwhile
+			Token t = securityTokens.get(uuid);
+			if (t != null) tokenMap.put(uuid, t);
 		}
 
 		return tokenMap;
@@ -164,13 +233,113 @@ public class TokenFactory implements Serializable
 	 */
 	public void printTokens()
 	{
-		for (String uuid : securityTokens.keySet())
+		for (Map.Entry<String, Token> entry : securityTokens.entrySet())
 		{
-			String user = securityTokens.get(uuid).getUserName();
-			String created = securityTokens.get(uuid).getCreatedAt().toString();
-			String expires = securityTokens.get(uuid).getExpiresAt().toString();
+			String uuid = entry.getKey();
+			String user = entry.getValue().getUserName();
+			String created = entry.getValue().getCreatedAt().toString();
+			String expires = entry.getValue().getExpiresAt().toString();
 			System.out.println("TOKEN: " + uuid + " for user " + user + " created at " + created + " is valid until "
 					+ expires);
 		}
 	}
+
+	private void putToken(String uuid, Token token)
+	{
+		Set<String> uuids = tokenIdsByUser.get(token.getUserName());
+		if (uuids == null)
+		{
+			Set<String> newUuids = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+			uuids = tokenIdsByUser.putIfAbsent(token.getUserName(), newUuids);
+			if (uuids == null) uuids = newUuids;
+		}
+		securityTokens.put(uuid, token);
+		uuids.add(uuid);
+		if (token.getExpiresAt() != null) expiries.add(new Expiry(uuid, token.getExpiresAt().getTime()));
+	}
+
+	/**
+	 * @return false if there is no token with this ID
+	 */
+	private boolean deleteToken(String uuid)
+	{
+		Token token = securityTokens.remove(uuid);
+		if (token == null) return false;
+		// the set is kept for the next token of the user
+		Set<String> uuids = tokenIdsByUser.get(token.getUserName());
+		if (uuids != null) uuids.remove(uuid);
+		return true;
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException
+	{
+		in.defaultReadObject();
+		expiries = new DelayQueue<Expiry>();
+		for (Map.Entry<String, Token> entry : securityTokens.entrySet())
+		{
+			if (entry.getValue().getExpiresAt() != null) expiries.add(new Expiry(entry.getKey(), entry.getValue()
+					.getExpiresAt().getTime()));
+		}
+		Sweep.schedule(this);
+	}
+
+	/** Expiry time of a token, ordered by time */
+	private static class Expiry implements Delayed
+	{
+		final String uuid;
+		final long expiresAt;
+
+		Expiry(String uuid, long expiresAt)
+		{
+			this.uuid = uuid;
+			this.expiresAt = expiresAt;
+		}
+
+		@Override
+		public long getDelay(TimeUnit unit)
+		{
+			return unit.convert(expiresAt - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+		}
+
+		@Override
+		public int compareTo(Delayed other)
+		{
+			long otherExpiresAt = ((Expiry) other).expiresAt;
+			return expiresAt < otherExpiresAt ? -1 : (expiresAt == otherExpiresAt ? 0 : 1);
+		}
+	}
+
+	/**
+	 * Periodic removal of expired tokens. Only keeps a weak reference to the
+	 * factory, so factories that are no longer used are not kept alive.
+	 */
+	private static class Sweep implements Runnable
+	{
+		private final WeakReference<TokenFactory> factory;
+		private volatile ScheduledFuture<?> future;
+
+		private Sweep(TokenFactory factory)
+		{
+			this.factory = new WeakReference<TokenFactory>(factory);
+		}
+
+		static void schedule(TokenFactory factory)
+		{
+			Sweep sweep = new Sweep(factory);
+			sweep.future = getSweeper().scheduleWithFixedDelay(sweep, SWEEP_INTERVAL, SWEEP_INTERVAL,
+					TimeUnit.MILLISECONDS);
+		}
+
+		@Override
+		public void run()
+		{
+			TokenFactory tokenFactory = factory.get();
+			if (tokenFactory == null)
+			{
+				if (future != null) future.cancel(false);
+				return;
+			}
+			tokenFactory.invalidateTokens();
+		}
+	}
 }
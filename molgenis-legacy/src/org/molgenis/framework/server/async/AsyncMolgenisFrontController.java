@@ -11,6 +11,7 @@ import javax.servlet.http.HttpServletResponse;
 import org.apache.log4j.Logger;
 import org.molgenis.framework.db.DatabaseException;
 import org.molgenis.framework.server.MolgenisFrontController;
+import org.molgenis.framework.server.ServiceRouter;
 
 public abstract class AsyncMolgenisFrontController extends MolgenisFrontController implements AsyncMolgenisService
 {
@@ -21,6 +22,9 @@ public abstract class AsyncMolgenisFrontController extends MolgenisFrontControll
 	// map of all services for this app
 	protected Map<String, AsyncMolgenisService> services;
 
+	// finds the service for a request, built from the services
+	private volatile ServiceRouter<AsyncMolgenisService> asyncRouter;
+
 	// context
 	protected AsyncMolgenisContext context;
 
@@ -65,42 +69,60 @@ public abstract class AsyncMolgenisFrontController extends MolgenisFrontControll
 		this.context.getLoadingScreenUUIDFactory().addLoadingId(id, path);
 		services.get("/loadingscreen").handleRequest(request, response);
 
-		for (String p : services.keySet())
+		String p = getAsyncRouter().getServicePath(path);
+		if (p == null) return;
+		AsyncMolgenisService service = services.get(p);
+
+		// if mapped to "/", we assume we are serving out a file, and do
+		// not manage security/connections
+		if (p.equals("/"))
+		{
+			try
+			{
+				service.handleRequest(request, response);
+			}
+			finally
+			{
+				accessLog.log(p, service, path, req.getRemoteHost(), null, System.currentTimeMillis() - startTime);
+			}
+		}
+		else
 		{
-			if (path.startsWith(p))
+			accessLog.debug("request content: " + request.toString());
+
+			try
 			{
+				UUID connId = getSecuredDatabase(request);
 
-				// if mapped to "/", we assume we are serving out a file, and do
-				// not manage security/connections
-				if (p.equals("/"))
-				{
-					System.out.println("> serving file: " + path);
-					services.get(p).handleRequest(request, response);
-				}
-				else
-				{
-					System.out.println("> new request to '" + path + "' handled by "
-							+ services.get(p).getClass().getSimpleName() + " mapped on path " + p);
-					System.out.println("request content: " + request.toString());
-
-					UUID connId = getSecuredDatabase(request);
-
-					System.out.println("database status: "
-							+ (request.getDatabase().getLogin().isAuthenticated() ? "authenticated as "
-									+ request.getDatabase().getLogin().getUserName() : "not authenticated"));
-
-					request.setServicePath(p);
-					services.get(p).handleAsyncRequest(request, id);
-					manageConnection(connId, startTime);
-
-					// printSessionInfo(req.getSession());
-					// context.getTokenFactory().printTokens();
-				}
-
-				return;
+				request.setServicePath(p);
+				service.handleAsyncRequest(request, id);
+				manageConnection(connId, startTime);
+			}
+			finally
+			{
+				String userName = getUserName(request);
+				releaseDatabase(request);
+				accessLog.log(p, service, path, req.getRemoteHost(), userName, System.currentTimeMillis() - startTime);
 			}
 
+			// printSessionInfo(req.getSession());
+			// context.getTokenFactory().printTokens();
+		}
+	}
+
+	/**
+	 * Get the router of the services, which is rebuilt when the services are
+	 * replaced.
+	 */
+	protected ServiceRouter<AsyncMolgenisService> getAsyncRouter()
+	{
+		ServiceRouter<AsyncMolgenisService> router = this.asyncRouter;
+		if (router == null || router.getServices() != services)
+		{
+			router = new ServiceRouter<AsyncMolgenisService>(services);
+			this.asyncRouter = router;
 		}
+		return router;
 	}
 
 }
@@ -13,6 +13,7 @@ import org.apache.log4j.Logger;
 import org.molgenis.framework.db.Database;
 import org.molgenis.framework.db.DatabaseException;
 import org.molgenis.framework.security.Login;
+import org.molgenis.framework.security.RowLevelSecurityCache;
 import org.molgenis.framework.server.MolgenisContext;
 import org.molgenis.framework.server.MolgenisRequest;
 import org.molgenis.framework.server.MolgenisResponse;
@@ -69,6 +70,7 @@ public abstract class MolgenisGuiService
 				&& request.getRequest().getParameter("__action").equalsIgnoreCase("Logout"))
 		{
 			session.setAttribute("application", null);
+			RowLevelSecurityCache.invalidate(request.getDatabase().getLogin());
 		}
 
 		// Get application from session
@@ -1,5 +1,6 @@
 package org.molgenis.framework.tupletable.impl;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -11,6 +12,7 @@ import org.molgenis.framework.db.QueryRule;
 import org.molgenis.framework.tupletable.AbstractFilterableTupleTable;
 import org.molgenis.framework.tupletable.TableException;
 import org.molgenis.model.elements.Field;
+import org.molgenis.util.CloseableIterator;
 import org.molgenis.util.Entity;
 import org.molgenis.util.tuple.EntityTuple;
 import org.molgenis.util.tuple.Tuple;
@@ -69,20 +71,7 @@ public class EntityTable extends AbstractFilterableTupleTable
 	{
 		try
 		{
-			Query<? extends Entity> q = getDb().query(entityClass);
-			if (this.getLimit() > 0)
-			{
-				q.limit(this.getLimit());
-			}
-			if (this.getOffset() > 0)
-			{
-				q.offset(this.getOffset());
-			}
-			if (getFilters().size() > 0)
-			{
-				q.addRules(getFilters().toArray(new QueryRule[getFilters().size()]));
-			}
-			List<? extends Entity> entities = q.find();
+			List<? extends Entity> entities = createQuery().find();
 
 			List<Tuple> result = new ArrayList<Tuple>();
 			for (Entity entity : entities)
@@ -97,11 +86,69 @@ public class EntityTable extends AbstractFilterableTupleTable
 		}
 	}
 
+	/**
+	 * Streams the rows from the database. The cursor keeps the database in a
+	 * transaction until the iterator is read to the end or closed, so close it
+	 * if it is not iterated to the end. Otherwise it is closed when the
+	 * database is closed or released.
+	 */
 	@Override
 	public Iterator<Tuple> iterator()
 	{
-		// should be optimized
-		return this.getRows().iterator();
+		final CloseableIterator<? extends Entity> it;
+		try
+		{
+			it = createQuery().iterate();
+		}
+		catch (DatabaseException e)
+		{
+			throw new RuntimeException(e);
+		}
+
+		return new CloseableIterator<Tuple>()
+		{
+			@Override
+			public boolean hasNext()
+			{
+				return it.hasNext();
+			}
+
+			@Override
+			public Tuple next()
+			{
+				return new EntityTuple(it.next());
+			}
+
+			@Override
+			public void remove()
+			{
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public void close() throws IOException
+			{
+				it.close();
+			}
+		};
+	}
+
+	private Query<? extends Entity> createQuery()
+	{
+		Query<? extends Entity> q = getDb().query(entityClass);
+		if (this.getLimit() > 0)
+		{
+			q.limit(this.getLimit());
+		}
+		if (this.getOffset() > 0)
+		{
+			q.offset(this.getOffset());
+		}
+		if (getFilters().size() > 0)
+		{
+			q.addRules(getFilters().toArray(new QueryRule[getFilters().size()]));
+		}
+		return q;
 	}
 
 	@Override
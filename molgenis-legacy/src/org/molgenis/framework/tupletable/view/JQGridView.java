@@ -1,5 +1,6 @@
 package org.molgenis.framework.tupletable.view;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
@@ -14,6 +15,7 @@ import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.collections.CollectionUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -599,17 +601,26 @@ public class JQGridView extends HtmlWidget
 	{
 		final JQGridResult result = new JQGridResult(page, totalPages, rowCount);
 
-		for (Iterator<Tuple> it = table.iterator(); it.hasNext();)
+		Iterator<Tuple> it = table.iterator();
+		try
 		{
-			Tuple row = it.next();
-			final LinkedHashMap<String, String> rowMap = new LinkedHashMap<String, String>();
-
-			for (String fieldName : row.getColNames())
+			while (it.hasNext())
 			{
-				String rowValue = !row.isNull(fieldName) ? row.getString(fieldName) : "null";
-				rowMap.put(fieldName, rowValue); // TODO encode to HTML
+				Tuple row = it.next();
+				final LinkedHashMap<String, String> rowMap = new LinkedHashMap<String, String>();
+
+				for (String fieldName : row.getColNames())
+				{
+					String rowValue = !row.isNull(fieldName) ? row.getString(fieldName) : "null";
+					rowMap.put(fieldName, rowValue); // TODO encode to HTML
+				}
+				result.addRow(rowMap);
 			}
-			result.addRow(rowMap);
+		}
+		finally
+		{
+			// release streaming resources, e.g. a database cursor
+			if (it instanceof Closeable) IOUtils.closeQuietly((Closeable) it);
 		}
 
 		return result;
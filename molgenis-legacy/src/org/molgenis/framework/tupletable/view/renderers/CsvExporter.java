@@ -1,7 +1,9 @@
 package org.molgenis.framework.tupletable.view.renderers;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.Iterator;
 import java.util.List;
 
 import javax.annotation.Nullable;
@@ -47,8 +49,17 @@ public class CsvExporter extends AbstractExporter
 		try
 		{
 			csvWriter.writeColNames(new FieldHeaderTuple(tupleTable.getColumns()).getColNames());
-			for (Tuple row : tupleTable)
-				csvWriter.write(row);
+			Iterator<Tuple> it = tupleTable.iterator();
+			try
+			{
+				while (it.hasNext())
+					csvWriter.write(it.next());
+			}
+			finally
+			{
+				// release streaming resources, e.g. a database cursor
+				if (it instanceof Closeable) IOUtils.closeQuietly((Closeable) it);
+			}
 		}
 		finally
 		{
@@ -1,5 +1,6 @@
 package org.molgenis.framework.tupletable.view.renderers;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.Iterator;
@@ -61,8 +62,17 @@ public class ExcelExporter extends AbstractExporter
 				}));
 
 				// write rows
-				for (Iterator<Tuple> it = tupleTable.iterator(); it.hasNext();)
-					tupleWriter.write(it.next());
+				Iterator<Tuple> it = tupleTable.iterator();
+				try
+				{
+					while (it.hasNext())
+						tupleWriter.write(it.next());
+				}
+				finally
+				{
+					// release streaming resources, e.g. a database cursor
+					if (it instanceof Closeable) IOUtils.closeQuietly((Closeable) it);
+				}
 			}
 			finally
 			{
@@ -27,7 +27,7 @@ import org.molgenis.framework.db.DatabaseException;
 import org.molgenis.framework.db.QueryRule;
 import org.molgenis.framework.db.QueryRule.Operator;
 import org.molgenis.framework.db.paging.DatabasePager;
-import org.molgenis.framework.db.paging.LimitOffsetPager;
+import org.molgenis.framework.db.paging.KeysetPager;
 import org.molgenis.framework.server.MolgenisRequest;
 import org.molgenis.framework.ui.FormModel.Mode;
 import org.molgenis.framework.ui.ScreenModel.Show;
@@ -73,7 +73,9 @@ public abstract class FormController<E extends Entity> extends SimpleScreenContr
 		// FIXME: this assumes first column is sortable...
 		try
 		{
-			this.pager = new LimitOffsetPager<E>(getEntityClass(), model.create().getFields().firstElement());
+			// seeks on the sort column when it is indexed, else uses offset
+			this.pager = new KeysetPager<E>(getEntityClass(), model.create().getFields().firstElement(), model
+					.create().getIdField());
 
 			// copy default sort from view
 			pager.setOrderByField(model.getSort());
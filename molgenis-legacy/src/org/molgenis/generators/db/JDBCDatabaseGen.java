@@ -58,6 +58,13 @@ public class JDBCDatabaseGen extends Generator
 		templateArgs.put("db_uri", options.db_uri);
 		templateArgs.put("db_user", options.db_user);
 		templateArgs.put("db_password", options.db_password);
+		templateArgs.put("db_pool_max_active", options.db_pool_max_active);
+		templateArgs.put("db_pool_max_idle", options.db_pool_max_idle);
+		templateArgs.put("db_pool_max_wait", options.db_pool_max_wait);
+		templateArgs.put("db_pool_statement_cache_size", options.db_pool_statement_cache_size);
+		templateArgs.put("db_pool_leak_timeout", options.db_pool_leak_timeout);
+		templateArgs.put("db_pool_validation_query", options.db_pool_validation_query);
+		templateArgs.put("db_pool_validation_interval", options.db_pool_validation_interval);
 
 		templateArgs.put("model", model);
 		templateArgs.put("entities", entityList);
@@ -35,7 +35,7 @@ import java.net.URL;
 import java.util.ArrayList;
 import org.molgenis.util.JarClass;
 </#if>
-import org.apache.commons.dbcp.BasicDataSource;
+import org.molgenis.framework.db.jdbc.PooledDataSourceWrapper;
 
 
 public class JDBCDatabase extends org.molgenis.framework.db.jdbc.JDBCDatabase
@@ -86,14 +86,19 @@ public class JDBCDatabase extends org.molgenis.framework.db.jdbc.JDBCDatabase
 
 	@Deprecated
 	private static DataSource createDataSource() {
-		BasicDataSource data_src = new BasicDataSource();
-		data_src.setDriverClassName("${db_driver}");
-		data_src.setUsername("${db_user}");
-		data_src.setPassword("${db_password}");
-		data_src.setUrl("${db_uri}"); // a path within the src folder?
-		data_src.setMaxIdle(10);
-		data_src.setMaxWait(1000);
-		return (DataSource)data_src;	
+		MolgenisOptions options = new MolgenisOptions();
+		options.db_driver = "${db_driver}";
+		options.db_user = "${db_user}";
+		options.db_password = "${db_password}";
+		options.db_uri = "${db_uri}"; // a path within the src folder?
+		options.db_pool_max_active = ${db_pool_max_active?c};
+		options.db_pool_max_idle = ${db_pool_max_idle?c};
+		options.db_pool_max_wait = ${db_pool_max_wait?c};
+		options.db_pool_statement_cache_size = ${db_pool_statement_cache_size?c};
+		options.db_pool_leak_timeout = ${db_pool_leak_timeout?c};
+		options.db_pool_validation_query = "${db_pool_validation_query?j_string}";
+		options.db_pool_validation_interval = ${db_pool_validation_interval?c};
+		return PooledDataSourceWrapper.get(options).getDataSource();
 	}
 
 	public JDBCDatabase(String propertiesFilePath) throws FileNotFoundException, IOException, DatabaseException
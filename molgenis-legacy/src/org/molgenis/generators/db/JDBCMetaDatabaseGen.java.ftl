@@ -108,6 +108,9 @@ public class JDBCMetaDatabase extends Model
 			//new MolgenisModelValidator();
 			//MolgenisModelValidator.validate(this, new MolgenisOptions());
 
+			//the metadata is complete, index it for fast lookups
+			this.freeze();
+
 		} catch (MolgenisModelException e)
 		{
 			throw new DatabaseException(e);
@@ -24,104 +24,35 @@
 <#list allFields(entity) as f>
   	<#if (f.type == 'xref' || f.type == 'mref') &&   f.xrefLabelNames[0] != f.xrefFieldName>
   		<#assign has_xrefs=true>	
-		//create foreign key map for field '${name(f)}' to ${name(f.xrefEntity)}.${name(f.xrefField)} using ${csv(f.xrefLabelNames)})	
-		//we will use a hash of the values to ensure that entities are only queried once	
-		final java.util.Map<String, org.molgenis.framework.db.QueryRule> ${name(f)}Rules = new java.util.LinkedHashMap<String, org.molgenis.framework.db.QueryRule>();
 	</#if>
 </#list>	
 <#if has_xrefs>		
-		//create all query rules	
+		//labels are resolved with chunked queries and cached during the transaction
+		org.molgenis.framework.db.ForeignKeyResolver resolver = getForeignKeyResolver();
+
+<#list allFields(entity) as f>
+<#if (f.type == 'xref' || f.type == 'mref') && f.xrefLabelNames[0] != f.xrefFieldName>
+		//collect labels of field '${name(f)}' to resolve to ${name(f.xrefEntity)}.${name(f.xrefField)} using ${csv(f.xrefLabelNames)}
+		final java.util.List<Object[]> ${name(f)}Labels = new java.util.ArrayList<Object[]>();
 		for(${entity.namespace}.${JavaName(entity)} object: entities)
 		{
-<#list allFields(entity) as f>
-	<#if (f.type == 'xref' || f.type == 'mref') && f.xrefLabelNames[0] != f.xrefFieldName>
-		<#if f.xrefLabelNames?size &gt; 1>
-			//create xref/mref rule filtering ${f.xrefEntityName} on the combination of labels ${csv(f.xrefLabelNames)} if xref(id)==null and xref(name) exists
 			<#if f.type == 'xref'>
 			if(object.get${JavaName(f)}_${JavaName(f.xrefField)}() == null && object.get${JavaName(f)}_${JavaName(f.xrefLabelNames[0])}() != null)
-			<#else>
-			if(object.get${JavaName(f)}_${JavaName(f.xrefField)}().size() == 0 && object.get${JavaName(f)}_${JavaName(f.xrefLabelNames[0])}().size() > 0)
-			</#if>
 			{
-				java.util.List<org.molgenis.framework.db.QueryRule> rules = new java.util.ArrayList<org.molgenis.framework.db.QueryRule>();
-				String key = "";
-
-				<#if f.type == 'xref'>
-				Object label = object.get${JavaName(f)}_${JavaName(f.xrefLabelNames[0])}();
-				<#else>
-				for(String label: object.get${JavaName(f)}_${JavaName(f.xrefLabelNames[0])}())
-				</#if>
-				{
-					<#list f.xrefLabelNames as label>
-					rules.add(new org.molgenis.framework.db.QueryRule("${label}", org.molgenis.framework.db.QueryRule.Operator.EQUALS, label));	
-					key += 	label;
-					</#list>			
-					org.molgenis.framework.db.QueryRule complexRule = new org.molgenis.framework.db.QueryRule(rules);
-					if(!${name(f)}Rules.containsKey(key))
-					{
-						${name(f)}Rules.put(key, complexRule);
-						${name(f)}Rules.put(key+"_OR_", new org.molgenis.framework.db.QueryRule(org.molgenis.framework.db.QueryRule.Operator.OR));
-					}
-				}
+				${name(f)}Labels.add(new Object[]{<#list f.xrefLabelNames as label>object.get${JavaName(f)}_${JavaName(label)}()<#if label_has_next>, </#if></#list>});
 			}
-		<#else>
-			//create xref/mref rule filtering ${f.xrefEntityName} on the label ${csv(f.xrefLabelNames)}
-			<#if f.type == 'xref'>
-			if(object.get${JavaName(f)}_${JavaName(f.xrefField)}() == null && object.get${JavaName(f)}_${JavaName(f.xrefLabelNames[0])}() != null)
 			<#else>
 			if(object.get${JavaName(f)}_${JavaName(f.xrefField)}().size() == 0 && object.get${JavaName(f)}_${JavaName(f.xrefLabelNames[0])}().size() > 0)
-			</#if>
 			{
-				<#if f.type == 'xref'>
-				Object label = object.get${JavaName(f)}_${JavaName(f.xrefLabelNames[0])}();
-				<#else>
-				for(String label: object.get${JavaName(f)}_${JavaName(f.xrefLabelNames[0])}())
-				</#if>
+				for(int j = 0; j < object.get${JavaName(f)}_${JavaName(f.xrefLabelNames[0])}().size(); j++)
 				{
-					org.molgenis.framework.db.QueryRule xrefFilter = new org.molgenis.framework.db.QueryRule("${f.xrefLabelNames[0]}", org.molgenis.framework.db.QueryRule.Operator.EQUALS, label);
-					
-					if(label != null && !${name(f)}Rules.containsKey(label))
-					{
-						${name(f)}Rules.put(""+label, xrefFilter);
-						${name(f)}Rules.put(""+label+"_OR_", new org.molgenis.framework.db.QueryRule(org.molgenis.framework.db.QueryRule.Operator.OR));
-					}
+					${name(f)}Labels.add(new Object[]{<#list f.xrefLabelNames as label>object.get${JavaName(f)}_${JavaName(label)}().get(j)<#if label_has_next>, </#if></#list>});
 				}
-			}		
-		</#if>	
-	</#if>
-</#list>
-		}
-
-<#list allFields(entity) as f>
-<#if (f.type == 'xref' || f.type == 'mref') && f.xrefLabelNames[0] != f.xrefFieldName>
-		//resolve foreign key field '${name(f)}' to ${name(f.xrefEntity)}.${name(f.xrefField)} using ${csv(f.xrefLabelNames)})
-		final java.util.Map<String,${JavaType(f.xrefField)}> ${name(f)}_Labels_to_IdMap = new java.util.TreeMap<String,${JavaType(f.xrefField)}>();
-		if(${name(f)}Rules.size() > 0)
-		{		
-		
-			java.util.List<${f.xrefEntity.namespace}.${JavaName(f.xrefEntity)}> ${name(f)}List = null;
-			try
-			{
-				${name(f)}List = getDatabase().find(${f.xrefEntity.namespace}.${JavaName(f.xrefEntity)}.class, ${name(f)}Rules.values().toArray(new org.molgenis.framework.db.QueryRule[${name(f)}Rules.values().size()]));
-			}
-			catch(Exception e)
-			{
-				// something went wrong while querying for this entities' name field
-				// we assume it has no such field, which should have been checked earlier ofcourse
-				// regardless, just quit the function now
-				throw new org.molgenis.framework.db.DatabaseException(e);
-			}
-		
-			for(${f.xrefEntity.namespace}.${JavaName(f.xrefEntity)} xref :  ${name(f)}List)
-			{
-				String key = "";
-				<#list f.xrefLabelNames as label>
-				key += 	xref.get${JavaName(label)}();
-				</#list>	
-				
-				${name(f)}_Labels_to_IdMap.put(key, xref.get${JavaName(f.xrefField)}());
 			}
+			</#if>
 		}
+		final java.util.Map<String,Object> ${name(f)}_Labels_to_IdMap = resolver.resolve(${f.xrefEntity.namespace}.${JavaName(f.xrefEntity)}.class, "${name(f.xrefField)}", new String[]{<#list f.xrefLabelNames as label>"${label}"<#if label_has_next>, </#if></#list>}, ${name(f)}Labels);
+
 </#if>
 </#list>
 
@@ -152,9 +83,9 @@
 					else
 					{
 						<#if f.type == 'mref'>
-						idList.add(${name(f)}_Labels_to_IdMap.get(key));
+						idList.add((Integer) ${name(f)}_Labels_to_IdMap.get(key));
 						<#else>
-						object.set${JavaName(f)}_${JavaName(f.xrefField)}(${name(f)}_Labels_to_IdMap.get(key));
+						object.set${JavaName(f)}_${JavaName(f.xrefField)}((${JavaType(f.xrefField)}) ${name(f)}_Labels_to_IdMap.get(key));
 						</#if>
 					}
 				<#if f.type == 'mref'>
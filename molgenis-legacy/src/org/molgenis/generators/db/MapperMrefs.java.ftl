@@ -3,41 +3,49 @@ Common parts for saving multiplicative references (mrefs) to an entity.
 -->	
 	/** 
 	 * This method queries the link tables to load mref fields. For performance reasons this is done for the whole batch.
-	 * As a consequence the number of queries equals the number of mref fields. This may be memory hungry.
+	 * As a consequence the number of queries equals the number of mref fields times the number of chunks of QueryRule.IN_CHUNK_SIZE entities.
 	 */
 	public void mapMrefs( List<${JavaName(entity)}> entities ) throws DatabaseException			
 	{
 <#if entity.getAllFieldsOf("mref")?size &gt; 0>	
+		if(entities.isEmpty()) return;
 		try
 		{
-			//list the ${name(entity)} ids to query
-			List<${pkeyJavaType(entity)}> ${name(entity)}Ids = new ArrayList<${pkeyJavaType(entity)}>();
-			for(${JavaName(entity)} entity: entities)
-			{
-				${name(entity)}Ids.add(entity.get${JavaName(pkey(entity))}());
-			}
-			
 <#list entity.getAllFieldsOf("mref") as f>
 <#assign mref_entity = f.mrefName>
 <#assign mref_remote_field = f.mrefRemoteid/>
-<#assign mref_local_field = f.mrefLocalid/>			
-			//map the ${f.name} mrefs
-			List<${JavaName(mref_entity)}> ${name(f)}_mrefs = this.getDatabase().query(${JavaName(mref_entity)}.class).in("${f.mrefLocalid}", ${name(entity)}Ids).sortASC("${pkey(model.getEntity(mref_entity)).name}").find();
 			Map<${pkeyJavaType(entity)},List<${pkeyJavaType(f.xrefEntity)}>> ${name(f)}_${name(mref_remote_field)}_map = new LinkedHashMap<${pkeyJavaType(entity)},List<${pkeyJavaType(f.xrefEntity)}>>();
 			<#if f.xrefLabelNames[0] != f.xrefFieldName><#list f.xrefLabelNames as label>
 			Map<${pkeyJavaType(entity)},List<${JavaType(f.xrefLabels[label_index])}>> ${name(f)}_${label}_map = new LinkedHashMap<${pkeyJavaType(entity)},List<${JavaType(f.xrefLabels[label_index])}>>();
 			</#list></#if>
+</#list>
 			
-			for(${JavaName(mref_entity)} ref: ${name(f)}_mrefs)
+			//query the link tables per chunk of ${name(entity)} ids, so the IN lists stay bounded
+			for(int fromIndex = 0; fromIndex < entities.size(); fromIndex += QueryRule.IN_CHUNK_SIZE)
 			{
-				if(${name(f)}_${name(mref_remote_field)}_map.get(ref.get${JavaName(mref_local_field)}_${JavaName(f.xrefField)}()) == null) ${name(f)}_${name(mref_remote_field)}_map.put(ref.get${JavaName(mref_local_field)}_${JavaName(pkey(f.xrefEntity))}(),new ArrayList<${pkeyJavaType(f.xrefEntity)}>()); 
-				${name(f)}_${name(mref_remote_field)}_map.get(ref.get${JavaName(mref_local_field)}_${JavaName(f.xrefField)}()).add(ref.get${JavaName(mref_remote_field)}_${JavaName(pkey(f.xrefEntity))}());
-				<#if f.xrefLabelNames[0] != f.xrefFieldName><#list f.xrefLabelNames as label>
-				if(${name(f)}_${label}_map.get(ref.get${JavaName(mref_local_field)}_${JavaName(f.xrefField)}()) == null)	${name(f)}_${label}_map.put(ref.get${JavaName(mref_local_field)}_${JavaName(pkey(f.xrefEntity))}(),new ArrayList<${JavaType(f.xrefLabels[label_index])}>());
-				${name(f)}_${label}_map.get(ref.get${JavaName(mref_local_field)}_${JavaName(f.xrefField)}()).add(ref.get${JavaName(mref_remote_field)}_${JavaName(label)}());
-				</#list></#if>
-			}
+				List<${pkeyJavaType(entity)}> ${name(entity)}Ids = new ArrayList<${pkeyJavaType(entity)}>();
+				for(${JavaName(entity)} entity: entities.subList(fromIndex, Math.min(fromIndex + QueryRule.IN_CHUNK_SIZE, entities.size())))
+				{
+					${name(entity)}Ids.add(entity.get${JavaName(pkey(entity))}());
+				}
+			
+<#list entity.getAllFieldsOf("mref") as f>
+<#assign mref_entity = f.mrefName>
+<#assign mref_remote_field = f.mrefRemoteid/>
+<#assign mref_local_field = f.mrefLocalid/>			
+				//map the ${f.name} mrefs
+				List<${JavaName(mref_entity)}> ${name(f)}_mrefs = this.getDatabase().query(${JavaName(mref_entity)}.class).in("${f.mrefLocalid}", ${name(entity)}Ids).sortASC("${pkey(model.getEntity(mref_entity)).name}").find();
+				for(${JavaName(mref_entity)} ref: ${name(f)}_mrefs)
+				{
+					if(${name(f)}_${name(mref_remote_field)}_map.get(ref.get${JavaName(mref_local_field)}_${JavaName(f.xrefField)}()) == null) ${name(f)}_${name(mref_remote_field)}_map.put(ref.get${JavaName(mref_local_field)}_${JavaName(pkey(f.xrefEntity))}(),new ArrayList<${pkeyJavaType(f.xrefEntity)}>()); 
+					${name(f)}_${name(mref_remote_field)}_map.get(ref.get${JavaName(mref_local_field)}_${JavaName(f.xrefField)}()).add(ref.get${JavaName(mref_remote_field)}_${JavaName(pkey(f.xrefEntity))}());
+					<#if f.xrefLabelNames[0] != f.xrefFieldName><#list f.xrefLabelNames as label>
+					if(${name(f)}_${label}_map.get(ref.get${JavaName(mref_local_field)}_${JavaName(f.xrefField)}()) == null)	${name(f)}_${label}_map.put(ref.get${JavaName(mref_local_field)}_${JavaName(pkey(f.xrefEntity))}(),new ArrayList<${JavaType(f.xrefLabels[label_index])}>());
+					${name(f)}_${label}_map.get(ref.get${JavaName(mref_local_field)}_${JavaName(f.xrefField)}()).add(ref.get${JavaName(mref_remote_field)}_${JavaName(label)}());
+					</#list></#if>
+				}
 </#list>
+			}
 			
 			//load the mapped data into the entities
 			for(${JavaName(entity)} entity: entities)
@@ -1,4 +1,20 @@
 <#include "GeneratorHelper.ftl">
+<#--changes to users, groups or permissions invalidate the cached row level security lookups-->
+<#assign authEntity = entityClass?starts_with("org.molgenis.auth.")>
+<#macro write call>
+<#if authEntity>
+		try
+		{
+			return super.${call};
+		}
+		finally
+		{
+			RowLevelSecurityCache.invalidateAll(getDatabase());
+		}
+<#else>
+		return super.${call};
+</#if>
+</#macro>
 <#--#####################################################################-->
 <#--                                                                   ##-->
 <#--         START OF THE OUTPUT                                       ##-->
@@ -19,11 +35,15 @@ import org.molgenis.framework.db.Mapper;
 import org.molgenis.framework.db.QueryRule;
 import org.molgenis.io.TupleReader;
 import org.molgenis.io.TupleWriter;
+import org.molgenis.util.CloseableIterator;
+import org.molgenis.util.SimpleCloseableIterator;
 
 import java.text.ParseException;
 
 import org.molgenis.auth.MolgenisUser;
 import org.molgenis.auth.service.MolgenisUserService;
+import org.molgenis.framework.security.Login;
+import org.molgenis.framework.security.RowLevelSecurityCache;
 import org.molgenis.framework.security.SimpleLogin;
 
 import org.molgenis.framework.db.MapperDecorator;
@@ -48,7 +68,7 @@ public class ${clazzName}<E extends ${entityClass}> extends MapperDecorator<E>
 </#if>
 			//TODO: Add column level security filters
 		}
-		return super.add(entities);
+<@write "add(entities)"/>
 	}
 
 	@Override
@@ -64,7 +84,7 @@ public class ${clazzName}<E extends ${entityClass}> extends MapperDecorator<E>
 </#if>
 			//TODO: Add column level security filters
 		}
-		return super.update(entities);
+<@write "update(entities)"/>
 	}
 
 	@Override
@@ -79,7 +99,7 @@ public class ${clazzName}<E extends ${entityClass}> extends MapperDecorator<E>
 			this.addRowLevelSecurityFilters(entities);
 </#if>
 		}
-		return super.remove(entities);
+<@write "remove(entities)"/>
 	}
 
 	@Override
@@ -92,7 +112,7 @@ public class ${clazzName}<E extends ${entityClass}> extends MapperDecorator<E>
 
 			//TODO: Add column level security filters
 		}
-		return super.add(reader, writer);
+<@write "add(reader, writer)"/>
 	}
 
 	@Override
@@ -130,6 +150,23 @@ public class ${clazzName}<E extends ${entityClass}> extends MapperDecorator<E>
 		return result;
 	}
 
+	@Override
+	public CloseableIterator<E> iterate(QueryRule ...rules) throws DatabaseException
+	{
+		if (this.getDatabase().getLogin() != null && !(this.getDatabase().getLogin() instanceof SimpleLogin))
+		{
+			if (!this.getDatabase().getLogin().canRead(${entityClass}.class))
+				return new SimpleCloseableIterator<E>(new ArrayList<E>().iterator());
+
+<#if authorizable??>
+			rules = this.addRowLevelSecurityFilters(${entityClass}.CANREAD, rules);
+</#if>
+		}
+
+		return super.iterate(rules);
+		//TODO: Add column level security filters
+	}
+
 	@Override
 	public void find(TupleWriter writer, QueryRule ...rules) throws DatabaseException
 	{
@@ -157,7 +194,7 @@ public class ${clazzName}<E extends ${entityClass}> extends MapperDecorator<E>
 
 			//TODO: Add row level security filters
 		}
-		return super.remove(reader);
+<@write "remove(reader)"/>
 	}
 
 	@Override
@@ -171,7 +208,7 @@ public class ${clazzName}<E extends ${entityClass}> extends MapperDecorator<E>
 			//TODO: Add row level security filters
 			//TODO: Add column level security filters
 		}
-		return super.update(reader);
+<@write "update(reader)"/>
 	}
 
 	@Override
@@ -195,32 +232,44 @@ public class ${clazzName}<E extends ${entityClass}> extends MapperDecorator<E>
 	//TODO: Move this to Login interface
 	private QueryRule[] addRowLevelSecurityFilters(String permission, QueryRule ...rules) throws DatabaseException
 	{
-		if (this.getDatabase().getLogin().isAuthenticated() && this.getDatabase().getLogin().getUserName().equals("admin"))
+		Login login = this.getDatabase().getLogin();
+		if (login.isAuthenticated() && login.getUserName().equals("admin"))
 			return rules;
-
-		MolgenisUserService service = MolgenisUserService.getInstance(this.getDatabase());
-		MolgenisUser user           = service.findById(this.getDatabase().getLogin().getUserId());
-		
-		List<Integer> roleIdList;
-		try
-		{
-			roleIdList              = service.findGroupIds(user);
-		}
-		catch (ParseException e)
-		{
+		if (!permission.equals(${entityClass}.CANREAD))
 			return rules;
-		}
 
-		List<QueryRule> rulesList = new ArrayList<QueryRule>();
-		org.apache.commons.collections.CollectionUtils.addAll(rulesList, rules);
-		if (permission.equals(${entityClass}.CANREAD))
+		//the filter is built once per user, entity and permission and reused by later requests of the session
+		RowLevelSecurityCache cache = RowLevelSecurityCache.get(login);
+		QueryRule filter = cache.getFilter(login.getUserId(), ${entityClass}.class, permission);
+		if (filter == null)
 		{
+			List<Integer> roleIdList = cache.getGroupIds(login.getUserId());
+			if (roleIdList == null)
+			{
+				MolgenisUserService service = MolgenisUserService.getInstance(this.getDatabase());
+				MolgenisUser user           = service.findById(login.getUserId());
+				try
+				{
+					roleIdList              = service.findGroupIds(user);
+				}
+				catch (ParseException e)
+				{
+					return rules;
+				}
+				cache.putGroupIds(login.getUserId(), roleIdList);
+			}
+
 			QueryRule rule1 = new QueryRule(${entityClass}.CANWRITE, org.molgenis.framework.db.QueryRule.Operator.IN, roleIdList);
 			QueryRule rule2 = new QueryRule(${entityClass}.CANREAD, org.molgenis.framework.db.QueryRule.Operator.IN, roleIdList);
 			QueryRule rule4 = new QueryRule(${entityClass}.OWNS, org.molgenis.framework.db.QueryRule.Operator.IN, roleIdList);
 			QueryRule rule3 = new QueryRule(org.molgenis.framework.db.QueryRule.Operator.OR);
-			rulesList.add(new QueryRule(rule1, rule3, rule2, rule3, rule4));
+			filter = new QueryRule(rule1, rule3, rule2, rule3, rule4);
+			cache.putFilter(login.getUserId(), ${entityClass}.class, permission, filter);
 		}
+
+		List<QueryRule> rulesList = new ArrayList<QueryRule>();
+		org.apache.commons.collections.CollectionUtils.addAll(rulesList, rules);
+		rulesList.add(filter);
 		return rulesList.toArray(new QueryRule[0]);
 	}
 	
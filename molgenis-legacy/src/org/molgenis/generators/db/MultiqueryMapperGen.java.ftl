@@ -80,6 +80,11 @@ public class ${JavaName(entity)}Mapper extends AbstractJDBCMapper<${JavaName(ent
 		//create big mysql query
 		StringBuffer sql = new StringBuffer("INSERT INTO ${SqlName(entity)} (<#list addFields(entity) as f>${SqlName(f)}<#if f_has_next>,</#if></#list>) VALUES ");
 		{
+<#assign hasDatetime = false><#list addFields(entity) as f><#if f.type == "datetime"><#assign hasDatetime = true></#if></#list>
+<#if hasDatetime>
+			//one formatter per call instead of one per row
+			DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+</#if>
 		
 			boolean first = true;
 			for(${JavaName(entity)} e: entities)
@@ -100,7 +105,6 @@ public class ${JavaName(entity)}Mapper extends AbstractJDBCMapper<${JavaName(ent
 				</#if>
 								
 				<#if f.type == "datetime">
-					DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
 					String mysqlDateTime = dateFormat.format(e.get${JavaName(f)}());
 					sql.append("'"+this.escapeSql(mysqlDateTime)+"'"
 				<#elseif f.type == "date">
@@ -20,6 +20,15 @@
 		<#return "setObject">
 	</#if>
 </#function>
+<#--sets the values of fields as statement parameters, starting at index 'first'-->
+<#macro setParameters fields first>
+<#list fields as f>
+				//${f}
+				//if(e.get${JavaName(f)}() == null) pstmt.setNull(${f_index + first},Types.${SqlType(model,f)});
+				if(e.get${JavaName(f)}<#if f.type="xref" || f.type="mref">_${JavaName(f.xrefField)}</#if>() == null) pstmt.setNull(${f_index + first},Types.OTHER);
+				else pstmt.${pstmtSetter(f)}(${f_index + first},${convertToJdbc(f)});
+</#list>
+</#macro>
 
 <#--#####################################################################-->
 <#--                                                                   ##-->
@@ -119,38 +128,57 @@ public class ${JavaName(entity)}Mapper extends AbstractJDBCMapper<${JavaName(ent
 		//add superclass first
 		this.getDatabase().getMapperFor(${entity.ancestor.namespace}.${JavaName(entity.ancestor)}.class).executeAdd(entities);
 		</#if>
+<#--the key is generated by this table unless it is inserted, e.g. in subclass tables-->
+<#assign autoKey = false><#list dbFields(entity) as f><#if f.auto && f.type="int"><#assign autoKey = true><#list addFields(entity) as a><#if a.name == f.name><#assign autoKey = false></#if></#list></#if></#list>
 	
 		Connection conn = getDatabase().getConnection();
 		PreparedStatement pstmt = null;
 		try
 		{
+<#if autoKey && db_driver == "org.hsqldb.jdbcDriver">
+			//hsqldb doesn't return generated keys, so insert per row and ask for the identity
 			pstmt = conn.prepareStatement("INSERT INTO ${name(entity)} (<#list addFields(entity) as f>${name(f)}<#if f_has_next>,</#if></#list>) VALUES (<#list addFields(entity) as f>?<#if f_has_next>,</#if></#list>)");
 			int updatedRows = 0;
 			
 			for( ${JavaName(entity)} e : entities )	
 			{	
-<#list addFields(entity) as f>	
-				//${f}
-				//if(e.get${JavaName(f)}() == null) pstmt.setNull(${f_index + 1},Types.${SqlType(model,f)});	
-				if(e.get${JavaName(f)}<#if f.type="xref" || f.type="mref">_${JavaName(f.xrefField)}</#if>() == null) pstmt.setNull(${f_index + 1},Types.OTHER);
-				else pstmt.${pstmtSetter(f)}(${f_index + 1},${convertToJdbc(f)});
-</#list>
-	
+<@setParameters addFields(entity) 1/>
 				updatedRows += pstmt.executeUpdate();
 				
 				//retrieve autogenerated keys
 <#list dbFields(entity) as f><#if f.auto && f.type="int">
-<#if db_driver == "org.hsqldb.jdbcDriver">
 				Statement keyStmt = conn.createStatement();
 				ResultSet rs = keyStmt.executeQuery("CALL IDENTITY()");
 				rs.next();
 				e.set${JavaName(f)}(rs.getInt(1));
 				rs.close();
 				JDBCDatabase.closeStatement(keyStmt);
+</#if></#list>
+			}
 <#else>
-				getGeneratedKeys(entities, pstmt, 0);
-</#if></#if></#list>						
-			}					
+			pstmt = conn.prepareStatement("INSERT INTO ${name(entity)} (<#list addFields(entity) as f>${name(f)}<#if f_has_next>,</#if></#list>) VALUES (<#list addFields(entity) as f>?<#if f_has_next>,</#if></#list>)"<#if autoKey>, Statement.RETURN_GENERATED_KEYS</#if>);
+			int updatedRows = 0;
+			int batchSize = getJdbcBatchSize();
+			int fromIndex = 0;
+			
+			for(int i = 0; i < entities.size(); i++)
+			{
+				${JavaName(entity)} e = entities.get(i);
+<@setParameters addFields(entity) 1/>
+				pstmt.addBatch();
+				
+				//send the batch
+				if(i - fromIndex + 1 == batchSize || i == entities.size() - 1)
+				{
+					updatedRows += executeBatch(pstmt);
+<#if autoKey>
+					//retrieve autogenerated keys of the batch
+					getGeneratedKeys(entities, pstmt, fromIndex);
+</#if>
+					fromIndex = i + 1;
+				}
+			}
+</#if>
 		
 			return updatedRows;
 		} catch (SQLException sqlEx) {
@@ -175,26 +203,18 @@ public class ${JavaName(entity)}Mapper extends AbstractJDBCMapper<${JavaName(ent
 		try
 		{
 			pstmt = conn.prepareStatement("UPDATE ${name(entity)} SET <#list updateFields(entity) as f>${name(f)}=?<#if f_has_next>,</#if></#list> WHERE <#list keyFields(entity) as f>${f.name}=?<#if f_has_next> AND </#if></#list>");
-			int updatedRows = 0;	
+			int updatedRows = 0;
+			int batchSize = getJdbcBatchSize();
 			
-			for( ${JavaName(entity)} e : entities )	
-			{	
-<#assign index = 1>		
-<#list updateFields(entity) as f>	
-				//${f}
-				//if(e.get${JavaName(f)}() == null) pstmt.setNull(${index},Types.${SqlType(model,f)}); 
-				if(e.get${JavaName(f)}<#if f.type="xref" || f.type="mref">_${JavaName(f.xrefField)}</#if>() == null) pstmt.setNull(${index},Types.OTHER);
-				else pstmt.${pstmtSetter(f)}(${index},${convertToJdbc(f)});
-<#assign index = index+1>				
-</#list>
-<#list keyFields(entity) as f>
-				//where ${f}
-				//if(e.get${JavaName(f)}() == null) pstmt.setNull(${index},Types.${SqlType(model,f)});
-				if(e.get${JavaName(f)}<#if f.type="xref" || f.type="mref">_${JavaName(f.xrefField)}</#if>() == null) pstmt.setNull(${index},Types.OTHER);
-				else pstmt.${pstmtSetter(f)}(${index},${convertToJdbc(f)});			
-<#assign index = index+1>				
-</#list>	
-				updatedRows += pstmt.executeUpdate();
+			for(int i = 0; i < entities.size(); i++)
+			{
+				${JavaName(entity)} e = entities.get(i);
+<@setParameters updateFields(entity) 1/>
+<@setParameters keyFields(entity) updateFields(entity)?size + 1/>
+				pstmt.addBatch();
+				
+				//send the batch
+				if((i + 1) % batchSize == 0 || i == entities.size() - 1) updatedRows += executeBatch(pstmt);
 			}					
 	
 			return updatedRows;
@@ -216,16 +236,16 @@ public class ${JavaName(entity)}Mapper extends AbstractJDBCMapper<${JavaName(ent
 		try
 		{
 			pstmt = conn.prepareStatement("DELETE FROM ${name(entity)} WHERE <#list keyFields(entity) as f>${name(f)}=?<#if f_has_next> AND </#if></#list>");
+			int batchSize = getJdbcBatchSize();
 					
-			for( ${JavaName(entity)} e : entities )	
-			{	
-<#list keyFields(entity) as f>
-				//${f}
-				//if(e.get${JavaName(f)}() == null) pstmt.setNull(${f_index + 1},Types.${SqlType(model,f)}); 
-				if(e.get${JavaName(f)}<#if f.type="xref" || f.type="mref">_${JavaName(f.xrefField)}</#if>() == null) pstmt.setNull(${f_index + 1},Types.OTHER);
-				else pstmt.${pstmtSetter(f)}(${f_index + 1},${convertToJdbc(f)});
-</#list>	
-				updatedRows += pstmt.executeUpdate();
+			for(int i = 0; i < entities.size(); i++)
+			{
+				${JavaName(entity)} e = entities.get(i);
+<@setParameters keyFields(entity) 1/>
+				pstmt.addBatch();
+				
+				//send the batch
+				if((i + 1) % batchSize == 0 || i == entities.size() - 1) updatedRows += executeBatch(pstmt);
 			}
 		} 
 		catch (SQLException sqlEx) 
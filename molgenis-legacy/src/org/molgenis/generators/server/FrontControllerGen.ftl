@@ -12,6 +12,7 @@
 
 package ${package}.servlet;
 
+import java.io.File;
 import java.util.LinkedHashMap;
 import java.sql.Connection;
 import java.sql.SQLException;
@@ -21,12 +22,16 @@ import javax.sql.DataSource;
 import org.apache.log4j.Logger;
 import org.molgenis.framework.db.Database;
 import org.molgenis.framework.db.DatabaseException;
+import org.molgenis.framework.db.DatabasePool;
+import org.molgenis.framework.db.jdbc.DataSourceWrapper;
+import org.molgenis.framework.db.jdbc.JDBCDatabase;
+import org.molgenis.framework.db.jdbc.PooledDataSourceWrapper;
+import org.molgenis.framework.db.jdbc.SimpleDataSourceWrapper;
 import org.molgenis.framework.server.MolgenisContext;
 import org.molgenis.framework.server.MolgenisFrontController;
 import org.molgenis.framework.server.MolgenisService;
 import org.molgenis.framework.server.MolgenisRequest;
 import org.molgenis.framework.security.Login;
-import org.apache.commons.dbcp.BasicDataSource;
 import ${package}.DatabaseFactory;
 
 <#if generate_BOT>
@@ -67,6 +72,27 @@ public class FrontController extends MolgenisFrontController
 		
 		//keep a map of active connections
 		connections = new ConcurrentHashMap<UUID, Connection>();
+	<#if databaseImp != 'jpa'>
+		
+		//settings shared by all databases, such as the count cache and search index
+		JDBCDatabase.configure(usedOptions);
+		
+		//the databases of the requests borrow a connection when they first need one,
+		//and are reused for up to db_database_pool_size requests at the same time
+		final DataSourceWrapper dataSource = new SimpleDataSourceWrapper(context.getDataSource());
+		final File fileSource = new File(usedOptions.db_filepath);
+		final int jdbcBatchSize = usedOptions.db_jdbc_batch_size;
+		databasePool = new DatabasePool(new DatabasePool.Factory()
+		{
+			@Override
+			public Database create() throws DatabaseException
+			{
+				JDBCDatabase db = (JDBCDatabase) DatabaseFactory.create(dataSource, fileSource);
+				db.setJdbcBatchSize(jdbcBatchSize);
+				return db;
+			}
+		}, usedOptions.db_database_pool_size);
+	</#if>
 		
 		//finally, we store all mapped services, and pass them the context used for databasing, serving, etc.
 		LinkedHashMap<String,MolgenisService> services = new LinkedHashMap<String,MolgenisService>();
@@ -108,24 +134,18 @@ public class FrontController extends MolgenisFrontController
 		//TODO: store db instance in session and reuse, with fresh connection?
 		//Database db = (Database)request.getRequest().getSession().getAttribute("database");
 		
-		//get a connection and keep track of it
-		
-		UUID id = UUID.randomUUID();
-		
 	<#if databaseImp = 'jpa'>
+		UUID id = UUID.randomUUID();
 		Database db = DatabaseFactory.create();
-	<#else>
-		Connection conn = context.getDataSource().getConnection();
-		<#if db_mode != 'standalone'>
-		Database db = DatabaseFactory.create(conn);
-		<#else>
-		//Database db = new ${package}.JDBCDatabase(conn);
-		Database db = DatabaseFactory.create(conn);	
-		</#if>
-		connections.put(id, conn);
-	</#if>
 		request.setDatabase(db);
 		return id;
+	<#else>
+		//the database gets a connection when it first needs one, so requests that
+		//do not use the database do not take a connection from the pool. The
+		//database and its connection are released after the request.
+		request.setDatabase(databasePool.borrow());
+		return null;
+	</#if>
 	}
 	
 	@Override
@@ -136,36 +156,9 @@ public class FrontController extends MolgenisFrontController
 		//The application code is shielded from connection/datasource pool details! 
 		return null;
 	<#else>
-		<#if db_mode != 'standalone'>
-		//PREVIOUS
-		//The datasource is created by the servletcontext	
-		//ServletContext sc = MolgenisContextListener.getInstance().getContext();
-		//DataSource dataSource = (DataSource)sc.getAttribute("DataSource");
-		//return dataSource;
-		
-		//NEW
-		BasicDataSource data_src = new BasicDataSource();
-		data_src.setDriverClassName("${db_driver}");
-		data_src.setUsername("${db_user}");
-		data_src.setPassword("${db_password}");
-		data_src.setUrl("${db_uri}");
-		data_src.setMaxActive(8);
-		data_src.setMaxIdle(4);
-		DataSource dataSource = (DataSource)data_src;
-		return dataSource;
-		<#else>
-		BasicDataSource data_src = new BasicDataSource();
-		data_src.setDriverClassName("${db_driver}");
-		data_src.setUsername("${db_user}");
-		data_src.setPassword("${db_password}");
-		data_src.setUrl("${db_uri}");
-		//data_src.setMaxIdle(10);
-		//data_src.setMaxWait(1000);
-		data_src.setInitialSize(10);
-		data_src.setTestOnBorrow(true);
-		DataSource dataSource = (DataSource)data_src;
-		return dataSource;
-		</#if>
+		//the connection pool is shared with all other databases on this uri,
+		//see the db_pool_* options
+		return PooledDataSourceWrapper.get(usedOptions).getDataSource();
 	</#if>
 	}
 	
@@ -13,6 +13,8 @@ import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
 import javax.sql.DataSource;
 
+import org.molgenis.framework.server.TokenFactory;
+
 public final class MolgenisContextListener implements ServletContextListener
 {
 	// singleton we can use from everywhere
@@ -49,6 +51,7 @@ public final class MolgenisContextListener implements ServletContextListener
 	@Override
 	public void contextDestroyed(ServletContextEvent sce)
 	{
+		TokenFactory.stopSweeper();
 		context.removeAttribute("DataSource");
 		context = null;
 	}
@@ -0,0 +1,108 @@
+package org.molgenis.io.excel;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.molgenis.io.TableReader;
+import org.molgenis.io.TupleReader;
+import org.molgenis.io.processor.CellProcessor;
+
+/**
+ * Excel reader that reads the rows of its sheets one at a time from the file,
+ * so large workbooks can be read with constant memory. Unlike
+ * {@link ExcelReader} the workbook is not loaded, so formulas are not
+ * evaluated but their results as saved in the file are read.
+ */
+public abstract class AbstractStreamingExcelReader implements TableReader, Closeable
+{
+	private final boolean hasHeader;
+
+	/** process cells after reading */
+	private List<CellProcessor> cellProcessors;
+
+	protected AbstractStreamingExcelReader(boolean hasHeader)
+	{
+		this.hasHeader = hasHeader;
+	}
+
+	/**
+	 * Returns the names of the sheets, in the order of the workbook
+	 */
+	abstract List<String> getSheetNames();
+
+	/**
+	 * Opens the rows of a sheet, starting at the first row
+	 */
+	abstract RowSource openRows(int i) throws IOException;
+
+	public int getNumberOfSheets()
+	{
+		return getSheetNames().size();
+	}
+
+	public String getSheetName(int i)
+	{
+		return getSheetNames().get(i);
+	}
+
+	public StreamingSheetReader getSheet(int i)
+	{
+		return i >= 0 && i < getNumberOfSheets() ? new StreamingSheetReader(this, i, getSheetName(i), hasHeader,
+				this.cellProcessors) : null;
+	}
+
+	public StreamingSheetReader getSheet(String sheetName)
+	{
+		return getSheet(getSheetNames().indexOf(sheetName));
+	}
+
+	@Override
+	public Iterator<TupleReader> iterator()
+	{
+		return new Iterator<TupleReader>()
+		{
+			private int i = 0;
+			private int nrSheets = getNumberOfSheets();
+
+			@Override
+			public boolean hasNext()
+			{
+				return i < nrSheets;
+			}
+
+			@Override
+			public TupleReader next()
+			{
+				return getSheet(i++);
+			}
+
+			@Override
+			public void remove()
+			{
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	public void addCellProcessor(CellProcessor cellProcessor)
+	{
+		if (cellProcessors == null) cellProcessors = new ArrayList<CellProcessor>();
+		cellProcessors.add(cellProcessor);
+	}
+
+	@Override
+	public TupleReader getTupleReader(String tableName) throws IOException
+	{
+		return getSheet(tableName);
+	}
+
+	@Override
+	public Iterable<String> getTableNames() throws IOException
+	{
+		return Collections.unmodifiableList(getSheetNames());
+	}
+}
@@ -23,6 +23,8 @@ public class ExcelSheetReader implements TupleReader
 {
 	private final org.apache.poi.ss.usermodel.Sheet sheet;
 	private final boolean hasHeader;
+	/** evaluates the formula cells of all rows */
+	private final FormulaEvaluator evaluator;
 
 	/** process cells after reading */
 	private List<CellProcessor> cellProcessors;
@@ -35,6 +37,7 @@ public class ExcelSheetReader implements TupleReader
 		this.sheet = sheet;
 		this.hasHeader = hasHeader;
 		this.cellProcessors = cellProcessors;
+		this.evaluator = sheet.getWorkbook().getCreationHelper().createFormulaEvaluator();
 	}
 
 	public String getName()
@@ -92,9 +95,9 @@ public class ExcelSheetReader implements TupleReader
 			@Override
 			public Tuple next()
 			{
-				if (colNamesMap == null) return new RowTuple(it.next(), cellProcessors);
+				if (colNamesMap == null) return new RowTuple(it.next(), evaluator, cellProcessors);
 				else
-					return new RowIndexTuple(it.next(), colNamesMap, cellProcessors);
+					return new RowIndexTuple(it.next(), colNamesMap, evaluator, cellProcessors);
 			}
 
 			@Override
@@ -132,7 +135,7 @@ public class ExcelSheetReader implements TupleReader
 		return columnIdx;
 	}
 
-	private static String toValue(Cell cell, List<CellProcessor> cellProcessors)
+	private static String toValue(Cell cell, FormulaEvaluator evaluator, List<CellProcessor> cellProcessors)
 	{
 		String value;
 		switch (cell.getCellType())
@@ -161,7 +164,6 @@ public class ExcelSheetReader implements TupleReader
 				break;
 			case Cell.CELL_TYPE_FORMULA:
 				// evaluate formula
-				FormulaEvaluator evaluator = cell.getSheet().getWorkbook().getCreationHelper().createFormulaEvaluator();
 				CellValue cellValue = evaluator.evaluate(cell);
 				switch (cellValue.getCellType())
 				{
@@ -199,12 +201,14 @@ public class ExcelSheetReader implements TupleReader
 		private static final long serialVersionUID = 1L;
 
 		private final Row row;
+		private final FormulaEvaluator evaluator;
 		private final List<CellProcessor> cellProcessors;
 
-		public RowTuple(Row row, List<CellProcessor> cellProcessors)
+		public RowTuple(Row row, FormulaEvaluator evaluator, List<CellProcessor> cellProcessors)
 		{
 			if (row == null) throw new IllegalArgumentException("row is null");
 			this.row = row;
+			this.evaluator = evaluator;
 			this.cellProcessors = cellProcessors;
 		}
 
@@ -236,7 +240,7 @@ public class ExcelSheetReader implements TupleReader
 		public Object get(int col)
 		{
 			Cell cell = row.getCell(col);
-			return cell != null ? toValue(cell, cellProcessors) : null;
+			return cell != null ? toValue(cell, evaluator, cellProcessors) : null;
 		}
 	}
 
@@ -246,14 +250,17 @@ public class ExcelSheetReader implements TupleReader
 
 		private final transient Row row;
 		private final Map<String, Integer> colNamesMap;
+		private final transient FormulaEvaluator evaluator;
 		private final List<CellProcessor> cellProcessors;
 
-		public RowIndexTuple(Row row, Map<String, Integer> colNamesMap, List<CellProcessor> cellProcessors)
+		public RowIndexTuple(Row row, Map<String, Integer> colNamesMap, FormulaEvaluator evaluator,
+				List<CellProcessor> cellProcessors)
 		{
 			if (row == null) throw new IllegalArgumentException("row is null");
 			if (colNamesMap == null) throw new IllegalArgumentException("column names map is null");
 			this.row = row;
 			this.colNamesMap = colNamesMap;
+			this.evaluator = evaluator;
 			this.cellProcessors = cellProcessors;
 		}
 
@@ -286,7 +293,7 @@ public class ExcelSheetReader implements TupleReader
 		public Object get(int col)
 		{
 			Cell cell = row.getCell(col);
-			return cell != null ? toValue(cell, cellProcessors) : null;
+			return cell != null ? toValue(cell, evaluator, cellProcessors) : null;
 		}
 	}
 }
@@ -0,0 +1,19 @@
+package org.molgenis.io.excel;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Rows of a sheet that are read one at a time from the file, used by
+ * {@link StreamingSheetReader}
+ */
+interface RowSource extends Closeable
+{
+	/**
+	 * Returns the values of the next row by column index, with null for
+	 * missing and blank cells. Cell processors are not applied yet.
+	 * 
+	 * @return the values, or null after the last row
+	 */
+	String[] nextRow() throws IOException;
+}
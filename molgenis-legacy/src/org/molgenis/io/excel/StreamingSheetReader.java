@@ -0,0 +1,222 @@
+package org.molgenis.io.excel;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.molgenis.io.TupleReader;
+import org.molgenis.io.processor.AbstractCellProcessor;
+import org.molgenis.io.processor.CellProcessor;
+import org.molgenis.util.tuple.Tuple;
+import org.molgenis.util.tuple.ValueIndexTuple;
+import org.molgenis.util.tuple.ValueTuple;
+
+/**
+ * Reads the rows of a sheet of a {@link XlsxStreamingReader} or
+ * {@link XlsStreamingReader} one at a time from the file, with the cell and
+ * header semantics of {@link ExcelSheetReader}. Each iterator reads the sheet
+ * again from the start of the sheet.
+ */
+public class StreamingSheetReader implements TupleReader
+{
+	private final AbstractStreamingExcelReader excelReader;
+	private final int index;
+	private final String name;
+	private final boolean hasHeader;
+
+	/** process cells after reading */
+	private List<CellProcessor> cellProcessors;
+	/** column names index */
+	private Map<String, Integer> colNamesMap;
+
+	StreamingSheetReader(AbstractStreamingExcelReader excelReader, int index, String name, boolean hasHeader,
+			List<CellProcessor> cellProcessors)
+	{
+		if (excelReader == null) throw new IllegalArgumentException("excel reader is null");
+		this.excelReader = excelReader;
+		this.index = index;
+		this.name = name;
+		this.hasHeader = hasHeader;
+		this.cellProcessors = cellProcessors;
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	@Override
+	public boolean hasColNames()
+	{
+		return hasHeader;
+	}
+
+	@Override
+	public Iterator<String> colNamesIterator() throws IOException
+	{
+		if (!hasHeader) return null;
+
+		if (colNamesMap == null)
+		{
+			RowSource rows = excelReader.openRows(index);
+			try
+			{
+				colNamesMap = toColNamesMap(rows.nextRow());
+			}
+			finally
+			{
+				rows.close();
+			}
+		}
+		return colNamesMap != null ? colNamesMap.keySet().iterator() : null;
+	}
+
+	@Override
+	public Iterator<Tuple> iterator()
+	{
+		final RowSource rows;
+		final Map<String, Integer> colNamesMap;
+		try
+		{
+			rows = excelReader.openRows(index);
+			if (hasHeader)
+			{
+				String[] headerRow = rows.nextRow();
+				if (headerRow == null)
+				{
+					rows.close();
+					return Collections.<Tuple> emptyList().iterator();
+				}
+				// create column header index once and reuse
+				if (this.colNamesMap == null) this.colNamesMap = toColNamesMap(headerRow);
+				colNamesMap = this.colNamesMap;
+			}
+			else
+				colNamesMap = null;
+		}
+		catch (IOException e)
+		{
+			throw new RuntimeException(e);
+		}
+
+		// values of rows with missing cells at the end are padded to the header
+		int nrCols = 0;
+		if (colNamesMap != null)
+		{
+			for (Integer col : colNamesMap.values())
+				nrCols = Math.max(nrCols, col + 1);
+		}
+		final int minNrCols = nrCols;
+
+		return new Iterator<Tuple>()
+		{
+			private String[] next;
+			private boolean getNext = true;
+
+			@Override
+			public boolean hasNext()
+			{
+				return get() != null;
+			}
+
+			@Override
+			public Tuple next()
+			{
+				String[] values = get();
+				if (values == null) throw new NoSuchElementException();
+				getNext = true;
+
+				if (values.length < minNrCols) values = Arrays.copyOf(values, minNrCols);
+				for (int i = 0; i < values.length; ++i)
+					values[i] = AbstractCellProcessor.processCell(values[i], false, cellProcessors);
+				if (colNamesMap != null) return new ValueIndexTuple(colNamesMap, Arrays.asList(values));
+				else
+					return new ValueTuple(Arrays.asList(values));
+			}
+
+			private String[] get()
+			{
+				if (getNext)
+				{
+					try
+					{
+						next = rows.nextRow();
+						if (next == null) rows.close();
+					}
+					catch (IOException e)
+					{
+						throw new RuntimeException(e);
+					}
+					getNext = false;
+				}
+				return next;
+			}
+
+			@Override
+			public void remove()
+			{
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	@Override
+	public void addCellProcessor(CellProcessor cellProcessor)
+	{
+		if (cellProcessors == null) cellProcessors = new ArrayList<CellProcessor>();
+		cellProcessors.add(cellProcessor);
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		// noop
+	}
+
+	private Map<String, Integer> toColNamesMap(String[] headerRow)
+	{
+		if (headerRow == null) return null;
+
+		Map<String, Integer> columnIdx = new LinkedHashMap<String, Integer>();
+		for (int i = 0; i < headerRow.length; ++i)
+		{
+			if (headerRow[i] == null) continue;
+			String header = AbstractCellProcessor.processCell(headerRow[i], true, cellProcessors);
+			columnIdx.put(header, i);
+		}
+		return columnIdx;
+	}
+
+	/**
+	 * Converts a numeric cell value like {@link ExcelSheetReader}: dates are
+	 * written as {@link java.util.Date#toString()} and whole numbers without
+	 * decimals.
+	 */
+	static String toValue(double x, boolean isDate, boolean date1904)
+	{
+		if (isDate) return DateUtil.getJavaDate(x, date1904).toString();
+		// excel stores integer values as double values
+		// read an integer if the double value equals the
+		// integer value
+		if (x == Math.rint(x) && !Double.isNaN(x) && !Double.isInfinite(x)) return String.valueOf((int) x);
+		else
+			return String.valueOf(x);
+	}
+
+	/**
+	 * Sets a value in a row that grows as needed
+	 */
+	static void setValue(List<String> row, int col, String value)
+	{
+		while (row.size() <= col)
+			row.add(null);
+		row.set(col, value);
+	}
+}
@@ -0,0 +1,331 @@
+package org.molgenis.io.excel;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.BlankRecord;
+import org.apache.poi.hssf.record.BoolErrRecord;
+import org.apache.poi.hssf.record.BoundSheetRecord;
+import org.apache.poi.hssf.record.CellValueRecordInterface;
+import org.apache.poi.hssf.record.DateWindow1904Record;
+import org.apache.poi.hssf.record.EOFRecord;
+import org.apache.poi.hssf.record.ExtendedFormatRecord;
+import org.apache.poi.hssf.record.FormatRecord;
+import org.apache.poi.hssf.record.FormulaRecord;
+import org.apache.poi.hssf.record.LabelRecord;
+import org.apache.poi.hssf.record.LabelSSTRecord;
+import org.apache.poi.hssf.record.MulBlankRecord;
+import org.apache.poi.hssf.record.NumberRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.RecordFactoryInputStream;
+import org.apache.poi.hssf.record.RowRecord;
+import org.apache.poi.hssf.record.SSTRecord;
+import org.apache.poi.hssf.record.StringRecord;
+import org.apache.poi.poifs.filesystem.DocumentInputStream;
+import org.apache.poi.poifs.filesystem.NPOIFSFileSystem;
+import org.apache.poi.ss.usermodel.BuiltinFormats;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.DateUtil;
+
+/**
+ * Reads the sheets of an .xls file one row at a time from the records of the
+ * workbook stream. Only the shared strings and cell formats of the workbook
+ * are kept in memory.
+ */
+public class XlsStreamingReader extends AbstractStreamingExcelReader
+{
+	private final NPOIFSFileSystem fs;
+	private final String workbookName;
+	private final List<String> sheetNames = new ArrayList<String>();
+	/** position of the first record of each sheet in the workbook stream */
+	private final List<Integer> sheetPositions = new ArrayList<Integer>();
+
+	private SSTRecord sst;
+	private boolean date1904;
+	/** format index of each cell format (XF) */
+	private final List<Integer> xfFormats = new ArrayList<Integer>();
+	/** custom number formats by format index */
+	private final Map<Integer, String> formats = new HashMap<Integer, String>();
+	/** whether a cell format formats numbers as dates, by XF index */
+	private final Map<Integer, Boolean> dateXfs = new HashMap<Integer, Boolean>();
+
+	public XlsStreamingReader(File file) throws IOException
+	{
+		this(file, true);
+	}
+
+	public XlsStreamingReader(File file, boolean hasHeader) throws IOException
+	{
+		super(hasHeader);
+		if (file == null) throw new IllegalArgumentException("file is null");
+		this.fs = new NPOIFSFileSystem(file, true);
+		try
+		{
+			this.workbookName = fs.getRoot().hasEntry("Workbook") ? "Workbook" : "Book";
+			readWorkbookRecords();
+		}
+		catch (IOException e)
+		{
+			fs.close();
+			throw e;
+		}
+		catch (RuntimeException e)
+		{
+			fs.close();
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Reads the sheets, shared strings and formats from the records that
+	 * precede the sheets
+	 */
+	private void readWorkbookRecords() throws IOException
+	{
+		InputStream is = fs.createDocumentInputStream(workbookName);
+		try
+		{
+			RecordFactoryInputStream records = new RecordFactoryInputStream(is, false);
+			Record record;
+			while ((record = records.nextRecord()) != null && !(record instanceof EOFRecord))
+			{
+				if (record instanceof BoundSheetRecord)
+				{
+					BoundSheetRecord sheet = (BoundSheetRecord) record;
+					sheetNames.add(sheet.getSheetname());
+					sheetPositions.add(sheet.getPositionOfBof());
+				}
+				else if (record instanceof SSTRecord) sst = (SSTRecord) record;
+				else if (record instanceof ExtendedFormatRecord) xfFormats.add((int) ((ExtendedFormatRecord) record)
+						.getFormatIndex());
+				else if (record instanceof FormatRecord) formats.put(((FormatRecord) record).getIndexCode(),
+						((FormatRecord) record).getFormatString());
+				else if (record instanceof DateWindow1904Record) date1904 = ((DateWindow1904Record) record)
+						.getWindowing() == 1;
+			}
+		}
+		finally
+		{
+			is.close();
+		}
+	}
+
+	@Override
+	List<String> getSheetNames()
+	{
+		return sheetNames;
+	}
+
+	@Override
+	RowSource openRows(int i) throws IOException
+	{
+		DocumentInputStream is = fs.createDocumentInputStream(workbookName);
+		try
+		{
+			long position = sheetPositions.get(i);
+			if (is.skip(position) != position) throw new IOException("sheet " + getSheetName(i) + " not found");
+			return new SheetRowSource(is);
+		}
+		catch (IOException e)
+		{
+			is.close();
+			throw e;
+		}
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		fs.close();
+	}
+
+	private boolean isDateFormat(int xfIndex)
+	{
+		Boolean isDateFormat = dateXfs.get(xfIndex);
+		if (isDateFormat == null)
+		{
+			isDateFormat = false;
+			if (xfIndex < xfFormats.size())
+			{
+				int formatIndex = xfFormats.get(xfIndex);
+				String formatString = formats.get(formatIndex);
+				if (formatString == null) formatString = BuiltinFormats.getBuiltinFormat(formatIndex);
+				isDateFormat = DateUtil.isADateFormat(formatIndex, formatString);
+			}
+			dateXfs.put(xfIndex, isDateFormat);
+		}
+		return isDateFormat;
+	}
+
+	/**
+	 * Reads the cell records of a sheet. Rows are returned when the records of
+	 * a later row are read, so only a few rows are kept in memory.
+	 */
+	private class SheetRowSource implements RowSource
+	{
+		private final InputStream is;
+		private final RecordFactoryInputStream records;
+
+		/** rows that may still get cells, by row number */
+		private final TreeMap<Integer, List<String>> pending = new TreeMap<Integer, List<String>>();
+		/** rows that are complete */
+		private final Deque<List<String>> complete = new ArrayDeque<List<String>>();
+		private boolean end = false;
+		/** number of BOF records without EOF record */
+		private int depth = 0;
+
+		/** formula cell of which the string result is in the next record */
+		private List<String> formulaRow;
+		private int formulaCol;
+
+		SheetRowSource(InputStream is)
+		{
+			this.is = is;
+			this.records = new RecordFactoryInputStream(is, false);
+		}
+
+		@Override
+		public String[] nextRow() throws IOException
+		{
+			while (complete.isEmpty() && !end)
+				readRecord();
+
+			List<String> row = complete.poll();
+			return row != null ? row.toArray(new String[row.size()]) : null;
+		}
+
+		private void readRecord()
+		{
+			Record record = records.nextRecord();
+			if (record instanceof BOFRecord)
+			{
+				// charts in the sheet are nested in the sheet records
+				++depth;
+			}
+			else if (record == null || record instanceof EOFRecord && --depth <= 0)
+			{
+				complete.addAll(pending.values());
+				pending.clear();
+				end = true;
+			}
+			else if (depth > 1)
+			{
+				// skip the records of a chart
+			}
+			else if (record instanceof RowRecord)
+			{
+				getRow(((RowRecord) record).getRowNumber());
+			}
+			else if (record instanceof StringRecord)
+			{
+				if (formulaRow != null) StreamingSheetReader.setValue(formulaRow, formulaCol,
+						((StringRecord) record).getString());
+				formulaRow = null;
+			}
+			else if (record instanceof MulBlankRecord)
+			{
+				MulBlankRecord blanks = (MulBlankRecord) record;
+				completeRowsBefore(blanks.getRow());
+				StreamingSheetReader.setValue(getRow(blanks.getRow()), blanks.getLastColumn(), null);
+			}
+			else if (record instanceof CellValueRecordInterface)
+			{
+				CellValueRecordInterface cell = (CellValueRecordInterface) record;
+				completeRowsBefore(cell.getRow());
+				List<String> row = getRow(cell.getRow());
+				StreamingSheetReader.setValue(row, cell.getColumn(), toValue(record, cell));
+				if (record instanceof FormulaRecord && ((FormulaRecord) record).hasCachedResultString())
+				{
+					formulaRow = row;
+					formulaCol = cell.getColumn();
+				}
+			}
+		}
+
+		private List<String> getRow(int rowNumber)
+		{
+			List<String> row = pending.get(rowNumber);
+			if (row == null)
+			{
+				row = new ArrayList<String>();
+				pending.put(rowNumber, row);
+			}
+			return row;
+		}
+
+		/**
+		 * The cells of a sheet are stored by row, so rows before the row of a
+		 * cell are complete
+		 */
+		private void completeRowsBefore(int rowNumber)
+		{
+			while (!pending.isEmpty() && pending.firstKey() < rowNumber)
+				complete.add(pending.pollFirstEntry().getValue());
+		}
+
+		private String toValue(Record record, CellValueRecordInterface cell)
+		{
+			if (record instanceof BlankRecord)
+			{
+				return null;
+			}
+			else if (record instanceof LabelSSTRecord)
+			{
+				return sst.getString(((LabelSSTRecord) record).getSSTIndex()).getString();
+			}
+			else if (record instanceof LabelRecord)
+			{
+				return ((LabelRecord) record).getValue();
+			}
+			else if (record instanceof NumberRecord)
+			{
+				double x = ((NumberRecord) record).getValue();
+				boolean isDate = DateUtil.isValidExcelDate(x) && isDateFormat(cell.getXFIndex());
+				return StreamingSheetReader.toValue(x, isDate, date1904);
+			}
+			else if (record instanceof BoolErrRecord)
+			{
+				BoolErrRecord boolErr = (BoolErrRecord) record;
+				if (boolErr.isBoolean()) return String.valueOf(boolErr.getBooleanValue());
+				throw new RuntimeException("unsupported cell type: " + Cell.CELL_TYPE_ERROR);
+			}
+			else if (record instanceof FormulaRecord)
+			{
+				// formula results are read as saved, like evaluated by
+				// ExcelSheetReader
+				FormulaRecord formula = (FormulaRecord) record;
+				switch (formula.getCachedResultType())
+				{
+					case Cell.CELL_TYPE_NUMERIC:
+						return StreamingSheetReader.toValue(formula.getValue(), false, date1904);
+					case Cell.CELL_TYPE_BOOLEAN:
+						return String.valueOf(formula.getCachedBooleanValue());
+					case Cell.CELL_TYPE_STRING:
+						// the string is in the next record
+						return formula.hasCachedResultString() ? null : "";
+					case Cell.CELL_TYPE_BLANK:
+						return null;
+					default:
+						throw new RuntimeException("unsupported cell type: " + formula.getCachedResultType());
+				}
+			}
+			else
+				throw new RuntimeException("unsupported cell type: " + record.getClass().getSimpleName());
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			is.close();
+		}
+	}
+}
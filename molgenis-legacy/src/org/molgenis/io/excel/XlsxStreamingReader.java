@@ -0,0 +1,387 @@
+package org.molgenis.io.excel;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.openxml4j.opc.PackageRelationship;
+import org.apache.poi.openxml4j.opc.PackageRelationshipCollection;
+import org.apache.poi.openxml4j.opc.PackageRelationshipTypes;
+import org.apache.poi.openxml4j.opc.PackagingURIHelper;
+import org.apache.poi.ss.usermodel.BuiltinFormats;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.xml.sax.SAXException;
+
+/**
+ * Reads the sheets of an .xlsx file one row at a time. The parts of the
+ * package are parsed with a streaming (StAX) parser, so only the shared
+ * strings and the number formats of the cell styles are kept in memory.
+ */
+public class XlsxStreamingReader extends AbstractStreamingExcelReader
+{
+	private static final XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+	static
+	{
+		// uploaded files must not refer to other files
+		xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+	}
+
+	private static final String RELATIONSHIP_NAMESPACE = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+	private static final String SHARED_STRINGS_RELATIONSHIP = RELATIONSHIP_NAMESPACE + "/sharedStrings";
+	private static final String STYLES_RELATIONSHIP = RELATIONSHIP_NAMESPACE + "/styles";
+
+	private final OPCPackage pkg;
+	private final PackagePart workbookPart;
+	private ReadOnlySharedStringsTable sharedStrings;
+	private boolean date1904;
+	private final List<String> sheetNames = new ArrayList<String>();
+	private final List<PackagePart> sheetParts = new ArrayList<PackagePart>();
+
+	/** whether a cell style formats numbers as dates, by style index */
+	private final List<Boolean> dateStyles = new ArrayList<Boolean>();
+
+	public XlsxStreamingReader(File file) throws IOException
+	{
+		this(file, true);
+	}
+
+	public XlsxStreamingReader(File file, boolean hasHeader) throws IOException
+	{
+		super(hasHeader);
+		if (file == null) throw new IllegalArgumentException("file is null");
+		try
+		{
+			this.pkg = OPCPackage.open(file.getPath(), PackageAccess.READ);
+		}
+		catch (OpenXML4JException e)
+		{
+			throw new IOException(e);
+		}
+		try
+		{
+			PackageRelationshipCollection workbookRels = pkg
+					.getRelationshipsByType(PackageRelationshipTypes.CORE_DOCUMENT);
+			if (workbookRels.size() == 0) throw new IOException("not an xlsx file: " + file.getName());
+			this.workbookPart = pkg.getPart(workbookRels.getRelationship(0));
+
+			readWorkbook();
+			PackageRelationshipCollection sharedStringsRels = workbookPart
+					.getRelationshipsByType(SHARED_STRINGS_RELATIONSHIP);
+			if (sharedStringsRels.size() > 0)
+			{
+				PackageRelationship rel = sharedStringsRels.getRelationship(0);
+				this.sharedStrings = new ReadOnlySharedStringsTable(getRelatedPart(rel), rel);
+			}
+			PackageRelationshipCollection stylesRels = workbookPart.getRelationshipsByType(STYLES_RELATIONSHIP);
+			if (stylesRels.size() > 0) readStyles(getRelatedPart(stylesRels.getRelationship(0)));
+		}
+		catch (OpenXML4JException e)
+		{
+			pkg.revert();
+			throw new IOException(e);
+		}
+		catch (SAXException e)
+		{
+			pkg.revert();
+			throw new IOException(e);
+		}
+		catch (XMLStreamException e)
+		{
+			pkg.revert();
+			throw new IOException(e);
+		}
+		catch (IOException e)
+		{
+			pkg.revert();
+			throw e;
+		}
+	}
+
+	@Override
+	List<String> getSheetNames()
+	{
+		return sheetNames;
+	}
+
+	@Override
+	RowSource openRows(int i) throws IOException
+	{
+		return new SheetRowSource(sheetParts.get(i).getInputStream());
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		// the package was opened read-only, revert closes it without saving
+		pkg.revert();
+	}
+
+	private PackagePart getRelatedPart(PackageRelationship rel) throws InvalidFormatException
+	{
+		URI uri = PackagingURIHelper.resolvePartUri(workbookPart.getPartName().getURI(), rel.getTargetURI());
+		PackagePart part = pkg.getPart(PackagingURIHelper.createPartName(uri));
+		if (part == null) throw new InvalidFormatException("missing part " + uri);
+		return part;
+	}
+
+	/**
+	 * Reads the sheet names and parts and the date system from workbook.xml
+	 */
+	private void readWorkbook() throws IOException, XMLStreamException, InvalidFormatException
+	{
+		InputStream is = workbookPart.getInputStream();
+		try
+		{
+			XMLStreamReader xml = xmlInputFactory.createXMLStreamReader(is);
+			try
+			{
+				while (xml.hasNext())
+				{
+					if (xml.next() != XMLStreamReader.START_ELEMENT) continue;
+					if (xml.getLocalName().equals("workbookPr"))
+					{
+						String value = xml.getAttributeValue(null, "date1904");
+						date1904 = "1".equals(value) || "true".equals(value);
+					}
+					else if (xml.getLocalName().equals("sheet"))
+					{
+						String id = xml.getAttributeValue(RELATIONSHIP_NAMESPACE, "id");
+						PackageRelationship rel = workbookPart.getRelationship(id);
+						if (rel == null) throw new InvalidFormatException("missing sheet " + id);
+						sheetNames.add(xml.getAttributeValue(null, "name"));
+						sheetParts.add(getRelatedPart(rel));
+					}
+				}
+			}
+			finally
+			{
+				xml.close();
+			}
+		}
+		finally
+		{
+			is.close();
+		}
+	}
+
+	/**
+	 * Reads the number formats of the cell styles from styles.xml
+	 */
+	private void readStyles(PackagePart stylesPart) throws IOException, XMLStreamException
+	{
+		Map<Integer, String> formats = new HashMap<Integer, String>();
+		InputStream is = stylesPart.getInputStream();
+		try
+		{
+			XMLStreamReader xml = xmlInputFactory.createXMLStreamReader(is);
+			try
+			{
+				boolean cellXfs = false;
+				while (xml.hasNext())
+				{
+					int event = xml.next();
+					if (event == XMLStreamReader.START_ELEMENT)
+					{
+						String element = xml.getLocalName();
+						if (element.equals("numFmt")) formats.put(Integer.valueOf(xml.getAttributeValue(null,
+								"numFmtId")), xml.getAttributeValue(null, "formatCode"));
+						else if (element.equals("cellXfs")) cellXfs = true;
+						else if (cellXfs && element.equals("xf"))
+						{
+							String value = xml.getAttributeValue(null, "numFmtId");
+							int formatIndex = value != null ? Integer.parseInt(value) : 0;
+							String formatString = formats.get(formatIndex);
+							if (formatString == null) formatString = BuiltinFormats.getBuiltinFormat(formatIndex);
+							dateStyles.add(DateUtil.isADateFormat(formatIndex, formatString));
+						}
+					}
+					else if (event == XMLStreamReader.END_ELEMENT && xml.getLocalName().equals("cellXfs"))
+					{
+						cellXfs = false;
+					}
+				}
+			}
+			finally
+			{
+				xml.close();
+			}
+		}
+		finally
+		{
+			is.close();
+		}
+	}
+
+	private boolean isDateStyle(int styleIndex)
+	{
+		return styleIndex < dateStyles.size() && dateStyles.get(styleIndex);
+	}
+
+	/**
+	 * Column index of a cell reference like 'AB12'
+	 */
+	static int toColumnIndex(String cellReference)
+	{
+		int col = 0;
+		for (int i = 0; i < cellReference.length(); ++i)
+		{
+			char c = cellReference.charAt(i);
+			if (c < 'A' || c > 'Z') break;
+			col = col * 26 + (c - 'A' + 1);
+		}
+		return col - 1;
+	}
+
+	/**
+	 * Reads the &lt;row&gt; elements of a sheet
+	 */
+	private class SheetRowSource implements RowSource
+	{
+		private final InputStream is;
+		private final XMLStreamReader xml;
+
+		SheetRowSource(InputStream is) throws IOException
+		{
+			this.is = is;
+			try
+			{
+				this.xml = xmlInputFactory.createXMLStreamReader(is);
+			}
+			catch (XMLStreamException e)
+			{
+				IOUtils.closeQuietly(is);
+				throw new IOException(e);
+			}
+		}
+
+		@Override
+		public String[] nextRow() throws IOException
+		{
+			try
+			{
+				// find the next row
+				while (true)
+				{
+					if (!xml.hasNext()) return null;
+					int event = xml.next();
+					if (event == XMLStreamReader.START_ELEMENT && xml.getLocalName().equals("row")) break;
+					if (event == XMLStreamReader.END_ELEMENT && xml.getLocalName().equals("sheetData")) return null;
+				}
+
+				List<String> row = new ArrayList<String>();
+				int col = -1;
+				while (xml.hasNext())
+				{
+					int event = xml.next();
+					if (event == XMLStreamReader.START_ELEMENT && xml.getLocalName().equals("c"))
+					{
+						String ref = xml.getAttributeValue(null, "r");
+						col = ref != null ? toColumnIndex(ref) : col + 1;
+						StreamingSheetReader.setValue(row, col, readCell());
+					}
+					else if (event == XMLStreamReader.END_ELEMENT && xml.getLocalName().equals("row")) break;
+				}
+				return row.toArray(new String[row.size()]);
+			}
+			catch (XMLStreamException e)
+			{
+				throw new IOException(e);
+			}
+		}
+
+		/**
+		 * Reads the value of the &lt;c&gt; element at the cursor
+		 */
+		private String readCell() throws XMLStreamException
+		{
+			String type = xml.getAttributeValue(null, "t");
+			String style = xml.getAttributeValue(null, "s");
+
+			String value = null;
+			StringBuilder inlineString = null;
+			boolean formula = false;
+			while (xml.hasNext())
+			{
+				int event = xml.next();
+				if (event == XMLStreamReader.START_ELEMENT)
+				{
+					String element = xml.getLocalName();
+					if (element.equals("v")) value = xml.getElementText();
+					else if (element.equals("f")) formula = true;
+					else if (element.equals("t"))
+					{
+						// text of an inline string, possibly in several runs
+						if (inlineString == null) inlineString = new StringBuilder();
+						inlineString.append(xml.getElementText());
+					}
+				}
+				else if (event == XMLStreamReader.END_ELEMENT && xml.getLocalName().equals("c")) break;
+			}
+
+			if (type == null || type.equals("n"))
+			{
+				if (value == null || value.isEmpty()) return null;
+				double x = Double.parseDouble(value);
+				// formula results are read as numbers, as evaluated by
+				// ExcelSheetReader
+				boolean isDate = !formula && style != null && isDateStyle(Integer.parseInt(style))
+						&& DateUtil.isValidExcelDate(x);
+				return StreamingSheetReader.toValue(x, isDate, date1904);
+			}
+			else if (type.equals("s"))
+			{
+				if (value == null || sharedStrings == null) return null;
+				return sharedStrings.getEntryAt(Integer.parseInt(value));
+			}
+			else if (type.equals("inlineStr"))
+			{
+				return inlineString != null ? inlineString.toString() : null;
+			}
+			else if (type.equals("str"))
+			{
+				return value;
+			}
+			else if (type.equals("b"))
+			{
+				return value != null ? String.valueOf(value.equals("1")) : null;
+			}
+			else
+				throw new RuntimeException("unsupported cell type: " + Cell.CELL_TYPE_ERROR);
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			try
+			{
+				xml.close();
+			}
+			catch (XMLStreamException e)
+			{
+				throw new IOException(e);
+			}
+			finally
+			{
+				is.close();
+			}
+		}
+	}
+}
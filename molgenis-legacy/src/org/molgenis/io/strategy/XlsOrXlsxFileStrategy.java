@@ -1,15 +1,45 @@
 package org.molgenis.io.strategy;
 
+import org.apache.commons.io.FilenameUtils;
 import org.molgenis.io.TableReader;
 import org.molgenis.io.excel.ExcelReader;
+import org.molgenis.io.excel.XlsStreamingReader;
+import org.molgenis.io.excel.XlsxStreamingReader;
 
 import java.io.File;
 import java.io.IOException;
 
+/**
+ * Reads workbooks up to the streaming threshold with {@link ExcelReader}, and
+ * larger workbooks one row at a time with {@link XlsxStreamingReader} or
+ * {@link XlsStreamingReader}.
+ */
 public class XlsOrXlsxFileStrategy implements CreateReaderStrategy {
 
+    /** default size in bytes above which workbooks are streamed */
+    public static final long DEFAULT_STREAMING_THRESHOLD = 10 * 1024 * 1024;
+
+    private final long streamingThreshold;
+
+    public XlsOrXlsxFileStrategy() {
+        this(DEFAULT_STREAMING_THRESHOLD);
+    }
+
+    public XlsOrXlsxFileStrategy(long streamingThreshold) {
+        this.streamingThreshold = streamingThreshold;
+    }
+
     @Override
     public TableReader createTableReader(File file, String fileName) throws IOException {
+        if (file.length() > streamingThreshold) {
+            String extension = FilenameUtils.getExtension(fileName);
+            if (extension.equalsIgnoreCase("xlsx")) {
+                return new XlsxStreamingReader(file);
+            }
+            if (extension.equalsIgnoreCase("xls")) {
+                return new XlsStreamingReader(file);
+            }
+        }
         return new ExcelReader(file);
     }
 }
@@ -9,6 +9,7 @@ package org.molgenis.model.elements;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -75,6 +76,9 @@ public class Entity extends DBSchema implements Record
 	/** Default label(s) to be used for Xrefs */
 	private List<String> xrefLabels;
 
+	/** Lookups of a frozen model, null if not frozen, see {@link Model#freeze()} */
+	private transient volatile Frozen frozen;
+
 	// constructor(s)
 	/**
 	 * Default constructor. With this constructor all the needed information of
@@ -117,6 +121,8 @@ public class Entity extends DBSchema implements Record
 		this.description = "";
 
 		this.system = false;
+
+		modelChanged();
 	}
 
 	/**
@@ -147,6 +153,8 @@ public class Entity extends DBSchema implements Record
 		this.description = "";
 
 		this.system = system;
+
+		modelChanged();
 	}
 
 	/**
@@ -198,6 +206,7 @@ public class Entity extends DBSchema implements Record
 
 	public void setAbstract(boolean is_abstract)
 	{
+		modelChanged();
 		this.abstract_type = is_abstract;
 	}
 
@@ -253,6 +262,7 @@ public class Entity extends DBSchema implements Record
 	public void setParents(Vector<String> parents)
 	{
 		this.parents = parents;
+		modelChanged();
 
 		// if (parents.size() > 0)
 		// {
@@ -342,6 +352,9 @@ public class Entity extends DBSchema implements Record
 	 */
 	public Vector<Entity> getDescendants()
 	{
+		Frozen frozen = this.frozen;
+		if (frozen != null) return new Vector<Entity>(frozen.descendants);
+
 		Vector<Entity> descendants = new Vector<Entity>();
 		// get the model
 		for (DBSchema element : (this.getRoot()).getAllChildren())
@@ -424,6 +437,7 @@ public class Entity extends DBSchema implements Record
 	public void setImplements(Vector<String> implements_parents)
 	{
 		this.implements_parents = implements_parents;
+		modelChanged();
 	}
 
 	/**
@@ -475,11 +489,13 @@ public class Entity extends DBSchema implements Record
 		if (pos != null) fields.add(pos, field);
 		else
 			fields.add(field);
+		modelChanged();
 	}
 
 	public void removeField(Field field)
 	{
 		fields.remove(field);
+		modelChanged();
 	}
 
 	/**
@@ -678,6 +694,9 @@ public class Entity extends DBSchema implements Record
 	 */
 	public Vector<Field> getAllFields() throws MolgenisModelException
 	{
+		Frozen frozen = this.frozen;
+		if (frozen != null) return new Vector<Field>(frozen.allFields);
+
 		Map<String, Field> all_fields = new LinkedHashMap<String, Field>();
 
 		// second the fields of the superclass
@@ -922,6 +941,14 @@ public class Entity extends DBSchema implements Record
 	{
 		Vector<Field> results = new Vector<Field>();
 
+		Frozen frozen = this.frozen;
+		if (frozen != null)
+		{
+			List<Field> fieldsOf = frozen.allFieldsOf.get(type.getClass());
+			if (fieldsOf != null) results.addAll(fieldsOf);
+			return results;
+		}
+
 		for (Field field : this.getAllFields())
 		{
 			if (field.getType().getClass().equals(type.getClass()))
@@ -1036,6 +1063,14 @@ public class Entity extends DBSchema implements Record
 	 */
 	public Field getAllField(String name) throws MolgenisModelException
 	{
+		Frozen frozen = this.frozen;
+		if (frozen != null)
+		{
+			Field field = frozen.allFieldsByName.get(name.toLowerCase());
+			if (field == null) logger.debug("couldn't find " + this.getName() + "." + name);
+			return field;
+		}
+
 		for (Field field : getAllFields())
 			if (name.equalsIgnoreCase(field.getName())) return field;
 		logger.debug("couldn't find " + this.getName() + "." + name);
@@ -1550,4 +1585,62 @@ public class Entity extends DBSchema implements Record
 	{
 		return this.allocationSize;
 	}
+
+	/**
+	 * Precompute the field lookups of this entity, called by
+	 * {@link Model#freeze()}.
+	 * 
+	 * @param descendants
+	 *            the direct subclasses of this entity
+	 */
+	void freeze(List<Entity> descendants) throws MolgenisModelException
+	{
+		this.frozen = null;
+		this.frozen = new Frozen(getAllFields(), descendants);
+	}
+
+	/**
+	 * Drop the lookups of a frozen model, called by {@link Model#unfreeze()}.
+	 */
+	void unfreeze()
+	{
+		this.frozen = null;
+	}
+
+	/** unfreeze the model this entity belongs to, because it changed */
+	private void modelChanged()
+	{
+		Model model = getModel();
+		if (model != null) model.unfreeze();
+	}
+
+	/** Lookups of an entity in a frozen model, never changed once created */
+	private static class Frozen
+	{
+		final List<Field> allFields;
+		/** all fields by lower case name */
+		final Map<String, Field> allFieldsByName = new HashMap<String, Field>();
+		/** all fields by class of their type */
+		final Map<Class<?>, List<Field>> allFieldsOf = new HashMap<Class<?>, List<Field>>();
+		final List<Entity> descendants;
+
+		Frozen(List<Field> allFields, List<Entity> descendants)
+		{
+			this.allFields = Collections.unmodifiableList(new ArrayList<Field>(allFields));
+			this.descendants = Collections.unmodifiableList(new ArrayList<Entity>(descendants));
+			for (Field field : allFields)
+			{
+				String name = field.getName().toLowerCase();
+				if (!allFieldsByName.containsKey(name)) allFieldsByName.put(name, field);
+				if (field.getType() == null) continue;
+				List<Field> fieldsOf = allFieldsOf.get(field.getType().getClass());
+				if (fieldsOf == null)
+				{
+					fieldsOf = new ArrayList<Field>();
+					allFieldsOf.put(field.getType().getClass(), fieldsOf);
+				}
+				fieldsOf.add(field);
+			}
+		}
+	}
 }
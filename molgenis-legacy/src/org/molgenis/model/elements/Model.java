@@ -12,7 +12,10 @@ package org.molgenis.model.elements;
 // jdk
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.StringTokenizer;
 import java.util.Vector;
 
@@ -145,6 +148,9 @@ public class Model implements Serializable
 	 */
 	public Vector<View> getViews()
 	{
+		Index index = this.index;
+		if (index != null) return new Vector<View>(index.views);
+
 		Vector<View> views = new Vector<View>();
 
 		for (DBSchema element : database.getChildren())
@@ -198,6 +204,17 @@ public class Model implements Serializable
 	{
 		Vector<Entity> entities = new Vector<Entity>();
 
+		Index index = this.index;
+		if (index != null)
+		{
+			for (Entity entity : index.entities)
+			{
+				if ((includeSystemTable || !entity.isSystem()) && (includeNonConcretes || !entity.isAbstract())) entities
+						.add(entity);
+			}
+			return entities;
+		}
+
 		for (DBSchema element : database.getChildren())
 		{
 			if (element.getClass().equals(Entity.class))
@@ -229,6 +246,9 @@ public class Model implements Serializable
 
 	public Vector<Matrix> getMatrices()
 	{
+		Index index = this.index;
+		if (index != null) return new Vector<Matrix>(index.matrices);
+
 		Vector<Matrix> matrices = new Vector<Matrix>();
 
 		for (DBSchema element : database.getChildren())
@@ -275,6 +295,9 @@ public class Model implements Serializable
 	 */
 	public Entity getEntity(String name)
 	{
+		Index index = this.index;
+		if (index != null) return name != null ? index.entitiesByName.get(name.toLowerCase()) : null;
+
 		for (DBSchema element : database.getAllChildren())
 		{
 			if (element.getClass().equals(Entity.class) && element.getName().equalsIgnoreCase(name))
@@ -290,6 +313,77 @@ public class Model implements Serializable
 		return null;
 	}
 
+	/**
+	 * Freeze the model once it is complete, e.g. after parsing and validation
+	 * or when the runtime metadata is built. A frozen model answers
+	 * {@link #getEntity(String)}, {@link #getEntities()} and the field lookups
+	 * of its entities from indexes instead of searching the tree on each call.
+	 * <p>
+	 * A frozen model should not be changed. Adding entities or changing their
+	 * fields, parents or interfaces unfreezes it, other changes are not
+	 * detected.
+	 * 
+	 * @throws MolgenisModelException
+	 */
+	public synchronized void freeze() throws MolgenisModelException
+	{
+		unfreeze();
+
+		List<Entity> allEntities = new ArrayList<Entity>();
+		Map<String, Entity> entitiesByName = new HashMap<String, Entity>();
+		Map<Entity, List<Entity>> descendants = new HashMap<Entity, List<Entity>>();
+		for (DBSchema element : database.getAllChildren())
+		{
+			if (element.getClass().equals(Entity.class))
+			{
+				Entity entity = (Entity) element;
+				allEntities.add(entity);
+				String key = entity.getName().toLowerCase();
+				if (!entitiesByName.containsKey(key)) entitiesByName.put(key, entity);
+				descendants.put(entity, new ArrayList<Entity>());
+			}
+		}
+		for (Entity entity : allEntities)
+		{
+			Entity ancestor = entity.getAncestor();
+			if (ancestor != null && descendants.containsKey(ancestor)) descendants.get(ancestor).add(entity);
+		}
+
+		List<Entity> entities = new ArrayList<Entity>();
+		List<View> views = new ArrayList<View>();
+		List<Matrix> matrices = new ArrayList<Matrix>();
+		for (DBSchema element : database.getChildren())
+		{
+			if (element.getClass().equals(Entity.class)) entities.add((Entity) element);
+			else if (element.getClass().equals(View.class)) views.add((View) element);
+			else if (element.getClass().equals(Matrix.class)) matrices.add((Matrix) element);
+		}
+
+		for (Entity entity : allEntities)
+		{
+			entity.freeze(descendants.get(entity));
+		}
+		this.index = new Index(entitiesByName, entities, views, matrices);
+	}
+
+	/**
+	 * Drop the indexes of a frozen model, e.g. because it is changed.
+	 */
+	public synchronized void unfreeze()
+	{
+		if (index == null) return;
+		index = null;
+		for (DBSchema element : database.getAllChildren())
+		{
+			if (element instanceof Entity) ((Entity) element).unfreeze();
+		}
+	}
+
+	public boolean isFrozen()
+	{
+		return index != null;
+	}
+
 	/**
 	 * 
 	 */
@@ -515,6 +609,27 @@ public class Model implements Serializable
 	/** */
 	private String processing_description;
 
+	/** Indexes of a frozen model, null if not frozen */
+	private transient volatile Index index;
+
+	/** Lookups of a frozen model, never changed once created */
+	private static class Index
+	{
+		/** entities by lower case name */
+		final Map<String, Entity> entitiesByName;
+		final List<Entity> entities;
+		final List<View> views;
+		final List<Matrix> matrices;
+
+		Index(Map<String, Entity> entitiesByName, List<Entity> entities, List<View> views, List<Matrix> matrices)
+		{
+			this.entitiesByName = entitiesByName;
+			this.entities = Collections.unmodifiableList(entities);
+			this.views = Collections.unmodifiableList(views);
+			this.matrices = Collections.unmodifiableList(matrices);
+		}
+	}
+
 	public Field findField(String f) throws MolgenisModelException
 	{
 		// pattern {entity}.{field}
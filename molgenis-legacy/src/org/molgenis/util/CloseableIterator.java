@@ -0,0 +1,16 @@
+package org.molgenis.util;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+/**
+ * Iterator that holds on to resources, such as a database cursor, until it is
+ * closed. Always close the iterator when done, also if it was not iterated to
+ * the end.
+ * 
+ * @param <E>
+ *            the type of elements returned by this iterator
+ */
+public interface CloseableIterator<E> extends Iterator<E>, Closeable
+{
+}
@@ -0,0 +1,42 @@
+package org.molgenis.util;
+
+import java.util.Iterator;
+
+/**
+ * {@link CloseableIterator} that wraps an Iterator without resources, e.g. the
+ * iterator of a List.
+ */
+public class SimpleCloseableIterator<E> implements CloseableIterator<E>
+{
+	private final Iterator<E> iterator;
+
+	public SimpleCloseableIterator(Iterator<E> iterator)
+	{
+		if (iterator == null) throw new IllegalArgumentException("iterator is null");
+		this.iterator = iterator;
+	}
+
+	@Override
+	public boolean hasNext()
+	{
+		return iterator.hasNext();
+	}
+
+	@Override
+	public E next()
+	{
+		return iterator.next();
+	}
+
+	@Override
+	public void remove()
+	{
+		iterator.remove();
+	}
+
+	@Override
+	public void close()
+	{
+		// noop
+	}
+}
@@ -37,6 +37,8 @@ public class SimpleTree<T extends Tree> implements Tree<T>, Serializable
 	protected String parentName;
 	/** map of tree elements (ordered) */
 	protected Map<String, T> treeElements;
+	/** children of this element (ordered) */
+	private List<T> childElements = new ArrayList<T>();
 	/** Serializable id */
 	static final long serialVersionUID = 7443849689931440159L;
 
@@ -81,6 +83,7 @@ public class SimpleTree<T extends Tree> implements Tree<T>, Serializable
 			parentName = parent.getName();
 		}
 		treeElements.put(name, (T) this);
+		if (parent instanceof SimpleTree) ((SimpleTree<T>) parent).childElements.add((T) this);
 	}
 
 	@Override
@@ -100,6 +103,11 @@ public class SimpleTree<T extends Tree> implements Tree<T>, Serializable
 		treeElements.remove(getName());
 		this.name = name;
 		treeElements.put(name, (T) this);
+		// keep the children linked to this element
+		for (T child : childElements)
+		{
+			if (child instanceof SimpleTree) ((SimpleTree<T>) child).parentName = name;
+		}
 	}
 
 	public void setName(String name, String url)
@@ -132,30 +140,34 @@ public class SimpleTree<T extends Tree> implements Tree<T>, Serializable
 					+ ") failed: a element already exists with name = '" + name + "', being " + parent.get(name));
 		}
 
-		// oh, and if there are any keys that are in both maps that map to
-		// different objects, fail
-		for (Object ckey : this.treeElements.keySet())
+		// oh, and if there are any elements in the subtree that have the name
+		// of a different element in the parent tree, fail
+		List<T> subtree = getAllChildren(true);
+		Map<String, T> parentElements = parent.getTreeElements();
+		for (T element : subtree)
 		{
-			for (Object pkey : parent.getTreeElements().keySet())
+			T existing = parentElements.get(element.getName());
+			if (existing != null && !existing.equals(element))
 			{
-				if (pkey.equals(ckey) && !parent.getTreeElements().get(pkey).equals(this.treeElements.get(ckey)))
-				{
-					throw new IllegalArgumentException("setParent(" + parent.getName() + "): duplicate child '" + ckey
-							+ "'/'" + pkey + "'");
-				}
+				throw new IllegalArgumentException("setParent(" + parent.getName() + "): duplicate child '"
+						+ element.getName() + "'");
 			}
 		}
-		// should keep all children, so merge with parent map
-		for (Object ckey : treeElements.keySet())
+
+		// detach from the old parent
+		T oldParent = getParent();
+		if (oldParent instanceof SimpleTree) ((SimpleTree<T>) oldParent).childElements.remove(this);
+
+		// should keep all children, so move the subtree to the parent map
+		Map<String, T> oldElements = treeElements;
+		for (T element : subtree)
 		{
-			if (!parent.getTreeElements().containsValue(treeElements.get(ckey)))
-			{
-				parent.getTreeElements().put(ckey, this.treeElements.get(ckey));
-			}
+			if (oldElements != parentElements) oldElements.remove(element.getName());
+			parentElements.put(element.getName(), element);
+			if (element instanceof SimpleTree) ((SimpleTree<T>) element).treeElements = parentElements;
 		}
-		// parent.treeElements.putAll(this.treeElements);//damn things copies
-		treeElements = parent.getTreeElements();
 		parentName = parent.getName();
+		if (parent instanceof SimpleTree) ((SimpleTree<T>) parent).childElements.add((T) this);
 	}
 
 	@Override
@@ -183,26 +195,26 @@ public class SimpleTree<T extends Tree> implements Tree<T>, Serializable
 	{
 		ArrayList<T> all_children = new ArrayList<T>();
 		if (includeSelf) all_children.add((T) this);
-		for (T child : getChildren())
+		addAllChildren(all_children);
+		return all_children;
+	}
+
+	/** add the subtree depth first, in one list */
+	private void addAllChildren(List<T> all_children)
+	{
+		for (T child : childElements)
 		{
 			all_children.add(child);
-			all_children.addAll(child.getAllChildren());
+			if (child instanceof SimpleTree) ((SimpleTree<T>) child).addAllChildren(all_children);
+			else
+				all_children.addAll(child.getAllChildren());
 		}
-		return all_children;
 	}
 
 	@Override
 	public Vector<T> getChildren()
 	{
-		Vector<T> children = new Vector<T>();
-		for (T sc : treeElements.values())
-		{
-			if (sc.getParent() != null && sc.getParent() == this)
-			{
-				children.add(sc);
-			}
-		}
-		return children;
+		return new Vector<T>(childElements);
 	}
 
 	@Override
@@ -274,7 +286,7 @@ public class SimpleTree<T extends Tree> implements Tree<T>, Serializable
 	@Override
 	public boolean hasChildren()
 	{
-		if (this.getChildren().isEmpty()) return false;
+		if (this.childElements.isEmpty()) return false;
 		return true;
 	}
 
@@ -300,6 +312,8 @@ public class SimpleTree<T extends Tree> implements Tree<T>, Serializable
 
 	public void remove()
 	{
+		T parent = getParent();
+		if (parent instanceof SimpleTree) ((SimpleTree<T>) parent).childElements.remove(this);
 		for (T t : this.getAllChildren())
 		{
 			this.treeElements.remove(t.getName());
@@ -0,0 +1,98 @@
+package org.molgenis.util.plink.datatypes;
+
+/**
+ * Packs the two alleles of a genotype into one byte, one allele code per four
+ * bits. Replaces a {@link Biallele} per genotype in the indexed PED and TPED
+ * drivers.
+ * <p>
+ * Each driver has its own dictionary, which codes the alleles of its file in
+ * order of appearance. Code 0 is the missing allele '0', so a file can have up
+ * to {@value #MAX_ALLELES} - 1 other alleles, of any character and case.
+ * Codes are never reassigned, so genotypes stay valid when others are added.
+ */
+public class PackedAlleles
+{
+	/** number of codes that fit in four bits, '0' included */
+	public static final int MAX_ALLELES = 16;
+
+	private final char[] alleles = new char[MAX_ALLELES];
+	/** number of assigned codes, written after the allele of the code */
+	private volatile int nrOfAlleles;
+
+	public PackedAlleles()
+	{
+		alleles[0] = '0';
+		nrOfAlleles = 1;
+	}
+
+	/**
+	 * @param allele1
+	 *            allele token of one character
+	 * @param allele2
+	 *            allele token of one character
+	 * @return the genotype code
+	 * @throws IllegalArgumentException
+	 *             if a token is not one character, or the file has too many
+	 *             different alleles
+	 */
+	public byte pack(String allele1, String allele2)
+	{
+		if (allele1.length() != 1 || allele2.length() != 1) throw new IllegalArgumentException(
+				"alleles must have 1 character each: '" + allele1 + "' '" + allele2 + "'");
+		return pack(allele1.charAt(0), allele2.charAt(0));
+	}
+
+	/**
+	 * @param allele1
+	 * @param allele2
+	 * @return the genotype code
+	 * @throws IllegalArgumentException
+	 *             if the file has too many different alleles
+	 */
+	public byte pack(char allele1, char allele2)
+	{
+		return (byte) (code(allele1) << 4 | code(allele2));
+	}
+
+	private int code(char allele)
+	{
+		int size = nrOfAlleles;
+		for (int i = 0; i < size; ++i)
+			if (alleles[i] == allele) return i;
+		return addCode(allele);
+	}
+
+	private synchronized int addCode(char allele)
+	{
+		// another thread may have added it
+		for (int i = 0; i < nrOfAlleles; ++i)
+			if (alleles[i] == allele) return i;
+		if (nrOfAlleles == MAX_ALLELES) throw new IllegalArgumentException("more than " + (MAX_ALLELES - 1)
+				+ " different alleles, can not code '" + allele + "'");
+		alleles[nrOfAlleles] = allele;
+		return nrOfAlleles++;
+	}
+
+	/**
+	 * @return the number of coded alleles, '0' included
+	 */
+	public int getNrOfAlleles()
+	{
+		return nrOfAlleles;
+	}
+
+	public char getAllele1(byte genotype)
+	{
+		return alleles[(genotype >>> 4) & 0x0f];
+	}
+
+	public char getAllele2(byte genotype)
+	{
+		return alleles[genotype & 0x0f];
+	}
+
+	public Biallele toBiallele(byte genotype)
+	{
+		return Biallele.create(getAllele1(genotype), getAllele2(genotype));
+	}
+}
@@ -0,0 +1,50 @@
+package org.molgenis.util.plink.datatypes;
+
+/**
+ * PED file entry of which the genotypes are packed with {@link PackedAlleles}
+ */
+public class PackedPedEntry extends FamEntry
+{
+	// one genotype per SNP
+	private final byte[] genotypes;
+	// codes of the alleles in the genotypes
+	private final PackedAlleles alleles;
+
+	public PackedPedEntry(String family, String individual, String father, String mother, byte sex,
+			double phenotype, PackedAlleles alleles, byte[] genotypes)
+	{
+		super(family, individual, father, mother, sex, phenotype);
+		this.alleles = alleles;
+		this.genotypes = genotypes;
+	}
+
+	public int getNrOfGenotypes()
+	{
+		return genotypes.length;
+	}
+
+	/**
+	 * @param snp
+	 *            index of the SNP
+	 * @return the packed genotype
+	 */
+	public byte getGenotype(int snp)
+	{
+		return genotypes[snp];
+	}
+
+	public char getAllele1(int snp)
+	{
+		return alleles.getAllele1(genotypes[snp]);
+	}
+
+	public char getAllele2(int snp)
+	{
+		return alleles.getAllele2(genotypes[snp]);
+	}
+
+	public Biallele getBiallele(int snp)
+	{
+		return alleles.toBiallele(genotypes[snp]);
+	}
+}
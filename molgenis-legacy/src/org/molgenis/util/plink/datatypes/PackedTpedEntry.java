@@ -0,0 +1,50 @@
+package org.molgenis.util.plink.datatypes;
+
+/**
+ * TPED file entry of which the genotypes are packed with {@link PackedAlleles}
+ */
+public class PackedTpedEntry extends MapEntry
+{
+	// one genotype per individual
+	private final byte[] genotypes;
+	// codes of the alleles in the genotypes
+	private final PackedAlleles alleles;
+
+	public PackedTpedEntry(String chromosome, String SNP, double cM, long bpPos, PackedAlleles alleles,
+			byte[] genotypes)
+	{
+		super(chromosome, SNP, cM, bpPos);
+		this.alleles = alleles;
+		this.genotypes = genotypes;
+	}
+
+	public int getNrOfGenotypes()
+	{
+		return genotypes.length;
+	}
+
+	/**
+	 * @param individual
+	 *            index of the individual
+	 * @return the packed genotype
+	 */
+	public byte getGenotype(int individual)
+	{
+		return genotypes[individual];
+	}
+
+	public char getAllele1(int individual)
+	{
+		return alleles.getAllele1(genotypes[individual]);
+	}
+
+	public char getAllele2(int individual)
+	{
+		return alleles.getAllele2(genotypes[individual]);
+	}
+
+	public Biallele getBiallele(int individual)
+	{
+		return alleles.toBiallele(genotypes[individual]);
+	}
+}
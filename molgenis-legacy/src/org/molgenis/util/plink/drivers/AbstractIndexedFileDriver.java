@@ -0,0 +1,327 @@
+package org.molgenis.util.plink.drivers;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Predicate;
+
+import org.apache.log4j.Logger;
+import org.molgenis.util.plink.PlinkFileParser;
+
+/**
+ * Base class of drivers that read entries of a line based Plink file by their
+ * line number. On first use, the start offset of each non-empty line is read
+ * from a sidecar index file (the file name + {@value #INDEX_EXTENSION}),
+ * which is (re)built when it is missing or does not match the file. Reading a
+ * range of entries only reads the lines of that range.
+ * 
+ * @param <E>
+ *            entry type
+ */
+public abstract class AbstractIndexedFileDriver<E> implements PlinkFileParser
+{
+	public static final String INDEX_EXTENSION = ".idx";
+
+	private static final Logger logger = Logger.getLogger(AbstractIndexedFileDriver.class);
+	private static final int INDEX_VERSION = 1;
+
+	private final File file;
+	private final char separator;
+	/** start offset of each non-empty line */
+	private long[] offsets;
+
+	protected AbstractIndexedFileDriver(File file, char separator)
+	{
+		if (file == null) throw new IllegalArgumentException("file is null");
+		this.file = file;
+		this.separator = separator;
+	}
+
+	/**
+	 * Parses the fields of a line into an entry
+	 */
+	protected abstract E parseEntry(String[] fields, String line) throws IOException;
+
+	/**
+	 * @return the sidecar index file
+	 */
+	public File getIndexFile()
+	{
+		return new File(file.getPath() + INDEX_EXTENSION);
+	}
+
+	public long getNrOfElements() throws IOException
+	{
+		return getOffsets().length;
+	}
+
+	/**
+	 * Get a single entry
+	 * 
+	 * @param index
+	 * @return
+	 * @throws IOException
+	 */
+	public E getEntry(long index) throws IOException
+	{
+		return getEntries(index, index + 1).get(0);
+	}
+
+	/**
+	 * Get a specific set of entries
+	 * 
+	 * @param from
+	 *            = inclusive
+	 * @param to
+	 *            = exclusive
+	 * @return
+	 * @throws IOException
+	 */
+	public List<E> getEntries(final long from, final long to) throws IOException
+	{
+		long[] offsets = getOffsets();
+		if (from < 0 || to > offsets.length || from > to) throw new IndexOutOfBoundsException("[" + from + ","
+				+ to + ") not in [0," + offsets.length + ")");
+
+		List<E> entryList = new ArrayList<E>((int) (to - from));
+		if (from == to) return entryList;
+		BufferedReader reader = openReader(offsets[(int) from]);
+		try
+		{
+			String line;
+			while (entryList.size() < to - from && (line = reader.readLine()) != null)
+				if (!line.isEmpty()) entryList.add(parseLine(line));
+		}
+		finally
+		{
+			reader.close();
+		}
+		return entryList;
+	}
+
+	/**
+	 * Get all entries
+	 * 
+	 * @return
+	 * @throws IOException
+	 */
+	public List<E> getAllEntries() throws IOException
+	{
+		return getEntries(0, getNrOfElements());
+	}
+
+	/**
+	 * Get the entries that match a predicate, only these entries are kept in
+	 * memory
+	 * 
+	 * @param predicate
+	 * @return
+	 * @throws IOException
+	 */
+	public List<E> getEntries(Predicate<? super E> predicate) throws IOException
+	{
+		List<E> entryList = new ArrayList<E>();
+		BufferedReader reader = openReader(0);
+		try
+		{
+			String line;
+			while ((line = reader.readLine()) != null)
+			{
+				if (line.isEmpty()) continue;
+				E entry = parseLine(line);
+				if (predicate.test(entry)) entryList.add(entry);
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+		return entryList;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		// a reader is only open while entries are read
+	}
+
+	private BufferedReader openReader(long offset) throws IOException
+	{
+		FileInputStream fis = new FileInputStream(file);
+		try
+		{
+			fis.getChannel().position(offset);
+		}
+		catch (IOException e)
+		{
+			fis.close();
+			throw e;
+		}
+		return new BufferedReader(new InputStreamReader(fis, FILE_ENCODING));
+	}
+
+	private E parseLine(String line) throws IOException
+	{
+		// consecutive separators are one separator, like StringTokenizer
+		List<String> fields = new ArrayList<String>();
+		int start = 0;
+		for (int i = 0; i <= line.length(); ++i)
+		{
+			if (i == line.length() || line.charAt(i) == separator)
+			{
+				if (i > start) fields.add(line.substring(start, i));
+				start = i + 1;
+			}
+		}
+		try
+		{
+			return parseEntry(fields.toArray(new String[fields.size()]), line);
+		}
+		catch (NoSuchElementException e)
+		{
+			throw new IOException("error in line: " + line, e);
+		}
+		catch (IndexOutOfBoundsException e)
+		{
+			throw new IOException("error in line: " + line, e);
+		}
+		catch (IllegalArgumentException e)
+		{
+			// includes NumberFormatException
+			throw new IOException("error in line: " + line, e);
+		}
+	}
+
+	private synchronized long[] getOffsets() throws IOException
+	{
+		if (offsets == null)
+		{
+			File indexFile = getIndexFile();
+			offsets = readIndex(indexFile);
+			if (offsets == null)
+			{
+				offsets = buildIndex();
+				try
+				{
+					writeIndex(indexFile, offsets);
+				}
+				catch (IOException e)
+				{
+					// the index is still used from memory
+					logger.warn("could not write index " + indexFile + ": " + e.getMessage());
+				}
+			}
+		}
+		return offsets;
+	}
+
+	/**
+	 * @return the offsets, or null if the index does not exist or is out of
+	 *         date
+	 */
+	private long[] readIndex(File indexFile) throws IOException
+	{
+		if (!indexFile.exists()) return null;
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+		try
+		{
+			if (in.readInt() != INDEX_VERSION || in.readLong() != file.length()
+					|| in.readLong() != file.lastModified()) return null;
+			long[] offsets = new long[in.readInt()];
+			for (int i = 0; i < offsets.length; ++i)
+				offsets[i] = in.readLong();
+			return offsets;
+		}
+		catch (EOFException e)
+		{
+			logger.warn("truncated index " + indexFile + ", rebuilding it");
+			return null;
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	private void writeIndex(File indexFile, long[] offsets) throws IOException
+	{
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)));
+		try
+		{
+			out.writeInt(INDEX_VERSION);
+			out.writeLong(file.length());
+			out.writeLong(file.lastModified());
+			out.writeInt(offsets.length);
+			for (long offset : offsets)
+				out.writeLong(offset);
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	/**
+	 * Scans the bytes of the file for the start of each non-empty line, lines
+	 * are separated by \n or \r\n
+	 */
+	private long[] buildIndex() throws IOException
+	{
+		long[] offsets = new long[1024];
+		int count = 0;
+		InputStream is = new FileInputStream(file);
+		try
+		{
+			byte[] buffer = new byte[64 * 1024];
+			long position = 0;
+			long lineStart = 0;
+			boolean empty = true;
+			int length;
+			while ((length = is.read(buffer)) != -1)
+			{
+				for (int i = 0; i < length; ++i)
+				{
+					byte b = buffer[i];
+					if (b == '\n')
+					{
+						if (!empty)
+						{
+							if (count == offsets.length) offsets = Arrays.copyOf(offsets, count * 2);
+							offsets[count++] = lineStart;
+						}
+						lineStart = position + i + 1;
+						empty = true;
+					}
+					else if (b != '\r')
+					{
+						empty = false;
+					}
+				}
+				position += length;
+			}
+			if (!empty)
+			{
+				if (count == offsets.length) offsets = Arrays.copyOf(offsets, count + 1);
+				offsets[count++] = lineStart;
+			}
+		}
+		finally
+		{
+			is.close();
+		}
+		return Arrays.copyOf(offsets, count);
+	}
+}
@@ -0,0 +1,57 @@
+package org.molgenis.util.plink.drivers;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.molgenis.util.plink.datatypes.PackedAlleles;
+import org.molgenis.util.plink.datatypes.PackedPedEntry;
+
+/**
+ * Driver to query PED files by individual, like {@link PedFileDriver}, through
+ * a line offset index. Genotypes are packed in one byte each, see
+ * {@link PackedPedEntry}. See:
+ * http://pngu.mgh.harvard.edu/~purcell/plink/data.shtml#ped
+ */
+public class IndexedPedFileDriver extends AbstractIndexedFileDriver<PackedPedEntry>
+{
+	private final PackedAlleles alleles = new PackedAlleles();
+
+	/**
+	 * Construct an IndexedPedFileDriver on this file
+	 * 
+	 * @param pedFile
+	 */
+	public IndexedPedFileDriver(File pedFile)
+	{
+		this(pedFile, DEFAULT_FIELD_SEPARATOR);
+	}
+
+	public IndexedPedFileDriver(File pedFile, char separator)
+	{
+		super(pedFile, separator);
+	}
+
+	/**
+	 * @return the codes of the alleles in the genotypes of the entries
+	 */
+	public PackedAlleles getAlleles()
+	{
+		return alleles;
+	}
+
+	@Override
+	protected PackedPedEntry parseEntry(String[] fields, String line) throws IOException
+	{
+		String family = fields[0];
+		String individual = fields[1];
+		String father = fields[2];
+		String mother = fields[3];
+		byte sex = Byte.parseByte(fields[4]);
+		double phenotype = Double.parseDouble(fields[5]);
+		if ((fields.length - 6) % 2 != 0) throw new IOException("odd number of alleles in line: " + line);
+		byte[] genotypes = new byte[(fields.length - 6) / 2];
+		for (int i = 0, field = 6; i < genotypes.length; ++i, field += 2)
+			genotypes[i] = alleles.pack(fields[field], fields[field + 1]);
+		return new PackedPedEntry(family, individual, father, mother, sex, phenotype, alleles, genotypes);
+	}
+}
@@ -0,0 +1,54 @@
+package org.molgenis.util.plink.drivers;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.molgenis.util.plink.datatypes.PackedAlleles;
+import org.molgenis.util.plink.datatypes.PackedTpedEntry;
+
+/**
+ * Driver to query TPED files by SNP, like {@link TpedFileDriver}, through a
+ * line offset index. Genotypes are packed in one byte each, see
+ * {@link PackedTpedEntry}.
+ */
+public class IndexedTpedFileDriver extends AbstractIndexedFileDriver<PackedTpedEntry>
+{
+	private final PackedAlleles alleles = new PackedAlleles();
+
+	/**
+	 * Construct an IndexedTpedFileDriver on this file
+	 * 
+	 * @param tpedFile
+	 */
+	public IndexedTpedFileDriver(File tpedFile)
+	{
+		this(tpedFile, DEFAULT_FIELD_SEPARATOR);
+	}
+
+	public IndexedTpedFileDriver(File tpedFile, char separator)
+	{
+		super(tpedFile, separator);
+	}
+
+	/**
+	 * @return the codes of the alleles in the genotypes of the entries
+	 */
+	public PackedAlleles getAlleles()
+	{
+		return alleles;
+	}
+
+	@Override
+	protected PackedTpedEntry parseEntry(String[] fields, String line) throws IOException
+	{
+		String chromosome = fields[0];
+		String snp = fields[1];
+		double cM = Double.parseDouble(fields[2]);
+		long bpPos = Long.parseLong(fields[3]);
+		if ((fields.length - 4) % 2 != 0) throw new IOException("odd number of alleles in line: " + line);
+		byte[] genotypes = new byte[(fields.length - 4) / 2];
+		for (int i = 0, field = 4; i < genotypes.length; ++i, field += 2)
+			genotypes[i] = alleles.pack(fields[field], fields[field + 1]);
+		return new PackedTpedEntry(chromosome, snp, cM, bpPos, alleles, genotypes);
+	}
+}
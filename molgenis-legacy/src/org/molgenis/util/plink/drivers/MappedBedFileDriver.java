@@ -0,0 +1,361 @@
+package org.molgenis.util.plink.drivers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * Memory-mapped driver to query BED (binary Plink genotype) files. See:
+ * http://pngu.mgh.harvard.edu/~purcell/plink/binary.shtml
+ * 
+ * Genotypes are decoded with lookup tables into primitive arrays, by SNP or by
+ * individual, optionally for a subset of the other dimension. The bit pairs of
+ * the file are returned as genotype codes: {@link #HOM1} (BedFileDriver
+ * element "00"), {@link #MISSING} ("10"), {@link #HET} ("01") and
+ * {@link #HOM2} ("11").
+ * 
+ * The file is only read through absolute gets on read-only mappings, so one
+ * driver can be shared by concurrent readers.
+ */
+public class MappedBedFileDriver
+{
+	public static final byte HOM1 = 0;
+	public static final byte MISSING = 1;
+	public static final byte HET = 2;
+	public static final byte HOM2 = 3;
+
+	/** value of {@link #getAlleleCounts} for missing genotypes */
+	public static final int MISSING_ALLELE_COUNT = -1;
+
+	private static final int HEADER_SIZE = 3;
+
+	/** the four genotype codes of each byte value, lowest bits first */
+	private static final byte[] CODES = new byte[256 * 4];
+	/** number of second alleles by genotype code */
+	private static final int[] ALLELE_COUNTS = new int[]
+	{ 0, MISSING_ALLELE_COUNT, 1, 2 };
+
+	static
+	{
+		for (int b = 0; b < 256; ++b)
+			for (int i = 0; i < 4; ++i)
+				CODES[b * 4 + i] = (byte) ((b >>> (i * 2)) & 3);
+	}
+
+	private final int mode;
+	private final int nrOfSnps;
+	private final int nrOfIndividuals;
+	/** number of bytes of each SNP (mode 1) or individual (mode 0) */
+	private final int bytesPerRow;
+	/** number of rows in each mapping, mappings are limited to 2GB */
+	private final int rowsPerBuffer;
+	private final ByteBuffer[] buffers;
+
+	/**
+	 * Construct a MappedBedFileDriver on this file, with the number of SNPs
+	 * and individuals of its BIM and FAM file
+	 * 
+	 * @param bedFile
+	 * @param nrOfSnps
+	 * @param nrOfIndividuals
+	 * @throws IOException
+	 */
+	public MappedBedFileDriver(File bedFile, int nrOfSnps, int nrOfIndividuals) throws IOException
+	{
+		if (bedFile == null) throw new IllegalArgumentException("file is null");
+		if (nrOfSnps < 0 || nrOfIndividuals < 0) throw new IllegalArgumentException(
+				"negative number of SNPs or individuals");
+		this.nrOfSnps = nrOfSnps;
+		this.nrOfIndividuals = nrOfIndividuals;
+
+		RandomAccessFile raf = new RandomAccessFile(bedFile, "r");
+		try
+		{
+			if (raf.length() < HEADER_SIZE || raf.readByte() != 108 || raf.readByte() != 27) throw new IOException(
+					"Invalid Plink magic number");
+			this.mode = raf.readByte();
+			if (mode != 0 && mode != 1) throw new IOException("Mode not recognized: " + mode);
+
+			int nrOfRows = mode == 1 ? nrOfSnps : nrOfIndividuals;
+			int nrOfColumns = mode == 1 ? nrOfIndividuals : nrOfSnps;
+			this.bytesPerRow = (nrOfColumns + 3) / 4;
+			long size = (long) nrOfRows * bytesPerRow;
+			if (raf.length() - HEADER_SIZE < size) throw new IOException("BED file has " + (raf.length() - HEADER_SIZE)
+					+ " bytes of genotypes, expected " + size + " for " + nrOfSnps + " SNPs and " + nrOfIndividuals
+					+ " individuals");
+
+			this.rowsPerBuffer = bytesPerRow > 0 ? Integer.MAX_VALUE / bytesPerRow : Integer.MAX_VALUE;
+			int nrOfBuffers = nrOfRows == 0 ? 0 : (nrOfRows - 1) / rowsPerBuffer + 1;
+			this.buffers = new ByteBuffer[nrOfBuffers];
+			FileChannel channel = raf.getChannel();
+			for (int i = 0; i < nrOfBuffers; ++i)
+			{
+				long rows = Math.min(rowsPerBuffer, nrOfRows - (long) i * rowsPerBuffer);
+				buffers[i] = channel.map(MapMode.READ_ONLY, HEADER_SIZE + (long) i * rowsPerBuffer * bytesPerRow, rows
+						* bytesPerRow);
+			}
+		}
+		finally
+		{
+			// mappings stay valid after the file is closed
+			raf.close();
+		}
+	}
+
+	/**
+	 * Construct a MappedBedFileDriver on this file, counting the SNPs and
+	 * individuals in the BIM and FAM file
+	 * 
+	 * @param bedFile
+	 * @param bimFile
+	 * @param famFile
+	 * @throws IOException
+	 */
+	public MappedBedFileDriver(File bedFile, File bimFile, File famFile) throws IOException
+	{
+		this(bedFile, countEntries(new BimFileDriver(bimFile)), countEntries(new FamFileDriver(famFile)));
+	}
+
+	private static int countEntries(BimFileDriver driver) throws IOException
+	{
+		try
+		{
+			return (int) driver.getNrOfElements();
+		}
+		finally
+		{
+			driver.close();
+		}
+	}
+
+	private static int countEntries(FamFileDriver driver) throws IOException
+	{
+		try
+		{
+			return (int) driver.getNrOfElements();
+		}
+		finally
+		{
+			driver.close();
+		}
+	}
+
+	/**
+	 * Get the mode: mode 1 = SNP-major, mode 0 = individual-major
+	 * 
+	 * @return
+	 */
+	public int getMode()
+	{
+		return mode;
+	}
+
+	public int getNrOfSnps()
+	{
+		return nrOfSnps;
+	}
+
+	public int getNrOfIndividuals()
+	{
+		return nrOfIndividuals;
+	}
+
+	/**
+	 * Get the genotype code of one individual for one SNP
+	 * 
+	 * @param snp
+	 * @param individual
+	 * @return
+	 */
+	public byte get(int snp, int individual)
+	{
+		checkIndex(snp, nrOfSnps, "SNP");
+		checkIndex(individual, nrOfIndividuals, "individual");
+		return mode == 1 ? getCode(snp, individual) : getCode(individual, snp);
+	}
+
+	/**
+	 * Get the genotype codes of all individuals for a SNP
+	 * 
+	 * @param snp
+	 * @param dst
+	 *            array to decode into, a new array is allocated if null
+	 * @return dst
+	 */
+	public byte[] getSnp(int snp, byte[] dst)
+	{
+		checkIndex(snp, nrOfSnps, "SNP");
+		dst = allocate(dst, nrOfIndividuals);
+		if (mode == 1) decodeRow(snp, dst);
+		else
+			decodeColumn(snp, nrOfIndividuals, dst);
+		return dst;
+	}
+
+	/**
+	 * Get the genotype codes of a subset of individuals for a SNP
+	 * 
+	 * @param snp
+	 * @param individuals
+	 *            indices of the individuals
+	 * @param dst
+	 *            array to decode into, a new array is allocated if null
+	 * @return dst
+	 */
+	public byte[] getSnp(int snp, int[] individuals, byte[] dst)
+	{
+		checkIndex(snp, nrOfSnps, "SNP");
+		dst = allocate(dst, individuals.length);
+		for (int i = 0; i < individuals.length; ++i)
+		{
+			checkIndex(individuals[i], nrOfIndividuals, "individual");
+			dst[i] = mode == 1 ? getCode(snp, individuals[i]) : getCode(individuals[i], snp);
+		}
+		return dst;
+	}
+
+	/**
+	 * Get the genotype codes of all SNPs for an individual
+	 * 
+	 * @param individual
+	 * @param dst
+	 *            array to decode into, a new array is allocated if null
+	 * @return dst
+	 */
+	public byte[] getIndividual(int individual, byte[] dst)
+	{
+		checkIndex(individual, nrOfIndividuals, "individual");
+		dst = allocate(dst, nrOfSnps);
+		if (mode == 0) decodeRow(individual, dst);
+		else
+			decodeColumn(individual, nrOfSnps, dst);
+		return dst;
+	}
+
+	/**
+	 * Get the genotype codes of a subset of SNPs for an individual
+	 * 
+	 * @param individual
+	 * @param snps
+	 *            indices of the SNPs
+	 * @param dst
+	 *            array to decode into, a new array is allocated if null
+	 * @return dst
+	 */
+	public byte[] getIndividual(int individual, int[] snps, byte[] dst)
+	{
+		checkIndex(individual, nrOfIndividuals, "individual");
+		dst = allocate(dst, snps.length);
+		for (int i = 0; i < snps.length; ++i)
+		{
+			checkIndex(snps[i], nrOfSnps, "SNP");
+			dst[i] = mode == 0 ? getCode(individual, snps[i]) : getCode(snps[i], individual);
+		}
+		return dst;
+	}
+
+	/**
+	 * Get the number of second alleles of all individuals for a SNP: 0, 1 or
+	 * 2, or {@link #MISSING_ALLELE_COUNT}
+	 * 
+	 * @param snp
+	 * @param dst
+	 *            array to decode into, a new array is allocated if null
+	 * @return dst
+	 */
+	public int[] getAlleleCounts(int snp, int[] dst)
+	{
+		checkIndex(snp, nrOfSnps, "SNP");
+		if (dst == null) dst = new int[nrOfIndividuals];
+		else if (dst.length < nrOfIndividuals) throw new IllegalArgumentException("array length " + dst.length
+				+ " < " + nrOfIndividuals);
+		if (mode == 1)
+		{
+			ByteBuffer buffer = buffers[snp / rowsPerBuffer];
+			int offset = (snp % rowsPerBuffer) * bytesPerRow;
+			int individual = 0;
+			for (int i = 0; i < bytesPerRow; ++i)
+			{
+				int b = buffer.get(offset + i) & 0xff;
+				for (int j = 0; j < 4 && individual < nrOfIndividuals; ++j)
+					dst[individual++] = ALLELE_COUNTS[CODES[b * 4 + j]];
+			}
+		}
+		else
+		{
+			for (int individual = 0; individual < nrOfIndividuals; ++individual)
+				dst[individual] = ALLELE_COUNTS[getCode(individual, snp)];
+		}
+		return dst;
+	}
+
+	/**
+	 * Convert a genotype code in custom genotype coding, like
+	 * {@link BedFileDriver#convertGenoCoding}
+	 * 
+	 * @param code
+	 * @param hom1
+	 * @param hom2
+	 * @param het
+	 * @param _null
+	 * @return
+	 */
+	public static String convertGenoCoding(byte code, String hom1, String hom2, String het, String _null)
+	{
+		switch (code)
+		{
+			case HOM1:
+				return hom1;
+			case HET:
+				return het;
+			case HOM2:
+				return hom2;
+			case MISSING:
+				return _null;
+			default:
+				throw new IllegalArgumentException("Genotype code '" + code + "' not recognized");
+		}
+	}
+
+	private byte getCode(int row, int column)
+	{
+		ByteBuffer buffer = buffers[row / rowsPerBuffer];
+		int b = buffer.get((row % rowsPerBuffer) * bytesPerRow + column / 4) & 0xff;
+		return CODES[b * 4 + column % 4];
+	}
+
+	/** decodes the four genotypes of each byte of a row at once */
+	private void decodeRow(int row, byte[] dst)
+	{
+		ByteBuffer buffer = buffers[row / rowsPerBuffer];
+		int offset = (row % rowsPerBuffer) * bytesPerRow;
+		int nrOfColumns = mode == 1 ? nrOfIndividuals : nrOfSnps;
+		int fullBytes = nrOfColumns / 4;
+		for (int i = 0; i < fullBytes; ++i)
+			System.arraycopy(CODES, (buffer.get(offset + i) & 0xff) * 4, dst, i * 4, 4);
+		if (fullBytes < bytesPerRow) System.arraycopy(CODES, (buffer.get(offset + fullBytes) & 0xff) * 4, dst,
+				fullBytes * 4, nrOfColumns - fullBytes * 4);
+	}
+
+	private void decodeColumn(int column, int nrOfRows, byte[] dst)
+	{
+		for (int row = 0; row < nrOfRows; ++row)
+			dst[row] = getCode(row, column);
+	}
+
+	private static byte[] allocate(byte[] dst, int length)
+	{
+		if (dst == null) return new byte[length];
+		if (dst.length < length) throw new IllegalArgumentException("array length " + dst.length + " < " + length);
+		return dst;
+	}
+
+	private static void checkIndex(int index, int size, String name)
+	{
+		if (index < 0 || index >= size) throw new IndexOutOfBoundsException(name + " index " + index + " not in [0,"
+				+ size + ")");
+	}
+}
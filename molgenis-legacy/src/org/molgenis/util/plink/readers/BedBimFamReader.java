@@ -1,12 +1,24 @@
 package org.molgenis.util.plink.readers;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.molgenis.util.plink.datatypes.Biallele;
 import org.molgenis.util.plink.datatypes.BimEntry;
@@ -14,6 +26,7 @@ import org.molgenis.util.plink.datatypes.FamEntry;
 import org.molgenis.util.plink.drivers.BedFileDriver;
 import org.molgenis.util.plink.drivers.BimFileDriver;
 import org.molgenis.util.plink.drivers.FamFileDriver;
+import org.molgenis.util.plink.drivers.MappedBedFileDriver;
 
 /**
  * Plink binary reader/converter. See:
@@ -25,7 +38,28 @@ import org.molgenis.util.plink.drivers.FamFileDriver;
  */
 public class BedBimFamReader
 {
+	/** number of SNPs converted by one task of the parallel conversion */
+	private static final int SNP_BLOCK_SIZE = 1000;
+	/** number of converted blocks waiting to be written per worker */
+	private static final int BLOCKS_PER_WORKER = 2;
+	private static final Charset ENCODING = Charset.forName("UTF-8");
 
+	/**
+	 * Receives the progress of the parallel genotype conversion
+	 */
+	public interface ProgressListener
+	{
+		/**
+		 * Called after each block of SNPs is written, from the thread that
+		 * called extractGenotypes
+		 * 
+		 * @param nrOfSnpsDone
+		 * @param nrOfSnps
+		 */
+		void progress(long nrOfSnpsDone, long nrOfSnps);
+	}
+
+	private File bed;
 	private BedFileDriver bedfd;
 	private BimFileDriver bimfd;
 	private FamFileDriver famfd;
@@ -40,6 +74,7 @@ public class BedBimFamReader
 
 	public BedBimFamReader(File bed, File bim, File fam) throws Exception
 	{
+		this.bed = bed;
 		bedfd = new BedFileDriver(bed);
 		bimfd = new BimFileDriver(bim);
 		famfd = new FamFileDriver(fam);
@@ -53,6 +88,7 @@ public class BedBimFamReader
 	private void setIndividuals() throws Exception
 	{
 		List<String> individualNames = new ArrayList<String>();
+		Set<String> uniqueNames = new HashSet<String>();
 		List<FamEntry> famEntries = famfd.getAllEntries();
 		if (famEntries.size() != nrOfIndividuals)
 		{
@@ -61,7 +97,7 @@ public class BedBimFamReader
 		}
 		for (FamEntry fe : famEntries)
 		{
-			if (individualNames.contains(fe.getIndividual()))
+			if (!uniqueNames.add(fe.getIndividual()))
 			{
 				throw new Exception("Problem with FAM file: Individual '" + fe.getIndividual() + "' is not unique!");
 			}
@@ -137,6 +173,113 @@ public class BedBimFamReader
 
 	}
 
+	/**
+	 * Writes the same genotype matrix as {@link #extractGenotypes(File)}.
+	 * Blocks of SNPs are converted by a pool of workers from a memory-mapped
+	 * BED file, and written in order by the calling thread. Only a few blocks
+	 * per worker are kept in memory.
+	 * 
+	 * @param writeTo
+	 * @param nrOfThreads
+	 *            number of workers
+	 * @param listener
+	 *            receives the progress, may be null
+	 * @throws Exception
+	 */
+	public void extractGenotypes(File writeTo, int nrOfThreads, ProgressListener listener) throws Exception
+	{
+		if (nrOfThreads < 1) throw new IllegalArgumentException("number of threads must be at least 1");
+		setIndividuals();
+		setSnps();
+
+		final MappedBedFileDriver mappedfd = new MappedBedFileDriver(bed, (int) nrOfSnps, (int) nrOfIndividuals);
+		ExecutorService executor = Executors.newFixedThreadPool(nrOfThreads);
+		OutputStream genotypesOut = new BufferedOutputStream(new FileOutputStream(writeTo));
+		try
+		{
+			// header: all individual names
+			StringBuilder headerBuilder = new StringBuilder();
+			for (String indvName : individualNames)
+			{
+				headerBuilder.append('\t').append(indvName);
+			}
+			headerBuilder.append('\n');
+			genotypesOut.write(headerBuilder.toString().getBytes(ENCODING));
+
+			// elements: snp name + genotypes, converted by block
+			Deque<Future<byte[]>> blocks = new ArrayDeque<Future<byte[]>>();
+			int maxBlocks = nrOfThreads * BLOCKS_PER_WORKER;
+			long nrOfSnpsDone = 0;
+			int nextSnp = 0;
+			while (nextSnp < nrOfSnps || !blocks.isEmpty())
+			{
+				while (nextSnp < nrOfSnps && blocks.size() < maxBlocks)
+				{
+					final int from = nextSnp;
+					final int to = (int) Math.min(nrOfSnps, (long) from + SNP_BLOCK_SIZE);
+					blocks.add(executor.submit(new Callable<byte[]>()
+					{
+						@Override
+						public byte[] call()
+						{
+							return convertSnps(mappedfd, from, to);
+						}
+					}));
+					nextSnp = to;
+				}
+
+				byte[] block;
+				try
+				{
+					block = blocks.poll().get();
+				}
+				catch (ExecutionException e)
+				{
+					if (e.getCause() instanceof Exception) throw (Exception) e.getCause();
+					throw e;
+				}
+				genotypesOut.write(block);
+				nrOfSnpsDone = Math.min(nrOfSnps, nrOfSnpsDone + SNP_BLOCK_SIZE);
+				if (listener != null) listener.progress(nrOfSnpsDone, nrOfSnps);
+			}
+		}
+		finally
+		{
+			executor.shutdownNow();
+			genotypesOut.close();
+		}
+	}
+
+	/**
+	 * Converts the genotypes of SNPs [from, to) into lines of the genotype
+	 * matrix
+	 */
+	private byte[] convertSnps(MappedBedFileDriver mappedfd, int from, int to)
+	{
+		byte[] genotypes = new byte[(int) nrOfIndividuals];
+		String[] coding = new String[4];
+		StringBuilder linesBuilder = new StringBuilder();
+		for (int snp = from; snp < to; ++snp)
+		{
+			String snpName = snpNames.get(snp);
+			String a1 = Character.toString(snpCoding.get(snpName).getAllele1());
+			String a2 = Character.toString(snpCoding.get(snpName).getAllele2());
+			coding[MappedBedFileDriver.HOM1] = a1 + a1;
+			coding[MappedBedFileDriver.HOM2] = a2 + a2;
+			coding[MappedBedFileDriver.HET] = a1 + a2;
+			coding[MappedBedFileDriver.MISSING] = "";
+
+			mappedfd.getSnp(snp, genotypes);
+			linesBuilder.append(snpName);
+			for (byte genotype : genotypes)
+			{
+				linesBuilder.append('\t').append(coding[genotype]);
+			}
+			linesBuilder.append('\n');
+		}
+		return linesBuilder.toString().getBytes(ENCODING);
+	}
+
 	public static void main(String[] args) throws Exception
 	{
 		File bed = new File(Biallele.class.getResource("../testfiles/test.bed").getFile());
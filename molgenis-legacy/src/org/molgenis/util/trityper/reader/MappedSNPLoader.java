@@ -0,0 +1,321 @@
+package org.molgenis.util.trityper.reader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Loads SNPs from memory-mapped GenotypeMatrix.dat and ImputedDosageMatrix.dat
+ * files, like {@link SNPLoader} but without a seek and read per SNP. Genotypes
+ * and dosage values can be decoded into arrays supplied by the caller, so
+ * scanning many SNPs does not allocate new arrays for each SNP.
+ * 
+ * A loader only reads from read-only mappings and can be shared by
+ * concurrent readers.
+ */
+public class MappedSNPLoader
+{
+	/** default number of bytes read ahead of a batch */
+	public static final int DEFAULT_READ_AHEAD = 16 * 1024 * 1024;
+
+	private static final int PAGE_SIZE = 4096;
+
+	/**
+	 * Receives the SNPs of a batch, see {@link MappedSNPLoader#loadBatch}
+	 */
+	public interface SNPHandler
+	{
+		/**
+		 * @param snpId
+		 * @param allele1
+		 *            first alleles of the individuals, reused for the next SNP
+		 * @param allele2
+		 *            second alleles of the individuals, reused for the next
+		 *            SNP
+		 * @param dosage
+		 *            dosage values as stored, or null without dosage file,
+		 *            reused for the next SNP
+		 */
+		void handle(int snpId, byte[] allele1, byte[] allele2, byte[] dosage);
+	}
+
+	private final int numIndividuals;
+	private final Boolean[] isIncluded, isFemale;
+	private final MappedMatrix genotypes;
+	private final MappedMatrix dosages;
+	private int readAhead = DEFAULT_READ_AHEAD;
+
+	/**
+	 * @param genotypeFile
+	 *            GenotypeMatrix.dat
+	 * @param dosageFile
+	 *            ImputedDosageMatrix.dat, null if there is no dosage
+	 *            information
+	 * @param numIndividuals
+	 * @param indIsIncluded
+	 * @param isFemale
+	 * @throws IOException
+	 */
+	public MappedSNPLoader(File genotypeFile, File dosageFile, int numIndividuals, Boolean[] indIsIncluded,
+			Boolean[] isFemale) throws IOException
+	{
+		if (genotypeFile == null) throw new IllegalArgumentException("genotype file is null");
+		if (numIndividuals <= 0) throw new IllegalArgumentException("number of individuals must be positive");
+		this.numIndividuals = numIndividuals;
+		this.isIncluded = indIsIncluded;
+		this.isFemale = isFemale;
+		this.genotypes = new MappedMatrix(genotypeFile, numIndividuals * 2);
+		this.dosages = dosageFile != null ? new MappedMatrix(dosageFile, numIndividuals) : null;
+	}
+
+	public int getNumIndividuals()
+	{
+		return numIndividuals;
+	}
+
+	/**
+	 * @return the number of SNPs in the genotype file
+	 */
+	public int getNumSNPs()
+	{
+		return genotypes.nrOfRecords;
+	}
+
+	public boolean hasDosageInformation()
+	{
+		return dosages != null;
+	}
+
+	/**
+	 * @param readAhead
+	 *            number of bytes that {@link #loadBatch} reads ahead
+	 */
+	public void setReadAhead(int readAhead)
+	{
+		this.readAhead = readAhead;
+	}
+
+	/**
+	 * Loads the genotypes of a SNP into new arrays, like
+	 * {@link SNPLoader#loadGenotypes(SNP)}
+	 * 
+	 * @param snp
+	 */
+	public void loadGenotypes(SNP snp)
+	{
+		loadGenotypes(snp, new byte[numIndividuals], new byte[numIndividuals]);
+	}
+
+	/**
+	 * Loads the genotypes of a SNP into the given arrays, the SNP keeps a
+	 * reference to the arrays
+	 * 
+	 * @param snp
+	 * @param allele1
+	 * @param allele2
+	 */
+	public void loadGenotypes(SNP snp, byte[] allele1, byte[] allele2)
+	{
+		loadGenotypes(snp.getId(), allele1, allele2);
+		snp.setAlleles(allele1, allele2, isIncluded, isFemale);
+	}
+
+	/**
+	 * Decodes the alleles of a SNP into the given arrays
+	 * 
+	 * @param snpId
+	 * @param allele1
+	 * @param allele2
+	 */
+	public void loadGenotypes(int snpId, byte[] allele1, byte[] allele2)
+	{
+		genotypes.get(snpId, 0, allele1, numIndividuals);
+		genotypes.get(snpId, numIndividuals, allele2, numIndividuals);
+	}
+
+	/**
+	 * Loads the dosage values of a SNP of which the genotypes are loaded into
+	 * a new array, like {@link SNPLoader#loadDosage(SNP)}
+	 * 
+	 * @param snp
+	 */
+	public void loadDosage(SNP snp)
+	{
+		if (dosages != null) loadDosage(snp, new byte[numIndividuals]);
+	}
+
+	/**
+	 * Loads the dosage values of a SNP of which the genotypes are loaded into
+	 * the given array, the SNP keeps a reference to the array
+	 * 
+	 * @param snp
+	 * @param dosage
+	 */
+	public void loadDosage(SNP snp, byte[] dosage)
+	{
+		if (dosages == null) throw new IllegalStateException("no dosage information");
+		dosages.get(snp.getId(), 0, dosage, numIndividuals);
+		SNPLoader.alignDosage(snp.getGenotypes(), dosage);
+		snp.setDosage(dosage);
+	}
+
+	/**
+	 * Decodes the dosage values of a SNP into the given array, as stored
+	 * 
+	 * @param snpId
+	 * @param dosage
+	 */
+	public void loadDosage(int snpId, byte[] dosage)
+	{
+		if (dosages == null) throw new IllegalStateException("no dosage information");
+		dosages.get(snpId, 0, dosage, numIndividuals);
+	}
+
+	/**
+	 * Loads SNPs in order of their position in the files, in one pass over the
+	 * files. A background thread touches the pages of the next SNPs so that
+	 * they are read from disk while the current SNPs are handled.
+	 * 
+	 * @param snpIds
+	 * @param handler
+	 *            is called in order of SNP id from the calling thread
+	 */
+	public void loadBatch(int[] snpIds, SNPHandler handler)
+	{
+		int[] sortedIds = snpIds.clone();
+		Arrays.sort(sortedIds);
+		for (int snpId : sortedIds)
+			genotypes.checkRecord(snpId);
+
+		byte[] allele1 = new byte[numIndividuals];
+		byte[] allele2 = new byte[numIndividuals];
+		byte[] dosage = dosages != null ? new byte[numIndividuals] : null;
+
+		int snpSize = numIndividuals * (dosages != null ? 3 : 2);
+		ReadAhead readAheadTask = new ReadAhead(sortedIds, Math.max(1, readAhead / snpSize));
+		Thread readAheadThread = new Thread(readAheadTask, "SNP read ahead");
+		readAheadThread.setDaemon(true);
+		readAheadThread.start();
+		try
+		{
+			for (int i = 0; i < sortedIds.length; ++i)
+			{
+				readAheadTask.current = i;
+				loadGenotypes(sortedIds[i], allele1, allele2);
+				if (dosage != null) dosages.get(sortedIds[i], 0, dosage, numIndividuals);
+				handler.handle(sortedIds[i], allele1, allele2, dosage);
+			}
+		}
+		finally
+		{
+			readAheadTask.stopped = true;
+		}
+	}
+
+	/**
+	 * Touches the pages of the SNPs up to a number of SNPs ahead of the SNP
+	 * that is being loaded
+	 */
+	private class ReadAhead implements Runnable
+	{
+		private final int[] snpIds;
+		private final int nrOfSnps;
+		volatile int current = 0;
+		volatile boolean stopped = false;
+		/** keeps the reads of the touched pages */
+		volatile int sum = 0;
+
+		ReadAhead(int[] snpIds, int nrOfSnps)
+		{
+			this.snpIds = snpIds;
+			this.nrOfSnps = nrOfSnps;
+		}
+
+		@Override
+		public void run()
+		{
+			for (int i = 0; i < snpIds.length && !stopped;)
+			{
+				if (i - current > nrOfSnps)
+				{
+					LockSupport.parkNanos(100000);
+				}
+				else
+				{
+					sum += genotypes.touch(snpIds[i]);
+					if (dosages != null) sum += dosages.touch(snpIds[i]);
+					++i;
+				}
+			}
+		}
+	}
+
+	/**
+	 * A file of fixed size records, mapped in buffers of at most 2GB
+	 */
+	private static class MappedMatrix
+	{
+		private final int recordSize;
+		private final int nrOfRecords;
+		private final int recordsPerBuffer;
+		private final ByteBuffer[] buffers;
+
+		MappedMatrix(File file, int recordSize) throws IOException
+		{
+			this.recordSize = recordSize;
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try
+			{
+				long nrOfRecords = raf.length() / recordSize;
+				if (nrOfRecords > Integer.MAX_VALUE) throw new IOException("too many records in " + file);
+				this.nrOfRecords = (int) nrOfRecords;
+				this.recordsPerBuffer = Integer.MAX_VALUE / recordSize;
+				int nrOfBuffers = this.nrOfRecords == 0 ? 0 : (this.nrOfRecords - 1) / recordsPerBuffer + 1;
+				this.buffers = new ByteBuffer[nrOfBuffers];
+				FileChannel channel = raf.getChannel();
+				for (int i = 0; i < nrOfBuffers; ++i)
+				{
+					long records = Math.min(recordsPerBuffer, nrOfRecords - (long) i * recordsPerBuffer);
+					buffers[i] = channel.map(MapMode.READ_ONLY, (long) i * recordsPerBuffer * recordSize, records
+							* recordSize);
+				}
+			}
+			finally
+			{
+				// mappings stay valid after the file is closed
+				raf.close();
+			}
+		}
+
+		void checkRecord(int record)
+		{
+			if (record < 0 || record >= nrOfRecords) throw new IndexOutOfBoundsException("SNP id " + record
+					+ " not in [0," + nrOfRecords + ")");
+		}
+
+		/** copies length bytes from an offset in a record */
+		void get(int record, int offset, byte[] dst, int length)
+		{
+			checkRecord(record);
+			ByteBuffer buffer = buffers[record / recordsPerBuffer].duplicate();
+			buffer.position((record % recordsPerBuffer) * recordSize + offset);
+			buffer.get(dst, 0, length);
+		}
+
+		/** reads a byte of each page of a record, returns their sum */
+		int touch(int record)
+		{
+			ByteBuffer buffer = buffers[record / recordsPerBuffer];
+			int start = (record % recordsPerBuffer) * recordSize;
+			int sum = 0;
+			for (int i = start; i < start + recordSize; i += PAGE_SIZE)
+				sum += buffer.get(i);
+			return sum + buffer.get(start + recordSize - 1);
+		}
+	}
+}
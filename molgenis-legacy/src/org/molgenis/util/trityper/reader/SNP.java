@@ -226,7 +226,7 @@ public class SNP
 		return passesQC;
 	}
 
-	private double getExactHWEPValue(int obs_hets, int obs_hom1, int obs_hom2)
+	static double getExactHWEPValue(int obs_hets, int obs_hom1, int obs_hom2)
 	{
 		// System.out.println("Starting exact HWE:\t" + obs_hets + "\t" +
 		// obs_hom1 + "\t" + obs_hom2);
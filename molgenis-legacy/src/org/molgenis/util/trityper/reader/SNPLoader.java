@@ -100,33 +100,42 @@ public class SNPLoader
 			{
 
 			}
-			short[] genotypes = snp.getGenotypes();
+			alignDosage(snp.getGenotypes(), dosageValues);
+			snp.setDosage(dosageValues);
+		}
+	}
 
-			boolean takeComplement = false;
-			for (int ind = 0; ind < dosageValues.length; ind++)
+	/**
+	 * Takes the complement of the dosage values if they are coded for the
+	 * other allele than the genotypes
+	 * 
+	 * @param genotypes
+	 * @param dosageValues
+	 */
+	static void alignDosage(short[] genotypes, byte[] dosageValues)
+	{
+		boolean takeComplement = false;
+		for (int ind = 0; ind < dosageValues.length; ind++)
+		{
+			double dosagevalue = ((double) (-Byte.MIN_VALUE + dosageValues[ind])) / 100;
+			if (genotypes[ind] == 0 && dosagevalue > 1)
 			{
-				double dosagevalue = ((double) (-Byte.MIN_VALUE + dosageValues[ind])) / 100;
-				if (genotypes[ind] == 0 && dosagevalue > 1)
-				{
-					takeComplement = true;
-					break;
-				}
-				if (genotypes[ind] == 2 && dosagevalue < 1)
-				{
-					takeComplement = true;
-					break;
-				}
+				takeComplement = true;
+				break;
 			}
-			if (takeComplement)
+			if (genotypes[ind] == 2 && dosagevalue < 1)
 			{
-				for (int ind = 0; ind < dosageValues.length; ind++)
-				{
-					byte dosageValue = (byte) (200 - (-Byte.MIN_VALUE + dosageValues[ind]) + Byte.MIN_VALUE);
-					dosageValues[ind] = dosageValue;
-				}
+				takeComplement = true;
+				break;
+			}
+		}
+		if (takeComplement)
+		{
+			for (int ind = 0; ind < dosageValues.length; ind++)
+			{
+				byte dosageValue = (byte) (200 - (-Byte.MIN_VALUE + dosageValues[ind]) + Byte.MIN_VALUE);
+				dosageValues[ind] = dosageValue;
 			}
-
-			snp.setDosage(dosageValues);
 		}
 	}
 
@@ -0,0 +1,255 @@
+package org.molgenis.util.trityper.reader;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Computes the genotype counts, minor allele frequency, Hardy-Weinberg p-value
+ * and call rate of many SNPs in parallel, with the same results as
+ * {@link SNP#setAlleles(byte[], byte[], Boolean[], Boolean[])}. The included
+ * individuals are kept in bit masks, of which only the set bits are visited
+ * for each SNP. SNPs are divided in blocks over a pool of workers that each
+ * reuse their allele arrays.
+ */
+public class SNPQCCalculator
+{
+	/** number of SNPs computed by one task */
+	private static final int SNP_BLOCK_SIZE = 1024;
+	private static final byte CHR_X = 23;
+
+	private final MappedSNPLoader loader;
+	private final byte[] chr;
+	private final int numIndividuals;
+	private final Boolean[] isIncluded;
+	private final Boolean[] isFemale;
+	private final int nrOfThreads;
+
+	/**
+	 * @param data
+	 *            loaded genotype data
+	 * @param nrOfThreads
+	 *            number of workers
+	 * @throws IOException
+	 */
+	public SNPQCCalculator(TriTyperGenotypeData data, int nrOfThreads) throws IOException
+	{
+		this(data.createMappedSNPLoader(), getChrs(data), data.getIsIncluded(), data.getIsFemale(), nrOfThreads);
+	}
+
+	/**
+	 * @param loader
+	 * @param chr
+	 *            chromosome of each SNP
+	 * @param isIncluded
+	 * @param isFemale
+	 * @param nrOfThreads
+	 *            number of workers
+	 */
+	public SNPQCCalculator(MappedSNPLoader loader, byte[] chr, Boolean[] isIncluded, Boolean[] isFemale,
+			int nrOfThreads)
+	{
+		if (nrOfThreads < 1) throw new IllegalArgumentException("number of threads must be at least 1");
+		this.loader = loader;
+		this.chr = chr;
+		this.numIndividuals = loader.getNumIndividuals();
+		this.isIncluded = isIncluded;
+		this.isFemale = isFemale;
+		this.nrOfThreads = nrOfThreads;
+	}
+
+	private static byte[] getChrs(TriTyperGenotypeData data)
+	{
+		byte[] chr = new byte[data.getSNPs().length];
+		for (int i = 0; i < chr.length; ++i)
+			chr[i] = data.getChr(i);
+		return chr;
+	}
+
+	/**
+	 * Computes the statistics of all SNPs
+	 * 
+	 * @return
+	 * @throws IOException
+	 */
+	public SNPQCTable calculate() throws IOException
+	{
+		int[] snpIds = new int[chr.length];
+		for (int i = 0; i < snpIds.length; ++i)
+			snpIds[i] = i;
+		return calculate(snpIds);
+	}
+
+	/**
+	 * Computes the statistics of the given SNPs for the included individuals
+	 * 
+	 * @param snpIds
+	 * @return
+	 * @throws IOException
+	 */
+	public SNPQCTable calculate(int[] snpIds) throws IOException
+	{
+		BitSet individuals = new BitSet(numIndividuals);
+		for (int ind = 0; ind < numIndividuals; ++ind)
+			if (isIncluded[ind] != null && isIncluded[ind]) individuals.set(ind);
+		return calculate(snpIds, individuals);
+	}
+
+	/**
+	 * Computes the statistics of the given SNPs for a selection of
+	 * individuals
+	 * 
+	 * @param snpIds
+	 * @param individuals
+	 *            individuals to include
+	 * @return
+	 * @throws IOException
+	 */
+	public SNPQCTable calculate(int[] snpIds, BitSet individuals) throws IOException
+	{
+		// X-chromosomal SNPs are only counted for females
+		BitSet females = new BitSet(numIndividuals);
+		for (int ind = 0; ind < numIndividuals; ++ind)
+			if (isFemale[ind] != null && isFemale[ind]) females.set(ind);
+		females.and(individuals);
+
+		final long[] includedMask = toMask(individuals);
+		final long[] femaleMask = toMask(females);
+		final SNPQCTable table = new SNPQCTable(snpIds.clone());
+
+		ExecutorService executor = Executors.newFixedThreadPool(nrOfThreads);
+		try
+		{
+			List<Future<Void>> blocks = new ArrayList<Future<Void>>();
+			for (int from = 0; from < snpIds.length; from += SNP_BLOCK_SIZE)
+			{
+				final int blockFrom = from;
+				final int blockTo = Math.min(snpIds.length, from + SNP_BLOCK_SIZE);
+				blocks.add(executor.submit(new Callable<Void>()
+				{
+					@Override
+					public Void call()
+					{
+						byte[] allele1 = new byte[numIndividuals];
+						byte[] allele2 = new byte[numIndividuals];
+						for (int row = blockFrom; row < blockTo; ++row)
+						{
+							int snpId = table.getSNPId(row);
+							loader.loadGenotypes(snpId, allele1, allele2);
+							calculate(table, row, allele1, allele2, includedMask, chr[snpId] == CHR_X ? femaleMask
+									: includedMask);
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> block : blocks)
+				block.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		}
+		catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+			throw new IOException(e.getCause());
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+		return table;
+	}
+
+	/**
+	 * Computes the statistics of one SNP. Alleles are coded in order of
+	 * appearance over all included individuals, genotypes are only counted for
+	 * the individuals in the count mask.
+	 */
+	private static void calculate(SNPQCTable table, int row, byte[] allele1, byte[] allele2, long[] includedMask,
+			long[] countMask)
+	{
+		int nrOfAlleles = 0;
+		byte a1 = 0, a2 = 0;
+		int[] genotypeFreq = new int[3];
+		int nrCalled = 0;
+		int nrTotal = -1;
+
+		individuals: for (int word = 0; word < includedMask.length; ++word)
+		{
+			long bits = includedMask[word];
+			while (bits != 0)
+			{
+				int ind = (word << 6) + Long.numberOfTrailingZeros(bits);
+				bits &= bits - 1;
+
+				byte x = allele1[ind];
+				byte y = allele2[ind];
+				if (x == 0 || y == 0) continue;
+				boolean counted = (countMask[word] & (1L << ind)) != 0;
+				if (counted) ++nrCalled;
+
+				int code1 = x == a1 && nrOfAlleles > 0 ? 0 : x == a2 && nrOfAlleles > 1 ? 1 : -1;
+				if (code1 == -1)
+				{
+					if (nrOfAlleles == 2)
+					{
+						// more than two alleles, SNP stops at this individual
+						nrTotal = countBits(countMask, ind);
+						break individuals;
+					}
+					if (nrOfAlleles == 0) a1 = x;
+					else
+						a2 = x;
+					code1 = nrOfAlleles++;
+				}
+				int code2 = y == a1 && nrOfAlleles > 0 ? 0 : y == a2 && nrOfAlleles > 1 ? 1 : -1;
+				if (code2 == -1)
+				{
+					if (nrOfAlleles == 2)
+					{
+						nrTotal = countBits(countMask, ind);
+						break individuals;
+					}
+					a2 = y;
+					code2 = nrOfAlleles++;
+				}
+				if (counted) ++genotypeFreq[code1 + code2];
+			}
+		}
+		if (nrTotal == -1) nrTotal = countBits(countMask, Integer.MAX_VALUE);
+
+		table.set(row, a1, a2, genotypeFreq[0], genotypeFreq[1], genotypeFreq[2], nrCalled, nrTotal);
+	}
+
+	/** number of set bits up to and including an index */
+	private static int countBits(long[] mask, int toIndex)
+	{
+		int count = 0;
+		for (int word = 0; word < mask.length && (word << 6) <= toIndex; ++word)
+		{
+			long bits = mask[word];
+			int last = toIndex - (word << 6);
+			if (last < 63) bits &= (2L << last) - 1;
+			count += Long.bitCount(bits);
+		}
+		return count;
+	}
+
+	private long[] toMask(BitSet individuals)
+	{
+		long[] mask = new long[(numIndividuals + 63) >>> 6];
+		long[] words = individuals.toLongArray();
+		System.arraycopy(words, 0, mask, 0, Math.min(words.length, mask.length));
+		if ((numIndividuals & 63) != 0 && mask.length > 0) mask[mask.length - 1] &= (1L << numIndividuals) - 1;
+		return mask;
+	}
+}
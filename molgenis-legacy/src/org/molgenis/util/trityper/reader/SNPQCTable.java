@@ -0,0 +1,152 @@
+package org.molgenis.util.trityper.reader;
+
+/**
+ * QC statistics of a set of SNPs, stored by column in primitive arrays. Row i
+ * holds the statistics of SNP {@link #getSNPId(int)}, computed like
+ * {@link SNP#setAlleles(byte[], byte[], Boolean[], Boolean[])}.
+ * 
+ * @see SNPQCCalculator
+ */
+public class SNPQCTable
+{
+	private final int[] snpIds;
+	private final byte[] allele1;
+	private final byte[] allele2;
+	private final byte[] minorAllele;
+	private final int[] nrHom1;
+	private final int[] nrHet;
+	private final int[] nrHom2;
+	private final int[] nrCalled;
+	private final double[] maf;
+	private final double[] hwep;
+	private final double[] callRate;
+	private final boolean[] passesQC;
+
+	SNPQCTable(int[] snpIds)
+	{
+		int size = snpIds.length;
+		this.snpIds = snpIds;
+		this.allele1 = new byte[size];
+		this.allele2 = new byte[size];
+		this.minorAllele = new byte[size];
+		this.nrHom1 = new int[size];
+		this.nrHet = new int[size];
+		this.nrHom2 = new int[size];
+		this.nrCalled = new int[size];
+		this.maf = new double[size];
+		this.hwep = new double[size];
+		this.callRate = new double[size];
+		this.passesQC = new boolean[size];
+	}
+
+	void set(int row, byte allele1, byte allele2, int nrHom1, int nrHet, int nrHom2, int nrCalled, int nrTotal)
+	{
+		this.allele1[row] = allele1;
+		this.allele2[row] = allele2;
+		this.nrHom1[row] = nrHom1;
+		this.nrHet[row] = nrHet;
+		this.nrHom2[row] = nrHom2;
+		this.nrCalled[row] = nrCalled;
+
+		double alleleFreq1 = 2 * nrHom1 + nrHet;
+		double alleleFreq2 = 2 * nrHom2 + nrHet;
+		double maf = alleleFreq1 / (nrCalled * 2d);
+		minorAllele[row] = allele1;
+		if (alleleFreq1 > alleleFreq2)
+		{
+			minorAllele[row] = allele2;
+			maf = 1 - maf;
+		}
+		this.maf[row] = maf;
+		this.hwep[row] = SNP.getExactHWEPValue(nrHet, nrHom1, nrHom2);
+		this.callRate[row] = (double) nrCalled / nrTotal;
+		this.passesQC[row] = (nrHom1 > 0 && nrHet > 0) || (nrHet > 0 && nrHom2 > 0) || (nrHom1 > 0 && nrHom2 > 0);
+	}
+
+	/**
+	 * @return the number of SNPs
+	 */
+	public int size()
+	{
+		return snpIds.length;
+	}
+
+	public int getSNPId(int row)
+	{
+		return snpIds[row];
+	}
+
+	/**
+	 * @return the first allele, 0 if no genotypes were called
+	 */
+	public byte getAllele1(int row)
+	{
+		return allele1[row];
+	}
+
+	/**
+	 * @return the second allele, 0 if it was not observed
+	 */
+	public byte getAllele2(int row)
+	{
+		return allele2[row];
+	}
+
+	public byte getMinorAllele(int row)
+	{
+		return minorAllele[row];
+	}
+
+	/**
+	 * @return the number of individuals homozygous for the first allele
+	 */
+	public int getNrHom1(int row)
+	{
+		return nrHom1[row];
+	}
+
+	public int getNrHet(int row)
+	{
+		return nrHet[row];
+	}
+
+	/**
+	 * @return the number of individuals homozygous for the second allele
+	 */
+	public int getNrHom2(int row)
+	{
+		return nrHom2[row];
+	}
+
+	public int getNrCalled(int row)
+	{
+		return nrCalled[row];
+	}
+
+	public double getMAF(int row)
+	{
+		return maf[row];
+	}
+
+	/**
+	 * @return the exact Hardy-Weinberg p-value, -1 if no genotypes were
+	 *         called
+	 */
+	public double getHWEP(int row)
+	{
+		return hwep[row];
+	}
+
+	public double getCallRate(int row)
+	{
+		return callRate[row];
+	}
+
+	/**
+	 * @return whether at least two genotypes were observed
+	 */
+	public boolean passesQC(int row)
+	{
+		return passesQC[row];
+	}
+}
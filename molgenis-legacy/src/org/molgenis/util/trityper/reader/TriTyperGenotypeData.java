@@ -1,5 +1,6 @@
 package org.molgenis.util.trityper.reader;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.util.ArrayList;
@@ -418,4 +419,16 @@ public class TriTyperGenotypeData
 		return s;
 	}
 
+	/**
+	 * Creates a loader that maps the genotype and dosage files in memory
+	 * 
+	 * @return
+	 * @throws IOException
+	 */
+	public MappedSNPLoader createMappedSNPLoader() throws IOException
+	{
+		File dosageFile = Gpio.exists(dosageFileName) ? new File(dosageFileName) : null;
+		return new MappedSNPLoader(new File(genotypeFileName), dosageFile, individuals.length, isIncluded, isFemale);
+	}
+
 }
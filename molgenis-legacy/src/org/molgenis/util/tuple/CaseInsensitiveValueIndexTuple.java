@@ -0,0 +1,97 @@
+package org.molgenis.util.tuple;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+/**
+ * {@link ValueIndexTuple} with case insensitive column names. The column names
+ * index is meant to be shared by all rows of a table (e.g. a result set), see
+ * {@link #createColNamesIndex(String[])} and
+ * {@link #fromResultSet(ResultSet, Map, int)}.
+ */
+public class CaseInsensitiveValueIndexTuple extends ValueIndexTuple
+{
+	private static final long serialVersionUID = 1L;
+	private static final Logger logger = Logger.getLogger(CaseInsensitiveValueIndexTuple.class);
+
+	/**
+	 * @param colNamesIndex
+	 *            index of lower case column names
+	 * @param values
+	 */
+	public CaseInsensitiveValueIndexTuple(Map<String, Integer> colNamesIndex, List<? extends Object> values)
+	{
+		super(colNamesIndex, values);
+	}
+
+	@Override
+	public Object get(String colName)
+	{
+		return super.get(colName.toLowerCase());
+	}
+
+	/**
+	 * Creates a column names index for this tuple type
+	 * 
+	 * @param colNames
+	 * @return index of lower case column names
+	 */
+	public static Map<String, Integer> createColNamesIndex(String[] colNames)
+	{
+		Map<String, Integer> colNamesIndex = new LinkedHashMap<String, Integer>();
+		for (int i = 0; i < colNames.length; ++i)
+			colNamesIndex.put(colNames[i].toLowerCase(), i);
+		return colNamesIndex;
+	}
+
+	/**
+	 * Creates a column names index from the column labels of a result set. A
+	 * column without label is named by its number.
+	 * 
+	 * @param metadata
+	 * @return index of lower case column names
+	 * @throws SQLException
+	 */
+	public static Map<String, Integer> createColNamesIndex(ResultSetMetaData metadata) throws SQLException
+	{
+		String[] colLabels = new String[metadata.getColumnCount()];
+		for (int i = 0; i < colLabels.length; i++)
+		{
+			colLabels[i] = metadata.getColumnLabel(i + 1);
+			if (colLabels[i] == null)
+			{
+				logger.warn("column label for column " + (i + 1) + " unknown");
+				colLabels[i] = String.valueOf(i + 1);
+			}
+		}
+		return createColNamesIndex(colLabels);
+	}
+
+	/**
+	 * Creates a tuple of the current row of a result set
+	 * 
+	 * @param rs
+	 * @param colNamesIndex
+	 *            index of the result set, see
+	 *            {@link #createColNamesIndex(ResultSetMetaData)}
+	 * @param colCount
+	 *            number of columns of the result set
+	 * @return
+	 * @throws SQLException
+	 */
+	public static CaseInsensitiveValueIndexTuple fromResultSet(ResultSet rs, Map<String, Integer> colNamesIndex,
+			int colCount) throws SQLException
+	{
+		Object[] values = new Object[colCount];
+		for (int i = 0; i < colCount; i++)
+			values[i] = rs.getObject(i + 1);
+		return new CaseInsensitiveValueIndexTuple(colNamesIndex, Arrays.asList(values));
+	}
+}
@@ -0,0 +1,281 @@
+package org.molgenis.framework.db;
+
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyVararg;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.testng.Assert.assertEquals;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Vector;
+
+import org.apache.commons.logging.LogFactory;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.molgenis.framework.db.Database.DatabaseAction;
+import org.molgenis.framework.db.QueryRule.Operator;
+import org.molgenis.util.AbstractEntity;
+import org.molgenis.util.Entity;
+import org.molgenis.util.tuple.Tuple;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class AbstractDatabaseTest
+{
+	private AbstractDatabase db;
+	private List<QueryRule[]> queries;
+	private List<TestEntity> added;
+	private List<TestEntity> updated;
+
+	@SuppressWarnings("unchecked")
+	@BeforeMethod
+	public void setUp() throws Exception
+	{
+		queries = new ArrayList<QueryRule[]>();
+		added = new ArrayList<TestEntity>();
+		updated = new ArrayList<TestEntity>();
+
+		db = mock(AbstractDatabase.class, CALLS_REAL_METHODS);
+		Field logger = AbstractDatabase.class.getDeclaredField("logger");
+		logger.setAccessible(true);
+		logger.set(db, LogFactory.getLog(AbstractDatabase.class));
+
+		// the database contains a1/b1 and a2/b2
+		doAnswer(new Answer<List<TestEntity>>()
+		{
+			@Override
+			public List<TestEntity> answer(InvocationOnMock invocation) throws Throwable
+			{
+				Object[] args = invocation.getArguments();
+				queries.add(Arrays.copyOfRange(args, 1, args.length, QueryRule[].class));
+				return Arrays.asList(new TestEntity("a1", "b1", "old"), new TestEntity("a2", "b2", "old"));
+			}
+		}).when(db).find(eq(TestEntity.class), (QueryRule[]) anyVararg());
+		doAnswer(new Answer<Integer>()
+		{
+			@Override
+			public Integer answer(InvocationOnMock invocation) throws Throwable
+			{
+				added.addAll((List<TestEntity>) invocation.getArguments()[0]);
+				return added.size();
+			}
+		}).when(db).add(anyListOf(TestEntity.class));
+		doAnswer(new Answer<Integer>()
+		{
+			@Override
+			public Integer answer(InvocationOnMock invocation) throws Throwable
+			{
+				updated.addAll((List<TestEntity>) invocation.getArguments()[0]);
+				return updated.size();
+			}
+		}).when(db).update(anyListOf(TestEntity.class));
+	}
+
+	@Test
+	public void updateAddUpdateExistingCompositeKey() throws DatabaseException
+	{
+		List<TestEntity> entities = Arrays.asList(new TestEntity("a1", "b1", "new1"), new TestEntity("a2", "b2",
+				"new2"), new TestEntity("a3", "b3", "new3"));
+		assertEquals(db.update(entities, DatabaseAction.ADD_UPDATE_EXISTING, "a", "b"), 3);
+
+		assertEquals(queries.size(), 1);
+		assertEquals(Arrays.asList(queries.get(0)), Arrays.asList(
+				new QueryRule(new QueryRule("a", Operator.EQUALS, "a1"), new QueryRule("b", Operator.EQUALS, "b1")),
+				new QueryRule(Operator.OR),
+				new QueryRule(new QueryRule("a", Operator.EQUALS, "a2"), new QueryRule("b", Operator.EQUALS, "b2")),
+				new QueryRule(Operator.OR),
+				new QueryRule(new QueryRule("a", Operator.EQUALS, "a3"), new QueryRule("b", Operator.EQUALS, "b3"))));
+
+		assertEquals(added, Arrays.asList(new TestEntity("a3", "b3", "new3")));
+		assertEquals(updated, Arrays.asList(new TestEntity("a1", "b1", "new1"), new TestEntity("a2", "b2", "new2")));
+	}
+
+	@Test
+	public void updateChunked() throws DatabaseException
+	{
+		List<TestEntity> entities = new ArrayList<TestEntity>();
+		for (int i = 0; i < QueryRule.IN_CHUNK_SIZE + 1; i++)
+			entities.add(new TestEntity("a" + i, "b" + i, "new"));
+		db.update(entities, DatabaseAction.ADD_IGNORE_EXISTING, "a");
+
+		assertEquals(queries.size(), 2);
+		assertEquals(((List<?>) queries.get(0)[0].getValue()).size(), QueryRule.IN_CHUNK_SIZE);
+		assertEquals(queries.get(1)[0], new QueryRule("a", Operator.IN, Arrays.asList("a" + QueryRule.IN_CHUNK_SIZE)));
+		assertEquals(added.size(), QueryRule.IN_CHUNK_SIZE - 1);
+	}
+
+	@Test
+	public void matchByNameAndUpdateFields() throws DatabaseException
+	{
+		List<TestEntity> existing = Arrays.asList(new TestEntity("a1", "b1", "old"), new TestEntity("a2", "b2", "old"));
+		db.matchByNameAndUpdateFields(existing,
+				Arrays.asList(new TestEntity("a2", "b2", "new2"), new TestEntity("a1", "b2", "new3")));
+		assertEquals(existing, Arrays.asList(new TestEntity("a1", "b1", "old"), new TestEntity("a2", "b2", "new2")));
+	}
+
+	@Test
+	public void loadRequeriesSubclassesInChunks() throws DatabaseException
+	{
+		final List<QueryRule[]> subQueries = new ArrayList<QueryRule[]>();
+		doReturn(SubEntity.class).when(db).getClassForName("SubEntity");
+		doAnswer(new Answer<List<SubEntity>>()
+		{
+			@Override
+			public List<SubEntity> answer(InvocationOnMock invocation) throws Throwable
+			{
+				QueryRule rule = (QueryRule) invocation.getArguments()[1];
+				subQueries.add(new QueryRule[]
+				{ rule });
+				List<SubEntity> result = new ArrayList<SubEntity>();
+				for (Object id : (List<?>) rule.getValue())
+					result.add(new SubEntity((String) id, "loaded"));
+				// in a different order than requested
+				Collections.reverse(result);
+				return result;
+			}
+		}).when(db).find(eq(SubEntity.class), (QueryRule[]) anyVararg());
+
+		List<TestEntity> entities = new ArrayList<TestEntity>();
+		for (int i = 0; i < QueryRule.IN_CHUNK_SIZE + 1; i++)
+		{
+			entities.add(new TestEntity("a" + i, "b", "super"));
+			entities.add(new SubEntity("s" + i, "sub"));
+		}
+		List<? extends Entity> result = db.load(TestEntity.class, entities);
+
+		assertEquals(subQueries.size(), 2);
+		assertEquals(subQueries.get(0)[0].getField(), "id");
+		assertEquals(subQueries.get(0)[0].getOperator(), Operator.IN);
+		assertEquals(result.size(), entities.size());
+		for (int i = 0; i < QueryRule.IN_CHUNK_SIZE + 1; i++)
+		{
+			assertEquals(result.get(2 * i), new TestEntity("a" + i, "b", "super"));
+			assertEquals(result.get(2 * i + 1), new SubEntity("s" + i, "loaded"));
+		}
+	}
+
+	public static class SubEntity extends TestEntity
+	{
+		private static final long serialVersionUID = 1L;
+
+		public SubEntity(String a, String value)
+		{
+			super(a, "b", value);
+		}
+	}
+
+	public static class TestEntity extends AbstractEntity
+	{
+		private static final long serialVersionUID = 1L;
+
+		private String a;
+		private String b;
+		private String value;
+
+		public TestEntity(String a, String b, String value)
+		{
+			this.a = a;
+			this.b = b;
+			this.value = value;
+		}
+
+		@Override
+		public Object get(String columnName)
+		{
+			if ("a".equals(columnName)) return a;
+			if ("b".equals(columnName)) return b;
+			if ("value".equals(columnName)) return value;
+			if ("id".equals(columnName)) return a;
+			if ("__Type".equals(columnName)) return getClass().getSimpleName();
+			return null;
+		}
+
+		@Override
+		public void set(Tuple values, boolean strict) throws Exception
+		{
+			if (values.get("a") != null) a = values.getString("a");
+			if (values.get("b") != null) b = values.getString("b");
+			if (values.get("value") != null) value = values.getString("value");
+		}
+
+		@Override
+		public String getIdField()
+		{
+			return "id";
+		}
+
+		@Override
+		public Object getIdValue()
+		{
+			return null;
+		}
+
+		@Override
+		public List<String> getLabelFields()
+		{
+			return Arrays.asList("a", "b");
+		}
+
+		@Override
+		public Vector<String> getFields()
+		{
+			return new Vector<String>(Arrays.asList("a", "b", "value"));
+		}
+
+		@Override
+		public Vector<String> getFields(boolean skipAutoIds)
+		{
+			return getFields();
+		}
+
+		@Override
+		public String getFields(String sep)
+		{
+			return "a" + sep + "b" + sep + "value";
+		}
+
+		@Override
+		public void validate() throws Exception
+		{
+		}
+
+		@Override
+		public Entity create(Tuple tuple) throws Exception
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public String getXrefIdFieldName(String fieldName)
+		{
+			return null;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (obj == null || obj.getClass() != getClass()) return false;
+			TestEntity other = (TestEntity) obj;
+			return a.equals(other.a) && b.equals(other.b) && value.equals(other.value);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return a.hashCode();
+		}
+
+		@Override
+		public String toString()
+		{
+			return "TestEntity(" + a + "," + b + "," + value + ")";
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package org.molgenis.framework.db;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.molgenis.io.TupleReader;
+import org.molgenis.io.csv.CsvReader;
+import org.molgenis.util.Entity;
+import org.molgenis.util.tuple.Tuple;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class AbstractMapperTest
+{
+	private Database db;
+	private AbstractMapper<Entity> mapper;
+	private List<Integer> batchSizes;
+
+	@SuppressWarnings("unchecked")
+	@BeforeMethod
+	public void setUp() throws DatabaseException
+	{
+		batchSizes = new ArrayList<Integer>();
+		db = mock(Database.class);
+		when(db.update(anyListOf(Entity.class))).thenAnswer(new Answer<Integer>()
+		{
+			@Override
+			public Integer answer(InvocationOnMock invocation) throws Throwable
+			{
+				int size = ((List<?>) invocation.getArguments()[0]).size();
+				batchSizes.add(size);
+				return size;
+			}
+		});
+
+		mapper = mock(AbstractMapper.class);
+		doReturn(db).when(mapper).getDatabase();
+		doAnswer(new Answer<Entity>()
+		{
+			@Override
+			public Entity answer(InvocationOnMock invocation) throws Throwable
+			{
+				return mock(Entity.class);
+			}
+		}).when(mapper).create();
+		doAnswer(new Answer<List<Entity>>()
+		{
+			@Override
+			public List<Entity> answer(InvocationOnMock invocation) throws Throwable
+			{
+				return new ArrayList<Entity>((Integer) invocation.getArguments()[0]);
+			}
+		}).when(mapper).createList(anyInt());
+		when(mapper.toList(any(TupleReader.class), anyInt())).thenCallRealMethod();
+		when(mapper.toList(any(Iterator.class), anyInt())).thenCallRealMethod();
+		when(mapper.update(any(TupleReader.class))).thenCallRealMethod();
+	}
+
+	@Test
+	public void toListLimit() throws DatabaseException
+	{
+		assertEquals(mapper.toList(createReader(10), 3).size(), 3);
+		assertEquals(mapper.toList(createReader(10), 0).size(), 10);
+	}
+
+	@Test
+	public void toListBatches() throws DatabaseException
+	{
+		Iterator<Tuple> tuples = createReader(10).iterator();
+		assertEquals(mapper.toList(tuples, 4).size(), 4);
+		assertEquals(mapper.toList(tuples, 4).size(), 4);
+		assertEquals(mapper.toList(tuples, 4).size(), 2);
+		assertEquals(mapper.toList(tuples, 4).size(), 0);
+	}
+
+	@Test
+	public void updateBatches() throws DatabaseException
+	{
+		int rows = AbstractMapper.BATCH_SIZE * 2 + 1;
+		assertEquals(mapper.update(createReader(rows)), rows);
+		List<Integer> expected = new ArrayList<Integer>();
+		expected.add(AbstractMapper.BATCH_SIZE);
+		expected.add(AbstractMapper.BATCH_SIZE);
+		expected.add(1);
+		assertEquals(batchSizes, expected);
+	}
+
+	private TupleReader createReader(int rows)
+	{
+		StringBuilder csv = new StringBuilder("id,name\n");
+		for (int i = 0; i < rows; i++)
+			csv.append(i).append(",name").append(i).append('\n');
+		return new CsvReader(new StringReader(csv.toString()));
+	}
+}
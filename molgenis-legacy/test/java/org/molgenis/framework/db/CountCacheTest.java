@@ -0,0 +1,186 @@
+package org.molgenis.framework.db;
+
+import static org.mockito.Matchers.anyVararg;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import java.sql.Connection;
+
+import org.molgenis.framework.db.QueryRule.Operator;
+import org.molgenis.framework.db.jdbc.JDBCDatabase;
+import org.molgenis.util.Entity;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class CountCacheTest
+{
+	private Database db;
+
+	@BeforeMethod
+	public void setUp()
+	{
+		db = mock(Database.class);
+		CountCache.setTimeToLive(CountCache.DEFAULT_TIME_TO_LIVE);
+		CountCache.clear();
+	}
+
+	@AfterMethod
+	public void tearDown()
+	{
+		CountCache.clear();
+	}
+
+	@Test
+	public void get()
+	{
+		CountCache.put(db, Animal.class, 3, new QueryRule("name", Operator.EQUALS, "bello"));
+		assertEquals(CountCache.get(db, Animal.class, new QueryRule("name", Operator.EQUALS, "bello")), Integer.valueOf(3));
+		assertNull(CountCache.get(db, Animal.class, new QueryRule("name", Operator.EQUALS, "tom")));
+		assertNull(CountCache.get(db, Dog.class, new QueryRule("name", Operator.EQUALS, "bello")));
+	}
+
+	@Test
+	public void getNestedRules()
+	{
+		CountCache.put(db, Animal.class, 3, new QueryRule(Operator.NOT, new QueryRule("name", Operator.EQUALS,
+				"bello")));
+		assertNull(CountCache.get(db, Animal.class, new QueryRule(Operator.NOT, new QueryRule("name", Operator.EQUALS,
+				"tom"))));
+		assertEquals(CountCache.get(db, Animal.class, new QueryRule(Operator.NOT, new QueryRule("name",
+				Operator.EQUALS, "bello"))), Integer.valueOf(3));
+	}
+
+	@Test
+	public void getArrayValues()
+	{
+		CountCache.put(db, Animal.class, 3, new QueryRule("id", Operator.IN, new Object[]
+		{ 1, 2 }));
+		assertNull(CountCache.get(db, Animal.class, new QueryRule("id", Operator.IN, new Object[]
+		{ 1, 3 })));
+		assertEquals(CountCache.get(db, Animal.class, new QueryRule("id", Operator.IN, new Object[]
+		{ 1, 2 })), Integer.valueOf(3));
+	}
+
+	@Test
+	public void getOtherDatabase()
+	{
+		JDBCDatabase db1 = mock(JDBCDatabase.class);
+		when(db1.getUri()).thenReturn("jdbc:hsqldb:one");
+		JDBCDatabase db2 = mock(JDBCDatabase.class);
+		when(db2.getUri()).thenReturn("jdbc:hsqldb:two");
+		JDBCDatabase db3 = mock(JDBCDatabase.class);
+		when(db3.getUri()).thenReturn("jdbc:hsqldb:one");
+		CountCache.put(db1, Animal.class, 3);
+		assertNull(CountCache.get(db2, Animal.class));
+		assertEquals(CountCache.get(db3, Animal.class), Integer.valueOf(3));
+	}
+
+	@Test
+	public void getIgnoresSortLimitOffset()
+	{
+		CountCache.put(db, Animal.class, 3, new QueryRule("name", Operator.EQUALS, "bello"));
+		assertEquals(CountCache.get(db, Animal.class, new QueryRule("name", Operator.EQUALS, "bello"), new QueryRule(
+				Operator.SORTASC, "name"), new QueryRule(Operator.LIMIT, 10), new QueryRule(Operator.OFFSET, 20)),
+				Integer.valueOf(3));
+	}
+
+	@Test
+	public void getDisabled()
+	{
+		CountCache.setTimeToLive(0);
+		CountCache.put(db, Animal.class, 3);
+		assertNull(CountCache.get(db, Animal.class));
+	}
+
+	@Test
+	public void invalidate()
+	{
+		CountCache.put(db, Animal.class, 3);
+		CountCache.put(db, Dog.class, 2);
+		CountCache.put(db, Car.class, 1);
+		CountCache.invalidate(Dog.class);
+		assertNull(CountCache.get(db, Animal.class));
+		assertNull(CountCache.get(db, Dog.class));
+		assertEquals(CountCache.get(db, Car.class), Integer.valueOf(1));
+	}
+
+	@Test
+	public void invalidateAfterCommit() throws DatabaseException
+	{
+		JDBCDatabase jdbcDb = new JDBCDatabase(mock(Connection.class, RETURNS_DEEP_STUBS));
+		jdbcDb.beginTx();
+		jdbcDb.entitiesChanged(Dog.class);
+		// another request counts before the change is committed
+		CountCache.put(jdbcDb, Animal.class, 3);
+		jdbcDb.commitTx();
+		assertNull(CountCache.get(jdbcDb, Animal.class));
+	}
+
+	@Test
+	public void invalidateAfterRollback() throws DatabaseException
+	{
+		JDBCDatabase jdbcDb = new JDBCDatabase(mock(Connection.class, RETURNS_DEEP_STUBS));
+		jdbcDb.beginTx();
+		jdbcDb.entitiesChanged(Dog.class);
+		// counted inside the transaction
+		CountCache.put(jdbcDb, Dog.class, 3);
+		jdbcDb.rollbackTx();
+		assertNull(CountCache.get(jdbcDb, Dog.class));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void mapperCount() throws DatabaseException
+	{
+		AbstractMapper<Dog> mapper = createMapper(false);
+		assertEquals(mapper.count(new QueryRule("name", Operator.EQUALS, "bello")), 2);
+		assertEquals(mapper.count(new QueryRule("name", Operator.EQUALS, "bello"), new QueryRule(Operator.LIMIT, 10)),
+				2);
+		verify(mapper, times(1)).executeCount((QueryRule[]) anyVararg());
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void mapperCountInTx() throws DatabaseException
+	{
+		AbstractMapper<Dog> mapper = createMapper(true);
+		mapper.count();
+		mapper.count();
+		verify(mapper, times(2)).executeCount((QueryRule[]) anyVararg());
+	}
+
+	@SuppressWarnings("unchecked")
+	private AbstractMapper<Dog> createMapper(boolean inTx) throws DatabaseException
+	{
+		when(db.inTx()).thenReturn(inTx);
+
+		AbstractMapper<Dog> mapper = mock(AbstractMapper.class);
+		doReturn(db).when(mapper).getDatabase();
+		doReturn(mock(Dog.class)).when(mapper).create();
+		doReturn(2).when(mapper).executeCount((QueryRule[]) anyVararg());
+		when(mapper.count((QueryRule[]) anyVararg())).thenCallRealMethod();
+		return mapper;
+	}
+
+	private static abstract class Animal implements Entity
+	{
+		private static final long serialVersionUID = 1L;
+	}
+
+	private static abstract class Dog extends Animal
+	{
+		private static final long serialVersionUID = 1L;
+	}
+
+	private static abstract class Car implements Entity
+	{
+		private static final long serialVersionUID = 1L;
+	}
+}
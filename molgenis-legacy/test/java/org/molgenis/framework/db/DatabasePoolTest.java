@@ -0,0 +1,91 @@
+package org.molgenis.framework.db;
+
+import static org.mockito.Matchers.isA;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+
+import org.molgenis.framework.security.SimpleLogin;
+import org.testng.annotations.Test;
+
+public class DatabasePoolTest
+{
+	private static final DatabasePool.Factory factory = new DatabasePool.Factory()
+	{
+		@Override
+		public Database create() throws DatabaseException
+		{
+			return mock(Database.class);
+		}
+	};
+
+	@Test
+	public void reuse() throws Exception
+	{
+		DatabasePool pool = new DatabasePool(factory, 1);
+		Database db = pool.borrow();
+		assertEquals(pool.getNumActive(), 1);
+		pool.release(db);
+		verify(db).close();
+		assertEquals(pool.getNumActive(), 0);
+		assertEquals(pool.getNumIdle(), 1);
+
+		assertSame(pool.borrow(), db);
+		assertNotSame(pool.borrow(), db);
+		assertEquals(pool.getCreatedCount(), 2);
+		assertEquals(pool.getBorrowedCount(), 3);
+	}
+
+	@Test
+	public void noReuse() throws Exception
+	{
+		DatabasePool pool = new DatabasePool(factory, 0);
+		Database db = pool.borrow();
+		pool.release(db);
+		verify(db).close();
+		assertEquals(pool.getNumIdle(), 0);
+		assertNotSame(pool.borrow(), db);
+		assertEquals(pool.getCreatedCount(), 2);
+	}
+
+	@Test
+	public void releaseInTx() throws Exception
+	{
+		DatabasePool pool = new DatabasePool(factory, 1);
+		Database db = pool.borrow();
+		when(db.inTx()).thenReturn(true);
+		pool.release(db);
+		verify(db).rollbackTx();
+		verify(db).close();
+		assertEquals(pool.getNumIdle(), 0);
+
+		Database other = pool.borrow();
+		pool.release(other);
+		verify(other, never()).rollbackTx();
+		assertEquals(pool.getNumIdle(), 1);
+	}
+
+	@Test
+	public void releaseResetsState() throws Exception
+	{
+		final AbstractDatabase db = mock(AbstractDatabase.class);
+		ForeignKeyResolver resolver = mock(ForeignKeyResolver.class);
+		when(db.getForeignKeyResolver()).thenReturn(resolver);
+		DatabasePool pool = new DatabasePool(new DatabasePool.Factory()
+		{
+			@Override
+			public Database create() throws DatabaseException
+			{
+				return db;
+			}
+		}, 1);
+		pool.release(pool.borrow());
+		verify(db).closeIterators();
+		verify(db).setLogin(isA(SimpleLogin.class));
+		verify(resolver).clear();
+	}
+}
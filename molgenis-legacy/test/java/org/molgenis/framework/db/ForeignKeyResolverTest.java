@@ -0,0 +1,132 @@
+package org.molgenis.framework.db;
+
+import static org.mockito.Matchers.anyVararg;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.molgenis.framework.db.QueryRule.Operator;
+import org.molgenis.util.Entity;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class ForeignKeyResolverTest
+{
+	private Database db;
+	private ForeignKeyResolver resolver;
+	private List<QueryRule[]> queries;
+
+	@SuppressWarnings("unchecked")
+	@BeforeMethod
+	public void setUp() throws DatabaseException
+	{
+		queries = new ArrayList<QueryRule[]>();
+		db = mock(Database.class);
+		when(db.inTx()).thenReturn(true);
+		when(db.find(eq(Xref.class), (QueryRule[]) anyVararg())).thenAnswer(new Answer<List<Xref>>()
+		{
+			@Override
+			public List<Xref> answer(InvocationOnMock invocation) throws Throwable
+			{
+				Object[] args = invocation.getArguments();
+				QueryRule[] rules = Arrays.copyOfRange(args, 1, args.length, QueryRule[].class);
+				queries.add(rules);
+
+				// labels are 'x<id>', except 'unknown'
+				List<Xref> result = new ArrayList<Xref>();
+				for (Object label : (List<Object>) rules[0].getValue())
+				{
+					if (!"unknown".equals(label)) result.add(createXref(label.toString()));
+				}
+				return result;
+			}
+		});
+		resolver = new ForeignKeyResolver(db);
+	}
+
+	@Test
+	public void resolve() throws DatabaseException
+	{
+		Map<String, Object> ids = resolve("x1", "x2", "x1", "unknown");
+		assertEquals(ids.get("x1"), 1);
+		assertEquals(ids.get("x2"), 2);
+		assertFalse(ids.containsKey("unknown"));
+		assertEquals(queries.size(), 1);
+		assertEquals(queries.get(0)[0], new QueryRule("name", Operator.IN, Arrays.asList("x1", "x2", "unknown")));
+	}
+
+	@Test
+	public void resolveChunked() throws DatabaseException
+	{
+		String[] labels = new String[QueryRule.IN_CHUNK_SIZE * 2 + 1];
+		for (int i = 0; i < labels.length; i++)
+			labels[i] = "x" + i;
+		assertEquals(resolve(labels).size(), labels.length);
+		assertEquals(queries.size(), 3);
+		assertEquals(((List<?>) queries.get(2)[0].getValue()).size(), 1);
+	}
+
+	@Test
+	public void resolveCached() throws DatabaseException
+	{
+		resolve("x1", "x2");
+		Map<String, Object> ids = resolve("x2", "x3");
+		assertEquals(ids.get("x2"), 2);
+		assertEquals(ids.get("x3"), 3);
+		assertEquals(queries.size(), 2);
+		assertEquals(queries.get(1)[0], new QueryRule("name", Operator.IN, Arrays.asList("x3")));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void resolveNotCachedOutsideTx() throws DatabaseException
+	{
+		when(db.inTx()).thenReturn(false);
+		resolve("x1");
+		resolve("x1");
+		verify(db, times(2)).find(eq(Xref.class), (QueryRule[]) anyVararg());
+	}
+
+	@Test
+	public void invalidate() throws DatabaseException
+	{
+		resolve("x1");
+		resolver.invalidate(Xref.class);
+		resolve("x1");
+		assertEquals(queries.size(), 2);
+	}
+
+	private Map<String, Object> resolve(String... labels) throws DatabaseException
+	{
+		List<Object[]> labelList = new ArrayList<Object[]>();
+		for (String label : labels)
+			labelList.add(new Object[]
+			{ label });
+		return resolver.resolve(Xref.class, "id", new String[]
+		{ "name" }, labelList);
+	}
+
+	private static Xref createXref(String name)
+	{
+		Xref xref = mock(Xref.class);
+		when(xref.get("id")).thenReturn(Integer.valueOf(name.substring(1)));
+		when(xref.get("name")).thenReturn(name);
+		return xref;
+	}
+
+	private static abstract class Xref implements Entity
+	{
+		private static final long serialVersionUID = 1L;
+	}
+}
@@ -0,0 +1,173 @@
+package org.molgenis.framework.db.jdbc;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.Collections;
+
+import org.molgenis.MolgenisOptions;
+import org.molgenis.framework.db.AbstractMapper;
+import org.molgenis.framework.db.DatabaseException;
+import org.molgenis.util.Entity;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class JDBCEntityIteratorTest
+{
+	private static final int NR_OF_ROWS = AbstractMapper.BATCH_SIZE + 1;
+
+	private PooledDataSourceWrapper pool;
+	private JDBCDatabase db;
+	private AbstractJDBCMapper<Entity> mapper;
+
+	@SuppressWarnings("unchecked")
+	@BeforeMethod
+	public void setUp() throws Exception
+	{
+		MolgenisOptions options = new MolgenisOptions();
+		options.db_driver = "org.hsqldb.jdbcDriver";
+		options.db_user = "sa";
+		options.db_password = "";
+		options.db_uri = "jdbc:hsqldb:mem:iterator";
+		pool = PooledDataSourceWrapper.get(options);
+
+		Connection conn = pool.getConnection();
+		try
+		{
+			Statement stmt = conn.createStatement();
+			stmt.executeUpdate("CREATE TABLE animal (id INT)");
+			// one more than a chunk, so the cursor stays open after the first
+			for (int i = 0; i < NR_OF_ROWS; i++)
+				stmt.addBatch("INSERT INTO animal VALUES (" + i + ")");
+			stmt.executeBatch();
+			stmt.close();
+		}
+		finally
+		{
+			conn.close();
+		}
+
+		db = new JDBCDatabase(pool, null);
+		mapper = mock(AbstractJDBCMapper.class);
+		when(mapper.getDatabase()).thenReturn(db);
+		when(mapper.create()).thenReturn(mock(Entity.class));
+	}
+
+	@AfterMethod
+	public void tearDown() throws Exception
+	{
+		db.executeUpdate("DROP TABLE animal");
+		PooledDataSourceWrapper.closeAll();
+	}
+
+	private JDBCEntityIterator<Entity> iterate() throws DatabaseException
+	{
+		return new JDBCEntityIterator<Entity>(mapper, new PreparedQuery("SELECT * FROM animal", Collections
+				.emptyList()));
+	}
+
+	@Test
+	public void iterateUsesConnectionOfDatabase() throws Exception
+	{
+		JDBCEntityIterator<Entity> it = iterate();
+		it.next();
+		// the cursor is held in a private transaction on the database
+		assertTrue(db.inTx());
+		assertEquals(pool.countOpenConnections(), 1);
+		it.close();
+		assertFalse(db.inTx());
+		assertEquals(pool.countOpenConnections(), 0);
+	}
+
+	@Test
+	public void iterateTwiceUsesOneConnection() throws Exception
+	{
+		JDBCEntityIterator<Entity> it1 = iterate();
+		JDBCEntityIterator<Entity> it2 = iterate();
+		it1.next();
+		it2.next();
+		assertEquals(pool.countOpenConnections(), 1);
+		it1.close();
+		// the private transaction ends with the last cursor
+		assertTrue(db.inTx());
+		it2.close();
+		assertFalse(db.inTx());
+		assertEquals(pool.countOpenConnections(), 0);
+	}
+
+	@Test
+	public void closeDatabaseClosesIterators() throws Exception
+	{
+		JDBCEntityIterator<Entity> it = iterate();
+		it.next();
+		db.close();
+		assertFalse(db.inTx());
+		assertEquals(pool.countOpenConnections(), 0);
+		// only the rest of the chunk that was read is left
+		int count = 0;
+		while (it.hasNext())
+		{
+			it.next();
+			count++;
+		}
+		assertEquals(count, AbstractMapper.BATCH_SIZE - 1);
+	}
+
+	@Test
+	public void beginTxWhileIterating() throws Exception
+	{
+		JDBCEntityIterator<Entity> it = iterate();
+		it.next();
+		db.beginTx();
+		try
+		{
+			it.close();
+			// the transaction was taken over by the caller
+			assertTrue(db.inTx());
+		}
+		finally
+		{
+			db.commitTx();
+		}
+		assertEquals(pool.countOpenConnections(), 0);
+	}
+
+	@Test
+	public void iterateToEndCloses() throws Exception
+	{
+		JDBCEntityIterator<Entity> it = iterate();
+		int count = 0;
+		while (it.hasNext())
+		{
+			it.next();
+			count++;
+		}
+		assertEquals(count, NR_OF_ROWS);
+		assertEquals(pool.countOpenConnections(), 0);
+	}
+
+	@Test
+	public void iterateInTransaction() throws Exception
+	{
+		db.beginTx();
+		try
+		{
+			JDBCEntityIterator<Entity> it = iterate();
+			assertTrue(it.hasNext());
+			// the cursor uses the connection of the transaction
+			assertEquals(pool.countOpenConnections(), 1);
+			it.close();
+			assertTrue(db.inTx());
+		}
+		finally
+		{
+			db.rollbackTx();
+		}
+	}
+}
@@ -0,0 +1,245 @@
+package org.molgenis.framework.db.jdbc;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.apache.commons.io.FileUtils;
+import org.molgenis.MolgenisOptions;
+import org.molgenis.MolgenisOptions.MapperImplementation;
+import org.molgenis.framework.db.AbstractMapper;
+import org.molgenis.framework.db.DatabaseException;
+import org.molgenis.framework.db.Mapper;
+import org.molgenis.generators.DataTypeGen;
+import org.molgenis.generators.Generator;
+import org.molgenis.generators.db.MultiqueryMapperGen;
+import org.molgenis.generators.db.PStatementMapperGen;
+import org.molgenis.model.MolgenisModelParser;
+import org.molgenis.model.MolgenisModelValidator;
+import org.molgenis.model.elements.Model;
+import org.molgenis.util.Entity;
+
+/**
+ * Compares the insert throughput of the generated mappers. For each mapper
+ * implementation the entity and mapper of a small test model are generated and
+ * compiled, after which rows are inserted with {@link Mapper#add(List)} in one
+ * transaction, so the time to map entities is included.
+ * <p>
+ * Runs against an in-memory HSQLDB by default, pass a JDBC url, user,
+ * password and batch size to run against MySQL, e.g.
+ * <code>jdbc:mysql://localhost/test?rewriteBatchedStatements=true</code>.
+ * <p>
+ * Not every implementation can be measured:
+ * <ul>
+ * <li>MULTIQUERY sends multi-row inserts, which HSQLDB 1.8 does not support,
+ * so it is only measured on MySQL.</li>
+ * <li>On HSQLDB, PREPARED_STATEMENT mappers insert rows one by one, because
+ * they read each generated key with CALL IDENTITY(). Batches are only
+ * measured on MySQL.</li>
+ * <li>JPA is not measured, its mappers need a persistence unit and an
+ * EntityManager of a generated JpaDatabase instead of a JDBC connection.</li>
+ * </ul>
+ */
+public class JdbcInsertBenchmark
+{
+	private static final int ROWS = 20000;
+	private static final int RUNS = 3;
+
+	private static final String MODEL = "<molgenis name=\"org.molgenis.benchmark\">\n"
+			+ "	<module name=\"model\">\n"
+			+ "		<entity name=\"Item\">\n"
+			+ "			<field name=\"id\" type=\"autoid\" />\n"
+			+ "			<field name=\"name\" type=\"string\" />\n"
+			+ "			<field name=\"description\" type=\"text\" nillable=\"true\" />\n"
+			+ "			<field name=\"created\" type=\"datetime\" nillable=\"true\" />\n"
+			+ "			<field name=\"value\" type=\"int\" nillable=\"true\" />\n"
+			+ "		</entity>\n"
+			+ "	</module>\n" + "</molgenis>";
+	private static final String ENTITY_CLASS = "org.molgenis.benchmark.model.Item";
+	private static final String MAPPER_CLASS = "org.molgenis.benchmark.model.db.ItemMapper";
+
+	private final Connection conn;
+	private final String driver;
+	private final JDBCDatabase db;
+
+	/**
+	 * @param conn
+	 * @param driver
+	 *            JDBC driver class, the generated mappers depend on it
+	 * @param batchSize
+	 */
+	public JdbcInsertBenchmark(Connection conn, String driver, int batchSize)
+	{
+		this.conn = conn;
+		this.driver = driver;
+		this.db = new JDBCDatabase(conn);
+		db.setJdbcBatchSize(batchSize);
+	}
+
+	public boolean isMySql()
+	{
+		return driver.equals("com.mysql.jdbc.Driver");
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		String url = args.length > 0 ? args[0] : "jdbc:hsqldb:mem:benchmark";
+		String user = args.length > 1 ? args[1] : "sa";
+		String password = args.length > 2 ? args[2] : "";
+		int batchSize = args.length > 3 ? Integer.parseInt(args[3]) : AbstractMapper.BATCH_SIZE;
+		String driver = url.startsWith("jdbc:mysql:") ? "com.mysql.jdbc.Driver" : "org.hsqldb.jdbcDriver";
+		Class.forName(driver);
+
+		File dir = File.createTempFile("JdbcInsertBenchmark", "");
+		if (!dir.delete() || !dir.mkdir()) throw new IOException("could not create " + dir);
+		Connection conn = DriverManager.getConnection(url, user, password);
+		try
+		{
+			JdbcInsertBenchmark benchmark = new JdbcInsertBenchmark(conn, driver, batchSize);
+			System.out.println("adding " + ROWS + " rows into " + url + " in batches of " + batchSize + ", best of "
+					+ RUNS + " runs");
+			for (MapperImplementation implementation : new MapperImplementation[]
+			{ MapperImplementation.MULTIQUERY, MapperImplementation.PREPARED_STATEMENT, MapperImplementation.JPA })
+			{
+				if (implementation == MapperImplementation.JPA)
+				{
+					System.out.println(String.format("%-20s not measured: needs a persistence unit", implementation));
+				}
+				else if (implementation == MapperImplementation.MULTIQUERY && !benchmark.isMySql())
+				{
+					System.out.println(String.format("%-20s not measured: needs multi-row inserts", implementation));
+				}
+				else
+				{
+					benchmark.run(implementation, new File(dir, implementation.name().toLowerCase()));
+				}
+			}
+		}
+		finally
+		{
+			conn.close();
+			FileUtils.deleteDirectory(dir);
+		}
+	}
+
+	private void run(MapperImplementation implementation, File dir) throws Exception
+	{
+		Mapper<Entity> mapper = createMapper(implementation, dir);
+		long best = Long.MAX_VALUE;
+		for (int run = 0; run < RUNS; run++)
+		{
+			List<Entity> entities = createEntities(mapper);
+			createTable();
+			try
+			{
+				long start = System.nanoTime();
+				mapper.add(entities);
+				best = Math.min(best, System.nanoTime() - start);
+			}
+			catch (DatabaseException e)
+			{
+				System.out.println(String.format("%-20s failed: %s", implementation, e.getMessage()));
+				return;
+			}
+			finally
+			{
+				dropTable();
+			}
+		}
+		System.out.println(String.format("%-20s %6d ms %8d rows/s", implementation, best / 1000000, ROWS
+				* 1000000000L / Math.max(best, 1)));
+	}
+
+	/**
+	 * Generates and compiles the test model with the mapper generator of an
+	 * implementation, each in its own class loader
+	 */
+	@SuppressWarnings("unchecked")
+	private Mapper<Entity> createMapper(MapperImplementation implementation, File dir) throws Exception
+	{
+		Model model = MolgenisModelParser.parseDbSchema(MODEL);
+		MolgenisOptions options = new MolgenisOptions();
+		options.output_src = dir.getPath() + File.separator;
+		options.mapper_implementation = implementation;
+		options.db_driver = driver;
+		MolgenisModelValidator.validate(model, options);
+
+		Generator mapperGen = implementation == MapperImplementation.MULTIQUERY ? new MultiqueryMapperGen()
+				: new PStatementMapperGen();
+		new DataTypeGen().generate(model, options);
+		mapperGen.generate(model, options);
+
+		List<String> compilerArgs = new ArrayList<String>();
+		compilerArgs.add("-nowarn");
+		compilerArgs.add("-cp");
+		compilerArgs.add(System.getProperty("java.class.path"));
+		compilerArgs.add("-d");
+		compilerArgs.add(dir.getPath());
+		compilerArgs.add(new File(dir, ENTITY_CLASS.replace('.', File.separatorChar) + ".java").getPath());
+		compilerArgs.add(new File(dir, MAPPER_CLASS.replace('.', File.separatorChar) + ".java").getPath());
+		JavaCompiler javaCompiler = ToolProvider.getSystemJavaCompiler();
+		if (javaCompiler.run(null, null, null, compilerArgs.toArray(new String[0])) != 0) throw new IOException(
+				"compilation of the " + implementation + " mapper failed");
+
+		ClassLoader classLoader = new URLClassLoader(new URL[]
+		{ dir.toURI().toURL() }, getClass().getClassLoader());
+		return (Mapper<Entity>) classLoader.loadClass(MAPPER_CLASS).getConstructor(JDBCDatabase.class)
+				.newInstance(db);
+	}
+
+	private List<Entity> createEntities(Mapper<Entity> mapper) throws Exception
+	{
+		List<Entity> entities = mapper.createList(ROWS);
+		Timestamp created = new Timestamp(System.currentTimeMillis());
+		for (int i = 0; i < ROWS; i++)
+		{
+			Entity entity = mapper.create();
+			entity.set("name", "name" + i);
+			entity.set("description", "description of " + i);
+			entity.set("created", created);
+			entity.set("value", i);
+			entities.add(entity);
+		}
+		return entities;
+	}
+
+	private void createTable() throws SQLException
+	{
+		String id = isMySql() ? "INTEGER NOT NULL AUTO_INCREMENT" : "INTEGER GENERATED BY DEFAULT AS IDENTITY NOT NULL";
+		String text = isMySql() ? "TEXT" : "VARCHAR(1024)";
+		Statement stmt = conn.createStatement();
+		try
+		{
+			stmt.executeUpdate("CREATE TABLE Item (id " + id + ", name VARCHAR(255) NOT NULL, description " + text
+					+ ", created DATETIME, value INTEGER, PRIMARY KEY(id))");
+		}
+		finally
+		{
+			stmt.close();
+		}
+	}
+
+	private void dropTable() throws SQLException
+	{
+		Statement stmt = conn.createStatement();
+		try
+		{
+			stmt.executeUpdate("DROP TABLE Item");
+		}
+		finally
+		{
+			stmt.close();
+		}
+	}
+}
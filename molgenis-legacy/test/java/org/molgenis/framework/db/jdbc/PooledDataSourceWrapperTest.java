@@ -0,0 +1,71 @@
+package org.molgenis.framework.db.jdbc;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+
+import java.sql.Connection;
+
+import org.molgenis.MolgenisOptions;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+public class PooledDataSourceWrapperTest
+{
+	@AfterMethod
+	public void tearDown()
+	{
+		PooledDataSourceWrapper.closeAll();
+	}
+
+	@Test
+	public void get()
+	{
+		PooledDataSourceWrapper pool = PooledDataSourceWrapper.get(options("jdbc:hsqldb:mem:pool1"));
+		assertSame(PooledDataSourceWrapper.get(options("jdbc:hsqldb:mem:pool1")), pool);
+		assertNotSame(PooledDataSourceWrapper.get(options("jdbc:hsqldb:mem:pool2")), pool);
+
+		PooledDataSourceWrapper.closeAll();
+		assertNotSame(PooledDataSourceWrapper.get(options("jdbc:hsqldb:mem:pool1")), pool);
+	}
+
+	@Test
+	public void getConnection() throws Exception
+	{
+		MolgenisOptions options = options("jdbc:hsqldb:mem:pool3");
+		options.db_pool_max_active = 2;
+		PooledDataSourceWrapper pool = PooledDataSourceWrapper.get(options);
+		assertEquals(pool.getMaxActive(), 2);
+		assertEquals(pool.getDriverClassName(), "org.hsqldb.jdbcDriver");
+
+		Connection conn = pool.getConnection();
+		assertEquals(pool.countOpenConnections(), 1);
+		conn.close();
+		assertEquals(pool.countOpenConnections(), 0);
+		assertEquals(pool.countIdleConnections(), 1);
+		assertEquals(pool.getConnectionCount(), 1);
+	}
+
+	@Test
+	public void getWithOtherOptions() throws Exception
+	{
+		MolgenisOptions options = options("jdbc:hsqldb:mem:pool4");
+		options.db_pool_max_active = 3;
+		PooledDataSourceWrapper pool = PooledDataSourceWrapper.get(options);
+		// the pool keeps its configuration, a warning is logged
+		MolgenisOptions otherOptions = options("jdbc:hsqldb:mem:pool4");
+		otherOptions.db_pool_max_active = 2;
+		assertSame(PooledDataSourceWrapper.get(otherOptions), pool);
+		assertEquals(pool.getMaxActive(), 3);
+	}
+
+	private static MolgenisOptions options(String uri)
+	{
+		MolgenisOptions options = new MolgenisOptions();
+		options.db_driver = "org.hsqldb.jdbcDriver";
+		options.db_user = "sa";
+		options.db_password = "";
+		options.db_uri = uri;
+		return options;
+	}
+}
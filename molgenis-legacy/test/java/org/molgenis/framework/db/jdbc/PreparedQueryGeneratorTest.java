@@ -0,0 +1,199 @@
+package org.molgenis.framework.db.jdbc;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.anyVararg;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.molgenis.fieldtypes.BoolField;
+import org.molgenis.fieldtypes.DateField;
+import org.molgenis.fieldtypes.FieldType;
+import org.molgenis.fieldtypes.IntField;
+import org.molgenis.fieldtypes.StringField;
+import org.molgenis.framework.db.DatabaseException;
+import org.molgenis.framework.db.QueryRule;
+import org.molgenis.framework.db.QueryRule.Operator;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class PreparedQueryGeneratorTest
+{
+	private PreparedQueryGenerator generator;
+
+	@SuppressWarnings("unchecked")
+	@BeforeMethod
+	public void setUp() throws DatabaseException
+	{
+		PreparedQueryGenerator.clearCache();
+
+		AbstractJDBCMapper<?> mapper = mock(AbstractJDBCMapper.class);
+		when(mapper.createFindSql((QueryRule[]) anyVararg())).thenReturn("SELECT * FROM person");
+		when(mapper.createCountSql((QueryRule[]) anyVararg())).thenReturn("SELECT count(*) AS num_rows FROM person");
+		when(mapper.getTableFieldName(anyString())).thenAnswer(new Answer<String>()
+		{
+			@Override
+			public String answer(InvocationOnMock invocation) throws Throwable
+			{
+				Object fieldName = invocation.getArguments()[0];
+				return fieldName != null ? "person." + fieldName : null;
+			}
+		});
+		when(mapper.getFieldType(anyString())).thenAnswer(new Answer<FieldType>()
+		{
+			@Override
+			public FieldType answer(InvocationOnMock invocation) throws Throwable
+			{
+				Object fieldName = invocation.getArguments()[0];
+				if ("person.age".equals(fieldName)) return new IntField();
+				if ("person.birthdate".equals(fieldName)) return new DateField();
+				if ("person.married".equals(fieldName)) return new BoolField();
+				return new StringField();
+			}
+		});
+		when(mapper.createSortSql(anyBoolean(), any(QueryRule[].class))).thenCallRealMethod();
+		generator = new PreparedQueryGenerator(mapper);
+	}
+
+	@Test
+	public void createFindQuery() throws DatabaseException
+	{
+		PreparedQuery query = generator.createFindQuery(new QueryRule("name", Operator.EQUALS, "piet"));
+		assertEquals(query.getSql(), "SELECT * FROM person WHERE person.name = ?");
+		assertEquals(query.getParameters(), Arrays.<Object> asList("piet"));
+	}
+
+	@Test
+	public void createFindQuerySameShape() throws DatabaseException
+	{
+		PreparedQuery query1 = generator.createFindQuery(new QueryRule("name", Operator.EQUALS, "piet"));
+		PreparedQuery query2 = generator.createFindQuery(new QueryRule("name", Operator.EQUALS, "klaas"));
+		assertSame(query1.getSql(), query2.getSql());
+		assertEquals(query2.getParameters(), Arrays.<Object> asList("klaas"));
+	}
+
+	@Test
+	public void createFindQueryIn() throws DatabaseException
+	{
+		PreparedQuery query = generator.createFindQuery(new QueryRule("id", Operator.IN, Arrays.asList(1, 2, 3)));
+		// padded with the last value
+		assertEquals(query.getSql(), "SELECT * FROM person WHERE person.id IN(?,?,?,?) ");
+		assertEquals(query.getParameters(), Arrays.<Object> asList(1, 2, 3, 3));
+	}
+
+	@Test
+	public void createFindQueryInSameShape() throws DatabaseException
+	{
+		PreparedQuery query1 = generator.createFindQuery(new QueryRule("id", Operator.IN, Arrays.asList(1, 2, 3)));
+		PreparedQuery query2 = generator.createFindQuery(new QueryRule("id", Operator.IN, Arrays.asList(4, 5, 6, 7)));
+		assertSame(query1.getSql(), query2.getSql());
+	}
+
+	@Test
+	public void getPaddedSize()
+	{
+		assertEquals(PreparedQueryGenerator.getPaddedSize(1), 1);
+		assertEquals(PreparedQueryGenerator.getPaddedSize(3), 4);
+		assertEquals(PreparedQueryGenerator.getPaddedSize(256), 256);
+		assertEquals(PreparedQueryGenerator.getPaddedSize(257), QueryRule.IN_CHUNK_SIZE);
+		assertEquals(PreparedQueryGenerator.getPaddedSize(QueryRule.IN_CHUNK_SIZE), QueryRule.IN_CHUNK_SIZE);
+		assertEquals(PreparedQueryGenerator.getPaddedSize(QueryRule.IN_CHUNK_SIZE + 1), 2 * QueryRule.IN_CHUNK_SIZE);
+	}
+
+	@Test(expectedExceptions = DatabaseException.class)
+	public void createFindQueryInEmpty() throws DatabaseException
+	{
+		generator.createFindQuery(new QueryRule("id", Operator.IN, Collections.emptyList()));
+	}
+
+	@Test
+	public void createFindQueryLike() throws DatabaseException
+	{
+		PreparedQuery query = generator.createFindQuery(new QueryRule("name", Operator.LIKE, "pie"), new QueryRule(
+				"age", Operator.LIKE, 3));
+		assertEquals(query.getSql(), "SELECT * FROM person WHERE person.name LIKE ? AND person.age LIKE ?");
+		assertEquals(query.getParameters(), Arrays.<Object> asList("%pie%", 3));
+	}
+
+	@Test
+	public void createFindQueryNull() throws DatabaseException
+	{
+		PreparedQuery query = generator.createFindQuery(new QueryRule("name", Operator.EQUALS, (Object) null), new QueryRule(
+				"age", Operator.NOT, (Object) null));
+		assertEquals(query.getSql(), "SELECT * FROM person WHERE person.name IS NULL AND person.age IS NOT NULL");
+		assertEquals(query.getParameters(), Collections.emptyList());
+	}
+
+	@Test
+	public void createFindQueryNestedSortLimitOffset() throws DatabaseException
+	{
+		PreparedQuery query = generator.createFindQuery(new QueryRule("name", Operator.EQUALS, "piet"), new QueryRule(
+				Operator.OR), new QueryRule(new QueryRule("age", Operator.GREATER, 10), new QueryRule("age",
+				Operator.LESS, 20)), new QueryRule(Operator.SORTDESC, "age"), new QueryRule(Operator.LIMIT, 10),
+				new QueryRule(Operator.OFFSET, 20));
+		assertEquals(query.getSql(), "SELECT * FROM person WHERE person.name = ? OR (person.age > ? AND person.age < ?)"
+				+ " ORDER BY person.age DESC LIMIT ? OFFSET ?");
+		assertEquals(query.getParameters(), Arrays.<Object> asList("piet", 10, 20, 10, 20));
+	}
+
+	@Test
+	public void createFindQueryTypedValues() throws DatabaseException, SQLException
+	{
+		PreparedQuery query = generator.createFindQuery(new QueryRule("age", Operator.GREATER, "10"), new QueryRule(
+				"birthdate", Operator.EQUALS, "2012-03-04"), new QueryRule("married", Operator.EQUALS, "true"),
+				new QueryRule("age", Operator.IN, new Object[]
+				{ "1", 2 }), new QueryRule("name", Operator.EQUALS, "10"));
+		assertEquals(query.getParameters(), Arrays.<Object> asList(10, java.sql.Date.valueOf("2012-03-04"), true, 1, 2,
+				"10"));
+
+		PreparedStatement stmt = mock(PreparedStatement.class);
+		query.bind(stmt);
+		verify(stmt).setInt(1, 10);
+		verify(stmt).setDate(2, java.sql.Date.valueOf("2012-03-04"));
+		verify(stmt).setBoolean(3, true);
+		verify(stmt).setInt(4, 1);
+		verify(stmt).setInt(5, 2);
+		verify(stmt).setString(6, "10");
+	}
+
+	@Test
+	public void createFindQueryBooleanValue() throws DatabaseException
+	{
+		PreparedQuery query = generator.createFindQuery(new QueryRule("married", Operator.EQUALS, false));
+		assertEquals(query.getParameters(), Arrays.<Object> asList(false));
+	}
+
+	@Test(expectedExceptions = DatabaseException.class)
+	public void createFindQueryInvalidTypedValue() throws DatabaseException
+	{
+		generator.createFindQuery(new QueryRule("age", Operator.EQUALS, "ten"));
+	}
+
+	@Test
+	public void createCountQuery() throws DatabaseException
+	{
+		PreparedQuery query = generator.createCountQuery(new QueryRule("active", Operator.EQUALS, true));
+		assertEquals(query.getSql(), "SELECT count(*) AS num_rows FROM person WHERE person.active = ?");
+		assertEquals(query.getParameters(), Arrays.<Object> asList("1"));
+	}
+
+	@Test
+	public void createCappedCountQuery() throws DatabaseException
+	{
+		PreparedQuery query = generator.createCappedCountQuery(1000, new QueryRule("name", Operator.EQUALS, "piet"));
+		assertEquals(query.getSql(),
+				"select count(*) as num_rows from (select 1 FROM person WHERE person.name = ? limit 1000) as capped_count");
+		assertEquals(query.getParameters(), Arrays.<Object> asList("piet"));
+	}
+}
@@ -0,0 +1,354 @@
+package org.molgenis.framework.db.jdbc;
+
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Vector;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.molgenis.fieldtypes.IntField;
+import org.molgenis.fieldtypes.StringField;
+import org.molgenis.fieldtypes.TextField;
+import org.molgenis.framework.db.DatabaseException;
+import org.molgenis.model.elements.Field;
+import org.molgenis.model.elements.Model;
+import org.molgenis.util.AbstractEntity;
+import org.molgenis.util.Entity;
+import org.molgenis.util.SimpleCloseableIterator;
+import org.molgenis.util.tuple.Tuple;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class SearchIndexTest
+{
+	private File dir;
+	private List<TestEntity> table;
+	private JDBCDatabase db;
+	private AbstractJDBCMapper<TestEntity> mapper;
+
+	@SuppressWarnings("unchecked")
+	@BeforeMethod
+	public void setUp() throws Exception
+	{
+		dir = File.createTempFile("searchindex", "");
+		dir.delete();
+		SearchIndex.setDirectory(dir);
+
+		table = new ArrayList<TestEntity>(Arrays.asList(new TestEntity(1, "Tutorial", "writing a script"),
+				new TestEntity(2, "Reference", "script language"), new TestEntity(3, "Tutorial", null)));
+
+		Field name = mock(Field.class);
+		when(name.getName()).thenReturn("name");
+		when(name.getType()).thenReturn(new StringField());
+		Field description = mock(Field.class);
+		when(description.getName()).thenReturn("description");
+		when(description.getType()).thenReturn(new TextField());
+		Field id = mock(Field.class);
+		when(id.getName()).thenReturn("id");
+		when(id.getType()).thenReturn(new IntField());
+		org.molgenis.model.elements.Entity entity = mock(org.molgenis.model.elements.Entity.class);
+		when(entity.getAllFields()).thenReturn(new Vector<Field>(Arrays.asList(id, name, description)));
+		Model model = mock(Model.class);
+		when(model.getEntity(anyString())).thenReturn(entity);
+		db = mock(JDBCDatabase.class);
+		when(db.getMetaData()).thenReturn(model);
+
+		mapper = mock(AbstractJDBCMapper.class);
+		when(mapper.getDatabase()).thenReturn(db);
+		when(mapper.create()).thenReturn(new TestEntity(null, null, null));
+		when(mapper.iterate()).thenAnswer(new Answer<SimpleCloseableIterator<TestEntity>>()
+		{
+			@Override
+			public SimpleCloseableIterator<TestEntity> answer(InvocationOnMock invocation)
+			{
+				return new SimpleCloseableIterator<TestEntity>(new ArrayList<TestEntity>(table).iterator());
+			}
+		});
+	}
+
+	@AfterMethod
+	public void tearDown() throws IOException
+	{
+		SearchIndex.setDirectory(null);
+		FileUtils.deleteDirectory(dir);
+	}
+
+	private List<Object> ids(SearchIndex index, String terms) throws DatabaseException
+	{
+		SearchIndex.Hits hits = index.search(mapper, terms);
+		return hits == null ? null : hits.getIds();
+	}
+
+	@Test
+	public void search() throws Exception
+	{
+		SearchIndex index = SearchIndex.get(mapper);
+		assertEquals(ids(index, "tut"), Arrays.<Object> asList(1, 3));
+		assertEquals(ids(index, "SCRIPT tutorial"), Arrays.<Object> asList(1));
+		assertEquals(ids(index, "manual"), Collections.emptyList());
+	}
+
+	@Test
+	public void searchSubstring() throws Exception
+	{
+		// like lower(field) LIKE '%term%'
+		SearchIndex index = SearchIndex.get(mapper);
+		assertEquals(ids(index, "orial"), Arrays.<Object> asList(1, 3));
+		assertEquals(ids(index, "ing-a"), Arrays.<Object> asList(1));
+	}
+
+	@Test
+	public void searchLongWords() throws Exception
+	{
+		// the parts of long words are always candidates
+		table.add(new TestEntity(4, StringUtils.repeat("x", 300), null));
+		List<Object> ids = ids(SearchIndex.get(mapper), "reference");
+		assertEquals(new HashSet<Object>(ids), new HashSet<Object>(Arrays.asList(2, 4)));
+	}
+
+	@Test
+	public void searchWithoutWords() throws Exception
+	{
+		assertNull(ids(SearchIndex.get(mapper), "- +"));
+	}
+
+	@Test
+	public void searchTooManyHits() throws Exception
+	{
+		table.clear();
+		for (int i = 0; i <= SearchIndex.MAX_HITS; i++)
+			table.add(new TestEntity(i, "name" + i, "common"));
+		SearchIndex index = SearchIndex.get(mapper);
+		assertNull(ids(index, "common"));
+		assertEquals(ids(index, "name1000"), Arrays.<Object> asList(1000));
+	}
+
+	@Test
+	public void updateAndRemove() throws Exception
+	{
+		SearchIndex index = SearchIndex.get(mapper);
+		assertEquals(ids(index, "reference"), Arrays.<Object> asList(2));
+
+		// the index is updated, not rebuilt
+		List<TestEntity> changed = Arrays.asList(new TestEntity(2, "Manual", null), new TestEntity(4, "Reference",
+				null));
+		table.set(1, changed.get(0));
+		table.add(changed.get(1));
+		SearchIndex.update(TestEntity.class, changed).apply();
+		assertEquals(ids(index, "reference"), Arrays.<Object> asList(4));
+		assertEquals(ids(index, "manual"), Arrays.<Object> asList(2));
+
+		table.remove(3);
+		SearchIndex.remove(TestEntity.class, Arrays.asList(new TestEntity(4, null, null))).apply();
+		assertEquals(ids(index, "reference"), Collections.emptyList());
+		verify(mapper, times(1)).iterate();
+	}
+
+	@Test
+	public void changeInTransaction() throws Exception
+	{
+		SearchIndex index = SearchIndex.get(mapper);
+		assertEquals(ids(index, "reference"), Arrays.<Object> asList(2));
+
+		// the change is not applied until the transaction commits
+		table.add(new TestEntity(4, "Reference", null));
+		SearchIndex.Change change = SearchIndex.update(TestEntity.class, table.subList(3, 4));
+		when(db.inTx()).thenReturn(true);
+		when(db.hasSearchIndexChanges(TestEntity.class)).thenReturn(true);
+		assertNull(ids(index, "reference"));
+
+		when(db.inTx()).thenReturn(false);
+		when(db.hasSearchIndexChanges(TestEntity.class)).thenReturn(false);
+		change.apply();
+		assertEquals(ids(index, "reference"), Arrays.<Object> asList(2, 4));
+		verify(mapper, times(1)).iterate();
+	}
+
+	@Test
+	public void exact() throws Exception
+	{
+		SearchIndex index = SearchIndex.get(mapper);
+		assertTrue(index.search(mapper, "TUT script").isExact());
+		// the LIKE query must filter terms with other characters
+		assertFalse(index.search(mapper, "ing-a").isExact());
+		table.add(new TestEntity(4, StringUtils.repeat("x", 300), null));
+		SearchIndex.invalidate(TestEntity.class);
+		assertFalse(index.search(mapper, "reference").isExact());
+	}
+
+	@Test
+	public void noRebuild() throws Exception
+	{
+		SearchIndex index = SearchIndex.get(mapper);
+		assertEquals(ids(index, "reference"), Arrays.<Object> asList(2));
+		// added by another application
+		table.add(new TestEntity(4, "Reference", null));
+		assertEquals(ids(index, "reference"), Arrays.<Object> asList(2));
+		verify(mapper, times(1)).iterate();
+		verify(mapper, never()).count();
+	}
+
+	@Test
+	public void searchWhileBuilding() throws Exception
+	{
+		final SearchIndex index = SearchIndex.get(mapper);
+		final List<SearchIndex.Hits> concurrent = new ArrayList<SearchIndex.Hits>();
+		when(mapper.iterate()).thenAnswer(new Answer<SimpleCloseableIterator<TestEntity>>()
+		{
+			@Override
+			public SimpleCloseableIterator<TestEntity> answer(InvocationOnMock invocation) throws Exception
+			{
+				// another search does not wait for the build
+				Thread thread = new Thread()
+				{
+					@Override
+					public void run()
+					{
+						try
+						{
+							concurrent.add(index.search(mapper, "reference"));
+						}
+						catch (DatabaseException e)
+						{
+							throw new RuntimeException(e);
+						}
+					}
+				};
+				thread.start();
+				thread.join(10000);
+				return new SimpleCloseableIterator<TestEntity>(new ArrayList<TestEntity>(table).iterator());
+			}
+		});
+		assertEquals(ids(index, "reference"), Arrays.<Object> asList(2));
+		assertEquals(concurrent, Collections.singletonList(null));
+	}
+
+	@Test
+	public void invalidate() throws Exception
+	{
+		SearchIndex index = SearchIndex.get(mapper);
+		assertEquals(ids(index, "reference"), Arrays.<Object> asList(2));
+		table.add(new TestEntity(4, "Reference", null));
+		SearchIndex.invalidate(TestEntity.class);
+		assertEquals(ids(index, "reference"), Arrays.<Object> asList(2, 4));
+	}
+
+	@Test
+	public void setSameDirectory() throws Exception
+	{
+		SearchIndex index = SearchIndex.get(mapper);
+		SearchIndex.setDirectory(new File(dir.getPath()));
+		assertSame(SearchIndex.get(mapper), index);
+	}
+
+	@Test
+	public void disabled() throws Exception
+	{
+		SearchIndex.setDirectory(null);
+		assertNull(SearchIndex.get(mapper));
+	}
+
+	public static class TestEntity extends AbstractEntity
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final Integer id;
+		private final String name;
+		private final String description;
+
+		public TestEntity(Integer id, String name, String description)
+		{
+			this.id = id;
+			this.name = name;
+			this.description = description;
+		}
+
+		@Override
+		public Object get(String columnName)
+		{
+			if ("id".equals(columnName)) return id;
+			if ("name".equals(columnName)) return name;
+			if ("description".equals(columnName)) return description;
+			return null;
+		}
+
+		@Override
+		public void set(Tuple values, boolean strict) throws Exception
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public String getIdField()
+		{
+			return "id";
+		}
+
+		@Override
+		public Object getIdValue()
+		{
+			return id;
+		}
+
+		@Override
+		public List<String> getLabelFields()
+		{
+			return Arrays.asList("name");
+		}
+
+		@Override
+		public Vector<String> getFields()
+		{
+			return new Vector<String>(Arrays.asList("id", "name", "description"));
+		}
+
+		@Override
+		public Vector<String> getFields(boolean skipAutoIds)
+		{
+			return getFields();
+		}
+
+		@Override
+		public String getFields(String sep)
+		{
+			return "id" + sep + "name" + sep + "description";
+		}
+
+		@Override
+		public void validate() throws Exception
+		{
+		}
+
+		@Override
+		public Entity create(Tuple tuple) throws Exception
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public String getXrefIdFieldName(String fieldName)
+		{
+			return null;
+		}
+	}
+}
@@ -0,0 +1,290 @@
+package org.molgenis.framework.db.paging;
+
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.anyVararg;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Vector;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.molgenis.framework.db.Database;
+import org.molgenis.framework.db.DatabaseException;
+import org.molgenis.framework.db.QueryRule;
+import org.molgenis.framework.db.QueryRule.Operator;
+import org.molgenis.model.elements.Field;
+import org.molgenis.model.elements.Index;
+import org.molgenis.model.elements.Model;
+import org.molgenis.model.elements.Unique;
+import org.molgenis.util.AbstractEntity;
+import org.molgenis.util.Entity;
+import org.molgenis.util.tuple.Tuple;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class KeysetPagerTest
+{
+	private Database db;
+	private List<QueryRule> lastRules;
+	private List<TestEntity> result;
+
+	@BeforeMethod
+	public void setUp() throws DatabaseException
+	{
+		db = mock(Database.class);
+		when(db.count(eq(TestEntity.class), (QueryRule[]) anyVararg())).thenReturn(25);
+		when(db.find(eq(TestEntity.class), (QueryRule[]) anyVararg())).thenAnswer(new Answer<List<TestEntity>>()
+		{
+			@Override
+			public List<TestEntity> answer(InvocationOnMock invocation) throws Throwable
+			{
+				Object[] args = invocation.getArguments();
+				lastRules = new ArrayList<QueryRule>();
+				for (int i = 1; i < args.length; i++)
+					lastRules.add((QueryRule) args[i]);
+				return result;
+			}
+		});
+	}
+
+	@Test
+	public void first() throws DatabaseException
+	{
+		KeysetPager<TestEntity> pager = createPager("id");
+		result = createEntities(1, 10);
+		assertEquals(pager.first(db), createEntities(1, 10));
+		assertEquals(lastRules, Arrays.asList(new QueryRule(Operator.SORTASC, "id"), new QueryRule(Operator.LIMIT, 10)));
+		assertEquals(pager.getOffset(), 0);
+	}
+
+	@Test
+	public void next() throws DatabaseException
+	{
+		KeysetPager<TestEntity> pager = createPager("id");
+		result = createEntities(1, 10);
+		pager.first(db);
+		result = createEntities(11, 20);
+		assertEquals(pager.next(db), createEntities(11, 20));
+		assertEquals(lastRules, Arrays.asList(new QueryRule("id", Operator.GREATER, 10), new QueryRule(
+				Operator.SORTASC, "id"), new QueryRule(Operator.LIMIT, 10)));
+		assertEquals(pager.getOffset(), 10);
+	}
+
+	@Test
+	public void prev() throws DatabaseException
+	{
+		KeysetPager<TestEntity> pager = createPager("id");
+		result = createEntities(1, 10);
+		pager.first(db);
+		result = createEntities(11, 20);
+		pager.next(db);
+		result = createEntities(10, 1);
+		assertEquals(pager.prev(db), createEntities(1, 10));
+		assertEquals(lastRules, Arrays.asList(new QueryRule("id", Operator.LESS, 11), new QueryRule(
+				Operator.SORTDESC, "id"), new QueryRule(Operator.LIMIT, 10)));
+		assertEquals(pager.getOffset(), 0);
+	}
+
+	@Test
+	public void last() throws DatabaseException
+	{
+		KeysetPager<TestEntity> pager = createPager("id");
+		result = createEntities(25, 21);
+		assertEquals(pager.last(db), createEntities(21, 25));
+		assertEquals(lastRules, Arrays.asList(new QueryRule(Operator.SORTDESC, "id"), new QueryRule(Operator.LIMIT, 5)));
+		assertEquals(pager.getOffset(), 20);
+	}
+
+	@Test
+	public void nextNotIndexed() throws DatabaseException
+	{
+		KeysetPager<TestEntity> pager = createPager("name");
+		result = createEntities(1, 10);
+		pager.first(db);
+		result = createEntities(11, 20);
+		pager.next(db);
+		assertEquals(lastRules, Arrays.asList(new QueryRule(Operator.SORTASC, "name"), new QueryRule(
+				Operator.SORTASC, "id"), new QueryRule(Operator.LIMIT, 10), new QueryRule(Operator.OFFSET, 10)));
+	}
+
+	@Test
+	public void nextIndexed() throws Exception
+	{
+		mockNameKey(false);
+		KeysetPager<TestEntity> pager = createPager("name");
+		result = createEntities(1, 10);
+		pager.first(db);
+		result = createEntities(11, 20);
+		pager.next(db);
+		assertEquals(lastRules, Arrays.asList(new QueryRule(new QueryRule("name", Operator.GREATER, "name10"),
+				new QueryRule(Operator.OR), new QueryRule(new QueryRule("name", Operator.EQUALS, "name10"),
+						new QueryRule("id", Operator.GREATER, 10))), new QueryRule(Operator.SORTASC, "name"),
+				new QueryRule(Operator.SORTASC, "id"), new QueryRule(Operator.LIMIT, 10)));
+	}
+
+	@Test
+	public void nextIndexedNillable() throws Exception
+	{
+		// seeking would skip the entities without a name
+		mockNameKey(true);
+		KeysetPager<TestEntity> pager = createPager("name");
+		result = createEntities(1, 10);
+		pager.first(db);
+		result = createEntities(11, 20);
+		pager.next(db);
+		assertEquals(lastRules, Arrays.asList(new QueryRule(Operator.SORTASC, "name"), new QueryRule(
+				Operator.SORTASC, "id"), new QueryRule(Operator.LIMIT, 10), new QueryRule(Operator.OFFSET, 10)));
+	}
+
+	@Test
+	public void setOffset() throws DatabaseException
+	{
+		KeysetPager<TestEntity> pager = createPager("id");
+		result = createEntities(1, 10);
+		pager.first(db);
+		pager.setOffset(20);
+		result = createEntities(21, 25);
+		assertEquals(pager.getPage(db), createEntities(21, 25));
+		assertEquals(lastRules, Arrays.asList(new QueryRule(Operator.SORTASC, "id"), new QueryRule(Operator.LIMIT, 10),
+				new QueryRule(Operator.OFFSET, 20)));
+	}
+
+	/** a unique key on the name field */
+	private void mockNameKey(boolean nillable) throws Exception
+	{
+		Field name = mock(Field.class);
+		when(name.getName()).thenReturn("name");
+		when(name.isNillable()).thenReturn(nillable);
+		Unique key = mock(Unique.class);
+		when(key.getFields()).thenReturn(new Vector<Field>(Arrays.asList(name)));
+		org.molgenis.model.elements.Entity entity = mock(org.molgenis.model.elements.Entity.class);
+		when(entity.getAllKeys()).thenReturn(new Vector<Unique>(Arrays.asList(key)));
+		when(entity.getAllIndices()).thenReturn(new Vector<Index>());
+		when(entity.getAllField("name")).thenReturn(name);
+		Model model = mock(Model.class);
+		when(model.getEntity(anyString())).thenReturn(entity);
+		when(db.getMetaData()).thenReturn(model);
+	}
+
+	private KeysetPager<TestEntity> createPager(String orderByField) throws DatabaseException
+	{
+		KeysetPager<TestEntity> pager = new KeysetPager<TestEntity>(TestEntity.class, orderByField, "id");
+		pager.setLimit(10);
+		return pager;
+	}
+
+	private static List<TestEntity> createEntities(int from, int to)
+	{
+		List<TestEntity> entities = new ArrayList<TestEntity>();
+		for (int i = from; from <= to ? i <= to : i >= to; i += from <= to ? 1 : -1)
+			entities.add(new TestEntity(i));
+		return entities;
+	}
+
+	public static class TestEntity extends AbstractEntity
+	{
+		private static final long serialVersionUID = 1L;
+
+		private Integer id;
+
+		public TestEntity()
+		{
+		}
+
+		public TestEntity(Integer id)
+		{
+			this.id = id;
+		}
+
+		@Override
+		public Object get(String columnName)
+		{
+			if ("id".equals(columnName)) return id;
+			if ("name".equals(columnName)) return id != null ? String.format("name%02d", id) : null;
+			return null;
+		}
+
+		@Override
+		public void set(Tuple values, boolean strict) throws Exception
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public String getIdField()
+		{
+			return "id";
+		}
+
+		@Override
+		public Object getIdValue()
+		{
+			return id;
+		}
+
+		@Override
+		public List<String> getLabelFields()
+		{
+			return Arrays.asList("name");
+		}
+
+		@Override
+		public Vector<String> getFields()
+		{
+			return new Vector<String>(Arrays.asList("id", "name"));
+		}
+
+		@Override
+		public Vector<String> getFields(boolean skipAutoIds)
+		{
+			return getFields();
+		}
+
+		@Override
+		public String getFields(String sep)
+		{
+			return "id" + sep + "name";
+		}
+
+		@Override
+		public void validate() throws Exception
+		{
+		}
+
+		@Override
+		public Entity create(Tuple tuple) throws Exception
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public String getXrefIdFieldName(String fieldName)
+		{
+			return null;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			return obj instanceof TestEntity && id.equals(((TestEntity) obj).id);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return id.hashCode();
+		}
+
+		@Override
+		public String toString()
+		{
+			return "TestEntity(" + id + ")";
+		}
+	}
+}
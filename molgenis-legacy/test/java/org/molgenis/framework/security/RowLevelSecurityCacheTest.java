@@ -0,0 +1,94 @@
+package org.molgenis.framework.security;
+
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+import java.sql.Connection;
+import java.util.Arrays;
+
+import org.molgenis.framework.db.DatabaseException;
+import org.molgenis.framework.db.QueryRule;
+import org.molgenis.framework.db.QueryRule.Operator;
+import org.molgenis.framework.db.jdbc.JDBCDatabase;
+import org.molgenis.util.Entity;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class RowLevelSecurityCacheTest
+{
+	private Login login;
+	private RowLevelSecurityCache cache;
+
+	@BeforeMethod
+	public void setUp()
+	{
+		login = new SimpleLogin();
+		cache = RowLevelSecurityCache.get(login);
+	}
+
+	@Test
+	public void getPerLogin()
+	{
+		assertSame(RowLevelSecurityCache.get(login), cache);
+		assertNotSame(RowLevelSecurityCache.get(new SimpleLogin()), cache);
+	}
+
+	@Test
+	public void groupIds()
+	{
+		assertNull(cache.getGroupIds(1));
+		cache.putGroupIds(1, Arrays.asList(2, 3));
+		assertEquals(cache.getGroupIds(1), Arrays.asList(2, 3));
+		// another user logged in
+		assertNull(cache.getGroupIds(4));
+	}
+
+	@Test
+	public void filterIsCopied()
+	{
+		QueryRule filter = new QueryRule("canRead", Operator.IN, Arrays.asList(2, 3));
+		cache.putFilter(1, Entity.class, "canRead", filter);
+		filter.setValue(Arrays.asList(4));
+
+		QueryRule cached = cache.getFilter(1, Entity.class, "canRead");
+		assertEquals(cached, new QueryRule("canRead", Operator.IN, Arrays.asList(2, 3)));
+		cached.setValue(Arrays.asList(5));
+		assertEquals(cache.getFilter(1, Entity.class, "canRead"), new QueryRule("canRead", Operator.IN, Arrays.asList(2,
+				3)));
+		assertNull(cache.getFilter(1, Entity.class, "canWrite"));
+	}
+
+	@Test
+	public void invalidateAll()
+	{
+		cache.putGroupIds(1, Arrays.asList(2));
+		cache.putFilter(1, Entity.class, "canRead", new QueryRule("canRead", Operator.IN, Arrays.asList(2)));
+		RowLevelSecurityCache.invalidateAll();
+		assertNull(cache.getGroupIds(1));
+		assertNull(cache.getFilter(1, Entity.class, "canRead"));
+	}
+
+	@Test
+	public void invalidateAllAfterCommit() throws DatabaseException
+	{
+		JDBCDatabase db = new JDBCDatabase(mock(Connection.class, RETURNS_DEEP_STUBS));
+		db.beginTx();
+		RowLevelSecurityCache.invalidateAll(db);
+		// another request looks up the groups before the change is committed
+		cache.putGroupIds(1, Arrays.asList(2));
+		db.commitTx();
+		assertNull(cache.getGroupIds(1));
+	}
+
+	@Test
+	public void invalidate()
+	{
+		cache.putGroupIds(1, Arrays.asList(2));
+		RowLevelSecurityCache.invalidate(login);
+		assertNull(RowLevelSecurityCache.get(login).getGroupIds(1));
+	}
+}
@@ -0,0 +1,38 @@
+package org.molgenis.framework.server;
+
+import static org.testng.Assert.assertEquals;
+
+import org.molgenis.framework.server.AccessLog.Histogram;
+import org.testng.annotations.Test;
+
+public class AccessLogTest
+{
+	@Test
+	public void log()
+	{
+		AccessLog accessLog = new AccessLog();
+		accessLog.log("/api/R", this, "/api/R/source.R", "localhost", "admin", 3);
+		accessLog.log("/api/R", this, "/api/R/source.R", "localhost", null, 5);
+		accessLog.log("/", this, "/index.html", "localhost", null, 0);
+
+		assertEquals(accessLog.getHistograms().keySet().toString(), "[/, /api/R]");
+		Histogram histogram = accessLog.getHistograms().get("/api/R");
+		assertEquals(histogram.getCount(), 2);
+		assertEquals(histogram.getTotalMillis(), 8);
+		assertEquals(histogram.toString(), "count=2 mean=4ms <4ms=1 <8ms=1");
+	}
+
+	@Test
+	public void histogramBuckets()
+	{
+		Histogram histogram = new Histogram();
+		histogram.add(0);
+		histogram.add(1);
+		histogram.add(Long.MAX_VALUE / 2);
+		assertEquals(histogram.getCount(0), 1);
+		assertEquals(histogram.getCount(1), 1);
+		assertEquals(histogram.getCount(Histogram.BUCKETS - 1), 1);
+		assertEquals(Histogram.getUpperBound(1), 2);
+		assertEquals(Histogram.getUpperBound(Histogram.BUCKETS - 1), Long.MAX_VALUE);
+	}
+}
@@ -0,0 +1,37 @@
+package org.molgenis.framework.server;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+public class ServiceRouterTest
+{
+	@Test
+	public void getServicePath()
+	{
+		Map<String, String> services = new LinkedHashMap<String, String>();
+		services.put("/api/R", "r");
+		services.put("/api/REST", "rest");
+		services.put("/", "files");
+		ServiceRouter<String> router = new ServiceRouter<String>(services);
+
+		assertEquals(router.getServicePath("/api/R/source.R"), "/api/R");
+		assertEquals(router.getServicePath("/api/REST/json"), "/api/REST");
+		assertEquals(router.getService("/api/REST/json"), "rest");
+		assertEquals(router.getServicePath("/api/find"), "/");
+		assertEquals(router.getService("/"), "files");
+		assertNull(router.getServicePath("molgenis.do"));
+	}
+
+	@Test
+	public void getServicePathNoServices()
+	{
+		ServiceRouter<String> router = new ServiceRouter<String>(new LinkedHashMap<String, String>());
+		assertNull(router.getServicePath("/api/R"));
+		assertNull(router.getService("/api/R"));
+	}
+}
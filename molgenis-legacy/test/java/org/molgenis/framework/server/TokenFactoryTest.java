@@ -0,0 +1,135 @@
+package org.molgenis.framework.server;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class TokenFactoryTest
+{
+	private TokenFactory tokenFactory;
+
+	@BeforeMethod
+	public void setUp()
+	{
+		tokenFactory = new TokenFactory();
+	}
+
+	@Test
+	public void makeNewToken() throws Exception
+	{
+		String uuid = tokenFactory.makeNewToken("admin", validFor(60000));
+		assertTrue(tokenFactory.checkIfTokenExists(uuid));
+		assertEquals(tokenFactory.getToken(uuid).getUserName(), "admin");
+		assertEquals(tokenFactory.getTokenIdsForUser("admin"), Arrays.asList(uuid));
+		assertEquals(tokenFactory.getAllTokens("admin").keySet(), Collections.singleton(uuid));
+		assertEquals(tokenFactory.getTokenIdsForUser("other").size(), 0);
+	}
+
+	@Test
+	public void makeNewTokenAnonymous()
+	{
+		assertNull(tokenFactory.makeNewToken("anonymous", validFor(60000)));
+	}
+
+	@Test
+	public void removeToken() throws Exception
+	{
+		String uuid = tokenFactory.makeNewToken("admin", validFor(60000));
+		tokenFactory.removeToken(uuid);
+		assertFalse(tokenFactory.checkIfTokenExists(uuid));
+		assertEquals(tokenFactory.getTokenIdsForUser("admin").size(), 0);
+	}
+
+	@Test(expectedExceptions = Exception.class)
+	public void removeTokenUnknown() throws Exception
+	{
+		tokenFactory.removeToken("unknown");
+	}
+
+	@Test
+	public void expiredTokens() throws Exception
+	{
+		String expired = tokenFactory.makeNewToken("admin", validFor(-1000));
+		String valid = tokenFactory.makeNewToken("admin", validFor(60000));
+		assertFalse(tokenFactory.checkIfTokenExists(expired));
+		assertTrue(tokenFactory.checkIfTokenExists(valid));
+		assertEquals(tokenFactory.getTokenIdsForUser("admin"), Arrays.asList(valid));
+	}
+
+	@Test
+	public void concurrentTokens() throws Exception
+	{
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try
+		{
+			List<Future<List<String>>> futures = new ArrayList<Future<List<String>>>();
+			for (int i = 0; i < 4; i++)
+			{
+				futures.add(executor.submit(new Callable<List<String>>()
+				{
+					@Override
+					public List<String> call() throws Exception
+					{
+						List<String> uuids = new ArrayList<String>();
+						for (int j = 0; j < 500; j++)
+						{
+							// every other token is expired at once
+							uuids.add(tokenFactory.makeNewToken("user", validFor(j % 2 == 0 ? -1000 : 60000)));
+							tokenFactory.invalidateTokens();
+						}
+						return uuids;
+					}
+				}));
+			}
+			for (Future<List<String>> future : futures)
+				future.get();
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+		assertEquals(tokenFactory.getTokenIdsForUser("user").size(), 1000);
+	}
+
+	@Test
+	public void stopSweeper() throws Exception
+	{
+		Thread sweeper = getSweeperThread();
+		assertTrue(sweeper.isDaemon());
+		TokenFactory.stopSweeper();
+		sweeper.join(10000);
+		assertFalse(sweeper.isAlive());
+		assertNull(getSweeperThread());
+
+		// a new factory starts a new thread
+		new TokenFactory();
+		assertTrue(getSweeperThread() != null);
+	}
+
+	/** the running sweeper thread, or null */
+	private static Thread getSweeperThread()
+	{
+		for (Thread thread : Thread.getAllStackTraces().keySet())
+			if (thread.getName().equals("TokenFactory sweeper") && thread.isAlive()) return thread;
+		return null;
+	}
+
+	private static Date validFor(long millis)
+	{
+		return new Date(System.currentTimeMillis() + millis);
+	}
+}
@@ -0,0 +1,147 @@
+package org.molgenis.io.excel;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+
+import org.apache.commons.io.IOUtils;
+import org.molgenis.io.TupleReader;
+import org.molgenis.io.processor.CellProcessor;
+import org.molgenis.util.tuple.Tuple;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class XlsStreamingReaderTest
+{
+	private static File XLS_FILE;
+	private XlsStreamingReader excelReader;
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws IOException
+	{
+		XLS_FILE = File.createTempFile("test", ".xls");
+		InputStream is = XlsStreamingReaderTest.class.getResourceAsStream("/test.xls");
+		FileOutputStream os = new FileOutputStream(XLS_FILE);
+		try
+		{
+			IOUtils.copy(is, os);
+		}
+		finally
+		{
+			IOUtils.closeQuietly(is);
+			IOUtils.closeQuietly(os);
+		}
+	}
+
+	@AfterClass
+	public static void tearDownAfterClass()
+	{
+		XLS_FILE.delete();
+	}
+
+	@BeforeMethod
+	public void setUp() throws IOException
+	{
+		excelReader = new XlsStreamingReader(XLS_FILE);
+	}
+
+	@AfterMethod
+	public void tearDown() throws IOException
+	{
+		excelReader.close();
+	}
+
+	@Test
+	public void getSheets()
+	{
+		assertEquals(excelReader.getNumberOfSheets(), 3);
+		assertEquals(excelReader.getSheetName(0), "test");
+		assertEquals(excelReader.getSheet("Blad2").getName(), "Blad2");
+		assertNull(excelReader.getSheet("doesnotexist"));
+	}
+
+	@Test
+	public void addCellProcessor() throws IOException
+	{
+		CellProcessor processor = when(mock(CellProcessor.class).processHeader()).thenReturn(true).getMock();
+		when(processor.processData()).thenReturn(true);
+		excelReader.addCellProcessor(processor);
+		for (TupleReader sheetReader : excelReader)
+			for (@SuppressWarnings("unused")
+			Tuple tuple : sheetReader)
+			{
+			}
+		verify(processor).process("col1");
+		verify(processor).process("col2");
+		verify(processor).process("val2");
+		verify(processor).process("val6");
+	}
+
+	@Test
+	public void iterator() throws IOException
+	{
+		StreamingSheetReader sheetReader = excelReader.getSheet("test");
+		Iterator<String> colNamesIt = sheetReader.colNamesIterator();
+		assertEquals(colNamesIt.next(), "col1");
+		assertEquals(colNamesIt.next(), "col2");
+		assertFalse(colNamesIt.hasNext());
+
+		Iterator<Tuple> it = sheetReader.iterator();
+		Tuple row1 = it.next();
+		assertEquals(row1.get("col1"), "val1");
+		assertEquals(row1.get("col2"), "val2");
+		it.next();
+		Tuple row3 = it.next();
+		assertEquals(row3.get("col1"), "XXX");
+		assertEquals(row3.get("col2"), "val6");
+
+		// test number cell (col1) and formula cell (col2)
+		Tuple row4 = it.next();
+		assertEquals(row4.get("col1"), "1.2");
+		assertEquals(row4.get("col2"), "2.4");
+		assertFalse(it.hasNext());
+
+		// a new iterator reads the sheet again
+		assertEquals(sheetReader.iterator().next().get("col1"), "val1");
+	}
+
+	@Test
+	public void iteratorEqualsExcelReader() throws IOException
+	{
+		ExcelReader expected = new ExcelReader(XLS_FILE);
+		try
+		{
+			for (int i = 0; i < expected.getNumberOfSheets(); ++i)
+			{
+				Iterator<Tuple> expectedIt = expected.getSheet(i).iterator();
+				Iterator<Tuple> it = excelReader.getSheet(i).iterator();
+				while (expectedIt.hasNext())
+				{
+					assertTrue(it.hasNext());
+					Tuple expectedTuple = expectedIt.next();
+					Tuple tuple = it.next();
+					for (String colName : expectedTuple.getColNames())
+						assertEquals(tuple.get(colName), expectedTuple.get(colName));
+				}
+				assertFalse(it.hasNext());
+			}
+		}
+		finally
+		{
+			expected.close();
+		}
+	}
+}
@@ -0,0 +1,150 @@
+package org.molgenis.io.excel;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.molgenis.util.tuple.Tuple;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class XlsxStreamingReaderTest
+{
+	private static final String MAIN = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+	private static final String RELATIONSHIPS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+
+	private static File XLSX_FILE;
+	private XlsxStreamingReader excelReader;
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws IOException
+	{
+		XLSX_FILE = File.createTempFile("test", ".xlsx");
+		ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(XLSX_FILE));
+		try
+		{
+			String type = "application/vnd.openxmlformats-officedocument.spreadsheetml.";
+			putEntry(zip, "[Content_Types].xml", "<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">"
+					+ "<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>"
+					+ "<Default Extension=\"xml\" ContentType=\"application/xml\"/>"
+					+ "<Override PartName=\"/xl/workbook.xml\" ContentType=\"" + type + "sheet.main+xml\"/>"
+					+ "<Override PartName=\"/xl/worksheets/sheet1.xml\" ContentType=\"" + type + "worksheet+xml\"/>"
+					+ "<Override PartName=\"/xl/worksheets/sheet2.xml\" ContentType=\"" + type + "worksheet+xml\"/>"
+					+ "<Override PartName=\"/xl/sharedStrings.xml\" ContentType=\"" + type + "sharedStrings+xml\"/>"
+					+ "<Override PartName=\"/xl/styles.xml\" ContentType=\"" + type + "styles+xml\"/></Types>");
+			putEntry(zip, "_rels/.rels", "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"
+					+ relationship("rId1", "officeDocument", "xl/workbook.xml") + "</Relationships>");
+			putEntry(zip, "xl/_rels/workbook.xml.rels",
+					"<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"
+							+ relationship("rId1", "worksheet", "worksheets/sheet1.xml")
+							+ relationship("rId2", "worksheet", "worksheets/sheet2.xml")
+							+ relationship("rId3", "sharedStrings", "sharedStrings.xml")
+							+ relationship("rId4", "styles", "styles.xml") + "</Relationships>");
+			putEntry(zip, "xl/workbook.xml", "<workbook xmlns=\"" + MAIN + "\" xmlns:r=\"" + RELATIONSHIPS + "\">"
+					+ "<workbookPr/><sheets><sheet name=\"test\" sheetId=\"1\" r:id=\"rId1\"/>"
+					+ "<sheet name=\"empty\" sheetId=\"2\" r:id=\"rId2\"/></sheets></workbook>");
+			putEntry(zip, "xl/sharedStrings.xml", "<sst xmlns=\"" + MAIN + "\" count=\"6\" uniqueCount=\"6\">"
+					+ "<si><t>string</t></si><si><t>number</t></si><si><t>date</t></si><si><t>formula</t></si>"
+					+ "<si><t>other</t></si><si><t>val1</t></si></sst>");
+			putEntry(zip, "xl/styles.xml", "<styleSheet xmlns=\"" + MAIN + "\">"
+					+ "<numFmts count=\"1\"><numFmt numFmtId=\"164\" formatCode=\"yyyy-mm-dd\"/></numFmts>"
+					+ "<cellXfs count=\"2\"><xf numFmtId=\"0\"/><xf numFmtId=\"164\" applyNumberFormat=\"1\"/></cellXfs>"
+					+ "</styleSheet>");
+			putEntry(zip, "xl/worksheets/sheet1.xml", "<worksheet xmlns=\"" + MAIN + "\"><sheetData>"
+					+ "<row r=\"1\"><c r=\"A1\" t=\"s\"><v>0</v></c><c r=\"B1\" t=\"s\"><v>1</v></c>"
+					+ "<c r=\"C1\" t=\"s\"><v>2</v></c><c r=\"D1\" t=\"s\"><v>3</v></c><c r=\"E1\" t=\"s\"><v>4</v></c></row>"
+					+ "<row r=\"2\"><c r=\"A2\" t=\"s\"><v>5</v></c><c r=\"B2\"><v>3</v></c>"
+					+ "<c r=\"C2\" s=\"1\"><v>41000</v></c><c r=\"D2\"><f>B2*1.5</f><v>4.5</v></c>"
+					+ "<c r=\"E2\" t=\"b\"><v>1</v></c></row><row r=\"3\"/>"
+					+ "<row r=\"4\"><c r=\"B4\"><v>1.25</v></c><c r=\"D4\" t=\"str\"><f>CONCATENATE(\"a\",\"b\")</f>"
+					+ "<v>ab</v></c><c r=\"E4\" t=\"inlineStr\"><is><t>inline</t></is></c></row>"
+					+ "</sheetData></worksheet>");
+			putEntry(zip, "xl/worksheets/sheet2.xml", "<worksheet xmlns=\"" + MAIN + "\"><sheetData/></worksheet>");
+		}
+		finally
+		{
+			zip.close();
+		}
+	}
+
+	private static String relationship(String id, String type, String target)
+	{
+		return "<Relationship Id=\"" + id + "\" Type=\"" + RELATIONSHIPS + "/" + type + "\" Target=\"" + target + "\"/>";
+	}
+
+	private static void putEntry(ZipOutputStream zip, String name, String xml) throws IOException
+	{
+		zip.putNextEntry(new ZipEntry(name));
+		zip.write(("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>" + xml).getBytes("UTF-8"));
+		zip.closeEntry();
+	}
+
+	@AfterClass
+	public static void tearDownAfterClass()
+	{
+		XLSX_FILE.delete();
+	}
+
+	@BeforeMethod
+	public void setUp() throws IOException
+	{
+		excelReader = new XlsxStreamingReader(XLSX_FILE);
+	}
+
+	@AfterMethod
+	public void tearDown() throws IOException
+	{
+		excelReader.close();
+	}
+
+	@Test
+	public void getSheets()
+	{
+		assertEquals(excelReader.getNumberOfSheets(), 2);
+		assertEquals(excelReader.getSheetName(1), "empty");
+		assertNull(excelReader.getSheet("doesnotexist"));
+		assertFalse(excelReader.getSheet("empty").iterator().hasNext());
+	}
+
+	@Test
+	public void iterator()
+	{
+		Iterator<Tuple> it = excelReader.getSheet("test").iterator();
+		Tuple row1 = it.next();
+		assertEquals(row1.get("string"), "val1");
+		assertEquals(row1.get("number"), "3");
+		assertEquals(row1.get("date"), DateUtil.getJavaDate(41000).toString());
+		assertEquals(row1.get("formula"), "4.5");
+		assertEquals(row1.get("other"), "true");
+
+		Tuple row2 = it.next();
+		assertEquals(row2.getNrCols(), 5);
+		assertNull(row2.get("string"));
+
+		Tuple row3 = it.next();
+		assertNull(row3.get("string"));
+		assertEquals(row3.get("number"), "1.25");
+		assertEquals(row3.get("formula"), "ab");
+		assertEquals(row3.get("other"), "inline");
+		assertFalse(it.hasNext());
+	}
+
+	@Test
+	public void toColumnIndex()
+	{
+		assertEquals(XlsxStreamingReader.toColumnIndex("A1"), 0);
+		assertEquals(XlsxStreamingReader.toColumnIndex("Z10"), 25);
+		assertEquals(XlsxStreamingReader.toColumnIndex("AB3"), 27);
+	}
+}
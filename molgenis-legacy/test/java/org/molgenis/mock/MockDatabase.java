@@ -3,6 +3,7 @@ package org.molgenis.mock;
 import java.io.File;
 import java.io.IOException;
 import java.sql.Connection;
+import java.util.Collections;
 import java.util.List;
 
 import javax.persistence.EntityManager;
@@ -17,7 +18,9 @@ import org.molgenis.framework.security.Login;
 import org.molgenis.io.TupleReader;
 import org.molgenis.io.TupleWriter;
 import org.molgenis.model.elements.Model;
+import org.molgenis.util.CloseableIterator;
 import org.molgenis.util.Entity;
+import org.molgenis.util.SimpleCloseableIterator;
 import org.molgenis.util.tuple.Tuple;
 
 /**
@@ -137,6 +140,15 @@ public class MockDatabase implements Database
 		return entities;
 	}
 
+	@SuppressWarnings("unchecked")
+	@Override
+	public <E extends Entity> CloseableIterator<E> iterate(Class<E> entityClass, QueryRule... rules)
+			throws DatabaseException
+	{
+		List<E> result = entities != null ? (List<E>) entities : Collections.<E> emptyList();
+		return new SimpleCloseableIterator<E>(result.iterator());
+	}
+
 	@Override
 	public <E extends Entity> void find(Class<E> entityClass, TupleWriter writer, QueryRule... rules)
 			throws DatabaseException
@@ -0,0 +1,79 @@
+package org.molgenis.model.elements;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.molgenis.fieldtypes.IntField;
+import org.molgenis.fieldtypes.StringField;
+import org.molgenis.fieldtypes.XrefField;
+import org.molgenis.model.MolgenisModelException;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class ModelTest
+{
+	private Model model;
+	private Entity superEntity;
+	private Entity subEntity;
+
+	@BeforeMethod
+	public void setUp() throws MolgenisModelException
+	{
+		model = new Model("test");
+		superEntity = new Entity("Super", model.getDatabase());
+		superEntity.addField(new Field(superEntity, "id", new IntField()));
+		superEntity.addField(new Field(superEntity, "name", new StringField()));
+		subEntity = new Entity("Sub", model.getDatabase());
+		subEntity.setParents(new String[]
+		{ "Super" });
+		subEntity.addField(new Field(subEntity, "other", new XrefField()));
+	}
+
+	@Test
+	public void freeze() throws MolgenisModelException
+	{
+		model.freeze();
+		assertTrue(model.isFrozen());
+
+		assertSame(model.getEntity("sUB"), subEntity);
+		assertNull(model.getEntity("Unknown"));
+		assertEquals(model.getEntities(), Arrays.asList(superEntity, subEntity));
+		assertEquals(superEntity.getDescendants(), Arrays.asList(subEntity));
+		assertEquals(subEntity.getDescendants().size(), 0);
+
+		assertEquals(subEntity.getAllFields().size(), 3);
+		assertEquals(subEntity.getAllField("NAME").getName(), "name");
+		assertEquals(subEntity.getAllFieldsOf(new XrefField()).size(), 1);
+		assertEquals(subEntity.getAllFieldsOf(new IntField()).size(), 1);
+		assertEquals(subEntity.getAllFieldsOf(new StringField()).size(), 1);
+	}
+
+	@Test
+	public void freezeReturnsCopies() throws MolgenisModelException
+	{
+		model.freeze();
+		model.getEntities().clear();
+		subEntity.getAllFields().clear();
+		assertEquals(model.getEntities().size(), 2);
+		assertEquals(subEntity.getAllFields().size(), 3);
+	}
+
+	@Test
+	public void changeUnfreezes() throws MolgenisModelException
+	{
+		model.freeze();
+		superEntity.addField(new Field(superEntity, "description", new StringField()));
+		assertFalse(model.isFrozen());
+		assertEquals(subEntity.getAllFields().size(), 4);
+
+		model.freeze();
+		Entity other = new Entity("Other", model.getDatabase());
+		assertFalse(model.isFrozen());
+		assertSame(model.getEntity("other"), other);
+	}
+}
@@ -129,6 +129,39 @@ public class SimpleTreeTest
 		assertNull(parent.getChild("child1"));
 	}
 
+	@Test
+	public void testSetParentMovesSubtree()
+	{
+		TestTree parent = new TestTree("parent", null);
+		TestTree sibling = new TestTree("sibling", parent);
+		TestTree child = new TestTree("child", null);
+		TestTree grandchild = new TestTree("grandchild", child);
+		child.setParent(parent);
+
+		assertEquals(2, parent.getChildren().size());
+		assertEquals(sibling, parent.getChildren().get(0));
+		assertEquals(child, parent.getChildren().get(1));
+		assertEquals(3, parent.getAllChildren().size());
+		assertEquals(grandchild, parent.getAllChildren().get(2));
+		assertEquals(grandchild, parent.get("grandchild"));
+		assertEquals(grandchild, sibling.get("grandchild"));
+		assertEquals(parent, grandchild.getRoot());
+		assertEquals("parent,child,grandchild", grandchild.getPath(","));
+	}
+
+	@Test
+	public void testSetName()
+	{
+		TestTree parent = new TestTree("parent", null);
+		TestTree child = new TestTree("child", parent);
+		parent.setName("renamed");
+
+		assertEquals(1, parent.getChildren().size());
+		assertEquals(parent, child.getParent());
+		assertEquals(parent, parent.get("renamed"));
+		assertNull(parent.get("parent"));
+	}
+
 	private static class TestTree extends SimpleTree<TestTree>
 	{
 		private static final long serialVersionUID = 2697117779184102294L;
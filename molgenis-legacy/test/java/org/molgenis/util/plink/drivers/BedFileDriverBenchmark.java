@@ -0,0 +1,144 @@
+package org.molgenis.util.plink.drivers;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+/**
+ * Compares reading all SNPs of a BED file with {@link BedFileDriver} (one
+ * String per genotype) and {@link MappedBedFileDriver} (one byte per genotype,
+ * decoded into a reused array), by SNP and by individual.
+ * <p>
+ * Generates a random SNP-major BED file, pass the number of SNPs and
+ * individuals to change its size, e.g. <code>500000 10002</code> for a genome
+ * wide file. BedFileDriver only reads the first SNPs, its time is extrapolated
+ * to all SNPs. Its padding check only accepts 4n+2 individuals, so the number
+ * of individuals is rounded to that.
+ */
+public class BedFileDriverBenchmark
+{
+	private static final int RUNS = 3;
+	private static final int MAX_BED_FILE_DRIVER_SNPS = 2000;
+
+	private final File bedFile;
+	private final int nrOfSnps;
+	private final int nrOfIndividuals;
+
+	public BedFileDriverBenchmark(File bedFile, int nrOfSnps, int nrOfIndividuals)
+	{
+		this.bedFile = bedFile;
+		this.nrOfSnps = nrOfSnps;
+		this.nrOfIndividuals = nrOfIndividuals;
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		int nrOfSnps = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		int nrOfIndividuals = args.length > 1 ? Integer.parseInt(args[1]) : 2002;
+		nrOfIndividuals = nrOfIndividuals / 4 * 4 + 2;
+
+		File bedFile = File.createTempFile("benchmark", ".bed");
+		try
+		{
+			writeBedFile(bedFile, nrOfSnps, nrOfIndividuals);
+			System.out.println("reading " + nrOfSnps + " SNPs x " + nrOfIndividuals + " individuals, best of " + RUNS
+					+ " runs");
+			BedFileDriverBenchmark benchmark = new BedFileDriverBenchmark(bedFile, nrOfSnps, nrOfIndividuals);
+			benchmark.run(true);
+			benchmark.run(false);
+			benchmark.runByIndividual();
+		}
+		finally
+		{
+			bedFile.delete();
+		}
+	}
+
+	private static void writeBedFile(File bedFile, int nrOfSnps, int nrOfIndividuals) throws IOException
+	{
+		Random random = new Random(0);
+		int bytesPerSnp = (nrOfIndividuals + 3) / 4;
+		int padding = bytesPerSnp * 4 - nrOfIndividuals;
+		byte[] snp = new byte[bytesPerSnp];
+		OutputStream os = new BufferedOutputStream(new FileOutputStream(bedFile));
+		try
+		{
+			os.write(new byte[]
+			{ 108, 27, 1 });
+			for (int i = 0; i < nrOfSnps; ++i)
+			{
+				random.nextBytes(snp);
+				// padding bit pairs of the last byte are 0
+				if (padding > 0) snp[bytesPerSnp - 1] &= 0xff >>> (padding * 2);
+				os.write(snp);
+			}
+		}
+		finally
+		{
+			os.close();
+		}
+	}
+
+	private void run(boolean bedFileDriver) throws Exception
+	{
+		long best = Long.MAX_VALUE;
+		long checksum = 0;
+		int snps = bedFileDriver ? Math.min(nrOfSnps, MAX_BED_FILE_DRIVER_SNPS) : nrOfSnps;
+		for (int run = 0; run < RUNS; ++run)
+		{
+			long start = System.nanoTime();
+			checksum = bedFileDriver ? readBedFileDriver(snps) : readMappedBedFileDriver();
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		long allSnps = best / snps * nrOfSnps;
+		System.out.println((bedFileDriver ? "BedFileDriver" : "MappedBedFileDriver") + " by SNP: " + allSnps
+				/ 1000000 + " ms (checksum " + checksum + ")");
+	}
+
+	private long readBedFileDriver(int snps) throws Exception
+	{
+		BedFileDriver driver = new BedFileDriver(bedFile);
+		int padding = ((nrOfIndividuals + 3) / 4) * 4 - nrOfIndividuals;
+		long checksum = 0;
+		for (int snp = 0; snp < snps; ++snp)
+		{
+			long from = (long) snp * nrOfIndividuals;
+			for (String element : driver.getElements(from, from + nrOfIndividuals, padding, snp))
+				if (element.equals("01")) ++checksum;
+		}
+		return checksum;
+	}
+
+	private long readMappedBedFileDriver() throws IOException
+	{
+		MappedBedFileDriver driver = new MappedBedFileDriver(bedFile, nrOfSnps, nrOfIndividuals);
+		byte[] genotypes = new byte[nrOfIndividuals];
+		long checksum = 0;
+		for (int snp = 0; snp < nrOfSnps; ++snp)
+		{
+			driver.getSnp(snp, genotypes);
+			for (byte genotype : genotypes)
+				if (genotype == MappedBedFileDriver.HET) ++checksum;
+		}
+		return checksum;
+	}
+
+	private void runByIndividual() throws IOException
+	{
+		MappedBedFileDriver driver = new MappedBedFileDriver(bedFile, nrOfSnps, nrOfIndividuals);
+		int individuals = Math.min(nrOfIndividuals, 100);
+		byte[] genotypes = new byte[nrOfSnps];
+		long best = Long.MAX_VALUE;
+		for (int run = 0; run < RUNS; ++run)
+		{
+			long start = System.nanoTime();
+			for (int individual = 0; individual < individuals; ++individual)
+				driver.getIndividual(individual, genotypes);
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		System.out.println("MappedBedFileDriver by individual: " + best / individuals / 1000 + " us per individual");
+	}
+}
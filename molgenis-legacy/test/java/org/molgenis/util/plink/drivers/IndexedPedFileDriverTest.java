@@ -0,0 +1,171 @@
+package org.molgenis.util.plink.drivers;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.function.Predicate;
+
+import org.apache.commons.io.FileUtils;
+import org.molgenis.util.plink.datatypes.Biallele;
+import org.molgenis.util.plink.datatypes.PackedPedEntry;
+import org.molgenis.util.plink.datatypes.PedEntry;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class IndexedPedFileDriverTest extends AbstractResourceTest
+{
+	private File pedFile;
+	private IndexedPedFileDriver pedfd;
+
+	@BeforeClass
+	public void setup() throws Exception
+	{
+		// copy the file, the index is written next to it
+		pedFile = File.createTempFile("test", ".ped");
+		FileUtils.copyFile(getTestResource("/test.ped"), pedFile);
+		pedfd = new IndexedPedFileDriver(pedFile);
+	}
+
+	@AfterClass
+	public void close() throws IOException
+	{
+		pedfd.close();
+		pedfd.getIndexFile().delete();
+		pedFile.delete();
+	}
+
+	@Test
+	public void getNrOfElements() throws Exception
+	{
+		assertEquals(pedfd.getNrOfElements(), 6);
+		assertTrue(pedfd.getIndexFile().exists());
+		assertEquals(new IndexedPedFileDriver(pedFile).getNrOfElements(), 6);
+	}
+
+	@Test
+	public void getEntriesEqualsPedFileDriver() throws Exception
+	{
+		PedFileDriver expectedfd = new PedFileDriver(getTestResource("/test.ped"));
+		try
+		{
+			List<PedEntry> expected = expectedfd.getAllEntries();
+			for (int from = 0; from < expected.size(); ++from)
+			{
+				List<PackedPedEntry> entries = pedfd.getEntries(from, expected.size());
+				assertEquals(entries.size(), expected.size() - from);
+				for (int i = 0; i < entries.size(); ++i)
+				{
+					PedEntry expectedEntry = expected.get(from + i);
+					PackedPedEntry entry = entries.get(i);
+					assertEquals(entry.getFamily(), expectedEntry.getFamily());
+					assertEquals(entry.getIndividual(), expectedEntry.getIndividual());
+					assertEquals(entry.getPhenotype(), expectedEntry.getPhenotype());
+					assertEquals(entry.getNrOfGenotypes(), expectedEntry.getBialleles().size());
+					for (int snp = 0; snp < entry.getNrOfGenotypes(); ++snp)
+						assertEquals(entry.getBiallele(snp).toString(), expectedEntry.getBialleles().get(snp)
+								.toString());
+				}
+			}
+		}
+		finally
+		{
+			expectedfd.close();
+		}
+	}
+
+	@Test
+	public void getEntry() throws Exception
+	{
+		PackedPedEntry entry = pedfd.getEntry(5);
+		assertEquals(entry.getFamily(), "6");
+		assertEquals(entry.getAllele1(1), 'T');
+		assertEquals(entry.getAllele2(1), 'T');
+	}
+
+	@Test
+	public void getEntriesPredicate() throws Exception
+	{
+		List<PackedPedEntry> entries = pedfd.getEntries(new Predicate<PackedPedEntry>()
+		{
+			@Override
+			public boolean test(PackedPedEntry entry)
+			{
+				return entry.getPhenotype() == 2.0 && entry.getAllele1(1) == 'T';
+			}
+		});
+		assertEquals(entries.size(), 2);
+		assertEquals(entries.get(0).getFamily(), "4");
+	}
+
+	@Test
+	public void rebuildIndex() throws Exception
+	{
+		File file = File.createTempFile("rebuild", ".ped");
+		try
+		{
+			FileUtils.writeStringToFile(file, "1 1 0 0 1 1.0 A A\n\n2 1 0 0 1 1.0 A C\n", "UTF-8");
+			assertEquals(new IndexedPedFileDriver(file).getEntry(1).getFamily(), "2");
+			FileUtils.writeStringToFile(file, "1 1 0 0 1 1.0 A A\r\n3 1 0 0 1 1.0 G G\r\n4 1 0 0 1 1.0 T T", "UTF-8");
+			file.setLastModified(file.lastModified() + 2000);
+			IndexedPedFileDriver driver = new IndexedPedFileDriver(file);
+			assertEquals(driver.getNrOfElements(), 3);
+			assertEquals(driver.getEntry(2).getFamily(), "4");
+			assertEquals(driver.getEntries(1, 3).get(0).getAllele2(0), 'G');
+		}
+		finally
+		{
+			new File(file.getPath() + AbstractIndexedFileDriver.INDEX_EXTENSION).delete();
+			file.delete();
+		}
+	}
+
+	@Test
+	public void otherAlleles() throws Exception
+	{
+		File file = File.createTempFile("alleles", ".ped");
+		try
+		{
+			// alleles are kept as they are, like PedFileDriver does
+			FileUtils.writeStringToFile(file, "1 1 0 0 1 1.0 a c X 0\n2 1 0 0 1 1.0 A a 0 X\n", "UTF-8");
+			IndexedPedFileDriver driver = new IndexedPedFileDriver(file);
+			List<PackedPedEntry> entries = driver.getAllEntries();
+			assertEquals(entries.get(0).getBiallele(0).toString(), Biallele.create('a', 'c').toString());
+			assertEquals(entries.get(0).getAllele1(1), 'X');
+			assertEquals(entries.get(1).getAllele1(0), 'A');
+			assertEquals(entries.get(1).getAllele2(0), 'a');
+			assertEquals(entries.get(1).getAllele2(1), 'X');
+			assertEquals(driver.getAlleles().getNrOfAlleles(), 5);
+		}
+		finally
+		{
+			new File(file.getPath() + AbstractIndexedFileDriver.INDEX_EXTENSION).delete();
+			file.delete();
+		}
+	}
+
+	@Test(expectedExceptions = IOException.class)
+	public void multiCharacterAllele() throws Exception
+	{
+		File file = File.createTempFile("alleles", ".ped");
+		try
+		{
+			FileUtils.writeStringToFile(file, "1 1 0 0 1 1.0 AC A\n", "UTF-8");
+			new IndexedPedFileDriver(file).getEntry(0);
+		}
+		finally
+		{
+			new File(file.getPath() + AbstractIndexedFileDriver.INDEX_EXTENSION).delete();
+			file.delete();
+		}
+	}
+
+	@Test(expectedExceptions = IndexOutOfBoundsException.class)
+	public void getEntriesOutOfBounds() throws Exception
+	{
+		pedfd.getEntries(2, 7);
+	}
+}
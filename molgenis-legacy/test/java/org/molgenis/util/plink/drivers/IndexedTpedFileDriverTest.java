@@ -0,0 +1,66 @@
+package org.molgenis.util.plink.drivers;
+
+import static org.testng.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.function.Predicate;
+
+import org.apache.commons.io.FileUtils;
+import org.molgenis.util.plink.datatypes.PackedTpedEntry;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class IndexedTpedFileDriverTest extends AbstractResourceTest
+{
+	private File tpedFile;
+	private IndexedTpedFileDriver tpedfd;
+
+	@BeforeClass
+	public void setup() throws Exception
+	{
+		// copy the file, the index is written next to it
+		tpedFile = File.createTempFile("test", ".tped");
+		FileUtils.copyFile(getTestResource("/test.tped"), tpedFile);
+		tpedfd = new IndexedTpedFileDriver(tpedFile);
+	}
+
+	@AfterClass
+	public void close() throws IOException
+	{
+		tpedfd.close();
+		tpedfd.getIndexFile().delete();
+		tpedFile.delete();
+	}
+
+	@Test
+	public void getEntries() throws Exception
+	{
+		assertEquals(tpedfd.getNrOfElements(), 2);
+
+		PackedTpedEntry snp2 = tpedfd.getEntry(1);
+		assertEquals(snp2.getSNP(), "snp2");
+		assertEquals(snp2.getBpPos(), 5000830);
+		assertEquals(snp2.getNrOfGenotypes(), 6);
+		assertEquals(snp2.getAllele1(3), 'T');
+		assertEquals(snp2.getAllele2(3), 'T');
+		assertEquals(snp2.getBiallele(0).toString(), "G T");
+	}
+
+	@Test
+	public void getEntriesPredicate() throws Exception
+	{
+		List<PackedTpedEntry> entries = tpedfd.getEntries(new Predicate<PackedTpedEntry>()
+		{
+			@Override
+			public boolean test(PackedTpedEntry entry)
+			{
+				return entry.getAllele2(1) == 'C';
+			}
+		});
+		assertEquals(entries.size(), 1);
+		assertEquals(entries.get(0).getSNP(), "snp1");
+	}
+}
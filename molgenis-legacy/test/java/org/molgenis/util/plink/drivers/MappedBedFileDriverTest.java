@@ -0,0 +1,119 @@
+package org.molgenis.util.plink.drivers;
+
+import static org.testng.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class MappedBedFileDriverTest extends AbstractResourceTest
+{
+	private static final byte HOM1 = MappedBedFileDriver.HOM1;
+	private static final byte HET = MappedBedFileDriver.HET;
+	private static final byte HOM2 = MappedBedFileDriver.HOM2;
+
+	private MappedBedFileDriver bedfd;
+
+	@BeforeClass
+	public void setup() throws Exception
+	{
+		bedfd = new MappedBedFileDriver(getTestResource("/test.bed"), getTestResource("/test.bim"),
+				getTestResource("/test.fam"));
+	}
+
+	@Test
+	public void construct()
+	{
+		assertEquals(bedfd.getMode(), 1);
+		assertEquals(bedfd.getNrOfSnps(), 2);
+		assertEquals(bedfd.getNrOfIndividuals(), 6);
+	}
+
+	@Test(expectedExceptions = IOException.class)
+	public void constructTooSmall() throws IOException
+	{
+		new MappedBedFileDriver(getTestResource("/test.bed"), 3, 6);
+	}
+
+	@Test
+	public void getSnp()
+	{
+		assertEquals(bedfd.getSnp(0, null), new byte[]
+		{ HOM1, HET, HOM2, HET, HOM2, HOM2 });
+		assertEquals(bedfd.getSnp(1, new byte[6]), new byte[]
+		{ HET, HET, HOM1, HOM2, HET, HOM2 });
+		assertEquals(bedfd.getSnp(1, new int[]
+		{ 5, 2 }, null), new byte[]
+		{ HOM2, HOM1 });
+	}
+
+	@Test
+	public void getIndividual()
+	{
+		assertEquals(bedfd.getIndividual(3, null), new byte[]
+		{ HET, HOM2 });
+		assertEquals(bedfd.getIndividual(2, new int[]
+		{ 1 }, null), new byte[]
+		{ HOM1 });
+		assertEquals(bedfd.get(1, 2), HOM1);
+	}
+
+	@Test
+	public void getAlleleCounts()
+	{
+		assertEquals(bedfd.getAlleleCounts(0, null), new int[]
+		{ 0, 1, 2, 1, 2, 2 });
+	}
+
+	@Test
+	public void equalsBedFileDriver() throws Exception
+	{
+		BedFileDriver expected = new BedFileDriver(getTestResource("/test.bed"));
+		String[] elements = expected.getElements(6, 12, 2, 1);
+		byte[] snp = bedfd.getSnp(1, null);
+		for (int i = 0; i < elements.length; ++i)
+			assertEquals(MappedBedFileDriver.convertGenoCoding(snp[i], "A", "B", "H", "N"),
+					expected.genoCodingCommon(elements[i]));
+	}
+
+	@Test
+	public void concurrentReaders() throws Exception
+	{
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try
+		{
+			List<Future<byte[]>> futures = new ArrayList<Future<byte[]>>();
+			for (int i = 0; i < 100; ++i)
+			{
+				final int snp = i % 2;
+				futures.add(executor.submit(new Callable<byte[]>()
+				{
+					@Override
+					public byte[] call()
+					{
+						return bedfd.getSnp(snp, null);
+					}
+				}));
+			}
+			for (int i = 0; i < futures.size(); ++i)
+				assertEquals(futures.get(i).get(), bedfd.getSnp(i % 2, null));
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+
+	@Test(expectedExceptions = IndexOutOfBoundsException.class)
+	public void getSnpOutOfBounds()
+	{
+		bedfd.getSnp(2, null);
+	}
+}
@@ -0,0 +1,110 @@
+package org.molgenis.util.plink.readers;
+
+import static org.testng.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class BedBimFamReaderTest
+{
+	private static final int NR_OF_SNPS = 2500;
+	// the padding check of BedFileDriver needs 4n+2 individuals
+	private static final int NR_OF_INDIVIDUALS = 10;
+
+	private File dir;
+	private File bed;
+	private File bim;
+	private File fam;
+
+	@BeforeClass
+	public void setUp() throws IOException
+	{
+		dir = File.createTempFile("plink", "");
+		dir.delete();
+		dir.mkdir();
+		bed = new File(dir, "test.bed");
+		bim = new File(dir, "test.bim");
+		fam = new File(dir, "test.fam");
+
+		Random random = new Random(0);
+		byte[] snp = new byte[(NR_OF_INDIVIDUALS + 3) / 4];
+		OutputStream bedOut = new FileOutputStream(bed);
+		PrintWriter bimOut = new PrintWriter(bim, "UTF-8");
+		try
+		{
+			bedOut.write(new byte[]
+			{ 108, 27, 1 });
+			for (int i = 0; i < NR_OF_SNPS; ++i)
+			{
+				random.nextBytes(snp);
+				snp[snp.length - 1] &= 0x0f;
+				bedOut.write(snp);
+				bimOut.print("1 snp" + i + " 0.0 " + i + " A C\n");
+			}
+		}
+		finally
+		{
+			bedOut.close();
+			bimOut.close();
+		}
+
+		PrintWriter famOut = new PrintWriter(fam, "UTF-8");
+		try
+		{
+			for (int i = 0; i < NR_OF_INDIVIDUALS; ++i)
+				famOut.print("1 ind" + i + " 0 0 1 1.0\n");
+		}
+		finally
+		{
+			famOut.close();
+		}
+	}
+
+	@AfterClass
+	public void tearDown() throws IOException
+	{
+		FileUtils.deleteDirectory(dir);
+	}
+
+	@Test
+	public void extractGenotypesParallel() throws Exception
+	{
+		File expected = new File(dir, "expected.txt");
+		new BedBimFamReader(bed, bim, fam).extractGenotypes(expected);
+
+		final long[] progress = new long[2];
+		File actual = new File(dir, "actual.txt");
+		new BedBimFamReader(bed, bim, fam).extractGenotypes(actual, 3, new BedBimFamReader.ProgressListener()
+		{
+			@Override
+			public void progress(long nrOfSnpsDone, long nrOfSnps)
+			{
+				assertEquals(nrOfSnps, NR_OF_SNPS);
+				progress[0]++;
+				progress[1] = nrOfSnpsDone;
+			}
+		});
+
+		assertEquals(FileUtils.readFileToByteArray(actual), FileUtils.readFileToByteArray(expected));
+		assertEquals(progress[0], 3);
+		assertEquals(progress[1], NR_OF_SNPS);
+	}
+
+	@Test(expectedExceptions = Exception.class, expectedExceptionsMessageRegExp = ".*'ind0' is not unique.*")
+	public void extractGenotypesDuplicateIndividual() throws Exception
+	{
+		File duplicateFam = new File(dir, "duplicate.fam");
+		FileUtils.writeStringToFile(duplicateFam, FileUtils.readFileToString(fam, "UTF-8").replace("ind1 ", "ind0 "),
+				"UTF-8");
+		new BedBimFamReader(bed, bim, duplicateFam).extractGenotypes(new File(dir, "duplicate.txt"), 2, null);
+	}
+}
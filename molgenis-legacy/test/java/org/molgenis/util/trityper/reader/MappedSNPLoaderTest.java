@@ -0,0 +1,152 @@
+package org.molgenis.util.trityper.reader;
+
+import static org.testng.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class MappedSNPLoaderTest
+{
+	private static final int NUM_SNPS = 20;
+	private static final int NUM_INDIVIDUALS = 5;
+
+	private File genotypeFile;
+	private File dosageFile;
+	private Boolean[] isIncluded;
+	private Boolean[] isFemale;
+	private byte[] dosages;
+
+	private SNPLoader snpLoader;
+	private MappedSNPLoader mappedSnpLoader;
+
+	@BeforeClass
+	public void setUpBeforeClass() throws IOException
+	{
+		genotypeFile = File.createTempFile("GenotypeMatrix", ".dat");
+		dosageFile = File.createTempFile("ImputedDosageMatrix", ".dat");
+
+		Random random = new Random(0);
+		byte[] bases = new byte[]
+		{ 0, 'A', 'C' };
+		byte[] genotypes = new byte[NUM_SNPS * NUM_INDIVIDUALS * 2];
+		for (int i = 0; i < genotypes.length; ++i)
+			genotypes[i] = bases[random.nextInt(bases.length)];
+		dosages = new byte[NUM_SNPS * NUM_INDIVIDUALS];
+		for (int i = 0; i < dosages.length; ++i)
+			dosages[i] = (byte) (random.nextInt(201) + Byte.MIN_VALUE);
+		FileUtils.writeByteArrayToFile(genotypeFile, genotypes);
+		FileUtils.writeByteArrayToFile(dosageFile, dosages);
+
+		isIncluded = new Boolean[]
+		{ true, true, false, true, null };
+		isFemale = new Boolean[]
+		{ true, false, true, false, true };
+	}
+
+	@AfterClass
+	public void tearDownAfterClass()
+	{
+		genotypeFile.delete();
+		dosageFile.delete();
+	}
+
+	@BeforeMethod
+	public void setUp() throws IOException
+	{
+		snpLoader = new SNPLoader(new RandomAccessFile(genotypeFile, "r"), new RandomAccessFile(dosageFile, "r"),
+				isIncluded, isFemale);
+		snpLoader.setNumIndividuals(NUM_INDIVIDUALS);
+		mappedSnpLoader = new MappedSNPLoader(genotypeFile, dosageFile, NUM_INDIVIDUALS, isIncluded, isFemale);
+	}
+
+	@AfterMethod
+	public void tearDown() throws IOException
+	{
+		snpLoader.close();
+	}
+
+	private static SNP createSNP(int id)
+	{
+		SNP snp = new SNP();
+		snp.setId(id);
+		snp.setChr((byte) 1);
+		return snp;
+	}
+
+	@Test
+	public void getNumSNPs()
+	{
+		assertEquals(mappedSnpLoader.getNumSNPs(), NUM_SNPS);
+		assertEquals(mappedSnpLoader.hasDosageInformation(), true);
+	}
+
+	@Test
+	public void loadGenotypesEqualsSNPLoader()
+	{
+		byte[] allele1 = new byte[NUM_INDIVIDUALS];
+		byte[] allele2 = new byte[NUM_INDIVIDUALS];
+		byte[] dosage = new byte[NUM_INDIVIDUALS];
+		for (int i = NUM_SNPS - 1; i >= 0; --i)
+		{
+			SNP expected = createSNP(i);
+			snpLoader.loadGenotypes(expected);
+			snpLoader.loadDosage(expected);
+
+			SNP snp = createSNP(i);
+			mappedSnpLoader.loadGenotypes(snp, allele1, allele2);
+			mappedSnpLoader.loadDosage(snp, dosage);
+			assertEquals(snp.getAllele1(), expected.getAllele1());
+			assertEquals(snp.getAllele2(), expected.getAllele2());
+			assertEquals(snp.getGenotypes(), expected.getGenotypes());
+			assertEquals(snp.getDosageValues(), expected.getDosageValues());
+			assertEquals(snp.getMAF(), expected.getMAF());
+
+			SNP newArrays = createSNP(i);
+			mappedSnpLoader.loadGenotypes(newArrays);
+			mappedSnpLoader.loadDosage(newArrays);
+			assertEquals(newArrays.getDosageValues(), expected.getDosageValues());
+		}
+	}
+
+	@Test
+	public void loadBatch()
+	{
+		final int[] snpIds = new int[]
+		{ 17, 3, 11, 4 };
+		final List<Integer> loaded = new ArrayList<Integer>();
+		mappedSnpLoader.setReadAhead(NUM_INDIVIDUALS * 3);
+		mappedSnpLoader.loadBatch(snpIds, new MappedSNPLoader.SNPHandler()
+		{
+			@Override
+			public void handle(int snpId, byte[] allele1, byte[] allele2, byte[] dosage)
+			{
+				SNP expected = createSNP(snpId);
+				snpLoader.loadGenotypes(expected);
+				assertEquals(allele1, expected.getAllele1());
+				assertEquals(allele2, expected.getAllele2());
+				assertEquals(dosage,
+						Arrays.copyOfRange(dosages, snpId * NUM_INDIVIDUALS, (snpId + 1) * NUM_INDIVIDUALS));
+				loaded.add(snpId);
+			}
+		});
+		assertEquals(loaded, Arrays.asList(3, 4, 11, 17));
+	}
+
+	@Test(expectedExceptions = IndexOutOfBoundsException.class)
+	public void loadGenotypesOutOfBounds()
+	{
+		mappedSnpLoader.loadGenotypes(NUM_SNPS, new byte[NUM_INDIVIDUALS], new byte[NUM_INDIVIDUALS]);
+	}
+}
@@ -0,0 +1,176 @@
+package org.molgenis.util.trityper.reader;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Compares scanning all SNPs of a TriTyper genotype and dosage matrix with
+ * {@link SNPLoader} (a seek and read per SNP into new arrays) and
+ * {@link MappedSNPLoader} (per SNP into reused arrays, and as one sorted
+ * batch). Reports the total scan time and the mean load latency per SNP.
+ * <p>
+ * Generates random GenotypeMatrix.dat and ImputedDosageMatrix.dat files, pass
+ * the number of SNPs and individuals to change their size. Only the files are
+ * read, the SNP statistics of {@link SNP#setAlleles} are not computed.
+ */
+public class SNPLoaderBenchmark
+{
+	private static final int RUNS = 3;
+
+	private final File genotypeFile;
+	private final File dosageFile;
+	private final int numSNPs;
+	private final int numIndividuals;
+
+	public SNPLoaderBenchmark(File genotypeFile, File dosageFile, int numSNPs, int numIndividuals)
+	{
+		this.genotypeFile = genotypeFile;
+		this.dosageFile = dosageFile;
+		this.numSNPs = numSNPs;
+		this.numIndividuals = numIndividuals;
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		int numSNPs = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+		int numIndividuals = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+
+		File genotypeFile = File.createTempFile("GenotypeMatrix", ".dat");
+		File dosageFile = File.createTempFile("ImputedDosageMatrix", ".dat");
+		try
+		{
+			Random random = new Random(0);
+			writeMatrix(genotypeFile, numSNPs, numIndividuals * 2, random);
+			writeMatrix(dosageFile, numSNPs, numIndividuals, random);
+			System.out.println("loading " + numSNPs + " SNPs x " + numIndividuals + " individuals, best of " + RUNS
+					+ " runs");
+			SNPLoaderBenchmark benchmark = new SNPLoaderBenchmark(genotypeFile, dosageFile, numSNPs, numIndividuals);
+			for (Strategy strategy : Strategy.values())
+			{
+				benchmark.run(strategy);
+			}
+		}
+		finally
+		{
+			genotypeFile.delete();
+			dosageFile.delete();
+		}
+	}
+
+	private static void writeMatrix(File file, int numSNPs, int snpSize, Random random) throws IOException
+	{
+		byte[] snp = new byte[snpSize];
+		OutputStream os = new BufferedOutputStream(new FileOutputStream(file));
+		try
+		{
+			for (int i = 0; i < numSNPs; ++i)
+			{
+				random.nextBytes(snp);
+				os.write(snp);
+			}
+		}
+		finally
+		{
+			os.close();
+		}
+	}
+
+	private enum Strategy
+	{
+		RANDOM_ACCESS_FILE, MAPPED, MAPPED_BATCH
+	}
+
+	private void run(Strategy strategy) throws IOException
+	{
+		long best = Long.MAX_VALUE;
+		long checksum = 0;
+		for (int run = 0; run < RUNS; ++run)
+		{
+			long start = System.nanoTime();
+			switch (strategy)
+			{
+				case RANDOM_ACCESS_FILE:
+					checksum = scanRandomAccessFile();
+					break;
+				case MAPPED:
+					checksum = scanMapped();
+					break;
+				case MAPPED_BATCH:
+					checksum = scanMappedBatch();
+					break;
+			}
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		System.out.println(strategy + ": " + best / 1000000 + " ms, " + best / numSNPs + " ns per SNP (checksum "
+				+ checksum + ")");
+	}
+
+	/** reads like SNPLoader.loadGenotypes and loadDosage */
+	private long scanRandomAccessFile() throws IOException
+	{
+		RandomAccessFile genotypeHandle = new RandomAccessFile(genotypeFile, "r");
+		RandomAccessFile dosageHandle = new RandomAccessFile(dosageFile, "r");
+		long checksum = 0;
+		try
+		{
+			for (int snp = 0; snp < numSNPs; ++snp)
+			{
+				byte[] alleles = new byte[numIndividuals * 2];
+				genotypeHandle.seek((long) snp * alleles.length);
+				genotypeHandle.read(alleles, 0, alleles.length);
+				byte[] allele1 = Arrays.copyOfRange(alleles, 0, numIndividuals);
+				byte[] allele2 = Arrays.copyOfRange(alleles, numIndividuals, alleles.length);
+				byte[] dosage = new byte[numIndividuals];
+				dosageHandle.seek((long) snp * numIndividuals);
+				dosageHandle.read(dosage, 0, numIndividuals);
+				checksum += allele1[0] + allele2[0] + dosage[0];
+			}
+		}
+		finally
+		{
+			genotypeHandle.close();
+			dosageHandle.close();
+		}
+		return checksum;
+	}
+
+	private long scanMapped() throws IOException
+	{
+		MappedSNPLoader loader = new MappedSNPLoader(genotypeFile, dosageFile, numIndividuals, null, null);
+		byte[] allele1 = new byte[numIndividuals];
+		byte[] allele2 = new byte[numIndividuals];
+		byte[] dosage = new byte[numIndividuals];
+		long checksum = 0;
+		for (int snp = 0; snp < numSNPs; ++snp)
+		{
+			loader.loadGenotypes(snp, allele1, allele2);
+			loader.loadDosage(snp, dosage);
+			checksum += allele1[0] + allele2[0] + dosage[0];
+		}
+		return checksum;
+	}
+
+	private long scanMappedBatch() throws IOException
+	{
+		MappedSNPLoader loader = new MappedSNPLoader(genotypeFile, dosageFile, numIndividuals, null, null);
+		int[] snpIds = new int[numSNPs];
+		for (int snp = 0; snp < numSNPs; ++snp)
+			snpIds[snp] = snp;
+		final long[] checksum = new long[1];
+		loader.loadBatch(snpIds, new MappedSNPLoader.SNPHandler()
+		{
+			@Override
+			public void handle(int snpId, byte[] allele1, byte[] allele2, byte[] dosage)
+			{
+				checksum[0] += allele1[0] + allele2[0] + dosage[0];
+			}
+		});
+		return checksum[0];
+	}
+}
@@ -0,0 +1,121 @@
+package org.molgenis.util.trityper.reader;
+
+import static org.testng.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class SNPQCCalculatorTest
+{
+	private static final int NUM_SNPS = 3000;
+	private static final int NUM_INDIVIDUALS = 150;
+
+	private File genotypeFile;
+	private byte[] genotypes;
+	private byte[] chr;
+	private Boolean[] isIncluded;
+	private Boolean[] isFemale;
+	private SNPQCCalculator calculator;
+
+	@BeforeClass
+	public void setUp() throws IOException
+	{
+		Random random = new Random(0);
+		genotypes = new byte[NUM_SNPS * NUM_INDIVIDUALS * 2];
+		chr = new byte[NUM_SNPS];
+		for (int snp = 0; snp < NUM_SNPS; ++snp)
+		{
+			chr[snp] = (byte) (snp % 10 == 0 ? 23 : 1 + snp % 22);
+			// some SNPs have a third allele or are monomorphic
+			byte[] bases = snp % 50 == 0 ? new byte[]
+			{ 0, 'A', 'C', 'G' } : snp % 7 == 0 ? new byte[]
+			{ 0, 'T' } : new byte[]
+			{ 0, 'A', 'G', 'G' };
+			for (int i = 0; i < NUM_INDIVIDUALS * 2; ++i)
+				genotypes[snp * NUM_INDIVIDUALS * 2 + i] = bases[random.nextInt(bases.length)];
+		}
+		genotypeFile = File.createTempFile("GenotypeMatrix", ".dat");
+		FileUtils.writeByteArrayToFile(genotypeFile, genotypes);
+
+		isIncluded = new Boolean[NUM_INDIVIDUALS];
+		isFemale = new Boolean[NUM_INDIVIDUALS];
+		for (int ind = 0; ind < NUM_INDIVIDUALS; ++ind)
+		{
+			isIncluded[ind] = ind % 11 == 0 ? null : ind % 5 != 0;
+			isFemale[ind] = ind % 3 == 0;
+		}
+
+		MappedSNPLoader loader = new MappedSNPLoader(genotypeFile, null, NUM_INDIVIDUALS, isIncluded, isFemale);
+		calculator = new SNPQCCalculator(loader, chr, isIncluded, isFemale, 3);
+	}
+
+	@AfterClass
+	public void tearDown()
+	{
+		genotypeFile.delete();
+	}
+
+	private SNP createSNP(int id, Boolean[] included)
+	{
+		SNP snp = new SNP();
+		snp.setId(id);
+		snp.setChr(chr[id]);
+		int offset = id * NUM_INDIVIDUALS * 2;
+		byte[] allele1 = new byte[NUM_INDIVIDUALS];
+		byte[] allele2 = new byte[NUM_INDIVIDUALS];
+		System.arraycopy(genotypes, offset, allele1, 0, NUM_INDIVIDUALS);
+		System.arraycopy(genotypes, offset + NUM_INDIVIDUALS, allele2, 0, NUM_INDIVIDUALS);
+		snp.setAlleles(allele1, allele2, included, isFemale);
+		return snp;
+	}
+
+	private static void assertEqualsSNP(SNPQCTable table, int row, SNP snp)
+	{
+		assertEquals(table.getSNPId(row), snp.getId());
+		assertEquals(table.getAllele1(row), snp.getAlleles()[0]);
+		assertEquals(table.getAllele2(row), snp.getAlleles()[1]);
+		assertEquals(table.getMinorAllele(row), snp.getMinorAllele().byteValue());
+		assertEquals(table.getNrHom1(row), snp.getGenotypeFreq()[0]);
+		assertEquals(table.getNrHet(row), snp.getGenotypeFreq()[1]);
+		assertEquals(table.getNrHom2(row), snp.getGenotypeFreq()[2]);
+		assertEquals(table.getNrCalled(row), snp.nrCalled);
+		assertEquals(table.getMAF(row), snp.getMAF());
+		assertEquals(table.getHWEP(row), snp.getHWEP());
+		assertEquals(table.getCallRate(row), snp.getCR());
+		assertEquals(table.passesQC(row), snp.passesQC());
+	}
+
+	@Test
+	public void calculateEqualsSNP() throws IOException
+	{
+		SNPQCTable table = calculator.calculate();
+		assertEquals(table.size(), NUM_SNPS);
+		for (int i = 0; i < NUM_SNPS; ++i)
+			assertEqualsSNP(table, i, createSNP(i, isIncluded));
+	}
+
+	@Test
+	public void calculateSelection() throws IOException
+	{
+		int[] snpIds = new int[]
+		{ 2999, 10, 50, 7 };
+		BitSet individuals = new BitSet();
+		individuals.set(0, 100);
+		individuals.clear(40);
+		Boolean[] included = new Boolean[NUM_INDIVIDUALS];
+		for (int ind = 0; ind < NUM_INDIVIDUALS; ++ind)
+			included[ind] = individuals.get(ind);
+
+		SNPQCTable table = calculator.calculate(snpIds, individuals);
+		assertEquals(table.size(), snpIds.length);
+		for (int i = 0; i < snpIds.length; ++i)
+			assertEqualsSNP(table, i, createSNP(snpIds[i], included));
+	}
+}
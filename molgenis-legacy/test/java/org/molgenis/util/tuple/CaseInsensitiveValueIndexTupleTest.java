@@ -0,0 +1,90 @@
+package org.molgenis.util.tuple;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class CaseInsensitiveValueIndexTupleTest
+{
+	private Map<String, Integer> colNamesIndex;
+	private CaseInsensitiveValueIndexTuple tuple;
+
+	@BeforeMethod
+	public void setUp()
+	{
+		colNamesIndex = CaseInsensitiveValueIndexTuple.createColNamesIndex(new String[]
+		{ "col1", "COL2", "Col3" });
+		tuple = new CaseInsensitiveValueIndexTuple(colNamesIndex, Arrays.asList("val1", "val2", "VAL3"));
+	}
+
+	@Test
+	public void get()
+	{
+		assertEquals(tuple.get("col1"), "val1");
+		assertEquals(tuple.get("COL1"), "val1");
+		assertEquals(tuple.get("col2"), "val2");
+		assertEquals(tuple.get("COL2"), "val2");
+		assertEquals(tuple.get("cOL3"), "VAL3");
+		assertNull(tuple.get("col4"));
+	}
+
+	@Test
+	public void getint()
+	{
+		assertEquals(tuple.get(0), "val1");
+		assertEquals(tuple.get(1), "val2");
+		assertEquals(tuple.get(2), "VAL3");
+	}
+
+	@Test
+	public void getColNames()
+	{
+		Iterator<String> it = tuple.getColNames().iterator();
+		assertTrue(it.hasNext());
+		assertEquals(it.next(), "col1");
+		assertTrue(it.hasNext());
+		assertEquals(it.next(), "col2");
+		assertTrue(it.hasNext());
+		assertEquals(it.next(), "col3");
+		assertFalse(it.hasNext());
+	}
+
+	@Test
+	public void fromResultSet() throws SQLException
+	{
+		ResultSetMetaData metadata = mock(ResultSetMetaData.class);
+		when(metadata.getColumnCount()).thenReturn(2);
+		when(metadata.getColumnLabel(1)).thenReturn("ID");
+		ResultSet rs = mock(ResultSet.class);
+		when(rs.getObject(1)).thenReturn(1);
+		when(rs.getObject(2)).thenReturn("val2");
+
+		Map<String, Integer> index = CaseInsensitiveValueIndexTuple.createColNamesIndex(metadata);
+		CaseInsensitiveValueIndexTuple rowTuple = CaseInsensitiveValueIndexTuple.fromResultSet(rs, index, 2);
+		assertEquals(rowTuple.get("id"), 1);
+		// a column without label is named by its number
+		assertEquals(rowTuple.get("2"), "val2");
+	}
+
+	@Test
+	public void sharedColNamesIndex()
+	{
+		CaseInsensitiveValueIndexTuple otherTuple = new CaseInsensitiveValueIndexTuple(colNamesIndex, Arrays.asList(
+				"val4", "val5", "val6"));
+		assertEquals(otherTuple.get("COL1"), "val4");
+		assertEquals(tuple.get("COL1"), "val1");
+	}
+}